@@ -1,42 +1,145 @@
+import com.arduino.cli.HeadlessRunner;
+import com.arduino.connection.ArduinoConnection;
+import com.arduino.connection.discovery.DiscoveryService;
+import com.arduino.connection.discovery.ScannerIdentity;
 import com.arduino.connection.serial.SerialConnection;
+import com.arduino.journal.JournalingConnection;
+import com.arduino.journal.RawJournal;
+import com.arduino.live.LiveStreamServer;
+import com.arduino.pipeline.Pipeline;
+import com.arduino.pipeline.WaitStrategy;
+import com.arduino.pipeline.stages.ScannerPipeline;
+import com.arduino.profiling.ContinuousRecording;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Objects;
 import java.util.Scanner;
-import java.io.File;
+import java.util.function.Supplier;
 
 public class Main {
-    public static SerialConnection sc;
+    public static ArduinoConnection sc;
+    public static LiveStreamServer live;
+    public static RawJournal journal;
+    public static ContinuousRecording recording;
 
-    public static void init() {
+    public static void init() throws IOException, InterruptedException {
         System.out.println("init COM serial connect");
-        String initCOM = new Scanner(System.in).nextLine();
-        sc = new SerialConnection(initCOM, 115200);
+        System.out.println("(empty line - find scanner)");
+        String initCOM = new Scanner(System.in).nextLine().trim();
+        String source = "port=" + initCOM;
+        if (initCOM.isEmpty()) {
+            // Поиск по всем портам и Bluetooth; найденный сканер запоминается в кэше
+            DiscoveryService discovery = DiscoveryService.createDefault(115200);
+            ScannerIdentity identity = null;
+            sc = null;
+            // Запись кэша может указывать на отключённый сканер: connect() забудет её и поищет заново
+            for (int attempt = 0; attempt < 2 && sc == null; attempt++) {
+                identity = discovery.findAny();
+                if (identity == null) {
+                    break;
+                }
+                sc = discovery.connect(identity.key());
+            }
+            if (sc == null) {
+                System.out.println(discovery.getLastSummary());
+                Err(0, 151);
+                return;
+            }
+            System.out.println("found " + identity);
+            source = "scanner=" + identity.key() + " " + identity.getType() + ":" + identity.getAddress();
+        } else {
+            sc = new SerialConnection(initCOM, 115200);
+        }
+        openJournal();
+        if (journal != null) {
+            JournalingConnection journaling = new JournalingConnection(sc, journal, source);
+            // Найденный сканер уже подключён: сессия журнала начинается сейчас
+            if (sc.isConnected()) journaling.beginSession();
+            sc = journaling;
+        }
+    }
+
+    /**
+     * Журнал сырых байтов, если задан -Dsrst.journal.dir=<каталог>
+     */
+    public static void openJournal() throws IOException {
+        String journalDir = System.getProperty("srst.journal.dir");
+        if (journalDir != null && journal == null) {
+            journal = RawJournal.open(Paths.get(journalDir));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    System.err.println("Ошибка закрытия журнала: " + e.getMessage());
+                }
+            }));
+        }
     }
 
     public static void main(String[] args) throws InterruptedException, IOException {
+        if (args != null && args.length > 0) {
+            // Съёмка без оператора: настройки из аргументов и файла конфигурации
+            System.exit(HeadlessRunner.run(args));
+        }
         init();
-        File fileС = new File("data.csv");
-        FileWriter file = new FileWriter("data.csv");
+        startLive();
+        startProfiling();
         Thread.sleep(2000);
-        file.write("phi; theta; r\n");
-        file.flush();
-        if (!fileС.isFile()) fileС.createNewFile();
         System.out.println("System started!");
-        sc.connect();
-
-        while (true) {
-            String scd = sc.receiveData(1000);
-            if (scd != "") {
-                System.out.println(scd);
-                file.write(scd + "\n");
-                file.flush();
-            }
-            if (!sc.isConnected()) {
-                file.close();
-                Err(0, 150);
+        if (!sc.isConnected()) sc.connect();
+
+        // Чтение, разбор, запись и вывод — в отдельных потоках, связанных кольцами:
+        // медленная консоль теряет строки, но не задерживает чтение порта
+        Pipeline pipeline = new ScannerPipeline(sc)
+                .setCsvPath(Paths.get("data.csv"))
+                .setConsole(System.out)
+                .setLive(live)
+                .setWaitStrategy(pipelineWaitStrategy())
+                .build();
+        pipeline.start();
+        while (!pipeline.awaitSources(1000)) {
+            // источник закончится, когда подключение будет потеряно
+        }
+        pipeline.close();
+        System.out.println(pipeline.report());
+        Err(0, 150);
+    }
+
+    /**
+     * Стратегия ожидания конвейера из -Dsrst.pipeline.wait=sleeping|yielding|blocking|busy-spin
+     */
+    public static Supplier<WaitStrategy> pipelineWaitStrategy() {
+        String name = System.getProperty("srst.pipeline.wait", "sleeping");
+        // Неизвестное имя — ошибка сразу, а не в потоке стадии
+        WaitStrategy.named(name);
+        return () -> WaitStrategy.named(name);
+    }
+
+    /**
+     * Трансляция для браузеров, если задан -Dsrst.live.port=<порт>;
+     * -Dsrst.live.tiles=<каталог> раздаёт тайлы OctreeTiler по /tiles/
+     */
+    public static void startLive() throws IOException {
+        String livePort = System.getProperty("srst.live.port");
+        if (livePort != null && live == null) {
+            live = new LiveStreamServer(Integer.parseInt(livePort));
+            String tiles = System.getProperty("srst.live.tiles");
+            if (tiles != null) {
+                live.setTileDirectory(Paths.get(tiles));
             }
+            live.start();
+        }
+    }
+
+    /**
+     * Непрерывная запись JFR с ротацией файлов, если задан -Dsrst.profile.dir=<каталог>
+     */
+    public static void startProfiling() throws IOException {
+        String profileDir = System.getProperty("srst.profile.dir");
+        if (profileDir != null && recording == null) {
+            recording = ContinuousRecording.start(Paths.get(profileDir));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> recording.close()));
         }
     }
 
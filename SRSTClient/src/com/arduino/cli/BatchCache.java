@@ -0,0 +1,97 @@
+package com.arduino.cli;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Кэш уже обработанных входов {@link BatchProcessor}.
+ *
+ * Ключ — SHA-256 содержимого входа вместе с настройками обработки, поэтому
+ * переименованный файл не обрабатывается заново, а изменённые настройки
+ * фильтра или форматов — обрабатываются. Файл кэша — строки
+ * "&lt;sha256&gt; &lt;имя вывода&gt;", дописывается после каждого готового входа,
+ * так что прерванный пакет продолжается с того же места.
+ */
+public class BatchCache {
+
+    public static final String FILE_NAME = ".batch-cache";
+
+    private final Path file;
+    private final Map<String, String> entries = new ConcurrentHashMap<>();
+    private BufferedWriter writer;
+
+    /**
+     * Загрузить кэш из каталога вывода (если он там есть)
+     */
+    public BatchCache(Path outputDirectory) throws IOException {
+        this.file = outputDirectory.resolve(FILE_NAME);
+        if (Files.exists(file)) {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                int space = line.indexOf(' ');
+                if (space > 0) {
+                    entries.put(line.substring(0, space), line.substring(space + 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return имя вывода, под которым вход с этим хэшем уже обработан, или null
+     */
+    public String lookup(String hash) {
+        return entries.get(hash);
+    }
+
+    /**
+     * Запомнить обработанный вход; строка сразу сбрасывается на диск
+     */
+    public synchronized void put(String hash, String outputName) throws IOException {
+        if (writer == null) {
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        entries.put(hash, outputName);
+        writer.write(hash + " " + outputName + "\n");
+        writer.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Новый SHA-256; MessageDigest не потокобезопасен, у каждой задачи свой
+     */
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+
+    public static String hex(byte[] digest) {
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
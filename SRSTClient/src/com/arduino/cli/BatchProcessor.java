@@ -0,0 +1,563 @@
+package com.arduino.cli;
+
+import com.arduino.scan.PlyWriter;
+import com.arduino.scan.Scan;
+import com.arduino.scan.ScanFiles;
+import com.arduino.scan.VtkWriter;
+import com.arduino.scan.archive.BlockInfo;
+import com.arduino.scan.archive.ScanArchive;
+import com.arduino.scan.archive.ScanInfo;
+import com.arduino.scan.normals.NormalEstimator;
+import com.arduino.scan.normals.PointNormals;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Пакетная обработка накопленных сканов — то же, что ser.py, но сразу
+ * для каталога data.csv или для архива сканов.
+ *
+ * Каждый вход проходит чтение, фильтр (ключи filter.* как в {@link ScanJob})
+ * и экспорт в выбранные форматы. Входы выполняются в ForkJoinPool, а экспорт
+ * в разные форматы — отдельными подзадачами, которые простаивающие потоки
+ * забирают себе. Одновременно в работе не больше inFlight входов: входной
+ * поток ждёт на семафоре, поэтому память ограничена независимо от размера
+ * каталога. Входы, уже обработанные с теми же настройками, пропускаются
+ * по хэшу содержимого (см. {@link BatchCache}).
+ *
+ * <pre>
+ * BatchProcessor &lt;каталог|архив&gt; &lt;каталог вывода&gt; [--config файл] [ключ=значение]...
+ *
+ * formats=xyz,csv,vtk      форматы вывода: xyz, csv, vtk, ply, txt, bin
+ * normals=true             нормали и кривизна в VTK и PLY (по умолчанию нет)
+ * normals.k=12             соседей для точек, где не хватило соседей по сетке
+ * threads=4                потоков обработки (по числу ядер)
+ * inFlight=8               входов в работе одновременно (2 x threads)
+ * force=true               обработать всё заново, не глядя в кэш
+ * filter.rMin=20
+ * </pre>
+ *
+ * В каталоге берутся файлы *.csv и *.bin (двоичный формат {@link ScanFiles}),
+ * каталог с scans.idx считается архивом. Отчёт по файлам и итог пишутся
+ * в консоль и в batch-report.csv каталога вывода.
+ *
+ * Нормали считаются один раз на вход, до экспорта, в том же пуле
+ * (см. {@link NormalEstimator}); форматы без нормалей их не ждут.
+ */
+public class BatchProcessor {
+
+    public static final String REPORT_FILE = "batch-report.csv";
+
+    /**
+     * Формат вывода
+     */
+    public enum Format {
+        /** output.xyz из ser.py */
+        XYZ,
+        /** output.csv из ser.py: X,Y,Z,Radius,Phi,Theta */
+        CSV,
+        /** output.vtk из ser.py со скалярами Radius, Phi, Theta */
+        VTK,
+        /** двоичный PLY с теми же полями, что и VTK */
+        PLY,
+        /** output.txt из ser.py: "x y z r" */
+        TXT,
+        /** двоичный файл скана */
+        BIN;
+
+        public String extension() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * Формат может нести нормали
+         */
+        boolean hasNormals() {
+            return this == VTK || this == PLY;
+        }
+
+        /**
+         * @param normals нормали точек скана или null
+         */
+        void write(Scan scan, PointNormals normals, Path path) throws IOException {
+            switch (this) {
+                case XYZ:
+                    ScanFiles.writeXyz(scan, path);
+                    break;
+                case CSV:
+                    ScanFiles.writeCartesianCsv(scan, path);
+                    break;
+                case VTK:
+                    VtkWriter vtk = new VtkWriter("Polar to Cartesian Conversion")
+                            .setPoints(scan)
+                            .addScalars("Radius", scan.rArray())
+                            .addScalars("Phi", scan.phiArray())
+                            .addScalars("Theta", scan.thetaArray());
+                    if (normals != null) {
+                        vtk.addScalars("Curvature", normals.getCurvature())
+                                .setNormals("Normals", normals.getNx(), normals.getNy(), normals.getNz());
+                    }
+                    vtk.write(path);
+                    break;
+                case PLY:
+                    PlyWriter ply = new PlyWriter("Polar to Cartesian Conversion").setPoints(scan);
+                    if (normals != null) {
+                        ply.setNormals(normals.getNx(), normals.getNy(), normals.getNz());
+                    }
+                    ply.addScalars("Radius", scan.rArray())
+                            .addScalars("Phi", scan.phiArray())
+                            .addScalars("Theta", scan.thetaArray());
+                    if (normals != null) {
+                        ply.addScalars("Curvature", normals.getCurvature());
+                    }
+                    ply.write(path);
+                    break;
+                case TXT:
+                    ScanFiles.writeText(scan, path);
+                    break;
+                default:
+                    ScanFiles.writeBinary(scan, path);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Итог обработки одного входа
+     */
+    public enum Status {
+        OK, SKIPPED, FAILED
+    }
+
+    /**
+     * Результат по одному входу
+     */
+    public static class FileResult {
+        final String name;
+        Status status = Status.FAILED;
+        int samples;
+        int kept;
+        long bytes;
+        long nanos;
+        String message = "";
+
+        FileResult(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public int getSamples() {
+            return samples;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        double samplesPerSecond() {
+            return nanos > 0 ? samples * 1e9 / nanos : 0;
+        }
+    }
+
+    /**
+     * Вход пакета: файл скана или скан из архива
+     */
+    private static class Input {
+        final String name;
+        final Path file;
+        final ScanInfo scan;
+
+        Input(String name, Path file, ScanInfo scan) {
+            this.name = name;
+            this.file = file;
+            this.scan = scan;
+        }
+    }
+
+    private final Properties config;
+    private final ScanJob filter;
+    private final List<Format> formats = new ArrayList<>();
+    private final int threads;
+    private final int inFlight;
+    private final boolean force;
+    private final boolean normals;
+    private final int normalsK;
+    private ScanArchive archive;
+
+    public BatchProcessor(Properties config) {
+        this.config = config;
+        this.filter = new ScanJob("batch", config);
+        for (String name : config.getProperty("formats", "xyz,csv,vtk").split(",")) {
+            if (!name.trim().isEmpty()) {
+                try {
+                    formats.add(Format.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Неизвестный формат вывода: " + name.trim());
+                }
+            }
+        }
+        this.threads = Math.max(1, filter.getInt("threads", Runtime.getRuntime().availableProcessors()));
+        this.inFlight = Math.max(1, filter.getInt("inFlight", threads * 2));
+        this.force = Boolean.parseBoolean(config.getProperty("force", "false"));
+        this.normals = Boolean.parseBoolean(config.getProperty("normals", "false"));
+        this.normalsK = filter.getInt("normals.k", NormalEstimator.DEFAULT_K);
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Разобрать аргументы и обработать пакет
+     * @return код завершения, как у {@link HeadlessRunner}
+     */
+    public static int run(String[] args) {
+        Properties config = new Properties();
+        Properties overrides = new Properties();
+        List<String> paths = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--config") && i + 1 < args.length) {
+                    try (Reader reader = Files.newBufferedReader(Paths.get(args[++i]), StandardCharsets.UTF_8)) {
+                        config.load(reader);
+                    }
+                } else if (args[i].contains("=")) {
+                    int eq = args[i].indexOf('=');
+                    overrides.setProperty(args[i].substring(0, eq), args[i].substring(eq + 1));
+                } else {
+                    paths.add(args[i]);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Не удалось прочитать файл настроек: " + e.getMessage());
+            return HeadlessRunner.EXIT_USAGE;
+        }
+        config.putAll(overrides);
+        if (paths.size() != 2) {
+            System.out.println("Использование: BatchProcessor <каталог|архив> <каталог вывода> [--config файл] [ключ=значение]...");
+            return HeadlessRunner.EXIT_USAGE;
+        }
+
+        try {
+            BatchProcessor processor = new BatchProcessor(config);
+            List<FileResult> results = processor.process(Paths.get(paths.get(0)), Paths.get(paths.get(1)));
+            for (FileResult result : results) {
+                if (result.status == Status.FAILED) {
+                    return HeadlessRunner.EXIT_JOB_FAILED;
+                }
+            }
+            return HeadlessRunner.EXIT_OK;
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return HeadlessRunner.EXIT_USAGE;
+        } catch (IOException e) {
+            System.err.println("Ошибка ввода-вывода: " + e.getMessage());
+            return HeadlessRunner.EXIT_IO;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return HeadlessRunner.EXIT_JOB_FAILED;
+        }
+    }
+
+    /**
+     * Обработать все входы каталога или архива
+     * @return результаты в порядке входов
+     */
+    public List<FileResult> process(Path input, Path output) throws IOException, InterruptedException {
+        Files.createDirectories(output);
+        List<Input> inputs = collect(input, output);
+        System.out.println("Входов: " + inputs.size() + ", потоков: " + threads + ", в работе не более: " + inFlight);
+
+        BatchCache cache = new BatchCache(output);
+        byte[] settings = settingsFingerprint();
+        FileResult[] results = new FileResult[inputs.size()];
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Semaphore permits = new Semaphore(inFlight);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < inputs.size(); i++) {
+                Input item = inputs.get(i);
+                FileResult result = new FileResult(item.name);
+                results[i] = result;
+                // Ждём здесь, а не в потоках пула: рабочие потоки никогда не блокируются
+                permits.acquire();
+                pool.execute(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        try {
+                            processOne(item, output, cache, settings, result);
+                        } finally {
+                            permits.release();
+                        }
+                    }
+                });
+            }
+            permits.acquire(inFlight);
+            permits.release(inFlight);
+        } finally {
+            pool.shutdown();
+            cache.close();
+            if (archive != null) {
+                archive.close();
+                archive = null;
+            }
+        }
+        long wall = System.nanoTime() - start;
+
+        List<FileResult> list = Arrays.asList(results);
+        report(list, wall, output.resolve(REPORT_FILE));
+        return list;
+    }
+
+    private void processOne(Input input, Path output, BatchCache cache, byte[] settings, FileResult result) {
+        long start = System.nanoTime();
+        try {
+            MessageDigest digest = BatchCache.sha256();
+            digest.update(settings);
+            Scan scan;
+            String hash;
+            if (input.file != null) {
+                byte[] content = Files.readAllBytes(input.file);
+                result.bytes = content.length;
+                digest.update(content);
+                hash = BatchCache.hex(digest.digest());
+                if (isDone(cache, hash, output, result)) {
+                    return;
+                }
+                scan = ScanFiles.read(content, input.file.toString());
+            } else {
+                // Блоки архива уже защищены CRC32, поэтому хэшируется их перечень,
+                // а не распакованные данные: уже обработанный скан даже не читается
+                digest.update((input.scan.getRoom() + "|" + input.scan.getTimestamp() + "|"
+                        + input.scan.getSampleCount()).getBytes(StandardCharsets.UTF_8));
+                for (BlockInfo block : input.scan.getBlocks()) {
+                    digest.update((block.getCrc() + ":" + block.getLength() + ":" + block.getSampleCount() + ";")
+                            .getBytes(StandardCharsets.US_ASCII));
+                    result.bytes += block.getLength();
+                }
+                hash = BatchCache.hex(digest.digest());
+                if (isDone(cache, hash, output, result)) {
+                    return;
+                }
+                scan = archive.readScan(input.scan.getScanId());
+            }
+            result.samples = scan.size();
+            if (scan.isEmpty()) {
+                // Как ser.py: "Нет данных для сохранения!"
+                throw new IOException("нет отсчётов");
+            }
+
+            Scan kept = new Scan(scan.size());
+            for (int i = 0; i < scan.size(); i++) {
+                double phi = scan.getPhi(i);
+                double theta = scan.getTheta(i);
+                double r = scan.getR(i);
+                if (filter.accept(phi, theta, r)) {
+                    kept.add(phi, theta, r);
+                }
+            }
+            result.kept = kept.size();
+
+            Path base = output.resolve(input.name);
+            if (base.getParent() != null) {
+                Files.createDirectories(base.getParent());
+            }
+            PointNormals pointNormals = null;
+            if (normals && formats.stream().anyMatch(Format::hasNormals)) {
+                NormalEstimator estimator = new NormalEstimator();
+                estimator.setK(normalsK);
+                pointNormals = estimator.estimate(kept);
+            }
+            PointNormals keptNormals = pointNormals;
+            List<RecursiveAction> exports = new ArrayList<>();
+            for (Format format : formats) {
+                exports.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        try {
+                            format.write(kept, format.hasNormals() ? keptNormals : null,
+                                    outputPath(output, input.name, format));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+            }
+            ForkJoinTask.invokeAll(exports);
+
+            cache.put(hash, input.name);
+            result.status = Status.OK;
+        } catch (UncheckedIOException e) {
+            result.message = e.getCause().getMessage();
+            System.err.println("Ошибка обработки " + input.name + ": " + result.message);
+        } catch (IOException | RuntimeException e) {
+            result.message = String.valueOf(e.getMessage());
+            System.err.println("Ошибка обработки " + input.name + ": " + result.message);
+        } finally {
+            result.nanos = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Вход с этим хэшем уже обработан и его вывод на месте
+     */
+    private boolean isDone(BatchCache cache, String hash, Path output, FileResult result) {
+        String done = force ? null : cache.lookup(hash);
+        if (done == null) {
+            return false;
+        }
+        for (Format format : formats) {
+            if (!Files.exists(outputPath(output, done, format))) {
+                return false;
+            }
+        }
+        result.status = Status.SKIPPED;
+        result.message = done.equals(result.name) ? "" : "то же, что " + done;
+        return true;
+    }
+
+    private static Path outputPath(Path output, String name, Format format) {
+        return output.resolve(name + "." + format.extension());
+    }
+
+    /**
+     * Настройки, от которых зависит вывод: они входят в ключ кэша
+     */
+    private byte[] settingsFingerprint() {
+        StringBuilder sb = new StringBuilder("formats=").append(formats).append('\n');
+        if (normals) {
+            sb.append("normals.k=").append(normalsK).append('\n');
+        }
+        for (String key : new TreeSet<>(config.stringPropertyNames())) {
+            if (key.startsWith("filter.")) {
+                sb.append(key).append('=').append(config.getProperty(key).trim()).append('\n');
+            }
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Список входов: сканы архива или файлы сканов каталога (по порядку имён)
+     */
+    private List<Input> collect(Path input, Path output) throws IOException {
+        List<Input> inputs = new ArrayList<>();
+        if (Files.isDirectory(input) && Files.exists(input.resolve(ScanArchive.INDEX_FILE))) {
+            archive = ScanArchive.open(input);
+            for (ScanInfo info : archive.listScans()) {
+                inputs.add(new Input(safeName(info.getRoom()) + "-" + info.getScanId(), null, info));
+            }
+            return inputs;
+        }
+        if (!Files.isDirectory(input)) {
+            throw new IllegalArgumentException("Нет каталога сканов: " + input);
+        }
+        Path outputDir = output.toAbsolutePath().normalize();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(input)) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter(path -> !path.toAbsolutePath().normalize().startsWith(outputDir))
+                    .filter(path -> {
+                        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+                        return name.endsWith(".csv") || name.endsWith(".bin");
+                    })
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        Set<String> names = new HashSet<>();
+        for (Path file : files) {
+            String relative = input.relativize(file).toString().replace('\\', '/');
+            int dot = relative.lastIndexOf('.');
+            String name = relative.substring(0, dot);
+            if (!names.add(name)) {
+                // data.csv и data.bin в одном каталоге
+                name = name + "-" + relative.substring(dot + 1);
+                names.add(name);
+            }
+            inputs.add(new Input(name, file, null));
+        }
+        return inputs;
+    }
+
+    /**
+     * Имя комнаты из архива как часть имени файла: разделители путей и прочие
+     * служебные символы заменяются на '_', чтобы вывод не ушёл из каталога
+     */
+    static String safeName(String room) {
+        return room == null ? "" : room.replaceAll("[^\\p{L}\\p{N}._-]", "_");
+    }
+
+    /**
+     * Отчёт по файлам и итог: в консоль и в CSV
+     */
+    private void report(List<FileResult> results, long wallNanos, Path reportFile) throws IOException {
+        int ok = 0;
+        int skipped = 0;
+        int failed = 0;
+        long samples = 0;
+        long bytes = 0;
+        long busyNanos = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+            writer.write("name,status,samples,kept,bytes,ms,samples_per_s,message\n");
+            for (FileResult result : results) {
+                String line = String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%.1f,%.0f,%s",
+                        result.name, result.status, result.samples, result.kept, result.bytes,
+                        result.nanos / 1e6, result.samplesPerSecond(), result.message.replace(',', ';'));
+                writer.write(line + "\n");
+                System.out.printf(Locale.ROOT, "%-8s %-40s %9d точек %8.1f мс %10.0f точек/с %s%n",
+                        result.status, result.name, result.samples, result.nanos / 1e6,
+                        result.samplesPerSecond(), result.message);
+                if (result.status == Status.OK) {
+                    ok++;
+                    samples += result.samples;
+                    bytes += result.bytes;
+                    busyNanos += result.nanos;
+                } else if (result.status == Status.SKIPPED) {
+                    skipped++;
+                } else {
+                    failed++;
+                }
+            }
+        }
+        double wall = wallNanos / 1e9;
+        System.out.println("=== Итог ===");
+        System.out.printf(Locale.ROOT, "Обработано %d, пропущено (уже в кэше) %d, ошибок %d%n", ok, skipped, failed);
+        System.out.printf(Locale.ROOT, "Точек %d, входных данных %.1f МБ за %.2f с: %.0f точек/с, %.1f МБ/с%n",
+                samples, bytes / 1e6, wall, wall > 0 ? samples / wall : 0, wall > 0 ? bytes / 1e6 / wall : 0);
+        // Отношение суммарного времени входов к общему — сколько входов в среднем шло одновременно
+        System.out.printf(Locale.ROOT, "Параллельность %.2f (потоков %d)%n",
+                wallNanos > 0 ? (double) busyNanos / wallNanos : 0, threads);
+        System.out.println("✓ Создан файл: " + reportFile);
+    }
+}
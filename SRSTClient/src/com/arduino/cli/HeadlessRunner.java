@@ -0,0 +1,540 @@
+package com.arduino.cli;
+
+import com.arduino.connection.ArduinoConnection;
+import com.arduino.connection.ArduinoConnection.WireProtocol;
+import com.arduino.connection.ConnectionManager;
+import com.arduino.connection.protocol.BinaryFrames;
+import com.arduino.connection.protocol.BinarySampleDecoder;
+import com.arduino.connection.protocol.SampleListener;
+import com.arduino.journal.JournalingConnection;
+import com.arduino.journal.RawJournal;
+import com.arduino.profiling.ContinuousRecording;
+import com.arduino.profiling.FrameParseEvent;
+import com.arduino.profiling.ReconnectEvent;
+import com.arduino.scan.Scan;
+import com.arduino.scan.ScanFiles;
+import com.arduino.scan.VtkWriter;
+import com.arduino.scan.archive.ScanArchive;
+import com.arduino.scan.archive.ScanArchiveWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Неинтерактивный запуск съёмки без участия оператора.
+ *
+ * Задания описываются в файле настроек (формат properties, см. {@link ScanJob})
+ * и/или аргументами key=value. Все задания выполняются подряд в одной JVM,
+ * открытые подключения переиспользуются между заданиями.
+ *
+ * <pre>
+ * HeadlessRunner [--config scan.properties] [--job имя]... [ключ=значение]...
+ *
+ * jobs=kitchen,hall
+ * port=COM3
+ * output.csv=scans/{job}-{time}.csv
+ * job.hall.passes=3
+ * </pre>
+ *
+ * Общие ключи profile.dir, profile.chunkMinutes (10), profile.keep (12)
+ * и profile.settings (default) включают непрерывную запись JFR на время
+ * всех заданий, см. {@link ContinuousRecording}.
+ *
+ * Код завершения — наихудший среди заданий: {@link #EXIT_OK},
+ * {@link #EXIT_JOB_FAILED}, {@link #EXIT_USAGE}, {@link #EXIT_CONNECTION},
+ * {@link #EXIT_TIMEOUT}, {@link #EXIT_IO}.
+ */
+public class HeadlessRunner {
+
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_JOB_FAILED = 1;
+    public static final int EXIT_USAGE = 2;
+    public static final int EXIT_CONNECTION = 3;
+    public static final int EXIT_TIMEOUT = 4;
+    public static final int EXIT_IO = 5;
+
+    private static final double GRID_MAX = 180.0;
+
+    private final Properties config;
+    private final ConnectionManager connections = new ConnectionManager();
+    private final Map<String, ScanArchive> archives = new HashMap<>();
+    private final Map<String, RawJournal> journals = new HashMap<>();
+    private final Map<ArduinoConnection, JournalingConnection> journaling = new HashMap<>();
+    /** Через какую обёртку и с каким протоколом устройство подключено сейчас */
+    private final Map<ArduinoConnection, ArduinoConnection> activeConnections = new HashMap<>();
+    private final Map<ArduinoConnection, WireProtocol> requestedProtocols = new HashMap<>();
+
+    public HeadlessRunner(Properties config) {
+        this.config = config;
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Разобрать аргументы и выполнить задания
+     * @return код завершения
+     */
+    public static int run(String[] args) {
+        Properties config = new Properties();
+        Properties overrides = new Properties();
+        List<String> selected = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--config") && i + 1 < args.length) {
+                    try (Reader reader = Files.newBufferedReader(Paths.get(args[++i]), StandardCharsets.UTF_8)) {
+                        config.load(reader);
+                    }
+                } else if (args[i].equals("--job") && i + 1 < args.length) {
+                    selected.add(args[++i]);
+                } else if (args[i].contains("=")) {
+                    int eq = args[i].indexOf('=');
+                    overrides.setProperty(args[i].substring(0, eq), args[i].substring(eq + 1));
+                } else {
+                    System.err.println("Неизвестный аргумент: " + args[i]);
+                    usage();
+                    return EXIT_USAGE;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Не удалось прочитать файл настроек: " + e.getMessage());
+            return EXIT_USAGE;
+        }
+        config.putAll(overrides);
+
+        if (selected.isEmpty()) {
+            for (String name : config.getProperty("jobs", "scan").split(",")) {
+                if (!name.trim().isEmpty()) {
+                    selected.add(name.trim());
+                }
+            }
+        }
+        ContinuousRecording recording = startProfiling(config);
+        HeadlessRunner runner = new HeadlessRunner(config);
+        try {
+            return runner.runJobs(selected);
+        } finally {
+            runner.close();
+            if (recording != null) {
+                recording.close();
+                System.out.println("Запись JFR: " + recording.getDirectory());
+            }
+        }
+    }
+
+    /**
+     * Непрерывная запись JFR, если задан profile.dir; без неё съёмка всё равно идёт
+     */
+    private static ContinuousRecording startProfiling(Properties config) {
+        String dir = config.getProperty("profile.dir");
+        if (dir == null || dir.isEmpty()) {
+            return null;
+        }
+        try {
+            double minutes = Double.parseDouble(config.getProperty("profile.chunkMinutes",
+                    String.valueOf(ContinuousRecording.DEFAULT_CHUNK.toMinutes())));
+            int keep = Integer.parseInt(config.getProperty("profile.keep",
+                    String.valueOf(ContinuousRecording.DEFAULT_KEEP)));
+            return ContinuousRecording.start(Paths.get(dir), Duration.ofMillis((long) (minutes * 60_000)), keep,
+                    config.getProperty("profile.settings", ContinuousRecording.DEFAULT_SETTINGS));
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Не удалось начать запись JFR: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Выполнить задания подряд
+     * @return наихудший код завершения
+     */
+    public int runJobs(List<String> names) {
+        int worst = EXIT_OK;
+        List<String> report = new ArrayList<>();
+        for (String name : names) {
+            int code;
+            try {
+                code = runJob(new ScanJob(name, config));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Задание " + name + ": " + e.getMessage());
+                code = EXIT_USAGE;
+            }
+            report.add(name + ": " + (code == EXIT_OK ? "OK" : "код " + code));
+            worst = Math.max(worst, code);
+        }
+        System.out.println("=== Итог ===");
+        for (String line : report) {
+            System.out.println(line);
+        }
+        return worst;
+    }
+
+    /**
+     * Выполнить одно задание
+     * @return код завершения задания
+     */
+    public int runJob(ScanJob job) {
+        long startTime = System.currentTimeMillis();
+        System.out.println("Задание " + job.getName() + ": " + job.getPasses() + " проход(ов)");
+
+        ArduinoConnection connection = connect(job);
+        if (connection == null) {
+            return EXIT_CONNECTION;
+        }
+        connection.clearInputBuffer();
+
+        String csvPath = job.getOutput("csv", startTime);
+        String binaryPath = job.getOutput("binary", startTime);
+        String vtkPath = job.getOutput("vtk", startTime);
+        String archivePath = job.getOutput("archive", startTime);
+        Scan scan = binaryPath != null || vtkPath != null ? new Scan() : null;
+
+        BufferedWriter csv = null;
+        ScanArchiveWriter archiveWriter = null;
+        int code = EXIT_OK;
+        try {
+            if (csvPath != null) {
+                csv = Files.newBufferedWriter(createParent(Paths.get(csvPath)), StandardCharsets.UTF_8);
+                csv.write("phi; theta; r\n");
+            }
+            if (archivePath != null) {
+                archiveWriter = archive(archivePath).beginScan(job.get("room", job.getName()), startTime);
+            }
+
+            PassRecorder recorder = new PassRecorder(job, csv, archiveWriter, scan);
+            StringBuilder pending = new StringBuilder();
+            boolean firstLine = true;
+            long lastData = System.currentTimeMillis();
+
+            while (!recorder.isDone()) {
+                if (!connection.isConnected()) {
+                    System.err.println("Подключение потеряно, повторное подключение...");
+                    ReconnectEvent reconnect = new ReconnectEvent(connection.getConnectionType().name());
+                    boolean reconnected = connection.connect();
+                    reconnect.complete(reconnected);
+                    if (!reconnected) {
+                        code = EXIT_CONNECTION;
+                        break;
+                    }
+                }
+                boolean received;
+                BinarySampleDecoder decoder = connection.getBinaryDecoder();
+                if (decoder != null) {
+                    received = decoder.read(connection, recorder) > 0;
+                } else {
+                    String chunk = connection.receiveData(200);
+                    received = chunk != null && !chunk.isEmpty();
+                    if (received) {
+                        pending.append(chunk);
+                    }
+                    FrameParseEvent parse = new FrameParseEvent(WireProtocol.ASCII.name());
+                    long parsedBytes = 0;
+                    long parsed = 0;
+                    long rejected = 0;
+                    int newline;
+                    while ((newline = pending.indexOf("\n")) >= 0 && !recorder.isDone()) {
+                        String line = pending.substring(0, newline);
+                        pending.delete(0, newline + 1);
+                        parsedBytes += newline + 1;
+                        if (firstLine) {
+                            // После очистки буфера первая строка может быть обрывком
+                            firstLine = false;
+                            continue;
+                        }
+                        double[] sample = Scan.parseLine(line);
+                        if (sample != null) {
+                            recorder.sample(sample[0], sample[1], sample[2]);
+                            parsed++;
+                        } else if (!line.isBlank()) {
+                            rejected++;
+                        }
+                    }
+                    parse.complete(parsedBytes, parsed, rejected);
+                }
+                recorder.checkError();
+
+                if (!received) {
+                    if (System.currentTimeMillis() - lastData > job.getTimeoutMs()) {
+                        System.err.println("Нет данных дольше " + job.getTimeoutMs() + " мс");
+                        code = EXIT_TIMEOUT;
+                        break;
+                    }
+                    Thread.sleep(5);
+                    continue;
+                }
+                lastData = System.currentTimeMillis();
+            }
+
+            if (scan != null && binaryPath != null) {
+                ScanFiles.writeBinary(scan, createParent(Paths.get(binaryPath)));
+            }
+            if (scan != null && vtkPath != null) {
+                double[] radius = new double[scan.size()];
+                System.arraycopy(scan.rArray(), 0, radius, 0, scan.size());
+                new VtkWriter("Polar to Cartesian Conversion")
+                        .setPoints(scan)
+                        .addScalars("Radius", radius)
+                        .write(createParent(Paths.get(vtkPath)));
+            }
+            System.out.println("Задание " + job.getName() + " завершено: " + recorder.getSamples() + " точек");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            code = EXIT_JOB_FAILED;
+        } catch (IOException e) {
+            System.err.println("Ошибка записи результатов: " + e.getMessage());
+            code = EXIT_IO;
+        } finally {
+            try {
+                if (csv != null) {
+                    csv.close();
+                }
+                if (archiveWriter != null) {
+                    archiveWriter.close();
+                }
+            } catch (IOException e) {
+                System.err.println("Ошибка закрытия результатов: " + e.getMessage());
+                code = Math.max(code, EXIT_IO);
+            }
+        }
+        return code;
+    }
+
+    /**
+     * Получить подключение задания, переиспользуя уже открытое
+     * @return подключение или null при ошибке
+     */
+    private ArduinoConnection connect(ScanJob job) {
+        ArduinoConnection connection;
+        switch (job.getTransport()) {
+            case SERIAL:
+                connection = connections.getOrCreateSerialConnection(required(job, "port"), job.getInt("baud", 115200));
+                break;
+            case NETWORK:
+                connection = connections.getOrCreateNetworkConnection(required(job, "host"), job.getInt("tcpPort", 80));
+                break;
+            case BLUETOOTH:
+                connection = connections.getOrCreateBluetoothConnection(required(job, "address"));
+                break;
+            default:
+                throw new IllegalArgumentException("Транспорт не поддерживается: " + job.getTransport());
+        }
+        connections.setCurrentConnection(connection);
+        ArduinoConnection device = connection;
+        String journalPath = job.get("journal", null);
+        if (journalPath != null) {
+            connection = journaled(connection, journalPath, job);
+        }
+        connection.setPreferredProtocol(job.getProtocol());
+        if (connection.isConnected()) {
+            ArduinoConnection active = activeConnections.get(device);
+            if (active == connection && requestedProtocols.get(device) == job.getProtocol()) {
+                return connection;
+            }
+            // Протокол согласуется только при подключении: переподключиться под протокол задания
+            if (active != null && active.getWireProtocol() == WireProtocol.BINARY) {
+                // По сети и Bluetooth скетч не перезагружается и остался бы в двоичном режиме
+                active.sendData(BinaryFrames.REQUEST_ASCII + "\n");
+            }
+            connection.disconnect();
+        }
+        if (connection.connect()) {
+            activeConnections.put(device, connection);
+            requestedProtocols.put(device, job.getProtocol());
+            return connection;
+        }
+        return null;
+    }
+
+    /**
+     * Обернуть подключение записью в журнал; без журнала съёмка всё равно идёт
+     */
+    private ArduinoConnection journaled(ArduinoConnection connection, String path, ScanJob job) {
+        try {
+            RawJournal journal = journals.get(path);
+            if (journal == null) {
+                journal = RawJournal.open(Paths.get(path));
+                journals.put(path, journal);
+            }
+            JournalingConnection wrapper = journaling.get(connection);
+            if (wrapper == null || wrapper.getJournal() != journal) {
+                wrapper = new JournalingConnection(connection, journal, "job=" + job.getName());
+                journaling.put(connection, wrapper);
+                if (connection.isConnected()) {
+                    wrapper.beginSession();
+                }
+            }
+            return wrapper;
+        } catch (IOException e) {
+            System.err.println("Не удалось открыть журнал " + path + ": " + e.getMessage());
+            return connection;
+        }
+    }
+
+    private static String required(ScanJob job, String key) {
+        String value = job.get(key, null);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("не задан параметр " + key);
+        }
+        return value;
+    }
+
+    private ScanArchive archive(String path) throws IOException {
+        ScanArchive archive = archives.get(path);
+        if (archive == null) {
+            archive = ScanArchive.open(Paths.get(path));
+            archives.put(path, archive);
+        }
+        return archive;
+    }
+
+    private static Path createParent(Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        return path;
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    /**
+     * Закрыть подключения и архивы
+     */
+    public void close() {
+        connections.closeAllConnections();
+        for (ScanArchive archive : archives.values()) {
+            try {
+                archive.close();
+            } catch (IOException e) {
+                System.err.println("Ошибка закрытия архива: " + e.getMessage());
+            }
+        }
+        archives.clear();
+        for (RawJournal journal : journals.values()) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Ошибка закрытия журнала: " + e.getMessage());
+            }
+        }
+        journals.clear();
+        journaling.clear();
+    }
+
+    /**
+     * Разбивка потока отсчётов на проходы и запись принятых точек.
+     * Одинакова для текстового и двоичного протокола
+     */
+    private static class PassRecorder implements SampleListener {
+
+        private final ScanJob job;
+        private final BufferedWriter csv;
+        private final ScanArchiveWriter archiveWriter;
+        private final Scan scan;
+
+        private boolean synced;
+        private int passes;
+        private int passSamples;
+        private double lastPhi;
+        private long samples;
+        private IOException error;
+
+        PassRecorder(ScanJob job, BufferedWriter csv, ScanArchiveWriter archiveWriter, Scan scan) {
+            this.job = job;
+            this.csv = csv;
+            this.archiveWriter = archiveWriter;
+            this.scan = scan;
+        }
+
+        @Override
+        public void sample(double phi, double theta, double r) {
+            if (isDone() || error != null) {
+                return;
+            }
+            try {
+                record(phi, theta, r);
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+
+        private void record(double phi, double theta, double r) throws IOException {
+            // Скетч сканирует непрерывно: ждём начала прохода, чтобы не записать его хвост
+            if (!synced) {
+                synced = passSamples == 0 && phi <= 0 && theta <= 0 || passSamples > 0 && phi < lastPhi;
+                if (!synced) {
+                    lastPhi = phi;
+                    passSamples++;
+                    return;
+                }
+                passSamples = 0;
+            }
+
+            // Новый проход начинается, когда phi возвращается к началу сетки
+            if (passSamples > 0 && phi < lastPhi) {
+                completePass();
+                if (isDone()) {
+                    return;
+                }
+            }
+            lastPhi = phi;
+            passSamples++;
+
+            if (job.accept(phi, theta, r)) {
+                samples++;
+                if (csv != null) {
+                    csv.write(format(phi) + ";" + format(theta) + ";" + format(r) + "\n");
+                }
+                if (archiveWriter != null) {
+                    archiveWriter.add(phi, theta, r);
+                }
+                if (scan != null) {
+                    scan.add(phi, theta, r);
+                }
+            }
+            if (phi >= GRID_MAX && theta >= GRID_MAX) {
+                completePass();
+            }
+        }
+
+        private void completePass() {
+            passes++;
+            passSamples = 0;
+            System.out.println("  проход " + passes + " завершён, точек: " + samples);
+        }
+
+        /**
+         * Пробросить ошибку записи, возникшую при приёме отсчёта
+         */
+        void checkError() throws IOException {
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        boolean isDone() {
+            return passes >= job.getPasses();
+        }
+
+        long getSamples() {
+            return samples;
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Использование: HeadlessRunner [--config scan.properties] [--job имя]... [ключ=значение]...");
+    }
+}
@@ -0,0 +1,139 @@
+package com.arduino.cli;
+
+import com.arduino.connection.ArduinoConnection;
+
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Параметры одного задания съёмки для {@link HeadlessRunner}.
+ *
+ * Значения берутся из ключей "job.&lt;имя&gt;.&lt;параметр&gt;", а если их нет —
+ * из общих ключей "&lt;параметр&gt;". Поддерживаемые параметры:
+ * <pre>
+ * transport      serial | network | bluetooth   (serial)
+ * port           COM порт для serial             (COM3, /dev/ttyUSB0)
+ * baud           скорость serial                 (115200)
+ * protocol       ascii | binary                  (ascii)
+ * host, tcpPort  адрес для network
+ * address        MAC адрес для bluetooth
+ * passes         количество проходов сетки       (1)
+ * timeoutMs      предел ожидания данных, мс      (10000)
+ * output.csv     файл data.csv                   ({job} и {time} подставляются)
+ * output.binary  двоичный файл скана
+ * output.vtk     VTK облако точек
+ * output.archive каталог архива сканов
+ * journal        каталог журнала сырых байтов (см. RawJournal)
+ * room           комната в архиве                (имя задания)
+ * filter.rMin, filter.rMax                       интервал дальностей, см
+ * filter.phiMin, filter.phiMax, filter.thetaMin, filter.thetaMax
+ * </pre>
+ */
+public class ScanJob {
+
+    private final String name;
+    private final Properties properties;
+    private final double rMin;
+    private final double rMax;
+    private final double phiMin;
+    private final double phiMax;
+    private final double thetaMin;
+    private final double thetaMax;
+
+    ScanJob(String name, Properties properties) {
+        this.name = name;
+        this.properties = properties;
+        this.rMin = getDouble("filter.rMin", 0);
+        this.rMax = getDouble("filter.rMax", Double.MAX_VALUE);
+        this.phiMin = getDouble("filter.phiMin", -Double.MAX_VALUE);
+        this.phiMax = getDouble("filter.phiMax", Double.MAX_VALUE);
+        this.thetaMin = getDouble("filter.thetaMin", -Double.MAX_VALUE);
+        this.thetaMax = getDouble("filter.thetaMax", Double.MAX_VALUE);
+    }
+
+    /**
+     * Значение параметра с учётом общих значений по умолчанию
+     */
+    String get(String key, String defaultValue) {
+        String value = properties.getProperty("job." + name + "." + key);
+        if (value == null) {
+            value = properties.getProperty(key);
+        }
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    int getInt(String key, int defaultValue) {
+        String value = get(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Параметр " + key + " задания " + name + " не число: " + value);
+        }
+    }
+
+    double getDouble(String key, double defaultValue) {
+        String value = get(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Параметр " + key + " задания " + name + " не число: " + value);
+        }
+    }
+
+    /**
+     * Путь вывода с подстановкой {job} и {time}, или null если вывод не задан
+     */
+    String getOutput(String key, long startTime) {
+        String value = get("output." + key, null);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        return value.replace("{job}", name).replace("{time}", String.valueOf(startTime));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ArduinoConnection.ConnectionType getTransport() {
+        String transport = get("transport", "serial").toUpperCase(Locale.ROOT);
+        try {
+            return ArduinoConnection.ConnectionType.valueOf(transport);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неизвестный транспорт задания " + name + ": " + transport);
+        }
+    }
+
+    /**
+     * Протокол, запрашиваемый у устройства: ascii (по умолчанию) или binary
+     */
+    public ArduinoConnection.WireProtocol getProtocol() {
+        String protocol = get("protocol", "ascii").toUpperCase(Locale.ROOT);
+        try {
+            return ArduinoConnection.WireProtocol.valueOf(protocol);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неизвестный протокол задания " + name + ": " + protocol);
+        }
+    }
+
+    public int getPasses() {
+        return getInt("passes", 1);
+    }
+
+    public int getTimeoutMs() {
+        return getInt("timeoutMs", 10000);
+    }
+
+    /**
+     * Проходит ли отсчёт фильтры задания
+     */
+    boolean accept(double phi, double theta, double r) {
+        return r >= rMin && r <= rMax && phi >= phiMin && phi <= phiMax && theta >= thetaMin && theta <= thetaMax;
+    }
+}
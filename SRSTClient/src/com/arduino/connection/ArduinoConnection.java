@@ -1,5 +1,7 @@
 package com.arduino.connection;
 
+import com.arduino.connection.protocol.BinarySampleDecoder;
+
 /**
  * Базовый интерфейс для подключения к Arduino
  */
@@ -67,6 +69,30 @@ public interface ArduinoConnection {
      */
     ConnectionType getConnectionType();
 
+    /**
+     * Протокол обмена, согласованный при подключении
+     * @return протокол
+     */
+    default WireProtocol getWireProtocol() {
+        return WireProtocol.ASCII;
+    }
+
+    /**
+     * Декодер двоичных кадров, если согласован двоичный протокол
+     * @return декодер или null
+     */
+    default BinarySampleDecoder getBinaryDecoder() {
+        return null;
+    }
+
+    /**
+     * Задать протокол, который будет запрошен при следующем подключении.
+     * Подключения без поддержки двоичного протокола вызов игнорируют
+     * @param protocol протокол
+     */
+    default void setPreferredProtocol(WireProtocol protocol) {
+    }
+
     /**
      * Типы подключений
      */
@@ -76,4 +102,14 @@ public interface ArduinoConnection {
         BLUETOOTH,
         USB
     }
+
+    /**
+     * Протоколы передачи отсчётов
+     */
+    enum WireProtocol {
+        /** Текстовые строки "phi;theta;r" */
+        ASCII,
+        /** Кадры COBS с CRC, см. BinaryFrames */
+        BINARY
+    }
 }
\ No newline at end of file
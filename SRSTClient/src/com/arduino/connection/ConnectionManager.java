@@ -49,6 +49,42 @@ public class ConnectionManager {
         return connection;
     }
 
+    /**
+     * Получить ранее созданное Serial подключение или создать новое
+     */
+    public SerialConnection getOrCreateSerialConnection(String portName, int baudRate) {
+        ArduinoConnection existing = connections.get("SERIAL_" + portName);
+        if (existing instanceof SerialConnection && ((SerialConnection) existing).getBaudRate() == baudRate) {
+            return (SerialConnection) existing;
+        }
+        if (existing != null) {
+            existing.disconnect();
+        }
+        return createSerialConnection(portName, baudRate);
+    }
+
+    /**
+     * Получить ранее созданное сетевое подключение или создать новое
+     */
+    public NetworkConnection getOrCreateNetworkConnection(String host, int port) {
+        ArduinoConnection existing = connections.get("NETWORK_" + host + ":" + port);
+        if (existing instanceof NetworkConnection) {
+            return (NetworkConnection) existing;
+        }
+        return createNetworkConnection(host, port);
+    }
+
+    /**
+     * Получить ранее созданное Bluetooth подключение или создать новое
+     */
+    public BluetoothConnection getOrCreateBluetoothConnection(String deviceAddress) {
+        ArduinoConnection existing = connections.get("BLUETOOTH_" + deviceAddress);
+        if (existing instanceof BluetoothConnection) {
+            return (BluetoothConnection) existing;
+        }
+        return createBluetoothConnection(deviceAddress);
+    }
+
     /**
      * Установить текущее подключение
      */
@@ -1,12 +1,17 @@
 package com.arduino.connection.bluetooth;
 
 import com.arduino.connection.ArduinoConnection;
+import com.arduino.connection.protocol.BinarySampleDecoder;
+import com.arduino.connection.protocol.ProtocolNegotiator;
+import com.arduino.profiling.ReadBatchEvent;
 
 import javax.bluetooth.*;
 import javax.microedition.io.Connector;
 import javax.microedition.io.StreamConnection;
 import java.io.BufferedReader;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
@@ -18,10 +23,14 @@ public class BluetoothConnection implements ArduinoConnection {
 
     private String deviceAddress;
     private StreamConnection streamConnection;
+    private InputStream inputStream;
+    private OutputStream outputStream;
     private BufferedReader inputReader;
     private PrintWriter outputWriter;
     private boolean connected;
     private String connectionUrl;
+    private WireProtocol preferredProtocol = WireProtocol.ASCII;
+    private BinarySampleDecoder binaryDecoder;
 
     /**
      * Конструктор
@@ -80,11 +89,15 @@ public class BluetoothConnection implements ArduinoConnection {
     public boolean connect() {
         try {
             streamConnection = (StreamConnection) Connector.open(connectionUrl);
-            inputReader = new BufferedReader(new InputStreamReader(streamConnection.openInputStream()));
-            outputWriter = new PrintWriter(streamConnection.openOutputStream(), true);
+            // Потоки открываются один раз: повторный openInputStream() в BlueCove недопустим
+            inputStream = streamConnection.openInputStream();
+            outputStream = streamConnection.openOutputStream();
+            inputReader = new BufferedReader(new InputStreamReader(inputStream));
+            outputWriter = new PrintWriter(outputStream, true);
 
             connected = true;
             System.out.println("Успешно подключено к Bluetooth устройству " + deviceAddress);
+            negotiateProtocol();
             return true;
 
         } catch (Exception e) {
@@ -97,6 +110,7 @@ public class BluetoothConnection implements ArduinoConnection {
     @Override
     public void disconnect() {
         connected = false;
+        binaryDecoder = null;
         try {
             if (inputReader != null) {
                 inputReader.close();
@@ -143,8 +157,8 @@ public class BluetoothConnection implements ArduinoConnection {
         }
 
         try {
-            streamConnection.openOutputStream().write(data);
-            streamConnection.openOutputStream().flush();
+            outputStream.write(data);
+            outputStream.flush();
             return data.length;
         } catch (Exception e) {
             System.err.println("Ошибка отправки данных: " + e.getMessage());
@@ -174,12 +188,19 @@ public class BluetoothConnection implements ArduinoConnection {
             return -1;
         }
 
+        ReadBatchEvent event = new ReadBatchEvent(ConnectionType.BLUETOOTH.name(), 0);
+        int bytesRead = 0;
         try {
-            return streamConnection.openInputStream().read(buffer);
+            int available = inputStream.available();
+            if (available > 0) {
+                bytesRead = inputStream.read(buffer, 0, Math.min(available, buffer.length));
+            }
         } catch (Exception e) {
             System.err.println("Ошибка получения данных: " + e.getMessage());
-            return -1;
+            bytesRead = -1;
         }
+        event.complete(bytesRead);
+        return bytesRead;
     }
 
     @Override
@@ -188,6 +209,7 @@ public class BluetoothConnection implements ArduinoConnection {
             return "";
         }
 
+        ReadBatchEvent event = new ReadBatchEvent(ConnectionType.BLUETOOTH.name(), timeoutMs);
         long startTime = System.currentTimeMillis();
         StringBuilder data = new StringBuilder();
 
@@ -212,6 +234,7 @@ public class BluetoothConnection implements ArduinoConnection {
             System.err.println("Ошибка получения данных: " + e.getMessage());
         }
 
+        event.complete(data.length());
         return data.toString();
     }
 
@@ -225,6 +248,9 @@ public class BluetoothConnection implements ArduinoConnection {
             while (inputReader.ready()) {
                 inputReader.read();
             }
+            if (binaryDecoder != null) {
+                binaryDecoder.reset();
+            }
         } catch (Exception e) {
             System.err.println("Ошибка очистки буфера: " + e.getMessage());
         }
@@ -235,6 +261,41 @@ public class BluetoothConnection implements ArduinoConnection {
         return ConnectionType.BLUETOOTH;
     }
 
+    /**
+     * Согласовать протокол после подключения, если предпочтителен двоичный
+     */
+    private void negotiateProtocol() {
+        binaryDecoder = null;
+        if (preferredProtocol == WireProtocol.BINARY) {
+            binaryDecoder = ProtocolNegotiator.negotiateBinary(this, ProtocolNegotiator.DEFAULT_TIMEOUT_MS);
+            if (binaryDecoder == null) {
+                System.err.println("Устройство не поддерживает двоичный протокол, используется текстовый");
+            }
+        }
+    }
+
+    @Override
+    public WireProtocol getWireProtocol() {
+        return binaryDecoder != null ? WireProtocol.BINARY : WireProtocol.ASCII;
+    }
+
+    @Override
+    public BinarySampleDecoder getBinaryDecoder() {
+        return binaryDecoder;
+    }
+
+    public WireProtocol getPreferredProtocol() {
+        return preferredProtocol;
+    }
+
+    /**
+     * Задать протокол, который будет запрошен при подключении
+     */
+    @Override
+    public void setPreferredProtocol(WireProtocol preferredProtocol) {
+        this.preferredProtocol = preferredProtocol;
+    }
+
     // Геттеры и сеттеры
     public String getDeviceAddress() {
         return deviceAddress;
@@ -0,0 +1,85 @@
+package com.arduino.connection.discovery;
+
+import com.arduino.connection.ArduinoConnection;
+import com.arduino.connection.ArduinoConnection.ConnectionType;
+import com.arduino.connection.bluetooth.BluetoothConnection;
+
+import javax.bluetooth.DiscoveryAgent;
+import javax.bluetooth.LocalDevice;
+import javax.bluetooth.RemoteDevice;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bluetooth устройства из BlueCove.
+ *
+ * Сначала берутся сопряжённые и уже найденные стеком устройства — это
+ * мгновенно; полный поиск {@link BluetoothConnection#discoverDevices()}
+ * идёт около десяти секунд и включается отдельно. Пока он идёт,
+ * {@link DiscoveryService} параллельно проверяет остальные кандидаты.
+ */
+public class BluetoothDeviceProvider implements CandidateProvider {
+
+    /** Модуль SPP не перезагружает Arduino при подключении, ответ приходит быстро */
+    public static final int PROBE_TIMEOUT_MS = 1500;
+
+    private boolean inquiry = true;
+
+    @Override
+    public ConnectionType getType() {
+        return ConnectionType.BLUETOOTH;
+    }
+
+    @Override
+    public List<Candidate> enumerate() throws Exception {
+        DiscoveryAgent agent = LocalDevice.getLocalDevice().getDiscoveryAgent();
+        Map<String, Candidate> candidates = new LinkedHashMap<>();
+        add(candidates, agent.retrieveDevices(DiscoveryAgent.PREKNOWN));
+        add(candidates, agent.retrieveDevices(DiscoveryAgent.CACHED));
+        if (inquiry) {
+            add(candidates, BluetoothConnection.discoverDevices().toArray(new RemoteDevice[0]));
+        }
+        return new ArrayList<>(candidates.values());
+    }
+
+    private static void add(Map<String, Candidate> candidates, RemoteDevice[] devices) {
+        if (devices == null) {
+            return;
+        }
+        for (RemoteDevice device : devices) {
+            String address = device.getBluetoothAddress();
+            String name = "";
+            try {
+                // Без запроса к устройству: только имя, которое стек уже знает
+                name = device.getFriendlyName(false);
+            } catch (Exception e) {
+                // имя не обязательно
+            }
+            candidates.putIfAbsent(address, new Candidate(ConnectionType.BLUETOOTH, address, name));
+        }
+    }
+
+    @Override
+    public ArduinoConnection open(String address) {
+        return new BluetoothConnection(address);
+    }
+
+    @Override
+    public int getProbeTimeoutMs() {
+        return PROBE_TIMEOUT_MS;
+    }
+
+    // Геттеры и сеттеры
+    public boolean isInquiry() {
+        return inquiry;
+    }
+
+    /**
+     * @param inquiry искать новые устройства, а не только сопряжённые и известные стеку
+     */
+    public void setInquiry(boolean inquiry) {
+        this.inquiry = inquiry;
+    }
+}
@@ -0,0 +1,50 @@
+package com.arduino.connection.discovery;
+
+import com.arduino.connection.ArduinoConnection.ConnectionType;
+
+/**
+ * Транспорт, на котором может оказаться сканер: последовательный порт
+ * или Bluetooth устройство. Сканер ли это, выясняет {@link IdentifyProbe}
+ */
+public class Candidate {
+
+    private final ConnectionType type;
+    private final String address;
+    private final String description;
+
+    /**
+     * Конструктор
+     * @param address имя порта (COM3, ttyUSB0) или MAC адрес Bluetooth
+     * @param description описание порта или имя устройства, если известно
+     */
+    public Candidate(ConnectionType type, String address, String description) {
+        this.type = type;
+        this.address = address;
+        this.description = description != null ? description : "";
+    }
+
+    /**
+     * Ключ транспорта: тип и адрес
+     */
+    public String key() {
+        return type + ":" + address;
+    }
+
+    @Override
+    public String toString() {
+        return description.isEmpty() ? key() : key() + " (" + description + ")";
+    }
+
+    // Геттеры
+    public ConnectionType getType() {
+        return type;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,35 @@
+package com.arduino.connection.discovery;
+
+import com.arduino.connection.ArduinoConnection;
+import com.arduino.connection.ArduinoConnection.ConnectionType;
+
+import java.util.List;
+
+/**
+ * Источник кандидатов одного типа транспорта для {@link DiscoveryService}.
+ * Реальные реализации — {@link SerialPortProvider} и {@link BluetoothDeviceProvider};
+ * для проверки без железа подставляется имитация
+ */
+public interface CandidateProvider {
+
+    ConnectionType getType();
+
+    /**
+     * Перечислить доступные транспорты. Может быть долгим (поиск Bluetooth),
+     * поэтому вызывается в отдельном потоке
+     */
+    List<Candidate> enumerate() throws Exception;
+
+    /**
+     * Создать подключение по адресу; connect() вызывает вызывающий
+     */
+    ArduinoConnection open(String address);
+
+    /**
+     * Сколько ждать ответа на IDENT после подключения. По умолчанию с запасом
+     * на перезагрузку Arduino, которую вызывает открытие USB порта
+     */
+    default int getProbeTimeoutMs() {
+        return IdentifyProbe.DEFAULT_TIMEOUT_MS;
+    }
+}
@@ -0,0 +1,322 @@
+package com.arduino.connection.discovery;
+
+import com.arduino.connection.ArduinoConnection;
+import com.arduino.connection.ArduinoConnection.ConnectionType;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Поиск сканеров на последовательных портах и Bluetooth.
+ *
+ * Все {@link CandidateProvider} перечисляют транспорты одновременно, и
+ * каждый найденный кандидат сразу, не дожидаясь остальных источников,
+ * проверяется {@link IdentifyProbe} в общем пуле потоков. Поэтому поиск
+ * длится столько, сколько самый медленный источник плюс одно опознание,
+ * а не сумму таймаутов по всем портам; поиск конкретного сканера
+ * заканчивается, как только он найден.
+ *
+ * Опознанные сканеры хранятся в {@link IdentityCache}: пока запись
+ * свежая, {@link #connect(String)} открывает порт сразу, без перечисления и опознания.
+ */
+public class DiscoveryService {
+
+    public static final int DEFAULT_PARALLELISM = 8;
+
+    private final IdentityCache cache;
+    private final Map<ConnectionType, CandidateProvider> providers = new LinkedHashMap<>();
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    private final AtomicInteger candidates = new AtomicInteger();
+    private final AtomicInteger probed = new AtomicInteger();
+    private final AtomicInteger fromCache = new AtomicInteger();
+    private volatile String lastSummary = "поиск не выполнялся";
+
+    public DiscoveryService(IdentityCache cache, CandidateProvider... providers) {
+        this(cache, Arrays.asList(providers));
+    }
+
+    public DiscoveryService(IdentityCache cache, Collection<CandidateProvider> providers) {
+        this.cache = cache;
+        for (CandidateProvider provider : providers) {
+            this.providers.put(provider.getType(), provider);
+        }
+    }
+
+    /**
+     * Последовательные порты и Bluetooth, кэш в файле из -Dsrst.scanners.cache
+     * или ~/.srst/scanners.cache
+     */
+    public static DiscoveryService createDefault(int baudRate) {
+        String cacheFile = System.getProperty("srst.scanners.cache");
+        Path path = cacheFile != null ? Paths.get(cacheFile)
+                : Paths.get(System.getProperty("user.home"), ".srst", "scanners.cache");
+        IdentityCache cache;
+        try {
+            cache = new IdentityCache(path);
+        } catch (IOException e) {
+            System.err.println("Ошибка чтения кэша сканеров " + path + ": " + e.getMessage());
+            cache = new IdentityCache();
+        }
+        return new DiscoveryService(cache, new SerialPortProvider(baudRate), new BluetoothDeviceProvider());
+    }
+
+    /**
+     * Найти все сканеры: дождаться всех источников и всех опознаний
+     */
+    public List<ScannerIdentity> discover() {
+        return discover(identity -> false);
+    }
+
+    /**
+     * Любой сканер: сначала самый свежий из кэша, иначе первый найденный
+     * @return сканер или null
+     */
+    public ScannerIdentity findAny() {
+        List<ScannerIdentity> fresh = cache.fresh();
+        if (!fresh.isEmpty()) {
+            return fresh.get(0);
+        }
+        List<ScannerIdentity> found = discover(identity -> true);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Сканер с заданным номером (для старой прошивки — ключ "SERIAL:COM3")
+     * @return сканер или null, если его нигде нет
+     */
+    public ScannerIdentity find(String key) {
+        ScannerIdentity cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        for (ScannerIdentity identity : discover(identity -> identity.key().equals(key))) {
+            if (identity.key().equals(key)) {
+                return identity;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Создать подключение к опознанному сканеру; connect() вызывает вызывающий
+     */
+    public ArduinoConnection open(ScannerIdentity identity) {
+        CandidateProvider provider = providers.get(identity.getType());
+        if (provider == null) {
+            throw new IllegalArgumentException("Нет источника для " + identity.getType());
+        }
+        return provider.open(identity.getAddress());
+    }
+
+    /**
+     * Подключиться к сканеру. Если по записи кэша подключиться не удалось,
+     * запись забывается и сканер ищется заново
+     * @return подключение или null
+     */
+    public ArduinoConnection connect(String key) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            ScannerIdentity identity = find(key);
+            if (identity == null) {
+                return null;
+            }
+            ArduinoConnection connection = open(identity);
+            if (connection.connect()) {
+                return connection;
+            }
+            cache.invalidate(identity);
+        }
+        return null;
+    }
+
+    /**
+     * Подключиться к нескольким сканерам сразу. Тех, кого нет в кэше,
+     * ищет один общий поиск, а подключения открываются параллельно
+     * @return подключения по ключам; не найденных сканеров в ответе нет
+     */
+    public Map<String, ArduinoConnection> connectAll(Collection<String> keys) throws InterruptedException {
+        List<String> missing = new ArrayList<>();
+        for (String key : keys) {
+            if (cache.get(key) == null) {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            AtomicInteger left = new AtomicInteger(missing.size());
+            discover(identity -> missing.contains(identity.key()) && left.decrementAndGet() == 0);
+        }
+        Map<String, ArduinoConnection> connections = new LinkedHashMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, keys.size())),
+                DiscoveryService::daemon);
+        try {
+            Map<String, Future<ArduinoConnection>> futures = new LinkedHashMap<>();
+            for (String key : keys) {
+                futures.put(key, pool.submit(() -> connect(key)));
+            }
+            for (Map.Entry<String, Future<ArduinoConnection>> entry : futures.entrySet()) {
+                try {
+                    ArduinoConnection connection = entry.getValue().get();
+                    if (connection != null) {
+                        connections.put(entry.getKey(), connection);
+                    }
+                } catch (ExecutionException e) {
+                    System.err.println("Ошибка подключения к сканеру " + entry.getKey() + ": " + e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return connections;
+    }
+
+    /**
+     * Поиск с ранней остановкой
+     * @param stopWhen вернёт true — дальше не искать
+     */
+    private List<ScannerIdentity> discover(Predicate<ScannerIdentity> stopWhen) {
+        long start = System.currentTimeMillis();
+        candidates.set(0);
+        probed.set(0);
+        fromCache.set(0);
+        List<ScannerIdentity> found = new ArrayList<>();
+        // Результат каждой задачи: сканер или NOTHING (не сканер или источник закончил перечисление)
+        BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+        Object nothing = new Object();
+        AtomicInteger pending = new AtomicInteger(providers.size());
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, DiscoveryService::daemon);
+        try {
+            for (CandidateProvider provider : providers.values()) {
+                pool.execute(() -> {
+                    try {
+                        for (Candidate candidate : enumerate(provider)) {
+                            candidates.incrementAndGet();
+                            pending.incrementAndGet();
+                            pool.execute(() -> {
+                                ScannerIdentity identity = probe(provider, candidate);
+                                results.add(identity != null ? identity : nothing);
+                            });
+                        }
+                    } catch (RejectedExecutionException e) {
+                        // поиск уже остановлен
+                    } finally {
+                        results.add(nothing);
+                    }
+                });
+            }
+            while (pending.get() > 0) {
+                Object result = results.take();
+                pending.decrementAndGet();
+                if (result instanceof ScannerIdentity) {
+                    ScannerIdentity identity = (ScannerIdentity) result;
+                    found.add(identity);
+                    if (stopWhen.test(identity)) {
+                        break;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Оставшиеся опознания прерываются и сами закрывают свои подключения
+            pool.shutdownNow();
+        }
+        lastSummary = String.format("кандидатов %d, опознано заново %d, из кэша %d, сканеров %d за %d мс",
+                candidates.get(), probed.get(), fromCache.get(), found.size(), System.currentTimeMillis() - start);
+        return found;
+    }
+
+    private static List<Candidate> enumerate(CandidateProvider provider) {
+        try {
+            return provider.enumerate();
+        } catch (InterruptedException e) {
+            // Поиск остановлен раньше
+            Thread.currentThread().interrupt();
+            return new ArrayList<>();
+        } catch (Exception e) {
+            System.err.println("Поиск " + provider.getType() + " недоступен: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Опознать кандидата, если о нём нет свежей записи в кэше
+     */
+    private ScannerIdentity probe(CandidateProvider provider, Candidate candidate) {
+        ScannerIdentity cached = cache.at(candidate);
+        if (cached != null) {
+            fromCache.incrementAndGet();
+            return cached;
+        }
+        if (cache.isNotScanner(candidate)) {
+            return null;
+        }
+        probed.incrementAndGet();
+        ArduinoConnection connection = provider.open(candidate.getAddress());
+        ScannerIdentity identity = null;
+        try {
+            if (!connection.connect()) {
+                // Порт может быть просто занят другой программой: в отрицательный кэш не попадает
+                return null;
+            }
+            identity = IdentifyProbe.identify(connection, candidate, provider.getProbeTimeoutMs());
+        } finally {
+            connection.disconnect();
+        }
+        if (identity != null) {
+            cache.put(identity);
+        } else if (!Thread.currentThread().isInterrupted()) {
+            // Прерванное опознание (поиск остановлен раньше) ничего не говорит о кандидате
+            cache.markNotScanner(candidate);
+        }
+        return identity;
+    }
+
+    private static Thread daemon(Runnable task) {
+        Thread thread = new Thread(task, "discovery");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    // Геттеры и сеттеры
+    public IdentityCache getCache() {
+        return cache;
+    }
+
+    public Collection<CandidateProvider> getProviders() {
+        return providers.values();
+    }
+
+    /**
+     * Счётчики последнего поиска
+     */
+    public String getLastSummary() {
+        return lastSummary;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism сколько кандидатов опознаётся одновременно
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+}
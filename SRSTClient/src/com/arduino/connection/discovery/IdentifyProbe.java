@@ -0,0 +1,108 @@
+package com.arduino.connection.discovery;
+
+import com.arduino.connection.ArduinoConnection;
+import com.arduino.scan.Scan;
+
+/**
+ * Короткое опознание сканера командой "#d1 IDENT".
+ *
+ * Скетч отвечает "#d1 OK SRST id=&lt;номер&gt; fw=&lt;версия&gt;". Команда
+ * повторяется каждые 250 мс: пока Arduino после открытия порта сидит
+ * в загрузчике, байты теряются. Прошивка с командами, но без IDENT,
+ * отвечает "ERR unknown"; самая старая не отвечает вовсе, но шлёт
+ * отсчёты — обе считаются сканером со старой прошивкой. Устройство, от
+ * которого за таймаут не пришло ни ответа, ни отсчётов, сканером не считается.
+ */
+public final class IdentifyProbe {
+
+    public static final int DEFAULT_TIMEOUT_MS = 2500;
+    static final String TAG = "#d1";
+    private static final int RESEND_MS = 250;
+    /** Сколько ждать ответа после первого отсчёта, прежде чем решить, что IDENT не поддерживается */
+    private static final int LEGACY_WAIT_MS = 600;
+    private static final int MAX_LINE = 128;
+
+    private IdentifyProbe() {
+    }
+
+    /**
+     * Опознать устройство на открытом подключении
+     * @return сканер или null, если это не сканер
+     */
+    public static ScannerIdentity identify(ArduinoConnection connection, Candidate candidate, int timeoutMs) {
+        byte[] buffer = new byte[512];
+        StringBuilder line = new StringBuilder();
+        long start = System.currentTimeMillis();
+        long deadline = start + timeoutMs;
+        long nextSend = start;
+        long firstSample = 0;
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+                if (firstSample > 0 && now - firstSample > LEGACY_WAIT_MS) {
+                    return new ScannerIdentity(null, 0, candidate, now);
+                }
+                if (now >= deadline) {
+                    break;
+                }
+                if (now >= nextSend) {
+                    if (connection.sendData(TAG + " IDENT\n") < 0) {
+                        return null;
+                    }
+                    nextSend = now + RESEND_MS;
+                }
+                int n = connection.receiveData(buffer);
+                if (n < 0) {
+                    return null;
+                }
+                if (n == 0) {
+                    Thread.sleep(5);
+                    continue;
+                }
+                for (int i = 0; i < n; i++) {
+                    byte b = buffer[i];
+                    // 0x00 — рамка ответа, если скетч остался в двоичном режиме
+                    if (b != '\n' && b != 0) {
+                        if (line.length() < MAX_LINE) {
+                            line.append((char) (b & 0xFF));
+                        }
+                        continue;
+                    }
+                    String text = line.toString().trim();
+                    line.setLength(0);
+                    if (text.startsWith(TAG + " ")) {
+                        return reply(text.substring(TAG.length() + 1).trim(), candidate);
+                    }
+                    if (firstSample == 0 && Scan.parseLine(text) != null) {
+                        firstSample = System.currentTimeMillis();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return firstSample > 0 ? new ScannerIdentity(null, 0, candidate, System.currentTimeMillis()) : null;
+    }
+
+    private static ScannerIdentity reply(String reply, Candidate candidate) {
+        long now = System.currentTimeMillis();
+        if (!reply.startsWith("OK SRST")) {
+            // Команды с номером понимает, IDENT — нет
+            return new ScannerIdentity(null, 0, candidate, now);
+        }
+        String id = null;
+        int firmware = 0;
+        for (String field : reply.split("\\s+")) {
+            if (field.startsWith("id=")) {
+                id = field.substring(3);
+            } else if (field.startsWith("fw=")) {
+                try {
+                    firmware = Integer.parseInt(field.substring(3));
+                } catch (NumberFormatException e) {
+                    firmware = 0;
+                }
+            }
+        }
+        return new ScannerIdentity(id != null && !id.isEmpty() ? id : null, firmware, candidate, now);
+    }
+}
@@ -0,0 +1,182 @@
+package com.arduino.connection.discovery;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Кэш опознанных сканеров с временем жизни.
+ *
+ * Пока запись свежая, переподключение к сканеру идёт сразу на его порт,
+ * без перечисления портов и опознания. Записи хранятся в файле (строки
+ * {@link ScannerIdentity#toLine()}), так что и новый запуск клиента
+ * подключается к нескольким сканерам за миллисекунды. Порты, где сканера
+ * не оказалось, запоминаются только в памяти и на то же время не проверяются.
+ */
+public class IdentityCache {
+
+    public static final long DEFAULT_TTL_MS = TimeUnit.HOURS.toMillis(1);
+
+    private final Path file;
+    private final Map<String, ScannerIdentity> identities = new ConcurrentHashMap<>();
+    private final Map<String, Long> notScanners = new ConcurrentHashMap<>();
+    private long ttlMs = DEFAULT_TTL_MS;
+    private LongSupplier clock = System::currentTimeMillis;
+
+    /**
+     * Кэш только в памяти
+     */
+    public IdentityCache() {
+        this.file = null;
+    }
+
+    /**
+     * Загрузить кэш из файла (если он есть); изменения сразу записываются в него
+     */
+    public IdentityCache(Path file) throws IOException {
+        this.file = file;
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                ScannerIdentity identity = ScannerIdentity.parse(line);
+                if (identity != null) {
+                    identities.put(identity.key(), identity);
+                }
+            }
+        }
+    }
+
+    /**
+     * Свежая запись по номеру сканера (или ключу старой прошивки)
+     */
+    public ScannerIdentity get(String key) {
+        ScannerIdentity identity = identities.get(key);
+        return identity != null && isFresh(identity) ? identity : null;
+    }
+
+    /**
+     * Свежая запись о сканере на этом транспорте
+     */
+    public ScannerIdentity at(Candidate candidate) {
+        for (ScannerIdentity identity : identities.values()) {
+            if (identity.getType() == candidate.getType() && identity.getAddress().equals(candidate.getAddress())
+                    && isFresh(identity)) {
+                return identity;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Все свежие записи, сначала самые новые
+     */
+    public List<ScannerIdentity> fresh() {
+        List<ScannerIdentity> fresh = new ArrayList<>();
+        for (ScannerIdentity identity : identities.values()) {
+            if (isFresh(identity)) {
+                fresh.add(identity);
+            }
+        }
+        fresh.sort((a, b) -> Long.compare(b.getIdentifiedAt(), a.getIdentifiedAt()));
+        return fresh;
+    }
+
+    private boolean isFresh(ScannerIdentity identity) {
+        return clock.getAsLong() - identity.getIdentifiedAt() < ttlMs;
+    }
+
+    /**
+     * Запомнить сканер. Прежние записи о нём и о его транспорте заменяются:
+     * сканер могли переставить в другой порт
+     */
+    public synchronized void put(ScannerIdentity identity) {
+        identities.values().removeIf(old -> old.key().equals(identity.key())
+                || old.getType() == identity.getType() && old.getAddress().equals(identity.getAddress()));
+        identities.put(identity.key(), identity);
+        notScanners.remove(identity.getType() + ":" + identity.getAddress());
+        save();
+    }
+
+    /**
+     * Забыть сканер, например если подключиться по записи не удалось
+     */
+    public synchronized void invalidate(ScannerIdentity identity) {
+        if (identities.remove(identity.key(), identity)) {
+            save();
+        }
+    }
+
+    /**
+     * Запомнить, что на транспорте сканера нет
+     */
+    public void markNotScanner(Candidate candidate) {
+        notScanners.put(candidate.key(), clock.getAsLong() + ttlMs);
+    }
+
+    public boolean isNotScanner(Candidate candidate) {
+        Long until = notScanners.get(candidate.key());
+        return until != null && clock.getAsLong() < until;
+    }
+
+    /**
+     * Забыть всё, кроме файла: следующий поиск проверит все порты заново
+     */
+    public synchronized void clear() {
+        identities.clear();
+        notScanners.clear();
+        save();
+    }
+
+    private synchronized void save() {
+        if (file == null) {
+            return;
+        }
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (ScannerIdentity identity : identities.values()) {
+                    writer.write(identity.toLine());
+                    writer.write('\n');
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Ошибка записи кэша сканеров " + file + ": " + e.getMessage());
+        }
+    }
+
+    public int size() {
+        return identities.size();
+    }
+
+    // Геттеры и сеттеры
+    public Path getFile() {
+        return file;
+    }
+
+    public long getTtlMs() {
+        return ttlMs;
+    }
+
+    public void setTtlMs(long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * @param clock источник текущего времени в мс (для проверки срока жизни без ожидания)
+     */
+    public void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+}
@@ -0,0 +1,107 @@
+package com.arduino.connection.discovery;
+
+import com.arduino.connection.ArduinoConnection.ConnectionType;
+
+/**
+ * Сканер, опознанный на транспорте: номер из ответа на IDENT и где он найден.
+ *
+ * Старые прошивки IDENT не знают; такой сканер узнаётся по отсчётам или
+ * по ответу "ERR unknown", и его номером служит адрес транспорта.
+ */
+public class ScannerIdentity {
+
+    private final String id;
+    private final int firmware;
+    private final ConnectionType type;
+    private final String address;
+    private final String description;
+    private final long identifiedAt;
+
+    /**
+     * Конструктор
+     * @param id номер сканера или null для старой прошивки
+     * @param firmware версия прошивки, 0 если неизвестна
+     * @param identifiedAt когда опознан, System.currentTimeMillis()
+     */
+    public ScannerIdentity(String id, int firmware, ConnectionType type, String address, String description,
+                           long identifiedAt) {
+        this.id = id;
+        this.firmware = firmware;
+        this.type = type;
+        this.address = address;
+        this.description = description != null ? description : "";
+        this.identifiedAt = identifiedAt;
+    }
+
+    public ScannerIdentity(String id, int firmware, Candidate candidate, long identifiedAt) {
+        this(id, firmware, candidate.getType(), candidate.getAddress(), candidate.getDescription(), identifiedAt);
+    }
+
+    /**
+     * Ключ в кэше: номер сканера, а у старой прошивки — тип и адрес транспорта
+     */
+    public String key() {
+        return id != null ? id : type + ":" + address;
+    }
+
+    public boolean isLegacy() {
+        return id == null;
+    }
+
+    /**
+     * Строка файла кэша, поля через табуляцию
+     */
+    String toLine() {
+        return (id != null ? id : "-") + "\t" + firmware + "\t" + type + "\t" + address + "\t" + identifiedAt
+                + "\t" + description.replace('\t', ' ').replace('\n', ' ');
+    }
+
+    /**
+     * Разобрать строку файла кэша
+     * @return сканер или null, если строка испорчена
+     */
+    static ScannerIdentity parse(String line) {
+        String[] fields = line.split("\t", 6);
+        if (fields.length < 5) {
+            return null;
+        }
+        try {
+            return new ScannerIdentity(fields[0].equals("-") ? null : fields[0], Integer.parseInt(fields[1]),
+                    ConnectionType.valueOf(fields[2]), fields[3], fields.length > 5 ? fields[5] : "",
+                    Long.parseLong(fields[4]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        String name = id != null ? "сканер " + id + " (прошивка " + firmware + ")" : "сканер со старой прошивкой";
+        return name + " на " + type + ":" + address + (description.isEmpty() ? "" : " (" + description + ")");
+    }
+
+    // Геттеры
+    public String getId() {
+        return id;
+    }
+
+    public int getFirmware() {
+        return firmware;
+    }
+
+    public ConnectionType getType() {
+        return type;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public long getIdentifiedAt() {
+        return identifiedAt;
+    }
+}
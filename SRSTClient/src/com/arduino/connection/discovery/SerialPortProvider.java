@@ -0,0 +1,64 @@
+package com.arduino.connection.discovery;
+
+import com.arduino.connection.ArduinoConnection;
+import com.arduino.connection.ArduinoConnection.ConnectionType;
+import com.arduino.connection.serial.SerialConnection;
+import com.fazecast.jSerialComm.SerialPort;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Последовательные порты из jSerialComm
+ */
+public class SerialPortProvider implements CandidateProvider {
+
+    /** Встроенные UART материнской платы: Arduino на них не бывает, а ждать каждый — до таймаута */
+    public static final Pattern DEFAULT_EXCLUDE = Pattern.compile("ttyS\\d+");
+
+    private final int baudRate;
+    private Pattern exclude = DEFAULT_EXCLUDE;
+
+    public SerialPortProvider(int baudRate) {
+        this.baudRate = baudRate;
+    }
+
+    @Override
+    public ConnectionType getType() {
+        return ConnectionType.SERIAL;
+    }
+
+    @Override
+    public List<Candidate> enumerate() {
+        List<Candidate> candidates = new ArrayList<>();
+        for (SerialPort port : SerialPort.getCommPorts()) {
+            String name = port.getSystemPortName();
+            if (exclude == null || !exclude.matcher(name).matches()) {
+                candidates.add(new Candidate(ConnectionType.SERIAL, name, port.getDescriptivePortName()));
+            }
+        }
+        return candidates;
+    }
+
+    @Override
+    public ArduinoConnection open(String address) {
+        return new SerialConnection(address, baudRate);
+    }
+
+    // Геттеры и сеттеры
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    public Pattern getExclude() {
+        return exclude;
+    }
+
+    /**
+     * @param exclude имена портов, которые не проверять, или null — проверять все
+     */
+    public void setExclude(Pattern exclude) {
+        this.exclude = exclude;
+    }
+}
@@ -0,0 +1,188 @@
+package com.arduino.connection.network;
+
+import com.arduino.scan.archive.ScanArchive;
+import com.arduino.scan.archive.ScanArchiveWriter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Складывает данные каждого сканера в архив: одно подключение — один скан,
+ * комната — идентификатор сканера.
+ *
+ * Запись блоков и индекса идёт в отдельном потоке: поток селектора только
+ * ставит события в очередь, поэтому медленный диск не задерживает остальные
+ * подключения. Очередь отсчётов ограничена; если диск не успевает и она
+ * заполнена, новые отсчёты отбрасываются и считаются. Подключения и
+ * отключения не отбрасываются никогда, чтобы сканы всегда закрывались.
+ */
+public class ArchiveScannerSink implements ScannerSink, AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final int CONNECTED = 0;
+    private static final int SAMPLE = 1;
+    private static final int DISCONNECTED = 2;
+    private static final int STOP = 3;
+
+    private final ScanArchive archive;
+    private final int capacity;
+    private final BlockingQueue<Event> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger queuedSamples = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writerThread;
+    private volatile boolean closed;
+
+    /** Открытые сканы; доступны только потоку записи */
+    private final Map<String, ScanArchiveWriter> writers = new HashMap<>();
+
+    public ArchiveScannerSink(ScanArchive archive) {
+        this(archive, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Конструктор
+     * @param capacity сколько отсчётов может ждать записи
+     */
+    public ArchiveScannerSink(ScanArchive archive, int capacity) {
+        this.archive = archive;
+        this.capacity = capacity;
+        writerThread = new Thread(this::writeLoop, "archive-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public void scannerConnected(String scannerId) {
+        queue.add(new Event(CONNECTED, scannerId, System.currentTimeMillis(), 0, 0, 0));
+    }
+
+    @Override
+    public void sampleReceived(String scannerId, double phi, double theta, double r) {
+        if (queuedSamples.incrementAndGet() > capacity) {
+            queuedSamples.decrementAndGet();
+            if (dropped.getAndIncrement() == 0) {
+                System.err.println("Архив не успевает записывать: отсчёты отбрасываются");
+            }
+            return;
+        }
+        queue.add(new Event(SAMPLE, scannerId, 0, phi, theta, r));
+    }
+
+    @Override
+    public void scannerDisconnected(String scannerId) {
+        queue.add(new Event(DISCONNECTED, scannerId, 0, 0, 0, 0));
+    }
+
+    /**
+     * Дописать всё из очереди и закрыть открытые сканы.
+     * Вызывать после остановки сервера, до закрытия архива
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.add(new Event(STOP, null, 0, 0, 0, 0));
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped.get() > 0) {
+            System.err.println("Архив: отброшено отсчётов " + dropped.get());
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                Event event = queue.take();
+                switch (event.kind) {
+                    case CONNECTED:
+                        close(event.scannerId, writers.put(event.scannerId,
+                                archive.beginScan(event.scannerId, event.time)));
+                        break;
+                    case SAMPLE:
+                        queuedSamples.decrementAndGet();
+                        write(event);
+                        break;
+                    case DISCONNECTED:
+                        close(event.scannerId, writers.remove(event.scannerId));
+                        break;
+                    default:
+                        return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Map.Entry<String, ScanArchiveWriter> entry : writers.entrySet()) {
+                close(entry.getKey(), entry.getValue());
+            }
+            writers.clear();
+        }
+    }
+
+    private void write(Event event) {
+        ScanArchiveWriter writer = writers.get(event.scannerId);
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.add(event.phi, event.theta, event.r);
+        } catch (IOException e) {
+            System.err.println("Ошибка записи скана " + event.scannerId + ": " + e.getMessage());
+        }
+    }
+
+    private static void close(String scannerId, ScanArchiveWriter writer) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Ошибка завершения скана " + scannerId + ": " + e.getMessage());
+        }
+    }
+
+    // Геттеры
+    /**
+     * Сколько отсчётов отброшено из-за переполненной очереди
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Сколько отсчётов ждёт записи
+     */
+    public int getBacklog() {
+        return queuedSamples.get();
+    }
+
+    private static final class Event {
+        final int kind;
+        final String scannerId;
+        final long time;
+        final double phi;
+        final double theta;
+        final double r;
+
+        Event(int kind, String scannerId, long time, double phi, double theta, double r) {
+            this.kind = kind;
+            this.scannerId = scannerId;
+            this.time = time;
+            this.phi = phi;
+            this.theta = theta;
+            this.r = r;
+        }
+    }
+}
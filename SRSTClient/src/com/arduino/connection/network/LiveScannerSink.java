@@ -0,0 +1,30 @@
+package com.arduino.connection.network;
+
+import com.arduino.live.LiveStreamServer;
+
+/**
+ * Передаёт отсчёты всех сканеров в живую трансляцию
+ */
+public class LiveScannerSink implements ScannerSink {
+
+    private final LiveStreamServer live;
+
+    public LiveScannerSink(LiveStreamServer live) {
+        this.live = live;
+    }
+
+    @Override
+    public void scannerConnected(String scannerId) {
+        System.out.println("Сканер подключён: " + scannerId);
+    }
+
+    @Override
+    public void sampleReceived(String scannerId, double phi, double theta, double r) {
+        live.publish(phi, theta, r);
+    }
+
+    @Override
+    public void scannerDisconnected(String scannerId) {
+        System.out.println("Сканер отключён: " + scannerId);
+    }
+}
@@ -1,12 +1,16 @@
 package com.arduino.connection.network;
 
 import com.arduino.connection.ArduinoConnection;
+import com.arduino.connection.protocol.BinarySampleDecoder;
+import com.arduino.connection.protocol.ProtocolNegotiator;
+import com.arduino.profiling.ReadBatchEvent;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.Socket;
 import java.net.InetSocketAddress;
+import java.net.SocketException;
 import java.net.SocketTimeoutException;
 
 /**
@@ -22,6 +26,8 @@ public class NetworkConnection implements ArduinoConnection {
     private boolean connected;
     private int connectTimeout = 5000; // 5 секунд
     private int readTimeout = 10000; // 10 секунд
+    private WireProtocol preferredProtocol = WireProtocol.ASCII;
+    private BinarySampleDecoder binaryDecoder;
 
     /**
      * Конструктор
@@ -46,6 +52,7 @@ public class NetworkConnection implements ArduinoConnection {
 
             connected = true;
             System.out.println("Успешно подключено к " + host + ":" + port);
+            negotiateProtocol();
             return true;
 
         } catch (Exception e) {
@@ -58,6 +65,7 @@ public class NetworkConnection implements ArduinoConnection {
     @Override
     public void disconnect() {
         connected = false;
+        binaryDecoder = null;
         try {
             if (inputReader != null) {
                 inputReader.close();
@@ -137,14 +145,19 @@ public class NetworkConnection implements ArduinoConnection {
             return -1;
         }
 
+        // Чтение из сокета блокирующее: ждёт до readTimeout, выставленного при подключении
+        ReadBatchEvent event = new ReadBatchEvent(ConnectionType.NETWORK.name(), readTimeout);
+        int bytesRead;
         try {
-            return socket.getInputStream().read(buffer);
+            bytesRead = socket.getInputStream().read(buffer);
         } catch (SocketTimeoutException e) {
-            return 0; // Таймаут не считается ошибкой
+            bytesRead = 0; // Таймаут не считается ошибкой
         } catch (Exception e) {
             System.err.println("Ошибка получения данных: " + e.getMessage());
-            return -1;
+            bytesRead = -1;
         }
+        event.complete(bytesRead);
+        return bytesRead;
     }
 
     @Override
@@ -153,6 +166,7 @@ public class NetworkConnection implements ArduinoConnection {
             return "";
         }
 
+        ReadBatchEvent event = new ReadBatchEvent(ConnectionType.NETWORK.name(), timeoutMs);
         try {
             int originalTimeout = socket.getSoTimeout();
             socket.setSoTimeout(timeoutMs);
@@ -166,10 +180,12 @@ public class NetworkConnection implements ArduinoConnection {
             }
 
             socket.setSoTimeout(originalTimeout);
+            event.complete(data.length());
             return data.toString();
 
         } catch (Exception e) {
             System.err.println("Ошибка получения данных: " + e.getMessage());
+            event.complete(-1);
             return "";
         }
     }
@@ -184,6 +200,9 @@ public class NetworkConnection implements ArduinoConnection {
             while (inputReader.ready()) {
                 inputReader.read();
             }
+            if (binaryDecoder != null) {
+                binaryDecoder.reset();
+            }
         } catch (Exception e) {
             System.err.println("Ошибка очистки буфера: " + e.getMessage());
         }
@@ -194,6 +213,48 @@ public class NetworkConnection implements ArduinoConnection {
         return ConnectionType.NETWORK;
     }
 
+    /**
+     * Согласовать протокол после подключения, если предпочтителен двоичный
+     */
+    private void negotiateProtocol() {
+        binaryDecoder = null;
+        if (preferredProtocol == WireProtocol.BINARY) {
+            try {
+                // Короткий таймаут чтения, чтобы ожидание ответа не зависло на readTimeout
+                socket.setSoTimeout(50);
+                binaryDecoder = ProtocolNegotiator.negotiateBinary(this, ProtocolNegotiator.DEFAULT_TIMEOUT_MS);
+                socket.setSoTimeout(readTimeout);
+            } catch (Exception e) {
+                System.err.println("Ошибка согласования протокола: " + e.getMessage());
+            }
+            if (binaryDecoder == null) {
+                System.err.println("Устройство не поддерживает двоичный протокол, используется текстовый");
+            }
+        }
+    }
+
+    @Override
+    public WireProtocol getWireProtocol() {
+        return binaryDecoder != null ? WireProtocol.BINARY : WireProtocol.ASCII;
+    }
+
+    @Override
+    public BinarySampleDecoder getBinaryDecoder() {
+        return binaryDecoder;
+    }
+
+    public WireProtocol getPreferredProtocol() {
+        return preferredProtocol;
+    }
+
+    /**
+     * Задать протокол, который будет запрошен при подключении
+     */
+    @Override
+    public void setPreferredProtocol(WireProtocol preferredProtocol) {
+        this.preferredProtocol = preferredProtocol;
+    }
+
     // Геттеры и сеттеры
     public String getHost() {
         return host;
@@ -223,7 +284,17 @@ public class NetworkConnection implements ArduinoConnection {
         return readTimeout;
     }
 
+    /**
+     * @param readTimeout таймаут чтения, мс; у открытого подключения меняется сразу
+     */
     public void setReadTimeout(int readTimeout) {
         this.readTimeout = readTimeout;
+        if (isConnected()) {
+            try {
+                socket.setSoTimeout(readTimeout);
+            } catch (SocketException e) {
+                System.err.println("Не удалось изменить таймаут чтения: " + e.getMessage());
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,385 @@
+package com.arduino.connection.network;
+
+import com.arduino.live.LiveStreamServer;
+import com.arduino.scan.Scan;
+import com.arduino.scan.archive.ScanArchive;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Сервер-сборщик: WiFi-сканеры сами подключаются к нему на один порт.
+ *
+ * Все подключения обслуживаются одним потоком на NIO селекторе.
+ * Сканер открывает соединение строкой "HELLO &lt;id&gt;\n" и получает "OK\n",
+ * после чего шлёт отсчёты в обычном формате скетча "phi;theta;r\n".
+ * Отсчёты раздаются всем зарегистрированным {@link ScannerSink}.
+ * Повторное подключение с тем же id вытесняет старое соединение
+ * (старое могло зависнуть при обрыве WiFi).
+ *
+ * Строка длиннее {@link #MAX_LINE} байт отбрасывается целиком и считается
+ * ошибочной. Исключение при обработке одного подключения (в том числе
+ * из приёмника) закрывает только его, остальные сканеры продолжают работу.
+ */
+public class ScannerCollectorServer {
+
+    public static final String HELLO = "HELLO ";
+    private static final int MAX_LINE = 256;
+
+    private final int port;
+    private int handshakeTimeoutMs = 5000;
+    private final List<ScannerSink> sinks = new CopyOnWriteArrayList<>();
+    private final Map<String, Session> scanners = new ConcurrentHashMap<>();
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong badLines = new AtomicLong();
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    /**
+     * Конструктор
+     * @param port порт для входящих подключений (0 — любой свободный)
+     */
+    public ScannerCollectorServer(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Режим сборщика: ScannerCollectorServer &lt;порт&gt; &lt;каталог архива&gt; [порт трансляции]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Использование: ScannerCollectorServer <порт> <каталог архива> [порт трансляции]");
+            System.exit(2);
+        }
+        ScanArchive archive = ScanArchive.open(Paths.get(args[1]));
+        ScannerCollectorServer server = new ScannerCollectorServer(Integer.parseInt(args[0]));
+        ArchiveScannerSink archiveSink = new ArchiveScannerSink(archive);
+        server.addSink(archiveSink);
+        if (args.length > 2) {
+            LiveStreamServer live = new LiveStreamServer(Integer.parseInt(args[2]));
+            live.start();
+            server.addSink(new LiveScannerSink(live));
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            archiveSink.close();
+            try {
+                archive.close();
+            } catch (IOException e) {
+                System.err.println("Ошибка закрытия архива: " + e.getMessage());
+            }
+        }));
+        server.start();
+        server.selectorThread.join();
+    }
+
+    public void addSink(ScannerSink sink) {
+        sinks.add(sink);
+    }
+
+    public void removeSink(ScannerSink sink) {
+        sinks.remove(sink);
+    }
+
+    /**
+     * Запустить сервер
+     */
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        selectorThread = new Thread(this::selectLoop, "collector-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        System.out.println("Сборщик сканов слушает порт " + getPort());
+    }
+
+    /**
+     * Остановить сервер и закрыть все подключения
+     */
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        try {
+            if (selectorThread != null) {
+                selectorThread.join(2000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void selectLoop() {
+        try {
+            while (running) {
+                selector.select(500);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isReadable()) {
+                            read(key);
+                        }
+                    } catch (RuntimeException e) {
+                        failed(key, e);
+                    }
+                }
+                closeStaleHandshakes();
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка сборщика сканов: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Session) {
+                    close((Session) key.attachment());
+                }
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                System.err.println("Ошибка при остановке сборщика: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Ошибка при обработке одного ключа: закрыть только это подключение
+     */
+    private void failed(SelectionKey key, RuntimeException e) {
+        if (key.attachment() instanceof Session) {
+            Session session = (Session) key.attachment();
+            System.err.println("Ошибка обработки сканера "
+                    + (session.scannerId != null ? session.scannerId : session.channel.socket().getRemoteSocketAddress())
+                    + ", соединение закрыто: " + e);
+            close(session);
+        } else {
+            System.err.println("Ошибка приёма подключения к сборщику: " + e);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Session session = new Session(channel);
+            session.key = channel.register(selector, SelectionKey.OP_READ, session);
+        }
+    }
+
+    private void read(SelectionKey key) {
+        Session session = (Session) key.attachment();
+        try {
+            int n = session.channel.read(session.buffer);
+            if (n == -1) {
+                close(session);
+                return;
+            }
+            session.buffer.flip();
+            while (session.buffer.hasRemaining()) {
+                byte b = session.buffer.get();
+                if (b == '\n') {
+                    boolean overflow = session.overflow;
+                    String line = new String(session.line, 0, session.lineLength, StandardCharsets.US_ASCII).trim();
+                    session.lineLength = 0;
+                    session.overflow = false;
+                    if (!(overflow ? dropLongLine(session) : handleLine(session, line))) {
+                        return;
+                    }
+                } else if (session.lineLength < MAX_LINE) {
+                    session.line[session.lineLength++] = b;
+                } else {
+                    session.overflow = true;
+                }
+            }
+            session.buffer.clear();
+        } catch (IOException e) {
+            close(session);
+        }
+    }
+
+    /**
+     * Обработать строку от сканера
+     * @return false если соединение закрыто
+     */
+    private boolean handleLine(Session session, String line) throws IOException {
+        if (session.scannerId == null) {
+            if (!line.startsWith(HELLO) || line.length() == HELLO.length()) {
+                reply(session, "ERR handshake\n");
+                close(session);
+                return false;
+            }
+            String id = line.substring(HELLO.length()).trim();
+            Session previous = scanners.put(id, session);
+            if (previous != null) {
+                previous.replaced = true;
+                close(previous);
+            }
+            session.scannerId = id;
+            reply(session, "OK\n");
+            for (ScannerSink sink : sinks) {
+                sink.scannerConnected(id);
+            }
+            return true;
+        }
+        double[] sample = Scan.parseLine(line);
+        if (sample == null) {
+            if (!line.isEmpty()) {
+                badLines.incrementAndGet();
+            }
+            return true;
+        }
+        session.samples++;
+        samples.incrementAndGet();
+        for (ScannerSink sink : sinks) {
+            sink.sampleReceived(session.scannerId, sample[0], sample[1], sample[2]);
+        }
+        return true;
+    }
+
+    /**
+     * Строка не поместилась в буфер: её начало — не отсчёт, а обрывок
+     * @return false если соединение закрыто
+     */
+    private boolean dropLongLine(Session session) throws IOException {
+        if (session.scannerId == null) {
+            reply(session, "ERR handshake\n");
+            close(session);
+            return false;
+        }
+        badLines.incrementAndGet();
+        System.err.println("Сканер " + session.scannerId + ": строка длиннее " + MAX_LINE + " байт отброшена");
+        return true;
+    }
+
+    private void reply(Session session, String text) throws IOException {
+        ByteBuffer out = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+        // Ответы короткие и помещаются в буфер сокета целиком
+        while (out.hasRemaining()) {
+            if (session.channel.write(out) == 0) {
+                break;
+            }
+        }
+    }
+
+    private void closeStaleHandshakes() {
+        long now = System.currentTimeMillis();
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            if (key.attachment() instanceof Session) {
+                Session session = (Session) key.attachment();
+                if (session.scannerId == null && now - session.connectedAt > handshakeTimeoutMs) {
+                    close(session);
+                }
+            }
+        }
+    }
+
+    private void close(Session session) {
+        if (session.closed) {
+            return;
+        }
+        session.closed = true;
+        if (session.key != null) {
+            session.key.cancel();
+        }
+        try {
+            session.channel.close();
+        } catch (IOException e) {
+            // уже закрыт
+        }
+        if (session.scannerId != null) {
+            if (!session.replaced) {
+                scanners.remove(session.scannerId, session);
+            }
+            for (ScannerSink sink : sinks) {
+                sink.scannerDisconnected(session.scannerId);
+            }
+        }
+    }
+
+    /**
+     * Подключённые сканеры
+     */
+    public List<String> getConnectedScanners() {
+        return new ArrayList<>(scanners.keySet());
+    }
+
+    /**
+     * Количество отсчётов, принятых от сканера за текущее подключение
+     */
+    public long getSampleCount(String scannerId) {
+        Session session = scanners.get(scannerId);
+        return session != null ? session.samples : 0;
+    }
+
+    public long getTotalSamples() {
+        return samples.get();
+    }
+
+    public long getBadLines() {
+        return badLines.get();
+    }
+
+    public int getPort() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : port;
+    }
+
+    public int getHandshakeTimeoutMs() {
+        return handshakeTimeoutMs;
+    }
+
+    public void setHandshakeTimeoutMs(int handshakeTimeoutMs) {
+        this.handshakeTimeoutMs = handshakeTimeoutMs;
+    }
+
+    /**
+     * Состояние одного подключения
+     */
+    private static final class Session {
+        final SocketChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocate(4096);
+        final byte[] line = new byte[MAX_LINE];
+        final long connectedAt = System.currentTimeMillis();
+        int lineLength;
+        /** Текущая строка не поместилась в line и будет отброшена */
+        boolean overflow;
+        SelectionKey key;
+        String scannerId;
+        volatile long samples;
+        boolean replaced;
+        boolean closed;
+
+        Session(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.arduino.connection.network;
+
+/**
+ * Получатель данных от сканеров, подключённых к {@link ScannerCollectorServer}.
+ * Методы вызываются из потока селектора сервера, поэтому должны быть быстрыми.
+ */
+public interface ScannerSink {
+
+    /**
+     * Сканер прошёл рукопожатие
+     * @param scannerId идентификатор сканера
+     */
+    void scannerConnected(String scannerId);
+
+    /**
+     * Получен отсчёт от сканера
+     */
+    void sampleReceived(String scannerId, double phi, double theta, double r);
+
+    /**
+     * Сканер отключился
+     */
+    void scannerDisconnected(String scannerId);
+}
@@ -0,0 +1,125 @@
+package com.arduino.connection.network;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Нагрузочная проверка {@link ScannerCollectorServer}: сотни имитированных
+ * сканеров одновременно подключаются по loopback и отправляют полный проход
+ * скетча (37 x 37 отсчётов). В конце сверяется, что от каждого сканера
+ * дошли все отсчёты.
+ *
+ * Использование: SimulatedScannerFleet [сканеров] [проходов]
+ */
+public class SimulatedScannerFleet {
+
+    public static void main(String[] args) throws Exception {
+        int scannerCount = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int samplesPerScanner = passes * 37 * 37;
+
+        Map<String, AtomicLong> received = new ConcurrentHashMap<>();
+        CountDownLatch disconnected = new CountDownLatch(scannerCount);
+        ScannerCollectorServer server = new ScannerCollectorServer(0);
+        server.addSink(new ScannerSink() {
+            @Override
+            public void scannerConnected(String scannerId) {
+                received.put(scannerId, new AtomicLong());
+            }
+
+            @Override
+            public void sampleReceived(String scannerId, double phi, double theta, double r) {
+                received.get(scannerId).incrementAndGet();
+            }
+
+            @Override
+            public void scannerDisconnected(String scannerId) {
+                disconnected.countDown();
+            }
+        });
+        server.start();
+
+        // Соединения открываются все сразу, а отправку ведёт небольшой пул потоков
+        List<Socket> sockets = new ArrayList<>();
+        for (int i = 0; i < scannerCount; i++) {
+            Socket socket = new Socket();
+            socket.connect(new InetSocketAddress("127.0.0.1", server.getPort()), 5000);
+            socket.setTcpNoDelay(true);
+            sockets.add(socket);
+        }
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(32, scannerCount));
+        AtomicLong failures = new AtomicLong();
+        for (int i = 0; i < scannerCount; i++) {
+            Socket socket = sockets.get(i);
+            String id = "scanner-" + i;
+            pool.execute(() -> {
+                try {
+                    runScanner(socket, id, passes);
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    System.err.println(id + ": " + e.getMessage());
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(5, TimeUnit.MINUTES);
+        boolean allClosed = disconnected.await(30, TimeUnit.SECONDS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        server.stop();
+
+        int complete = 0;
+        for (AtomicLong count : received.values()) {
+            if (count.get() == samplesPerScanner) {
+                complete++;
+            }
+        }
+        long total = server.getTotalSamples();
+        System.out.println("Сканеров: " + scannerCount + ", отсчётов на сканер: " + samplesPerScanner);
+        System.out.println("Полностью принято: " + complete + " из " + scannerCount
+                + (allClosed ? "" : " (не все отключились)") + ", ошибок клиентов: " + failures.get());
+        System.out.printf("Принято %d отсчётов за %.2f с (%.0f отсчётов/с)%n", total, seconds, total / seconds);
+        System.exit(complete == scannerCount && failures.get() == 0 ? 0 : 1);
+    }
+
+    /**
+     * Имитация одного сканера: рукопожатие и проходы по сетке скетча
+     */
+    private static void runScanner(Socket socket, String id, int passes) throws Exception {
+        try (Socket s = socket) {
+            OutputStream out = s.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+            out.write((ScannerCollectorServer.HELLO + id + "\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            String reply = in.readLine();
+            if (!"OK".equals(reply)) {
+                throw new IllegalStateException("рукопожатие отклонено: " + reply);
+            }
+            StringBuilder batch = new StringBuilder(37 * 16);
+            for (int pass = 0; pass < passes; pass++) {
+                for (int pos = 0; pos <= 180; pos += 5) {
+                    batch.setLength(0);
+                    for (int pos2 = 0; pos2 <= 180; pos2 += 5) {
+                        batch.append(pos).append(';').append(pos2).append(';').append(100 + (pos * 7 + pos2 * 3) % 300).append('\n');
+                    }
+                    out.write(batch.toString().getBytes(StandardCharsets.US_ASCII));
+                }
+            }
+            out.flush();
+        }
+    }
+}
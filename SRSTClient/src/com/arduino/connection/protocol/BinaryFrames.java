@@ -0,0 +1,119 @@
+package com.arduino.connection.protocol;
+
+/**
+ * Двоичный протокол отсчётов между скетчем и клиентом.
+ *
+ * Отсчёт — 6 байт:
+ * <pre>
+ * seq    uint8   номер кадра по модулю 256 (по пропускам видна потеря кадров)
+ * phi    uint8   угол первого сервопривода, градусы
+ * theta  uint8   угол второго сервопривода, градусы
+ * r      uint16  дальность в 0.1 см, little-endian
+ * crc    uint8   CRC-8 (полином 0x07) по предыдущим 5 байтам
+ * </pre>
+ * Кадр кодируется COBS и завершается байтом 0x00, итого 8 байт на отсчёт
+ * против 14–16 байт текста "120;135;234.00\r\n". После потери или порчи
+ * байтов приём восстанавливается на следующем 0x00.
+ */
+public final class BinaryFrames {
+
+    public static final int PAYLOAD_LENGTH = 6;
+    public static final int FRAME_LENGTH = PAYLOAD_LENGTH + 2;
+    public static final double RANGE_SCALE = 10.0;
+
+    /** Команда переключения на двоичный протокол и ответ скетча */
+    public static final String REQUEST_BINARY = "PROTO BIN";
+    public static final String ACK_BINARY = "OK BIN";
+    public static final String REQUEST_ASCII = "PROTO ASCII";
+
+    private BinaryFrames() {
+    }
+
+    /**
+     * CRC-8, полином x^8 + x^2 + x + 1
+     */
+    public static int crc8(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc ^= data[i] & 0xFF;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80) != 0 ? ((crc << 1) ^ 0x07) & 0xFF : (crc << 1) & 0xFF;
+            }
+        }
+        return crc;
+    }
+
+    /**
+     * Упаковать отсчёт в кадр (COBS + 0x00)
+     * @param out буфер не короче {@link #FRAME_LENGTH}
+     * @return длина кадра
+     */
+    public static int encodeSample(int seq, int phi, int theta, double r, byte[] out, int offset) {
+        byte[] payload = new byte[PAYLOAD_LENGTH];
+        int range = (int) Math.max(0, Math.min(0xFFFF, Math.round(r * RANGE_SCALE)));
+        payload[0] = (byte) seq;
+        payload[1] = (byte) phi;
+        payload[2] = (byte) theta;
+        payload[3] = (byte) range;
+        payload[4] = (byte) (range >>> 8);
+        payload[5] = (byte) crc8(payload, 0, 5);
+        int length = cobsEncode(payload, PAYLOAD_LENGTH, out, offset);
+        out[offset + length] = 0;
+        return length + 1;
+    }
+
+    /**
+     * COBS-кодирование: в результате нет нулевых байтов
+     * @return длина закодированных данных
+     */
+    public static int cobsEncode(byte[] in, int length, byte[] out, int offset) {
+        int codeIndex = offset;
+        int write = offset + 1;
+        int code = 1;
+        for (int i = 0; i < length; i++) {
+            if (in[i] == 0) {
+                out[codeIndex] = (byte) code;
+                codeIndex = write++;
+                code = 1;
+            } else {
+                out[write++] = in[i];
+                code++;
+                if (code == 0xFF) {
+                    out[codeIndex] = (byte) code;
+                    codeIndex = write++;
+                    code = 1;
+                }
+            }
+        }
+        out[codeIndex] = (byte) code;
+        return write - offset;
+    }
+
+    /**
+     * COBS-декодирование
+     * @return длина декодированных данных или -1 если данные повреждены
+     */
+    public static int cobsDecode(byte[] in, int length, byte[] out) {
+        int read = 0;
+        int write = 0;
+        while (read < length) {
+            int code = in[read++] & 0xFF;
+            if (code == 0 || read + code - 1 > length) {
+                return -1;
+            }
+            for (int i = 1; i < code; i++) {
+                if (write == out.length) {
+                    return -1;
+                }
+                out[write++] = in[read++];
+            }
+            if (code < 0xFF && read < length) {
+                if (write == out.length) {
+                    return -1;
+                }
+                out[write++] = 0;
+            }
+        }
+        return write;
+    }
+}
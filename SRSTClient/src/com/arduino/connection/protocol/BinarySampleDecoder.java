@@ -0,0 +1,163 @@
+package com.arduino.connection.protocol;
+
+import com.arduino.connection.ArduinoConnection;
+import com.arduino.profiling.FrameParseEvent;
+
+/**
+ * Потоковый разбор кадров {@link BinaryFrames}.
+ *
+ * Байты копятся до разделителя 0x00, после чего кадр декодируется,
+ * проверяется CRC и номер кадра. Испорченные кадры не попадают в данные,
+ * а учитываются в счётчиках, как и пропуски в нумерации.
+ */
+public class BinarySampleDecoder {
+
+    private static final int MAX_ENCODED = 32;
+
+    private final byte[] frame = new byte[MAX_ENCODED];
+    private final byte[] payload = new byte[MAX_ENCODED];
+    private final byte[] readBuffer = new byte[4096];
+    private int frameLength;
+    private boolean overflow;
+    private byte[] pendingInput;
+    private int lastSeq = -1;
+
+    private long frames;
+    private long crcErrors;
+    private long malformedFrames;
+    private long lostFrames;
+
+    /**
+     * Сохранить байты, пришедшие вместе с ответом на согласование протокола;
+     * они будут разобраны при следующем чтении
+     */
+    void setPendingInput(byte[] bytes) {
+        this.pendingInput = bytes.length > 0 ? bytes : null;
+    }
+
+    /**
+     * Забрать байты, оставшиеся от согласования, чтобы разобрать их в другом месте
+     * @return байты или null
+     */
+    public byte[] takePendingInput() {
+        byte[] pending = pendingInput;
+        pendingInput = null;
+        return pending;
+    }
+
+    /**
+     * Забыть недоразобранные байты, например после очистки входного буфера
+     */
+    public void reset() {
+        pendingInput = null;
+        frameLength = 0;
+        overflow = false;
+        lastSeq = -1;
+    }
+
+    /**
+     * Прочитать доступные байты из подключения и разобрать кадры
+     * @return количество полученных отсчётов или -1 при ошибке чтения
+     */
+    public int read(ArduinoConnection connection, SampleListener listener) {
+        int samples = 0;
+        if (pendingInput != null) {
+            byte[] pending = pendingInput;
+            pendingInput = null;
+            samples += decode(pending, 0, pending.length, listener);
+        }
+        int n = connection.receiveData(readBuffer);
+        if (n < 0) {
+            return samples > 0 ? samples : -1;
+        }
+        return samples + decode(readBuffer, 0, n, listener);
+    }
+
+    /**
+     * Разобрать очередную порцию байтов
+     * @return количество полученных отсчётов
+     */
+    public int decode(byte[] data, int offset, int length, SampleListener listener) {
+        FrameParseEvent event = new FrameParseEvent(ArduinoConnection.WireProtocol.BINARY.name());
+        long corrupt = getCorruptFrames();
+        int samples = decodeFrames(data, offset, length, listener);
+        event.complete(length, samples, getCorruptFrames() - corrupt);
+        return samples;
+    }
+
+    /**
+     * То же, что {@link #decode}, но без события JFR — для вызывающих,
+     * которые замеряют разбор более крупными порциями
+     */
+    int decodeFrames(byte[] data, int offset, int length, SampleListener listener) {
+        int samples = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = data[i];
+            if (b != 0) {
+                if (frameLength < frame.length) {
+                    frame[frameLength++] = b;
+                } else {
+                    overflow = true;
+                }
+                continue;
+            }
+            if (frameLength > 0 || overflow) {
+                if (handleFrame(listener)) {
+                    samples++;
+                }
+            }
+            frameLength = 0;
+            overflow = false;
+        }
+        return samples;
+    }
+
+    private boolean handleFrame(SampleListener listener) {
+        int length = overflow ? -1 : BinaryFrames.cobsDecode(frame, frameLength, payload);
+        if (length != BinaryFrames.PAYLOAD_LENGTH) {
+            malformedFrames++;
+            return false;
+        }
+        if (BinaryFrames.crc8(payload, 0, 5) != (payload[5] & 0xFF)) {
+            crcErrors++;
+            return false;
+        }
+        int seq = payload[0] & 0xFF;
+        if (lastSeq >= 0) {
+            lostFrames += (seq - lastSeq - 1) & 0xFF;
+        }
+        lastSeq = seq;
+        frames++;
+        double r = ((payload[3] & 0xFF) | (payload[4] & 0xFF) << 8) / BinaryFrames.RANGE_SCALE;
+        if (listener != null) {
+            listener.sample(payload[1] & 0xFF, payload[2] & 0xFF, r);
+        }
+        return true;
+    }
+
+    /**
+     * Кадры с неверной контрольной суммой либо неверной длины
+     */
+    public long getCorruptFrames() {
+        return crcErrors + malformedFrames;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getCrcErrors() {
+        return crcErrors;
+    }
+
+    public long getMalformedFrames() {
+        return malformedFrames;
+    }
+
+    /**
+     * Оценка потерянных кадров по пропускам в нумерации (включая испорченные)
+     */
+    public long getLostFrames() {
+        return lostFrames;
+    }
+}
@@ -0,0 +1,477 @@
+package com.arduino.connection.protocol;
+
+import com.arduino.connection.ArduinoConnection;
+import com.arduino.connection.ArduinoConnection.WireProtocol;
+import com.arduino.profiling.FrameParseEvent;
+import com.arduino.scan.Scan;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Конвейер команд поверх подключения к сканеру.
+ *
+ * {@code SerialConnection.sendAndReceive} делает один обмен за раз и считает
+ * ответом всё, что пришло, вперемешку с отсчётами. Здесь каждая команда
+ * получает номер и уходит строкой "#&lt;номер&gt; &lt;команда&gt;", скетч отвечает
+ * "#&lt;номер&gt; OK [данные]" или "#&lt;номер&gt; ERR &lt;причина&gt;". Один поток
+ * читает подключение, завершает {@link CompletableFuture} команды по номеру
+ * ответа, а всё остальное — отсчёты — отдаёт получателю данных. Так команды
+ * управления (MOVE, DWELL, STATUS) идут параллельно потоку отсчётов и не
+ * останавливают его.
+ *
+ * В двоичном протоколе скетч обрамляет ответ байтами 0x00, поэтому ответ
+ * всегда занимает целый сегмент между разделителями. Сегмент кадра COBS
+ * начинается с кода 1..7 и не может начинаться с '#', так что ответы и кадры
+ * различаются по первому байту.
+ *
+ * Одновременно в полёте не больше {@link #getWindow()} команд: приёмный буфер
+ * Arduino — 64 байта, а скетч читает команды раз за шаг сервопривода.
+ * Остальные ждут в очереди и отправляются по мере ответов.
+ *
+ * <pre>
+ * CommandMultiplexer mux = new CommandMultiplexer(connection, scan::add);
+ * mux.start();
+ * mux.move(90, 45).thenCompose(ok -&gt; mux.status()).thenAccept(System.out::println);
+ * </pre>
+ */
+public class CommandMultiplexer implements AutoCloseable {
+
+    public static final int DEFAULT_WINDOW = 4;
+    public static final int DEFAULT_TIMEOUT_MS = 2000;
+
+    /** Номера идут по кругу; короткие номера экономят буфер команд скетча */
+    private static final int MAX_ID = 9999;
+    private static final int MAX_SEGMENT = 128;
+
+    /**
+     * Устройство ответило на команду ошибкой
+     */
+    public static class CommandException extends IOException {
+        private static final long serialVersionUID = 1L;
+        private final String command;
+
+        public CommandException(String command, String reason) {
+            super(command + ": " + reason);
+            this.command = command;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+    }
+
+    /**
+     * Команда в очереди или в полёте
+     */
+    private static class Pending {
+        private final String command;
+        private final CompletableFuture<String> future;
+        private int id;
+        private long sentNanos;
+
+        Pending(String command, CompletableFuture<String> future) {
+            this.command = command;
+            this.future = future;
+        }
+    }
+
+    private final ArduinoConnection connection;
+    private final SampleListener dataListener;
+    private final Map<Integer, Pending> inFlight = new ConcurrentHashMap<>();
+    private final Deque<Pending> queued = new ArrayDeque<>();
+    private int nextId;
+    private int window = DEFAULT_WINDOW;
+    private int timeoutMs = DEFAULT_TIMEOUT_MS;
+    private Consumer<String> messageListener;
+
+    private BinarySampleDecoder decoder;
+    private Thread reader;
+    private volatile boolean running;
+
+    private final byte[] segment = new byte[MAX_SEGMENT + 1];
+    private int segmentLength;
+    private boolean segmentOverflow;
+    private final StringBuilder line = new StringBuilder();
+
+    private final AtomicLong commandsSent = new AtomicLong();
+    private final AtomicLong replies = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong lateReplies = new AtomicLong();
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong strayLines = new AtomicLong();
+    private final AtomicLong latencyNanos = new AtomicLong();
+
+    /**
+     * Конструктор
+     * @param connection подключение; после {@link #start()} читать из него может только мультиплексор
+     * @param dataListener получатель отсчётов, вызывается из потока чтения
+     */
+    public CommandMultiplexer(ArduinoConnection connection, SampleListener dataListener) {
+        this.connection = connection;
+        this.dataListener = dataListener;
+    }
+
+    /**
+     * Запустить поток чтения. Протокол (текст или кадры) берётся у подключения
+     * и дальше не меняется
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        decoder = connection.getBinaryDecoder();
+        running = true;
+        reader = new Thread(this::readLoop, "command-mux");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Отправить команду
+     * @param command команда без номера, например "MOVE 90 45"
+     * @return будущий ответ устройства (данные после OK); при ошибке —
+     *         {@link CommandException}, при отсутствии ответа — {@link TimeoutException}
+     */
+    public CompletableFuture<String> send(String command) {
+        return send(command, timeoutMs);
+    }
+
+    /**
+     * Отправить команду со своим таймаутом (время в очереди входит в таймаут)
+     */
+    public CompletableFuture<String> send(String command, int timeoutMs) {
+        if (command.indexOf('\n') >= 0 || command.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Команда должна быть одной строкой: " + command);
+        }
+        CompletableFuture<String> future = new CompletableFuture<>();
+        if (!running) {
+            future.completeExceptionally(new IOException("Мультиплексор не запущен"));
+            return future;
+        }
+        Pending pending = new Pending(command.trim(), future);
+        future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((reply, error) -> finished(pending, error));
+        synchronized (this) {
+            queued.add(pending);
+        }
+        pump();
+        return future;
+    }
+
+    /**
+     * Повернуть сервоприводы; обход продолжится с этой точки
+     */
+    public CompletableFuture<String> move(int phi, int theta) {
+        return send("MOVE " + phi + " " + theta);
+    }
+
+    /**
+     * Задать паузу на каждом шаге обхода, мс
+     */
+    public CompletableFuture<String> dwell(int ms) {
+        return send("DWELL " + ms);
+    }
+
+    /**
+     * Обойти прямоугольник сетки змейкой; ответ "OK &lt;отсчётов&gt;" приходит
+     * после обхода. Пока идёт обход, скетч не читает команды, поэтому таймаут —
+     * на весь обход
+     */
+    public CompletableFuture<String> sweep(int phiFrom, int phiTo, int thetaFrom, int thetaTo, int step,
+                                           int timeoutMs) {
+        return send("SWEEP " + phiFrom + " " + phiTo + " " + thetaFrom + " " + thetaTo + " " + step, timeoutMs);
+    }
+
+    /**
+     * Включить или остановить непрерывный обход всей сетки
+     */
+    public CompletableFuture<String> auto(boolean enabled) {
+        return send("AUTO " + (enabled ? 1 : 0));
+    }
+
+    /**
+     * Состояние устройства строкой "phi=.. theta=.. proto=.. dwell=.."
+     */
+    public CompletableFuture<String> status() {
+        return send("STATUS");
+    }
+
+    public CompletableFuture<String> ping() {
+        return send("PING");
+    }
+
+    /**
+     * Отправить команды из очереди, пока окно не заполнено
+     */
+    private synchronized void pump() {
+        while (inFlight.size() < window && !queued.isEmpty()) {
+            Pending pending = queued.poll();
+            if (pending.future.isDone()) {
+                continue;
+            }
+            do {
+                nextId = nextId % MAX_ID + 1;
+            } while (inFlight.containsKey(nextId));
+            pending.id = nextId;
+            pending.sentNanos = System.nanoTime();
+            inFlight.put(pending.id, pending);
+            commandsSent.incrementAndGet();
+            if (connection.sendData("#" + pending.id + " " + pending.command + "\n") < 0) {
+                pending.future.completeExceptionally(new IOException("Не удалось отправить команду"));
+            }
+        }
+    }
+
+    private void finished(Pending pending, Throwable error) {
+        synchronized (this) {
+            inFlight.remove(pending.id, pending);
+            queued.remove(pending);
+        }
+        if (error instanceof TimeoutException) {
+            timeouts.incrementAndGet();
+        }
+        pump();
+    }
+
+    private void readLoop() {
+        byte[] buffer = new byte[4096];
+        if (decoder != null) {
+            byte[] pendingInput = decoder.takePendingInput();
+            if (pendingInput != null) {
+                feed(pendingInput, pendingInput.length);
+            }
+        }
+        try {
+            while (running) {
+                int n = connection.receiveData(buffer);
+                if (n < 0) {
+                    System.err.println("Мультиплексор: подключение потеряно");
+                    break;
+                }
+                if (n == 0) {
+                    Thread.sleep(2);
+                    continue;
+                }
+                feed(buffer, n);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        running = false;
+        failAll(new IOException("Подключение закрыто"));
+    }
+
+    /**
+     * Разобрать порцию байтов: ответы на команды, отсчёты и прочие строки
+     */
+    void feed(byte[] data, int length) {
+        FrameParseEvent event = new FrameParseEvent((decoder != null ? WireProtocol.BINARY : WireProtocol.ASCII).name());
+        long samplesBefore = samples.get();
+        long strayBefore = strayLines.get();
+        long corruptBefore = decoder != null ? decoder.getCorruptFrames() : 0;
+        for (int i = 0; i < length; i++) {
+            byte b = data[i];
+            if (decoder == null) {
+                if (b == '\n') {
+                    handleLine(line.toString());
+                    line.setLength(0);
+                } else if (line.length() < MAX_SEGMENT) {
+                    line.append((char) (b & 0xFF));
+                }
+            } else if (b == 0) {
+                endSegment();
+            } else if (segmentLength < MAX_SEGMENT) {
+                segment[segmentLength++] = b;
+            } else {
+                segmentOverflow = true;
+            }
+        }
+        long corrupt = decoder != null ? decoder.getCorruptFrames() - corruptBefore : 0;
+        event.complete(length, samples.get() - samplesBefore, strayLines.get() - strayBefore + corrupt);
+    }
+
+    private void endSegment() {
+        if (segmentOverflow) {
+            // Ни кадр, ни ответ не бывают такими длинными: мусор после сбоя линии
+            strayLines.incrementAndGet();
+        } else if (segmentLength > 0 && segment[0] == '#') {
+            handleReply(new String(segment, 0, segmentLength, StandardCharsets.ISO_8859_1).trim());
+        } else if (segmentLength > 0) {
+            segment[segmentLength] = 0;
+            decoder.decodeFrames(segment, 0, segmentLength + 1, this::sample);
+        }
+        segmentLength = 0;
+        segmentOverflow = false;
+    }
+
+    private void handleLine(String text) {
+        text = text.trim();
+        if (text.isEmpty()) {
+            return;
+        }
+        if (text.charAt(0) == '#') {
+            handleReply(text);
+            return;
+        }
+        double[] sample = Scan.parseLine(text);
+        if (sample != null) {
+            sample(sample[0], sample[1], sample[2]);
+        } else {
+            stray(text);
+        }
+    }
+
+    /**
+     * Ответ "#id OK данные" или "#id ERR причина"
+     */
+    private void handleReply(String text) {
+        int space = text.indexOf(' ');
+        int id;
+        try {
+            id = Integer.parseInt(space > 1 ? text.substring(1, space) : "");
+        } catch (NumberFormatException e) {
+            stray(text);
+            return;
+        }
+        String rest = text.substring(space + 1).trim();
+        int split = rest.indexOf(' ');
+        String status = split < 0 ? rest : rest.substring(0, split);
+        String payload = split < 0 ? "" : rest.substring(split + 1).trim();
+
+        Pending pending = inFlight.get(id);
+        if (pending == null) {
+            // Ответ на команду, которую уже сняли по таймауту
+            lateReplies.incrementAndGet();
+            return;
+        }
+        replies.incrementAndGet();
+        latencyNanos.addAndGet(System.nanoTime() - pending.sentNanos);
+        if (status.equals("OK")) {
+            pending.future.complete(payload);
+        } else {
+            errors.incrementAndGet();
+            pending.future.completeExceptionally(new CommandException(pending.command,
+                    status.equals("ERR") ? payload : rest));
+        }
+    }
+
+    private void sample(double phi, double theta, double r) {
+        samples.incrementAndGet();
+        if (dataListener != null) {
+            dataListener.sample(phi, theta, r);
+        }
+    }
+
+    private void stray(String text) {
+        strayLines.incrementAndGet();
+        Consumer<String> listener = messageListener;
+        if (listener != null) {
+            listener.accept(text);
+        }
+    }
+
+    private void failAll(IOException error) {
+        List<Pending> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(queued);
+            pending.addAll(inFlight.values());
+            queued.clear();
+        }
+        for (Pending p : pending) {
+            p.future.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * Остановить поток чтения и завершить ожидающие команды ошибкой.
+     * Подключение не закрывается
+     */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = reader;
+            reader = null;
+        }
+        if (thread != null) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        failAll(new IOException("Мультиплексор закрыт"));
+    }
+
+    /**
+     * Сводка по командам и потоку данных
+     */
+    public String summary() {
+        long answered = replies.get();
+        return String.format("команд %d, ответов %d (ошибок %d), таймаутов %d, поздних ответов %d, "
+                        + "отсчётов %d, посторонних строк %d, средняя задержка ответа %.1f мс",
+                commandsSent.get(), answered, errors.get(), timeouts.get(), lateReplies.get(),
+                samples.get(), strayLines.get(), answered > 0 ? latencyNanos.get() / 1e6 / answered : 0.0);
+    }
+
+    // Геттеры и сеттеры
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * @param window сколько команд может одновременно ждать ответа
+     */
+    public synchronized void setWindow(int window) {
+        this.window = Math.max(1, window);
+    }
+
+    public int getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public void setTimeoutMs(int timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * @param messageListener получатель строк, которые не являются ни ответом, ни отсчётом
+     */
+    public void setMessageListener(Consumer<String> messageListener) {
+        this.messageListener = messageListener;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight.size();
+    }
+
+    public long getSamples() {
+        return samples.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getStrayLines() {
+        return strayLines.get();
+    }
+}
@@ -0,0 +1,86 @@
+package com.arduino.connection.protocol;
+
+import com.arduino.connection.ArduinoConnection;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Согласование двоичного протокола сразу после подключения.
+ *
+ * Клиент отправляет "PROTO BIN\n" и ждёт строку "OK BIN". Пока ответа нет,
+ * от скетча могут приходить обычные текстовые строки — они пропускаются.
+ * Старый скетч команду не понимает, и по таймауту подключение остаётся
+ * в текстовом протоколе.
+ */
+public final class ProtocolNegotiator {
+
+    public static final int DEFAULT_TIMEOUT_MS = 1500;
+
+    private ProtocolNegotiator() {
+    }
+
+    /**
+     * Переключить устройство на двоичный протокол
+     * @return декодер кадров или null если устройство не поддерживает протокол
+     */
+    public static BinarySampleDecoder negotiateBinary(ArduinoConnection connection, int timeoutMs) {
+        if (connection.sendData(BinaryFrames.REQUEST_BINARY + "\n") < 0) {
+            return null;
+        }
+        byte[] ack = BinaryFrames.ACK_BINARY.getBytes(StandardCharsets.US_ASCII);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        byte[] buffer = new byte[512];
+        long deadline = System.currentTimeMillis() + timeoutMs;
+
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                int n = connection.receiveData(buffer);
+                if (n < 0) {
+                    return null;
+                }
+                if (n == 0) {
+                    Thread.sleep(5);
+                    continue;
+                }
+                received.write(buffer, 0, n);
+                byte[] bytes = received.toByteArray();
+                int ackEnd = findAck(bytes, ack);
+                if (ackEnd >= 0) {
+                    BinarySampleDecoder decoder = new BinarySampleDecoder();
+                    decoder.setPendingInput(Arrays.copyOfRange(bytes, ackEnd, bytes.length));
+                    return decoder;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * Найти строку подтверждения
+     * @return позиция сразу после перевода строки за подтверждением или -1
+     */
+    private static int findAck(byte[] bytes, byte[] ack) {
+        outer:
+        for (int i = 0; i + ack.length < bytes.length; i++) {
+            if (i > 0 && bytes[i - 1] != '\n') {
+                continue;
+            }
+            for (int j = 0; j < ack.length; j++) {
+                if (bytes[i + j] != ack[j]) {
+                    continue outer;
+                }
+            }
+            for (int k = i + ack.length; k < bytes.length; k++) {
+                if (bytes[k] == '\n') {
+                    return k + 1;
+                }
+            }
+            return -1;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,14 @@
+package com.arduino.connection.protocol;
+
+/**
+ * Получатель отсчётов, разобранных из потока устройства
+ */
+public interface SampleListener {
+
+    /**
+     * @param phi угол первого сервопривода, градусы
+     * @param theta угол второго сервопривода, градусы
+     * @param r дальность, см
+     */
+    void sample(double phi, double theta, double r);
+}
@@ -1,6 +1,9 @@
 package com.arduino.connection.serial;
 
 import com.arduino.connection.ArduinoConnection;
+import com.arduino.connection.protocol.BinarySampleDecoder;
+import com.arduino.connection.protocol.ProtocolNegotiator;
+import com.arduino.profiling.ReadBatchEvent;
 import com.fazecast.jSerialComm.*;
 
 import java.io.InputStream;
@@ -19,6 +22,8 @@ public class SerialConnection implements ArduinoConnection {
     private InputStream inputStream;
     private OutputStream outputStream;
     private boolean connected;
+    private WireProtocol preferredProtocol = WireProtocol.ASCII;
+    private BinarySampleDecoder binaryDecoder;
 
     /**
      * Конструктор
@@ -60,23 +65,9 @@ public class SerialConnection implements ArduinoConnection {
     @Override
     public boolean connect() {
         try {
-            // Найти порт
-            SerialPort[] ports = SerialPort.getCommPorts();
-            SerialPort selectedPort = null;
-
-            for (SerialPort port : ports) {
-                if (port.getSystemPortName().equals(portName)) {
-                    selectedPort = port;
-                    break;
-                }
-            }
-
-            if (selectedPort == null) {
-                System.err.println("Порт " + portName + " не найден");
-                return false;
-            }
-
-            serialPort = selectedPort;
+            // Порт открывается по имени, без перечисления всех портов системы:
+            // искать сканер по портам — дело DiscoveryService
+            serialPort = SerialPort.getCommPort(portName);
 
             // Настройка параметров порта
             serialPort.setBaudRate(baudRate);
@@ -101,6 +92,7 @@ public class SerialConnection implements ArduinoConnection {
                 System.out.println("Успешно подключено к " + portName +
                         " на скорости " + baudRate +
                         " (" + serialPort.getDescriptivePortName() + ")");
+                negotiateProtocol();
                 return true;
             } else {
                 System.err.println("Не удалось открыть порт " + portName);
@@ -117,6 +109,7 @@ public class SerialConnection implements ArduinoConnection {
     @Override
     public void disconnect() {
         connected = false;
+        binaryDecoder = null;
         try {
             if (serialPort != null && serialPort.isOpen()) {
                 serialPort.closePort();
@@ -197,17 +190,20 @@ public class SerialConnection implements ArduinoConnection {
             return -1;
         }
 
+        ReadBatchEvent event = new ReadBatchEvent(ConnectionType.SERIAL.name(), 0);
+        int bytesRead = 0;
         try {
             int bytesAvailable = serialPort.bytesAvailable();
             if (bytesAvailable > 0) {
                 int bytesToRead = Math.min(bytesAvailable, buffer.length);
-                return inputStream.read(buffer, 0, bytesToRead);
+                bytesRead = inputStream.read(buffer, 0, bytesToRead);
             }
-            return 0;
         } catch (Exception e) {
             System.err.println("Ошибка получения данных: " + e.getMessage());
-            return -1;
+            bytesRead = -1;
         }
+        event.complete(bytesRead);
+        return bytesRead;
     }
 
     @Override
@@ -216,6 +212,7 @@ public class SerialConnection implements ArduinoConnection {
             return "";
         }
 
+        ReadBatchEvent event = new ReadBatchEvent(ConnectionType.SERIAL.name(), timeoutMs);
         long startTime = System.currentTimeMillis();
         StringBuilder data = new StringBuilder();
         byte[] buffer = new byte[1024];
@@ -263,6 +260,7 @@ public class SerialConnection implements ArduinoConnection {
             System.err.println("Ошибка получения данных: " + e.getMessage());
         }
 
+        event.complete(data.length());
         return data.toString();
     }
 
@@ -277,6 +275,9 @@ public class SerialConnection implements ArduinoConnection {
             while (serialPort.bytesAvailable() > 0) {
                 inputStream.read(buffer);
             }
+            if (binaryDecoder != null) {
+                binaryDecoder.reset();
+            }
         } catch (Exception e) {
             System.err.println("Ошибка очистки буфера: " + e.getMessage());
         }
@@ -287,6 +288,41 @@ public class SerialConnection implements ArduinoConnection {
         return ConnectionType.SERIAL;
     }
 
+    /**
+     * Согласовать протокол после подключения, если предпочтителен двоичный
+     */
+    private void negotiateProtocol() {
+        binaryDecoder = null;
+        if (preferredProtocol == WireProtocol.BINARY) {
+            binaryDecoder = ProtocolNegotiator.negotiateBinary(this, ProtocolNegotiator.DEFAULT_TIMEOUT_MS);
+            if (binaryDecoder == null) {
+                System.err.println("Устройство не поддерживает двоичный протокол, используется текстовый");
+            }
+        }
+    }
+
+    @Override
+    public WireProtocol getWireProtocol() {
+        return binaryDecoder != null ? WireProtocol.BINARY : WireProtocol.ASCII;
+    }
+
+    @Override
+    public BinarySampleDecoder getBinaryDecoder() {
+        return binaryDecoder;
+    }
+
+    public WireProtocol getPreferredProtocol() {
+        return preferredProtocol;
+    }
+
+    /**
+     * Задать протокол, который будет запрошен при подключении
+     */
+    @Override
+    public void setPreferredProtocol(WireProtocol preferredProtocol) {
+        this.preferredProtocol = preferredProtocol;
+    }
+
     // Новые методы для jSerialComm
     public void addDataListener(SerialPortDataListener listener) {
         if (serialPort != null) {
@@ -347,7 +383,9 @@ public class SerialConnection implements ArduinoConnection {
     }
 
     /**
-     * Отправить данные и получить ответ
+     * Отправить данные и получить ответ.
+     * Ответом считается всё, что пришло первым, включая отсчёты; для команд
+     * на фоне потока данных см. CommandMultiplexer
      * @param data данные для отправки
      * @param timeoutMs таймаут ожидания ответа
      * @return ответ от устройства
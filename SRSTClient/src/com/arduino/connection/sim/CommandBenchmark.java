@@ -0,0 +1,154 @@
+package com.arduino.connection.sim;
+
+import com.arduino.connection.ArduinoConnection.WireProtocol;
+import com.arduino.connection.protocol.CommandMultiplexer;
+import com.arduino.connection.protocol.SampleListener;
+import com.arduino.scan.Scan;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Команды управления на фоне потока отсчётов, на имитаторе сканера.
+ *
+ * Каждые 1000/частота мс отправляется пачка из четырёх команд (STATUS, PING,
+ * DWELL 0, STATUS). Сначала — обменом как в {@code SerialConnection.sendAndReceive}:
+ * отправить команду и считать ответом то, что пришло первым. Затем — через
+ * {@link CommandMultiplexer} с окном 1 (по одной команде) и с окном 4 (вся пачка
+ * сразу). Печатается, сколько ответов дошло по назначению, за сколько
+ * выполняется пачка и сколько отсчётов в секунду принято за это время.
+ *
+ * Запуск: CommandBenchmark [baud] [пачек в секунду] [секунд на вариант]
+ */
+public class CommandBenchmark {
+
+    private static final String[] BURST = {"STATUS", "PING", "DWELL 0", "STATUS"};
+
+    public static void main(String[] args) throws Exception {
+        int baud = args.length > 0 ? Integer.parseInt(args[0]) : 115200;
+        int rate = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 2;
+
+        System.out.println("Линия " + baud + " бод, пачек в секунду " + rate);
+        for (WireProtocol protocol : WireProtocol.values()) {
+            sendAndReceive(protocol, baud, rate, seconds);
+            multiplexed(protocol, baud, rate, 1, seconds);
+            multiplexed(protocol, baud, rate, BURST.length, seconds);
+        }
+    }
+
+    private static SimulatedArduinoConnection device(WireProtocol protocol, int baud) {
+        SimulatedArduinoConnection device = new SimulatedArduinoConnection();
+        device.setBaudRate(baud);
+        device.setPreferredProtocol(protocol);
+        device.connect();
+        return device;
+    }
+
+    /**
+     * Один обмен за раз, ответ — всё, что пришло первым
+     */
+    private static void sendAndReceive(WireProtocol protocol, int baud, int rate, double seconds)
+            throws InterruptedException {
+        SimulatedArduinoConnection device = device(protocol, baud);
+        long commands = 0;
+        long matched = 0;
+        long samples = 0;
+        long burstNanos = 0;
+        long bursts = 0;
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        for (long next = start; next < end; next += 1_000_000_000L / rate) {
+            sleepUntil(next);
+            long burstStart = System.nanoTime();
+            for (String command : BURST) {
+                String tag = "#" + (commands % 9999 + 1) + " ";
+                commands++;
+                device.sendData(tag + command + "\n");
+                String reply = device.receiveData(200);
+                if (reply.startsWith(tag)) {
+                    matched++;
+                }
+                for (String line : reply.split("\n")) {
+                    if (Scan.parseLine(line) != null) {
+                        samples++;
+                    }
+                }
+            }
+            burstNanos += System.nanoTime() - burstStart;
+            bursts++;
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        device.disconnect();
+        System.out.printf("%-6s sendAndReceive : ответов по назначению %4d из %4d, пачка %6.1f мс,"
+                        + " отсчётов/с %7.1f (между командами не читаются)%n",
+                protocol, matched, commands, burstNanos / 1e6 / bursts, samples / elapsed);
+    }
+
+    private static void multiplexed(WireProtocol protocol, int baud, int rate, int window, double seconds)
+            throws InterruptedException {
+        SimulatedArduinoConnection device = device(protocol, baud);
+        Counter counter = new Counter(device);
+        CommandMultiplexer mux = new CommandMultiplexer(device, counter);
+        mux.setWindow(window);
+        mux.start();
+
+        AtomicLong ok = new AtomicLong();
+        long commands = 0;
+        long burstNanos = 0;
+        long bursts = 0;
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        for (long next = start; next < end; next += 1_000_000_000L / rate) {
+            sleepUntil(next);
+            long burstStart = System.nanoTime();
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[BURST.length];
+            for (int i = 0; i < BURST.length; i++) {
+                futures[i] = mux.send(BURST[i]).thenRun(ok::incrementAndGet);
+                commands++;
+            }
+            CompletableFuture.allOf(futures).exceptionally(e -> null).join();
+            burstNanos += System.nanoTime() - burstStart;
+            bursts++;
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        mux.close();
+        device.disconnect();
+        System.out.printf("%-6s окно %d         : ответов по назначению %4d из %4d, пачка %6.1f мс,"
+                        + " отсчётов/с %7.1f, испорчено %d%n",
+                protocol, window, ok.get(), commands, burstNanos / 1e6 / bursts,
+                counter.samples.get() / elapsed, counter.garbage.get());
+        System.out.println("       " + mux.summary());
+    }
+
+    private static void sleepUntil(long nanos) throws InterruptedException {
+        long wait = nanos - System.nanoTime();
+        if (wait > 0) {
+            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        }
+    }
+
+    /**
+     * Подсчёт отсчётов и сверка с моделью комнаты
+     */
+    private static class Counter implements SampleListener {
+
+        private final SimulatedArduinoConnection device;
+        private final AtomicLong samples = new AtomicLong();
+        private final AtomicLong garbage = new AtomicLong();
+
+        Counter(SimulatedArduinoConnection device) {
+            this.device = device;
+        }
+
+        @Override
+        public void sample(double phi, double theta, double r) {
+            samples.incrementAndGet();
+            boolean onGrid = phi >= 0 && phi <= 180 && theta >= 0 && theta <= 180
+                    && phi % 5 == 0 && theta % 5 == 0;
+            if (!onGrid || Math.abs(r - device.expectedRange(phi, theta)) > 5) {
+                garbage.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.arduino.connection.sim;
+
+import com.arduino.connection.ArduinoConnection;
+import com.arduino.connection.ArduinoConnection.ConnectionType;
+import com.arduino.connection.discovery.DiscoveryService;
+import com.arduino.connection.discovery.IdentityCache;
+import com.arduino.connection.discovery.ScannerIdentity;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Время поиска сканеров {@link DiscoveryService} на имитированных портах.
+ *
+ * Стенд: шесть последовательных портов (два сканера, сканер со старой
+ * прошивкой, три молчащих устройства) и Bluetooth с двумя устройствами,
+ * перечисление которого длится несколько секунд. При открытии порта
+ * Arduino загружается 1,6 с. Сравнивается поиск без кэша по одному
+ * кандидату и параллельно, повторное подключение по кэшу, запуск новой
+ * программы с тем же файлом кэша для двух сканеров и поиск после
+ * истечения срока записей.
+ *
+ * Запуск: DiscoveryBenchmark [перечисление Bluetooth, мс] [загрузка Arduino, мс]
+ */
+public class DiscoveryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int inquiryMs = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+        int bootMs = args.length > 1 ? Integer.parseInt(args[1]) : 1600;
+        Path file = Files.createTempFile("scanners", ".cache");
+        Files.delete(file);
+        try {
+            // Без кэша, по одному кандидату — как перебор портов вручную
+            DiscoveryService sequential = service(new IdentityCache(), inquiryMs, bootMs);
+            sequential.setParallelism(1);
+            long start = System.currentTimeMillis();
+            List<ScannerIdentity> found = sequential.discover();
+            print("По одному кандидату", start, found);
+            System.out.println("  " + sequential.getLastSummary());
+
+            // Без кэша, параллельно
+            DiscoveryService service = service(new IdentityCache(file), inquiryMs, bootMs);
+            start = System.currentTimeMillis();
+            found = service.discover();
+            print("Параллельно", start, found);
+            System.out.println("  " + service.getLastSummary());
+
+            // Повторное подключение: запись кэша свежая
+            start = System.currentTimeMillis();
+            ArduinoConnection connection = service.connect("A1");
+            System.out.printf("Повторное подключение по кэшу: %s за %d мс, перечислений %s%n",
+                    connection != null ? "есть" : "нет", System.currentTimeMillis() - start, enumerations(service));
+            if (connection != null) {
+                connection.disconnect();
+            }
+
+            // Новая программа: кэш читается из файла, два сканера подключаются сразу
+            DiscoveryService restarted = service(new IdentityCache(file), inquiryMs, bootMs);
+            start = System.currentTimeMillis();
+            Map<String, ArduinoConnection> connections = restarted.connectAll(Arrays.asList("A1", "B2", "C3"));
+            System.out.printf("Запуск с файлом кэша, сканеры A1, B2, C3: подключено %s за %d мс, перечислений %s%n",
+                    connections.keySet(), System.currentTimeMillis() - start, enumerations(restarted));
+            for (ArduinoConnection opened : connections.values()) {
+                opened.disconnect();
+            }
+
+            // Срок записей истёк: сканер ищется заново
+            long now = System.currentTimeMillis();
+            restarted.getCache().setClock(() -> now + IdentityCache.DEFAULT_TTL_MS + 1);
+            start = System.currentTimeMillis();
+            ScannerIdentity identity = restarted.find("A1");
+            System.out.printf("После истечения срока: %s за %d мс%n  %s%n",
+                    identity, System.currentTimeMillis() - start, restarted.getLastSummary());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static DiscoveryService service(IdentityCache cache, int inquiryMs, int bootMs) {
+        SimulatedPortProvider serial = new SimulatedPortProvider(ConnectionType.SERIAL)
+                .addScanner("SIM0", "A1")
+                .addDevice("SIM1", SimulatedPortProvider.Device.SILENT)
+                .addDevice("SIM2", SimulatedPortProvider.Device.LEGACY_SCANNER)
+                .addDevice("SIM3", SimulatedPortProvider.Device.SILENT)
+                .addScanner("SIM4", "B2")
+                .addDevice("SIM5", SimulatedPortProvider.Device.SILENT);
+        serial.setBootDelayMs(bootMs);
+        SimulatedPortProvider bluetooth = new SimulatedPortProvider(ConnectionType.BLUETOOTH)
+                .addScanner("00:11:22:33:44:55", "C3")
+                .addDevice("66:77:88:99:AA:BB", SimulatedPortProvider.Device.SILENT);
+        bluetooth.setEnumerateDelayMs(inquiryMs);
+        bluetooth.setProbeTimeoutMs(1500);
+        return new DiscoveryService(cache, serial, bluetooth);
+    }
+
+    private static String enumerations(DiscoveryService service) {
+        StringBuilder text = new StringBuilder();
+        service.getProviders().forEach(provider -> text.append(text.length() > 0 ? "/" : "")
+                .append(((SimulatedPortProvider) provider).getEnumerations()));
+        return text.toString();
+    }
+
+    private static void print(String name, long start, List<ScannerIdentity> found) {
+        System.out.printf("%s: %d мс, найдено %d%n", name, System.currentTimeMillis() - start, found.size());
+        for (ScannerIdentity identity : found) {
+            System.out.println("  " + identity);
+        }
+    }
+}
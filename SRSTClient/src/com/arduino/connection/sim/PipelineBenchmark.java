@@ -0,0 +1,188 @@
+package com.arduino.connection.sim;
+
+import com.arduino.pipeline.Pipeline;
+import com.arduino.pipeline.Stage;
+import com.arduino.pipeline.WaitStrategy;
+import com.arduino.pipeline.stages.ScannerPipeline;
+import com.arduino.scan.Scan;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Чтение порта в одном потоке с выводом и записью (как было в Main)
+ * против конвейера {@link ScannerPipeline}, на имитаторе сканера.
+ *
+ * Консоль нарочно медленная: каждая строка стоит заданное время, как
+ * у терминала, который не успевает прокручивать. В одном потоке это
+ * время прибавляется к паузам между чтениями порта, и отсчётов принимается
+ * меньше, чем отдаёт устройство. В конвейере консоль теряет строки
+ * (политика DROP_NEWEST) и чтение её не ждёт; писатели CSV работают без
+ * потерь (BLOCK) и не задерживают чтение, пока диск успевает за потоком, —
+ * на медленном диске время ожидания места у читателя вырастет.
+ * Печатается самая долгая пауза между чтениями, время ожидания места
+ * у читателя и число строк в data.csv (должно совпасть с числом отсчётов).
+ *
+ * Запуск: PipelineBenchmark [baud] [секунд на вариант] [мкс на строку консоли] [стратегии через запятую]
+ */
+public class PipelineBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int baud = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 3;
+        long lineNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 2 ? Long.parseLong(args[2]) : 500);
+        String strategies = args.length > 3 ? args[3] : "sleeping,yielding,blocking";
+
+        System.out.printf("Линия %d бод, консоль %.0f строк/с, ядер %d%n",
+                baud, 1e9 / lineNanos, Runtime.getRuntime().availableProcessors());
+        Path dir = Files.createTempDirectory("srst-pipeline");
+        singleThread(baud, seconds, lineNanos, dir.resolve("single.csv"));
+        for (String name : strategies.split(",")) {
+            pipeline(baud, seconds, lineNanos, dir.resolve(name + ".csv"), () -> WaitStrategy.named(name), name);
+        }
+    }
+
+    /**
+     * Цикл прежнего Main: прочитать, напечатать, записать и сбросить каждую строку
+     */
+    private static void singleThread(int baud, double seconds, long lineNanos, Path csv) throws IOException {
+        TimedDevice device = device(baud);
+        PrintStream console = new PrintStream(new SlowConsole(lineNanos), false, StandardCharsets.UTF_8);
+        StringBuilder pending = new StringBuilder();
+        byte[] buffer = new byte[4096];
+        long samples = 0;
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        try (BufferedWriter file = Files.newBufferedWriter(csv)) {
+            file.write("phi; theta; r\n");
+            while (System.nanoTime() < end) {
+                int n = device.receiveData(buffer);
+                if (n <= 0) {
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(500));
+                    continue;
+                }
+                pending.append(new String(buffer, 0, n, StandardCharsets.ISO_8859_1));
+                int newline;
+                while ((newline = pending.indexOf("\n")) >= 0) {
+                    String line = pending.substring(0, newline).trim();
+                    pending.delete(0, newline + 1);
+                    if (Scan.parseLine(line) != null) {
+                        console.println(line);
+                        file.write(line + "\n");
+                        file.flush();
+                        samples++;
+                    }
+                }
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        device.disconnect();
+        System.out.printf("%-10s отсчётов/с %8.1f, в data.csv %d, самая долгая пауза между чтениями %.1f мс%n",
+                "один поток", samples / elapsed, Files.lines(csv).count() - 1, device.maxGapNanos / 1e6);
+    }
+
+    private static void pipeline(int baud, double seconds, long lineNanos, Path csv,
+                                 Supplier<WaitStrategy> waitStrategy, String name) throws Exception {
+        TimedDevice device = device(baud);
+        PrintStream console = new PrintStream(new SlowConsole(lineNanos), false, StandardCharsets.UTF_8);
+        Pipeline pipeline = new ScannerPipeline(device)
+                .setCsvPath(csv)
+                .setConsole(console)
+                .setWaitStrategy(waitStrategy)
+                .build();
+        long start = System.nanoTime();
+        pipeline.start();
+        Thread.sleep((long) (seconds * 1000));
+        device.disconnect();
+        pipeline.awaitSources(1000);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        pipeline.close();
+
+        Stage<?, ?> reader = stage(pipeline, "reader");
+        Stage<?, ?> decoder = stage(pipeline, "decoder");
+        Stage<?, ?> console1 = stage(pipeline, "console");
+        long written = Files.lines(csv).count() - 1;
+        System.out.printf("%-10s отсчётов/с %8.1f, в data.csv %d из %d, самая долгая пауза между чтениями %.1f мс,"
+                        + " читатель ждал места %.1f мс, консоль напечатала %d, выбросила %d%n",
+                name, decoder.getPublished() / elapsed, written, decoder.getPublished(), device.maxGapNanos / 1e6,
+                reader.getBlockedNanos() / 1e6, console1.getProcessed(), console1.getDropped());
+        if (written != decoder.getPublished()) {
+            System.err.println("  в data.csv потеряны отсчёты!");
+        }
+        System.out.println("  " + pipeline.report().replace("\n", "\n  "));
+    }
+
+    private static Stage<?, ?> stage(Pipeline pipeline, String name) {
+        for (Stage<?, ?> stage : pipeline.getStages()) {
+            if (stage.getName().equals(name)) {
+                return stage;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    private static TimedDevice device(int baud) {
+        TimedDevice device = new TimedDevice();
+        device.setBaudRate(baud);
+        device.connect();
+        device.clearInputBuffer();
+        return device;
+    }
+
+    /**
+     * Имитатор, который запоминает самую долгую паузу между чтениями
+     */
+    private static class TimedDevice extends SimulatedArduinoConnection {
+        private long lastRead;
+        private long maxGapNanos;
+
+        @Override
+        public synchronized int receiveData(byte[] buffer) {
+            long now = System.nanoTime();
+            if (lastRead != 0) {
+                maxGapNanos = Math.max(maxGapNanos, now - lastRead);
+            }
+            lastRead = now;
+            return super.receiveData(buffer);
+        }
+    }
+
+    /**
+     * Консоль, которая тратит lineNanos на каждую строку
+     */
+    private static class SlowConsole extends OutputStream {
+        private final long lineNanos;
+
+        SlowConsole(long lineNanos) {
+            this.lineNanos = lineNanos;
+        }
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                LockSupport.parkNanos(lineNanos);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            int lines = 0;
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    lines++;
+                }
+            }
+            if (lines > 0) {
+                LockSupport.parkNanos(lines * lineNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.arduino.connection.sim;
+
+import com.arduino.connection.ArduinoConnection.WireProtocol;
+import com.arduino.connection.protocol.BinarySampleDecoder;
+import com.arduino.scan.Scan;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Сравнение текстового и двоичного протокола на имитаторе сканера.
+ *
+ * Для каждого протокола считается скорость приёма отсчётов при одной и той же
+ * скорости линии и число отсчётов, которые прошли разбор, но не совпадают
+ * с моделью комнаты (то есть испорченные данные, попавшие бы в скан).
+ *
+ * Запуск: ProtocolBenchmark [baud] [вероятность порчи байта] [секунд на протокол]
+ */
+public class ProtocolBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int baud = args.length > 0 ? Integer.parseInt(args[0]) : 115200;
+        double corruption = args.length > 1 ? Double.parseDouble(args[1]) : 1e-4;
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 2;
+
+        System.out.println("Линия " + baud + " бод, порча байта " + corruption);
+        run(WireProtocol.ASCII, baud, corruption, seconds);
+        run(WireProtocol.BINARY, baud, corruption, seconds);
+    }
+
+    private static void run(WireProtocol protocol, int baud, double corruption, double seconds)
+            throws InterruptedException {
+        SimulatedArduinoConnection device = new SimulatedArduinoConnection();
+        device.setBaudRate(baud);
+        device.setPreferredProtocol(protocol);
+        device.connect();
+        // Согласование проходит без порчи, иначе сравнение зависит от удачи
+        device.setCorruptionRate(corruption);
+        device.clearInputBuffer();
+
+        Counter counter = new Counter(device);
+        BinarySampleDecoder decoder = device.getBinaryDecoder();
+        if (protocol == WireProtocol.BINARY && decoder == null) {
+            System.err.println("Устройство не перешло на двоичный протокол");
+            return;
+        }
+
+        StringBuilder pending = new StringBuilder();
+        byte[] buffer = new byte[4096];
+        long bytes = 0;
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        while (System.nanoTime() < end) {
+            if (decoder != null) {
+                decoder.read(device, counter);
+            } else {
+                int n = device.receiveData(buffer);
+                bytes += n;
+                pending.append(new String(buffer, 0, n, StandardCharsets.ISO_8859_1));
+                int newline;
+                while ((newline = pending.indexOf("\n")) >= 0) {
+                    String line = pending.substring(0, newline);
+                    pending.delete(0, newline + 1);
+                    double[] sample = Scan.parseLine(line);
+                    if (sample != null) {
+                        counter.sample(sample[0], sample[1], sample[2]);
+                    } else if (!line.isBlank()) {
+                        counter.rejected++;
+                    }
+                }
+            }
+            Thread.sleep(2);
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        device.disconnect();
+
+        System.out.printf("%-6s отсчётов/с: %8.1f  принято: %7d  испорчено в данных: %5d  отброшено: %5d%n",
+                protocol, counter.samples / elapsed, counter.samples, counter.garbage,
+                decoder != null ? decoder.getCorruptFrames() : counter.rejected);
+        if (decoder != null) {
+            System.out.printf("       CRC: %d  неверная длина: %d  потеряно по номерам: %d%n",
+                    decoder.getCrcErrors(), decoder.getMalformedFrames(), decoder.getLostFrames());
+        }
+    }
+
+    /**
+     * Подсчёт отсчётов и сверка с моделью комнаты
+     */
+    private static class Counter implements com.arduino.connection.protocol.SampleListener {
+
+        private final SimulatedArduinoConnection device;
+        private long samples;
+        private long garbage;
+        private long rejected;
+
+        Counter(SimulatedArduinoConnection device) {
+            this.device = device;
+        }
+
+        @Override
+        public void sample(double phi, double theta, double r) {
+            samples++;
+            boolean onGrid = phi >= 0 && phi <= 180 && theta >= 0 && theta <= 180
+                    && phi % 5 == 0 && theta % 5 == 0;
+            if (!onGrid || Math.abs(r - device.expectedRange(phi, theta)) > 5) {
+                garbage++;
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.arduino.connection.sim;
+
+import com.arduino.connection.ArduinoConnection.WireProtocol;
+import com.arduino.connection.protocol.CommandMultiplexer;
+import com.arduino.scan.ScanGrid;
+import com.arduino.scan.planning.CoverageAnalyzer;
+import com.arduino.scan.planning.CoverageReport;
+import com.arduino.scan.planning.RescanSession;
+import com.arduino.scan.planning.SweepPlanner;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Досъёмка по плану против повторного полного обхода, на имитаторе сканера.
+ *
+ * В имитаторе включены пропуски эха и шум при косом падении луча, поэтому
+ * после первого прохода у углов комнаты остаются дыры и шумные ячейки.
+ * Оба варианта начинают с одинакового первого прохода (одно и то же
+ * начальное значение генератора). Затем в одном варианте делаются ещё
+ * полные проходы, пока их время не превысит время плана, а в другом —
+ * {@link RescanSession}. Печатается покрытие и время сервоприводов по
+ * модели {@link SweepPlanner} (пауза 50 мс, как в скетче).
+ *
+ * Запуск: RescanBenchmark [вероятность пропуска при косом луче] [шум, см] [binary]
+ */
+public class RescanBenchmark {
+
+    /** Пауза имитатора на позицию, мс: быстрее скетча, время считается по модели */
+    private static final int SIM_DWELL_MS = 2;
+
+    public static void main(String[] args) throws Exception {
+        double dropout = args.length > 0 ? Double.parseDouble(args[0]) : 0.7;
+        double noise = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+        WireProtocol protocol = args.length > 2 && args[2].equalsIgnoreCase("binary")
+                ? WireProtocol.BINARY : WireProtocol.ASCII;
+        SweepPlanner model = new SweepPlanner();
+        CoverageAnalyzer analyzer = new CoverageAnalyzer();
+
+        // Вариант 1: досъёмка по плану
+        SimulatedArduinoConnection device = device(dropout, noise, protocol);
+        ScanGrid grid = ScanGrid.defaultGrid();
+        firstPass(device, grid);
+        long firstSteps = device.getSteps();
+        RescanSession session = new RescanSession(device, grid);
+        session.setResumeAuto(false);
+        CoverageReport planned = session.run();
+        long plannedSteps = device.getSteps() - firstSteps;
+        device.disconnect();
+        System.out.println("Досъёмка по плану: " + session.summary());
+        System.out.println("  позиций по счётчику имитатора: " + plannedSteps);
+
+        // Вариант 2: полные проходы
+        device = device(dropout, noise, protocol);
+        ScanGrid repeated = ScanGrid.defaultGrid();
+        firstPass(device, repeated);
+        int passes = 0;
+        long millis = 0;
+        CoverageReport full;
+        do {
+            firstPass(device, repeated);
+            passes++;
+            millis += model.fullSweepMillis(repeated);
+            full = analyzer.analyse(repeated, null);
+        } while (millis < session.getEstimatedMillis() && passes < 10);
+        device.disconnect();
+        System.out.printf("Полных проходов: %d, время сервоприводов около %.1f с%n  после: %s%n",
+                passes, millis / 1000.0, full.summary());
+        System.out.printf("Итог: по плану дыр %d, без замечаний %.1f%% ячеек за %.1f с;"
+                        + " полными проходами дыр %d, без замечаний %.1f%% за %.1f с%n",
+                planned.count(CoverageReport.Reason.HOLE), planned.quality() * 100,
+                session.getEstimatedMillis() / 1000.0,
+                full.count(CoverageReport.Reason.HOLE), full.quality() * 100, millis / 1000.0);
+    }
+
+    private static SimulatedArduinoConnection device(double dropout, double noise, WireProtocol protocol) {
+        SimulatedArduinoConnection device = new SimulatedArduinoConnection(7);
+        device.setObliqueDropout(dropout);
+        device.setNoise(noise);
+        device.setDwellMs(SIM_DWELL_MS);
+        device.setPreferredProtocol(protocol);
+        device.connect();
+        return device;
+    }
+
+    /**
+     * Полный проход сетки командой SWEEP с остановленным непрерывным обходом
+     */
+    private static void firstPass(SimulatedArduinoConnection device, ScanGrid grid) throws Exception {
+        CommandMultiplexer mux = new CommandMultiplexer(device, grid::add);
+        mux.start();
+        try {
+            mux.auto(false).get(5, TimeUnit.SECONDS);
+            mux.sweep(0, 180, 0, 180, 5, 60000).get(65, TimeUnit.SECONDS);
+        } finally {
+            mux.close();
+        }
+    }
+}
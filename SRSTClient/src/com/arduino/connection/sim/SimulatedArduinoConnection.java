@@ -0,0 +1,644 @@
+package com.arduino.connection.sim;
+
+import com.arduino.connection.ArduinoConnection;
+import com.arduino.connection.protocol.BinaryFrames;
+import com.arduino.connection.protocol.BinarySampleDecoder;
+import com.arduino.connection.protocol.ProtocolNegotiator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Имитация сканера для проверки клиента без железа.
+ *
+ * Сканер стоит в центре прямоугольной комнаты и обходит сетку так же,
+ * как скетч: phi и theta от 0 до 180 с шагом 5 градусов. Скорость выдачи
+ * ограничена пропускной способностью линии (baud / 10 байт в секунду),
+ * поэтому разница между текстовым и двоичным протоколом видна напрямую.
+ * Можно включить порчу байтов и пропуски измерений.
+ *
+ * Понимает и команды с номером, как скетч: "#id PING", "#id IDENT", "#id STATUS",
+ * "#id MOVE phi theta", "#id DWELL мс", "#id AUTO 0|1" и
+ * "#id SWEEP phi0 phi1 theta0 theta1 шаг" — ответ "#id OK ..." или "#id ERR ...".
+ * Пауза DWELL ограничивает число шагов в секунду; пока её не задали,
+ * скорость ограничена только линией. Ответ на SWEEP приходит после обхода
+ * прямоугольника, а на время обхода непрерывный обход приостанавливается.
+ *
+ * С {@link #setObliqueDropout} эхо пропадает и шумит при косом падении
+ * луча на стену, как у HC-SR04: дыры скапливаются у углов комнаты.
+ *
+ * С {@link #setBootDelayMs} устройство после подключения какое-то время
+ * молчит и теряет команды, как Arduino, которую открытие порта
+ * перезагружает в загрузчик.
+ */
+public class SimulatedArduinoConnection implements ArduinoConnection {
+
+    /** Предел дальности HC-SR04, см: дальше скетч отсчёт не отправляет */
+    public static final double MAX_RANGE = 400.0;
+    /** Буфер команды скетча: строка длиннее отбрасывается с ответом "ERR too long" */
+    public static final int MAX_COMMAND = 32;
+    /** Версия прошивки в ответе на IDENT, как в скетче */
+    public static final int FIRMWARE = 1;
+
+    private double roomX = 500;
+    private double roomY = 400;
+    private double roomZ = 260;
+    private double noise = 0.5;
+    private double dropoutRate = 0;
+    private double corruptionRate = 0;
+    private int baudRate = 115200;
+    private int step = 5;
+    private int dwellMs;
+    private double obliqueDropout;
+    private WireProtocol preferredProtocol = WireProtocol.ASCII;
+    private String scannerId;
+    private int bootDelayMs;
+
+    private final Random random;
+    private boolean connected;
+    private boolean binaryOutput;
+    private BinarySampleDecoder binaryDecoder;
+    private int pos;
+    private int pos2;
+    private int seq;
+    private long passes;
+    private long lastFillNanos;
+    private long bootedNanos;
+    private double byteBudget;
+    private double stepBudget;
+    private long steps;
+    private boolean autoSweep = true;
+    private int[] sweep;
+    private String sweepId;
+    private int sweepIndex;
+    private int sweepSent;
+
+    private byte[] output = new byte[8192];
+    private int outputStart;
+    private int outputEnd;
+    private final StringBuilder commandLine = new StringBuilder();
+    private boolean commandOverflow;
+
+    public SimulatedArduinoConnection() {
+        this(1);
+    }
+
+    /**
+     * Конструктор
+     * @param seed начальное значение генератора шума
+     */
+    public SimulatedArduinoConnection(long seed) {
+        this.random = new Random(seed);
+        this.scannerId = Long.toHexString(seed).toUpperCase();
+    }
+
+    @Override
+    public synchronized boolean connect() {
+        connected = true;
+        binaryOutput = false;
+        outputStart = outputEnd = 0;
+        lastFillNanos = System.nanoTime();
+        bootedNanos = lastFillNanos + bootDelayMs * 1_000_000L;
+        byteBudget = 0;
+        stepBudget = 0;
+        autoSweep = true;
+        sweep = null;
+        binaryDecoder = null;
+        if (preferredProtocol == WireProtocol.BINARY) {
+            binaryDecoder = ProtocolNegotiator.negotiateBinary(this, ProtocolNegotiator.DEFAULT_TIMEOUT_MS);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        connected = false;
+        binaryDecoder = null;
+    }
+
+    @Override
+    public synchronized boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public synchronized int sendData(String data) {
+        return sendData(data.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public synchronized int sendData(byte[] data) {
+        if (!connected) {
+            return -1;
+        }
+        if (System.nanoTime() < bootedNanos) {
+            // Загрузчик ещё работает: байты до скетча не доходят
+            return data.length;
+        }
+        for (byte b : data) {
+            if (b == '\n') {
+                if (commandOverflow) {
+                    rejectLongCommand(commandLine.toString().trim());
+                    commandOverflow = false;
+                } else {
+                    handleCommand(commandLine.toString().trim());
+                }
+                commandLine.setLength(0);
+            } else if (b == '\r') {
+                continue;
+            } else if (commandLine.length() < MAX_COMMAND) {
+                commandLine.append((char) b);
+            } else {
+                commandOverflow = true;
+            }
+        }
+        return data.length;
+    }
+
+    /**
+     * Как скетч: начало длинной строки ещё в буфере, так что номер команды известен
+     */
+    private void rejectLongCommand(String start) {
+        int space = start.indexOf(' ');
+        if (start.startsWith("#") && space > 1) {
+            reply(start.substring(0, space) + " ERR too long\n");
+        } else {
+            reply("ERR too long\n");
+        }
+    }
+
+    /**
+     * Выполнить команду, полученную устройством
+     */
+    protected void handleCommand(String command) {
+        if (command.startsWith("#")) {
+            int space = command.indexOf(' ');
+            if (space > 1) {
+                String id = command.substring(0, space);
+                String body = command.substring(space + 1).trim();
+                // Ответ на SWEEP уходит после обхода, остальные — сразу
+                String result = body.startsWith("SWEEP") ? startSweep(id, body) : execute(body);
+                if (result != null) {
+                    reply(id + " " + result + "\n");
+                }
+            }
+        } else if (command.equals(BinaryFrames.REQUEST_BINARY)) {
+            reply(BinaryFrames.ACK_BINARY + "\n");
+            binaryOutput = true;
+        } else if (command.equals(BinaryFrames.REQUEST_ASCII)) {
+            binaryOutput = false;
+            reply("OK ASCII\n");
+        }
+    }
+
+    /**
+     * Выполнить команду с номером
+     * @return ответ без номера: "OK [данные]" или "ERR причина"
+     */
+    protected String execute(String command) {
+        String[] parts = command.split("\\s+");
+        try {
+            switch (parts[0]) {
+                case "PING":
+                    return "OK PONG";
+                case "IDENT":
+                    return "OK SRST id=" + scannerId + " fw=" + FIRMWARE;
+                case "STATUS":
+                    return "OK phi=" + pos + " theta=" + pos2 + " proto=" + (binaryOutput ? "BIN" : "ASCII")
+                            + " dwell=" + dwellMs + " auto=" + (autoSweep ? 1 : 0) + " passes=" + passes;
+                case "MOVE": {
+                    int phi = Integer.parseInt(parts[1]);
+                    int theta = Integer.parseInt(parts[2]);
+                    if (phi < 0 || phi > 180 || theta < 0 || theta > 180) {
+                        return "ERR range";
+                    }
+                    pos = phi;
+                    pos2 = theta;
+                    return "OK";
+                }
+                case "DWELL": {
+                    int ms = Integer.parseInt(parts[1]);
+                    if (ms < 0 || ms > 5000) {
+                        return "ERR range";
+                    }
+                    dwellMs = ms;
+                    return "OK";
+                }
+                case "AUTO":
+                    if (!parts[1].equals("0") && !parts[1].equals("1")) {
+                        return "ERR syntax";
+                    }
+                    autoSweep = parts[1].equals("1");
+                    return "OK";
+                default:
+                    return "ERR unknown";
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return "ERR syntax";
+        }
+    }
+
+    /**
+     * Начать обход прямоугольника "SWEEP phi0 phi1 theta0 theta1 шаг"
+     * @return ошибка для немедленного ответа или null, если обход начат
+     */
+    private String startSweep(String id, String command) {
+        String[] parts = command.split("\\s+");
+        int[] box = new int[5];
+        try {
+            if (parts.length != 6) {
+                return "ERR syntax";
+            }
+            for (int i = 0; i < 5; i++) {
+                box[i] = Integer.parseInt(parts[i + 1]);
+            }
+        } catch (NumberFormatException e) {
+            return "ERR syntax";
+        }
+        for (int i = 0; i < 4; i++) {
+            if (box[i] < 0 || box[i] > 180) {
+                return "ERR range";
+            }
+        }
+        if (box[0] > box[1] || box[2] > box[3] || box[4] < 1 || box[4] > 90) {
+            return "ERR range";
+        }
+        if (sweep != null) {
+            return "ERR busy";
+        }
+        sweep = box;
+        sweepId = id;
+        sweepIndex = 0;
+        sweepSent = 0;
+        moveToSweep();
+        if (dwellMs > 0) {
+            // Скетч ждёт 300 мс, пока сервоприводы дойдут до начала обхода
+            stepBudget -= 300.0 / dwellMs;
+        }
+        return null;
+    }
+
+    /**
+     * Позиция текущего шага обхода: phi идёт по строкам, theta — змейкой
+     */
+    private void moveToSweep() {
+        int thetaSteps = (sweep[3] - sweep[2]) / sweep[4] + 1;
+        int row = sweepIndex / thetaSteps;
+        int column = sweepIndex % thetaSteps;
+        if (row % 2 == 1) {
+            column = thetaSteps - 1 - column;
+        }
+        pos = sweep[0] + row * sweep[4];
+        pos2 = sweep[2] + column * sweep[4];
+    }
+
+    private void advanceSweep() {
+        int thetaSteps = (sweep[3] - sweep[2]) / sweep[4] + 1;
+        int rows = (sweep[1] - sweep[0]) / sweep[4] + 1;
+        sweepIndex++;
+        if (sweepIndex >= rows * thetaSteps) {
+            reply(sweepId + " OK " + sweepSent + "\n");
+            sweep = null;
+            return;
+        }
+        moveToSweep();
+    }
+
+    /**
+     * Поставить ответ устройства в выходной поток вне очереди отсчётов.
+     * В двоичном протоколе ответ обрамляется байтами 0x00, как в скетче.
+     * Ответ занимает линию наравне с отсчётами
+     */
+    protected void reply(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        byteBudget -= bytes.length;
+        if (binaryOutput) {
+            append(new byte[1], 0, 1);
+        }
+        append(bytes, 0, bytes.length);
+        if (binaryOutput) {
+            append(new byte[1], 0, 1);
+        }
+    }
+
+    @Override
+    public synchronized String receiveData() {
+        byte[] buffer = new byte[1024];
+        int n = receiveData(buffer);
+        return n > 0 ? new String(buffer, 0, n, StandardCharsets.ISO_8859_1) : "";
+    }
+
+    @Override
+    public synchronized int receiveData(byte[] buffer) {
+        if (!connected) {
+            return -1;
+        }
+        fill();
+        int n = Math.min(buffer.length, outputEnd - outputStart);
+        for (int i = 0; i < n; i++) {
+            byte b = output[outputStart + i];
+            if (corruptionRate > 0 && random.nextDouble() < corruptionRate) {
+                b ^= (byte) (1 << random.nextInt(8));
+            }
+            buffer[i] = b;
+        }
+        outputStart += n;
+        return n;
+    }
+
+    @Override
+    public String receiveData(int timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        StringBuilder data = new StringBuilder();
+        byte[] buffer = new byte[256];
+        while (System.currentTimeMillis() < deadline) {
+            int n = receiveData(buffer);
+            if (n < 0) {
+                break;
+            }
+            data.append(new String(buffer, 0, n, StandardCharsets.ISO_8859_1));
+            if (data.length() > 0 && data.charAt(data.length() - 1) == '\n') {
+                break;
+            }
+            if (n == 0) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return data.toString();
+    }
+
+    @Override
+    public synchronized void clearInputBuffer() {
+        fill();
+        outputStart = outputEnd = 0;
+        if (binaryDecoder != null) {
+            binaryDecoder.reset();
+        }
+    }
+
+    @Override
+    public ConnectionType getConnectionType() {
+        return ConnectionType.SERIAL;
+    }
+
+    @Override
+    public synchronized WireProtocol getWireProtocol() {
+        return binaryDecoder != null ? WireProtocol.BINARY : WireProtocol.ASCII;
+    }
+
+    @Override
+    public synchronized BinarySampleDecoder getBinaryDecoder() {
+        return binaryDecoder;
+    }
+
+    /**
+     * Выдать в линию столько отсчётов, сколько позволяет её скорость с прошлого вызова
+     */
+    private void fill() {
+        long now = System.nanoTime();
+        if (now < bootedNanos) {
+            lastFillNanos = now;
+            return;
+        }
+        byteBudget = Math.min(byteBudget + (now - lastFillNanos) / 1e9 * baudRate / 10.0, baudRate / 10.0);
+        if (dwellMs > 0) {
+            stepBudget = Math.min(stepBudget + (now - lastFillNanos) / 1e6 / dwellMs, 1000.0 / dwellMs);
+        }
+        lastFillNanos = now;
+        byte[] frame = new byte[32];
+        while (byteBudget > 0 && outputEnd - outputStart < 64 * 1024 && (dwellMs == 0 || stepBudget >= 1)
+                && (autoSweep || sweep != null)) {
+            double r = measure(pos, pos2);
+            if (r >= 0) {
+                int length;
+                if (binaryOutput) {
+                    length = BinaryFrames.encodeSample(seq++, pos, pos2, r, frame, 0);
+                } else {
+                    // Serial.print(pos) ... Serial.println(dist[0]) после round()
+                    byte[] line = String.format(Locale.ROOT, "%d;%d;%.2f\r\n", pos, pos2, (double) Math.round(r))
+                            .getBytes(StandardCharsets.US_ASCII);
+                    length = line.length;
+                    System.arraycopy(line, 0, frame, 0, length);
+                }
+                append(frame, 0, length);
+                byteBudget -= length;
+                if (sweep != null) {
+                    sweepSent++;
+                }
+            }
+            if (dwellMs > 0) {
+                stepBudget--;
+            }
+            steps++;
+            if (sweep != null) {
+                advanceSweep();
+            } else {
+                advance();
+            }
+        }
+    }
+
+    /**
+     * Следующая позиция сервоприводов, как во вложенных циклах скетча
+     */
+    protected void advance() {
+        pos2 += step;
+        if (pos2 > 180) {
+            pos2 = 0;
+            pos += step;
+            if (pos > 180) {
+                pos = 0;
+                passes++;
+            }
+        }
+    }
+
+    /**
+     * Измерение дальности в направлении (phi, theta)
+     * @return дальность в см или -1 если эхо не получено
+     */
+    protected double measure(int phi, int theta) {
+        if (dropoutRate > 0 && random.nextDouble() < dropoutRate) {
+            return -1;
+        }
+        double sigma = noise;
+        if (obliqueDropout > 0) {
+            // Эхо от стены под углом больше 40° уходит мимо датчика
+            double cos = incidenceCos(phi, theta);
+            double angle = Math.toDegrees(Math.acos(Math.min(1, cos)));
+            if (random.nextDouble() < obliqueDropout * Math.min(1, Math.max(0, (angle - 40) / 50))) {
+                return -1;
+            }
+            sigma = noise / Math.max(0.25, cos);
+        }
+        double r = expectedRange(phi, theta) + random.nextGaussian() * sigma;
+        return r > MAX_RANGE ? -1 : Math.max(2, r);
+    }
+
+    /**
+     * Косинус угла между лучом и нормалью стены, в которую он попадает
+     */
+    public double incidenceCos(double phi, double theta) {
+        double t = Math.toRadians(theta);
+        double p = Math.toRadians(phi);
+        double[] direction = {
+                Math.abs(Math.sin(t) * Math.cos(p)), Math.abs(Math.sin(t) * Math.sin(p)), Math.abs(Math.cos(t))};
+        double[] half = {roomX / 2, roomY / 2, roomZ / 2};
+        double r = Double.MAX_VALUE;
+        double cos = 1;
+        for (int axis = 0; axis < 3; axis++) {
+            if (direction[axis] > 1e-9 && half[axis] / direction[axis] < r) {
+                r = half[axis] / direction[axis];
+                cos = direction[axis];
+            }
+        }
+        return cos;
+    }
+
+    /**
+     * Расстояние до стены комнаты без шума
+     */
+    public double expectedRange(double phi, double theta) {
+        double t = Math.toRadians(theta);
+        double p = Math.toRadians(phi);
+        double dx = Math.abs(Math.sin(t) * Math.cos(p));
+        double dy = Math.abs(Math.sin(t) * Math.sin(p));
+        double dz = Math.abs(Math.cos(t));
+        double r = Double.MAX_VALUE;
+        if (dx > 1e-9) {
+            r = Math.min(r, roomX / 2 / dx);
+        }
+        if (dy > 1e-9) {
+            r = Math.min(r, roomY / 2 / dy);
+        }
+        if (dz > 1e-9) {
+            r = Math.min(r, roomZ / 2 / dz);
+        }
+        return r;
+    }
+
+    private void append(byte[] data, int offset, int length) {
+        if (outputEnd + length > output.length) {
+            int used = outputEnd - outputStart;
+            if (used + length > output.length) {
+                byte[] grown = new byte[Math.max(output.length * 2, used + length)];
+                System.arraycopy(output, outputStart, grown, 0, used);
+                output = grown;
+            } else {
+                System.arraycopy(output, outputStart, output, 0, used);
+            }
+            outputStart = 0;
+            outputEnd = used;
+        }
+        System.arraycopy(data, offset, output, outputEnd, length);
+        outputEnd += length;
+    }
+
+    // Геттеры и сеттеры
+    /**
+     * Размеры комнаты, см
+     */
+    public void setRoomSize(double x, double y, double z) {
+        this.roomX = x;
+        this.roomY = y;
+        this.roomZ = z;
+    }
+
+    public void setNoise(double noise) {
+        this.noise = noise;
+    }
+
+    /**
+     * @param dropoutRate вероятность, что измерение не удалось и отсчёт не отправлен
+     */
+    public void setDropoutRate(double dropoutRate) {
+        this.dropoutRate = dropoutRate;
+    }
+
+    /**
+     * @param corruptionRate вероятность порчи каждого переданного байта
+     */
+    public void setCorruptionRate(double corruptionRate) {
+        this.corruptionRate = corruptionRate;
+    }
+
+    /**
+     * @param obliqueDropout вероятность пропуска эха при скользящем падении луча
+     *                       (растёт от 0 при 40° до этого значения при 90°); шум
+     *                       растёт как 1/cos угла падения
+     */
+    public void setObliqueDropout(double obliqueDropout) {
+        this.obliqueDropout = obliqueDropout;
+    }
+
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    public void setBaudRate(int baudRate) {
+        this.baudRate = baudRate;
+    }
+
+    public void setStep(int step) {
+        this.step = step;
+    }
+
+    public synchronized int getDwellMs() {
+        return dwellMs;
+    }
+
+    /**
+     * @param dwellMs пауза на шаг, мс; 0 — скорость ограничена только линией
+     */
+    public synchronized void setDwellMs(int dwellMs) {
+        this.dwellMs = dwellMs;
+    }
+
+    @Override
+    public void setPreferredProtocol(WireProtocol preferredProtocol) {
+        this.preferredProtocol = preferredProtocol;
+    }
+
+    public String getScannerId() {
+        return scannerId;
+    }
+
+    /**
+     * @param scannerId номер сканера в ответе на IDENT (у скетча он хранится в EEPROM)
+     */
+    public void setScannerId(String scannerId) {
+        this.scannerId = scannerId;
+    }
+
+    public int getBootDelayMs() {
+        return bootDelayMs;
+    }
+
+    /**
+     * @param bootDelayMs сколько устройство молчит после подключения (у Uno около 1600 мс)
+     */
+    public void setBootDelayMs(int bootDelayMs) {
+        this.bootDelayMs = bootDelayMs;
+    }
+
+    public synchronized long getPasses() {
+        return passes;
+    }
+
+    /**
+     * Сколько позиций сервоприводов пройдено (обход и SWEEP вместе)
+     */
+    public synchronized long getSteps() {
+        return steps;
+    }
+
+    protected Random getRandom() {
+        return random;
+    }
+}
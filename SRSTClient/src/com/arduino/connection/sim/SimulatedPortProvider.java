@@ -0,0 +1,159 @@
+package com.arduino.connection.sim;
+
+import com.arduino.connection.ArduinoConnection;
+import com.arduino.connection.ArduinoConnection.ConnectionType;
+import com.arduino.connection.discovery.Candidate;
+import com.arduino.connection.discovery.CandidateProvider;
+import com.arduino.connection.discovery.IdentifyProbe;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Имитация портов или Bluetooth устройств для {@link com.arduino.connection.discovery.DiscoveryService}.
+ *
+ * На каждом адресе может быть сканер с IDENT, сканер со старой прошивкой
+ * (шлёт отсчёты, команды с номером не понимает) или молчащее устройство.
+ * Задержка перечисления моделирует поиск Bluetooth, задержка загрузки —
+ * перезагрузку Arduino при открытии порта.
+ */
+public class SimulatedPortProvider implements CandidateProvider {
+
+    /**
+     * Что подключено к адресу
+     */
+    public enum Device {
+        SCANNER,
+        LEGACY_SCANNER,
+        SILENT
+    }
+
+    private final ConnectionType type;
+    private final Map<String, Device> devices = new LinkedHashMap<>();
+    private final Map<String, String> scannerIds = new LinkedHashMap<>();
+    private int enumerateDelayMs;
+    private int bootDelayMs;
+    private int probeTimeoutMs = IdentifyProbe.DEFAULT_TIMEOUT_MS;
+    private final AtomicInteger enumerations = new AtomicInteger();
+    private final AtomicInteger opened = new AtomicInteger();
+
+    public SimulatedPortProvider(ConnectionType type) {
+        this.type = type;
+    }
+
+    public synchronized SimulatedPortProvider addScanner(String address, String scannerId) {
+        devices.put(address, Device.SCANNER);
+        scannerIds.put(address, scannerId);
+        return this;
+    }
+
+    public synchronized SimulatedPortProvider addDevice(String address, Device device) {
+        devices.put(address, device);
+        return this;
+    }
+
+    /**
+     * Отключить устройство от адреса
+     */
+    public synchronized void remove(String address) {
+        devices.remove(address);
+        scannerIds.remove(address);
+    }
+
+    @Override
+    public ConnectionType getType() {
+        return type;
+    }
+
+    @Override
+    public List<Candidate> enumerate() throws InterruptedException {
+        enumerations.incrementAndGet();
+        if (enumerateDelayMs > 0) {
+            Thread.sleep(enumerateDelayMs);
+        }
+        List<Candidate> candidates = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, Device> entry : devices.entrySet()) {
+                candidates.add(new Candidate(type, entry.getKey(), "имитация: " + entry.getValue()));
+            }
+        }
+        return candidates;
+    }
+
+    @Override
+    public synchronized ArduinoConnection open(String address) {
+        opened.incrementAndGet();
+        Device device = devices.get(address);
+        SimulatedArduinoConnection connection;
+        if (device == null) {
+            // Порта больше нет
+            connection = new SimulatedArduinoConnection() {
+                @Override
+                public synchronized boolean connect() {
+                    return false;
+                }
+            };
+        } else if (device == Device.SILENT) {
+            connection = new SimulatedArduinoConnection() {
+                @Override
+                public synchronized int receiveData(byte[] buffer) {
+                    return isConnected() ? 0 : -1;
+                }
+
+                @Override
+                protected void handleCommand(String command) {
+                }
+            };
+        } else if (device == Device.LEGACY_SCANNER) {
+            connection = new SimulatedArduinoConnection(address.hashCode()) {
+                @Override
+                protected void handleCommand(String command) {
+                    // Прошивка до команд с номером
+                    if (!command.startsWith("#")) {
+                        super.handleCommand(command);
+                    }
+                }
+            };
+        } else {
+            connection = new SimulatedArduinoConnection(address.hashCode());
+            connection.setScannerId(scannerIds.get(address));
+        }
+        connection.setBootDelayMs(bootDelayMs);
+        return connection;
+    }
+
+    @Override
+    public int getProbeTimeoutMs() {
+        return probeTimeoutMs;
+    }
+
+    // Геттеры и сеттеры
+    public void setEnumerateDelayMs(int enumerateDelayMs) {
+        this.enumerateDelayMs = enumerateDelayMs;
+    }
+
+    public void setBootDelayMs(int bootDelayMs) {
+        this.bootDelayMs = bootDelayMs;
+    }
+
+    public void setProbeTimeoutMs(int probeTimeoutMs) {
+        this.probeTimeoutMs = probeTimeoutMs;
+    }
+
+    /**
+     * Сколько раз перечислялись адреса
+     */
+    public int getEnumerations() {
+        return enumerations.get();
+    }
+
+    /**
+     * Сколько подключений создано
+     */
+    public int getOpened() {
+        return opened.get();
+    }
+}
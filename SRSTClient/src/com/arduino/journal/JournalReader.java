@@ -0,0 +1,139 @@
+package com.arduino.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Последовательное чтение журнала {@link RawJournal}.
+ *
+ * Сегменты отображаются в память только для чтения и обходятся по порядку,
+ * записи отдаются без копирования данных. Чтение сегмента прекращается
+ * на первой записи с неверной контрольной суммой.
+ */
+public class JournalReader {
+
+    /**
+     * Обработчик записей журнала
+     */
+    public interface RecordHandler {
+        void record(JournalRecord record) throws IOException;
+    }
+
+    private final Path directory;
+    private long records;
+    private long bytes;
+    private int segments;
+    private int damagedSegments;
+
+    public JournalReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Прочитать все записи журнала
+     * @return количество записей
+     */
+    public long read(RecordHandler handler) throws IOException {
+        records = 0;
+        bytes = 0;
+        segments = 0;
+        damagedSegments = 0;
+        for (Path path : listSegments(directory)) {
+            readSegment(path, handler);
+        }
+        return records;
+    }
+
+    private void readSegment(Path path, RecordHandler handler) throws IOException {
+        MappedByteBuffer segment;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < RawJournal.SEGMENT_HEADER) {
+                return;
+            }
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+        }
+        if (segment.getInt(0) != RawJournal.SEGMENT_MAGIC) {
+            damagedSegments++;
+            return;
+        }
+        segments++;
+        long number = segment.getLong(8);
+        int size = segment.capacity();
+        int pos = RawJournal.SEGMENT_HEADER;
+        while (pos + RawJournal.RECORD_HEADER <= size) {
+            int length = segment.getInt(pos);
+            if (length == 0 || length == RawJournal.END_OF_SEGMENT) {
+                return;
+            }
+            if (length < 0 || pos + RawJournal.RECORD_HEADER + length > size
+                    || !RawJournal.checkRecord(segment, pos, length)) {
+                damagedSegments++;
+                return;
+            }
+            ByteBuffer payload = segment.duplicate();
+            payload.limit(pos + RawJournal.RECORD_HEADER + length).position(pos + RawJournal.RECORD_HEADER);
+            handler.record(new JournalRecord(segment.get(pos + 4), segment.getLong(pos + 5), number,
+                    payload.slice().asReadOnlyBuffer()));
+            records++;
+            bytes += length;
+            pos += RawJournal.RECORD_HEADER + length;
+        }
+    }
+
+    /**
+     * Файлы сегментов каталога в порядке номеров
+     */
+    static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + RawJournal.SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                if (segmentNumber(path) > 0) {
+                    segments.add(path);
+                }
+            }
+        }
+        segments.sort((a, b) -> Long.compare(segmentNumber(a), segmentNumber(b)));
+        return Collections.unmodifiableList(segments);
+    }
+
+    static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - RawJournal.SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Геттеры
+    public long getRecords() {
+        return records;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    /**
+     * Сегменты, чтение которых остановилось на повреждённой записи
+     */
+    public int getDamagedSegments() {
+        return damagedSegments;
+    }
+}
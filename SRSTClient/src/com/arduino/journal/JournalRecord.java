@@ -0,0 +1,63 @@
+package com.arduino.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Запись журнала {@link RawJournal}.
+ * Данные не копируются: это срез отображённого в память сегмента
+ */
+public class JournalRecord {
+
+    private final byte type;
+    private final long timeMicros;
+    private final long segment;
+    private final ByteBuffer payload;
+
+    JournalRecord(byte type, long timeMicros, long segment, ByteBuffer payload) {
+        this.type = type;
+        this.timeMicros = timeMicros;
+        this.segment = segment;
+        this.payload = payload;
+    }
+
+    /**
+     * Копия данных записи
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Данные записи как текст (описание сессии, отметка)
+     */
+    public String getText() {
+        return new String(toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    // Геттеры
+    public byte getType() {
+        return type;
+    }
+
+    public long getTimeMicros() {
+        return timeMicros;
+    }
+
+    public long getSegment() {
+        return segment;
+    }
+
+    /**
+     * @return данные только для чтения; позиция и предел ограничивают запись
+     */
+    public ByteBuffer getPayload() {
+        return payload.duplicate();
+    }
+
+    public int getLength() {
+        return payload.remaining();
+    }
+}
@@ -0,0 +1,151 @@
+package com.arduino.journal;
+
+import com.arduino.connection.protocol.BinaryFrames;
+import com.arduino.connection.protocol.BinarySampleDecoder;
+import com.arduino.connection.protocol.SampleListener;
+import com.arduino.scan.Scan;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Повторный разбор сессий из журнала.
+ *
+ * Принятые байты разбираются так же, как при съёмке: текстовые строки
+ * "phi;theta;r" до подтверждения "OK BIN", после него — двоичные кадры.
+ * После отметки очистки буфера первая строка пропускается, как это делает
+ * клиент. Отсчёты передаются получателю, поэтому повтор можно направить
+ * в любую обработку: файл, архив, трансляцию.
+ */
+public class JournalReplay implements JournalReader.RecordHandler {
+
+    private final SampleListener listener;
+    private final int sessionFilter;
+
+    private int session;
+    private byte[] pending = new byte[256];
+    private int pendingLength;
+    private boolean skipLine;
+    private BinarySampleDecoder decoder;
+    private final byte[] chunk = new byte[8192];
+
+    private long samples;
+    private long badLines;
+    private long corruptFrames;
+
+    /**
+     * @param listener получатель отсчётов
+     * @param session номер сессии с 1 или 0 — все сессии
+     */
+    public JournalReplay(SampleListener listener, int session) {
+        this.listener = listener;
+        this.sessionFilter = session;
+    }
+
+    @Override
+    public void record(JournalRecord record) {
+        switch (record.getType()) {
+            case RawJournal.TYPE_SESSION:
+                finishSession();
+                session++;
+                pendingLength = 0;
+                skipLine = false;
+                decoder = null;
+                break;
+            case RawJournal.TYPE_MARK:
+                if (JournalingConnection.MARK_CLEAR.equals(record.getText())) {
+                    pendingLength = 0;
+                    skipLine = decoder == null;
+                    if (decoder != null) {
+                        decoder.reset();
+                    }
+                }
+                break;
+            case RawJournal.TYPE_RECEIVED:
+                if (sessionFilter == 0 || sessionFilter == session) {
+                    received(record.getPayload());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void received(ByteBuffer payload) {
+        while (payload.hasRemaining()) {
+            int n = Math.min(chunk.length, payload.remaining());
+            payload.get(chunk, 0, n);
+            int offset = 0;
+            if (decoder == null) {
+                offset = text(n);
+            }
+            if (decoder != null && offset < n) {
+                samples += decoder.decode(chunk, offset, n - offset, listener);
+            }
+        }
+    }
+
+    /**
+     * Разбор текстовых строк до подтверждения двоичного протокола
+     * @return позиция в буфере, с которой начинаются двоичные данные, или n
+     */
+    private int text(int n) {
+        for (int i = 0; i < n; i++) {
+            byte b = chunk[i];
+            if (b != '\n') {
+                if (pendingLength == pending.length) {
+                    pending = Arrays.copyOf(pending, pending.length * 2);
+                }
+                pending[pendingLength++] = b;
+                continue;
+            }
+            String line = new String(pending, 0, pendingLength);
+            pendingLength = 0;
+            if (skipLine) {
+                skipLine = false;
+                continue;
+            }
+            if (line.trim().equals(BinaryFrames.ACK_BINARY)) {
+                decoder = new BinarySampleDecoder();
+                return i + 1;
+            }
+            double[] sample = Scan.parseLine(line);
+            if (sample != null) {
+                samples++;
+                listener.sample(sample[0], sample[1], sample[2]);
+            } else if (!line.trim().isEmpty()) {
+                badLines++;
+            }
+        }
+        return n;
+    }
+
+    private void finishSession() {
+        if (decoder != null) {
+            corruptFrames += decoder.getCorruptFrames();
+        }
+    }
+
+    // Геттеры
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * Непустые строки, которые не удалось разобрать
+     */
+    public long getBadLines() {
+        return badLines;
+    }
+
+    /**
+     * Отброшенные двоичные кадры
+     */
+    public long getCorruptFrames() {
+        return decoder != null ? corruptFrames + decoder.getCorruptFrames() : corruptFrames;
+    }
+
+    public int getSessions() {
+        return session;
+    }
+}
@@ -0,0 +1,141 @@
+package com.arduino.journal;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+
+/**
+ * Работа с журналом сырых байтов из командной строки.
+ *
+ * <pre>
+ * JournalTool info &lt;журнал&gt;
+ * JournalTool replay &lt;журнал&gt; out.csv [сессия]
+ * JournalTool dump &lt;журнал&gt; &lt;сессия&gt; out.raw
+ * </pre>
+ */
+public class JournalTool {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            usage();
+            return;
+        }
+        Path directory = Paths.get(args[1]);
+        switch (args[0]) {
+            case "info":
+                info(directory);
+                break;
+            case "replay":
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                replay(directory, Paths.get(args[2]), args.length > 3 ? Integer.parseInt(args[3]) : 0);
+                break;
+            case "dump":
+                if (args.length < 4) {
+                    usage();
+                    return;
+                }
+                dump(directory, Integer.parseInt(args[2]), Paths.get(args[3]));
+                break;
+            default:
+                usage();
+        }
+    }
+
+    private static void info(Path directory) throws IOException {
+        JournalReader reader = new JournalReader(directory);
+        long[] received = new long[1];
+        int[] session = new int[1];
+        reader.read(record -> {
+            if (record.getType() == RawJournal.TYPE_SESSION) {
+                if (session[0] > 0) {
+                    System.out.println("    принято байт: " + received[0]);
+                }
+                session[0]++;
+                received[0] = 0;
+                System.out.println("Сессия " + session[0] + ": " + time(record) + "  " + record.getText());
+            } else if (record.getType() == RawJournal.TYPE_RECEIVED) {
+                received[0] += record.getLength();
+            }
+        });
+        if (session[0] > 0) {
+            System.out.println("    принято байт: " + received[0]);
+        }
+        System.out.println("Сегментов: " + reader.getSegments() + ", записей: " + reader.getRecords()
+                + ", байт данных: " + reader.getBytes()
+                + (reader.getDamagedSegments() > 0 ? ", повреждённых сегментов: " + reader.getDamagedSegments() : ""));
+    }
+
+    private static void replay(Path directory, Path output, int session) throws IOException {
+        long start = System.nanoTime();
+        JournalReader reader = new JournalReader(directory);
+        try (BufferedWriter csv = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            csv.write("phi; theta; r\n");
+            IOException[] error = new IOException[1];
+            JournalReplay replay = new JournalReplay((phi, theta, r) -> {
+                if (error[0] == null) {
+                    try {
+                        csv.write(format(phi) + ";" + format(theta) + ";" + format(r) + "\n");
+                    } catch (IOException e) {
+                        error[0] = e;
+                    }
+                }
+            }, session);
+            reader.read(replay);
+            if (error[0] != null) {
+                throw error[0];
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("✓ Сессий: %d, точек: %d, неразобранных строк: %d, испорченных кадров: %d%n",
+                    replay.getSessions(), replay.getSamples(), replay.getBadLines(), replay.getCorruptFrames());
+            System.out.printf("  %.1f МБ за %.2f с (%.1f МБ/с)%n", reader.getBytes() / 1e6, seconds,
+                    reader.getBytes() / 1e6 / seconds);
+        }
+    }
+
+    private static void dump(Path directory, int session, Path output) throws IOException {
+        int[] current = new int[1];
+        long[] written = new long[1];
+        try (OutputStream out = Files.newOutputStream(output);
+             WritableByteChannel channel = Channels.newChannel(out)) {
+            new JournalReader(directory).read(record -> {
+                if (record.getType() == RawJournal.TYPE_SESSION) {
+                    current[0]++;
+                } else if (record.getType() == RawJournal.TYPE_RECEIVED && current[0] == session) {
+                    ByteBuffer payload = record.getPayload();
+                    written[0] += payload.remaining();
+                    while (payload.hasRemaining()) {
+                        channel.write(payload);
+                    }
+                }
+            });
+        }
+        System.out.println("✓ Записано " + written[0] + " байт сессии " + session + " в " + output);
+    }
+
+    private static String time(JournalRecord record) {
+        long micros = record.getTimeMicros();
+        return Instant.ofEpochSecond(micros / 1_000_000, (micros % 1_000_000) * 1000).toString();
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    private static void usage() {
+        System.out.println("Использование:");
+        System.out.println("  JournalTool info <журнал>");
+        System.out.println("  JournalTool replay <журнал> out.csv [сессия]");
+        System.out.println("  JournalTool dump <журнал> <сессия> out.raw");
+    }
+}
@@ -0,0 +1,216 @@
+package com.arduino.journal;
+
+import com.arduino.connection.ArduinoConnection;
+import com.arduino.connection.protocol.BinarySampleDecoder;
+import com.arduino.connection.protocol.ProtocolNegotiator;
+
+import java.io.IOException;
+
+/**
+ * Подключение, которое записывает весь обмен с устройством в {@link RawJournal}.
+ *
+ * Оборачивает любое подключение: принятые и отправленные байты попадают
+ * в журнал до разбора. Согласование двоичного протокола выполняется здесь,
+ * а не во вложенном подключении, чтобы в журнал попал и ответ устройства.
+ * Ошибка записи журнала не прерывает съёмку, а только выводится.
+ */
+public class JournalingConnection implements ArduinoConnection {
+
+    /** Отметка очистки входного буфера: следующая строка может быть обрывком */
+    public static final String MARK_CLEAR = "clear";
+    public static final String MARK_DISCONNECT = "disconnect";
+
+    private static final long CLEAR_DRAIN_MS = 100;
+
+    private final ArduinoConnection delegate;
+    private final RawJournal journal;
+    private final String description;
+    private WireProtocol preferredProtocol = WireProtocol.ASCII;
+    private BinarySampleDecoder binaryDecoder;
+    private boolean journalFailed;
+
+    /**
+     * Конструктор
+     * @param delegate подключение к устройству
+     * @param journal журнал
+     * @param description описание сессии в журнале
+     */
+    public JournalingConnection(ArduinoConnection delegate, RawJournal journal, String description) {
+        this.delegate = delegate;
+        this.journal = journal;
+        this.description = description;
+    }
+
+    @Override
+    public boolean connect() {
+        delegate.setPreferredProtocol(WireProtocol.ASCII);
+        if (!delegate.connect()) {
+            return false;
+        }
+        beginSession();
+        binaryDecoder = null;
+        if (preferredProtocol == WireProtocol.BINARY) {
+            binaryDecoder = ProtocolNegotiator.negotiateBinary(this, ProtocolNegotiator.DEFAULT_TIMEOUT_MS);
+        }
+        return true;
+    }
+
+    /**
+     * Отметить в журнале начало сессии. Вызывается при подключении, а также
+     * вручную, если обёрнуто уже открытое подключение
+     */
+    public void beginSession() {
+        try {
+            journal.beginSession(description + " " + delegate.getConnectionType() + " " + preferredProtocol);
+        } catch (IOException e) {
+            journalError(e);
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        delegate.disconnect();
+        binaryDecoder = null;
+        mark(MARK_DISCONNECT);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return delegate.isConnected();
+    }
+
+    @Override
+    public int sendData(String data) {
+        return sendData(data.getBytes());
+    }
+
+    @Override
+    public int sendData(byte[] data) {
+        int sent = delegate.sendData(data);
+        if (sent > 0) {
+            try {
+                journal.sent(data, 0, Math.min(sent, data.length));
+            } catch (IOException e) {
+                journalError(e);
+            }
+        }
+        return sent;
+    }
+
+    @Override
+    public int receiveData(byte[] buffer) {
+        int n = delegate.receiveData(buffer);
+        if (n > 0) {
+            try {
+                journal.received(buffer, 0, n);
+            } catch (IOException e) {
+                journalError(e);
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public String receiveData() {
+        StringBuilder data = new StringBuilder();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = receiveData(buffer)) > 0) {
+            data.append(new String(buffer, 0, n));
+        }
+        return data.toString();
+    }
+
+    @Override
+    public String receiveData(int timeoutMs) {
+        if (!isConnected()) {
+            return "";
+        }
+        long startTime = System.currentTimeMillis();
+        StringBuilder data = new StringBuilder();
+        byte[] buffer = new byte[1024];
+        try {
+            while (System.currentTimeMillis() - startTime < timeoutMs) {
+                int n = receiveData(buffer);
+                if (n < 0) {
+                    break;
+                }
+                data.append(new String(buffer, 0, n));
+
+                // Если получен символ новой строки, прекращаем чтение
+                if (data.length() > 0 && data.charAt(data.length() - 1) == '\n') {
+                    break;
+                }
+                if (n == 0) {
+                    Thread.sleep(10);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Чтение прервано");
+        }
+        return data.toString();
+    }
+
+    /**
+     * Сброшенные байты тоже попадают в журнал: буфер вычитывается, а не очищается.
+     * Устройство передаёт непрерывно, поэтому вычитывается только уже принятое
+     */
+    @Override
+    public void clearInputBuffer() {
+        byte[] buffer = new byte[4096];
+        long deadline = System.currentTimeMillis() + CLEAR_DRAIN_MS;
+        int n;
+        do {
+            n = receiveData(buffer);
+        } while (n == buffer.length && System.currentTimeMillis() < deadline);
+        if (binaryDecoder != null) {
+            binaryDecoder.reset();
+        }
+        mark(MARK_CLEAR);
+    }
+
+    @Override
+    public ConnectionType getConnectionType() {
+        return delegate.getConnectionType();
+    }
+
+    @Override
+    public WireProtocol getWireProtocol() {
+        return binaryDecoder != null ? WireProtocol.BINARY : WireProtocol.ASCII;
+    }
+
+    @Override
+    public BinarySampleDecoder getBinaryDecoder() {
+        return binaryDecoder;
+    }
+
+    @Override
+    public void setPreferredProtocol(WireProtocol preferredProtocol) {
+        this.preferredProtocol = preferredProtocol;
+    }
+
+    private void mark(String text) {
+        try {
+            journal.mark(text);
+        } catch (IOException e) {
+            journalError(e);
+        }
+    }
+
+    private void journalError(IOException e) {
+        if (!journalFailed) {
+            journalFailed = true;
+            System.err.println("Ошибка записи журнала: " + e.getMessage());
+        }
+    }
+
+    // Геттеры
+    public ArduinoConnection getDelegate() {
+        return delegate;
+    }
+
+    public RawJournal getJournal() {
+        return journal;
+    }
+}
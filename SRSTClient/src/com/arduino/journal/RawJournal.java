@@ -0,0 +1,337 @@
+package com.arduino.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал сырых байтов обмена с устройством.
+ *
+ * Байты записываются до любого разбора, поэтому по журналу сессию можно
+ * восстановить полностью, включая строки, которые не удалось разобрать.
+ * Журнал — каталог сегментов фиксированного размера, каждый отображён
+ * в память (mmap). Записанное в отображение попадает в страничный кэш ОС
+ * сразу, поэтому падение JVM или System.exit данных не теряют; от потери
+ * питания защищает периодический {@link #sync()}.
+ *
+ * Сегмент: заголовок {@value #SEGMENT_HEADER} байт, затем записи
+ * <pre>
+ * int   длина данных (0 — конец записанного, -1 — конец сегмента)
+ * byte  тип записи
+ * long  время, микросекунды от эпохи
+ * int   CRC32 типа, времени и данных
+ * byte[] данные
+ * </pre>
+ * Длина пишется последней, поэтому недописанная запись выглядит как конец
+ * журнала. При открытии проверяется только последний сегмент.
+ */
+public class RawJournal implements Closeable {
+
+    public static final byte TYPE_SESSION = 1;
+    public static final byte TYPE_RECEIVED = 2;
+    public static final byte TYPE_SENT = 3;
+    public static final byte TYPE_MARK = 4;
+
+    public static final String SEGMENT_SUFFIX = ".jrn";
+    public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    static final int SEGMENT_MAGIC = 0x53524A4C; // "SRJL"
+    static final int SEGMENT_VERSION = 1;
+    static final int SEGMENT_HEADER = 32;
+    static final int RECORD_HEADER = 17;
+    static final int END_OF_SEGMENT = -1;
+
+    private final Path directory;
+    private final int segmentSize;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentNumber;
+    private int position;
+    private int syncedPosition;
+    private long lastSync = System.currentTimeMillis();
+    private long syncIntervalMs = 1000;
+    private boolean preallocate = true;
+
+    private long recoveredRecords;
+    private long discardedBytes;
+
+    private RawJournal(Path directory, int segmentSize) throws IOException {
+        if (segmentSize < SEGMENT_HEADER + RECORD_HEADER + 1024) {
+            throw new IllegalArgumentException("Слишком маленький сегмент: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        List<Path> segments = JournalReader.listSegments(directory);
+        if (segments.isEmpty()) {
+            openSegment(1);
+        } else {
+            recover(segments.get(segments.size() - 1));
+        }
+    }
+
+    /**
+     * Открыть (или создать) журнал с размером сегмента по умолчанию
+     */
+    public static RawJournal open(Path directory) throws IOException {
+        return new RawJournal(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Открыть (или создать) журнал
+     * @param segmentSize размер новых сегментов, байт
+     */
+    public static RawJournal open(Path directory, int segmentSize) throws IOException {
+        return new RawJournal(directory, segmentSize);
+    }
+
+    /**
+     * Найти конец записанного в последнем сегменте и продолжить запись в него
+     */
+    private void recover(Path last) throws IOException {
+        long number = JournalReader.segmentNumber(last);
+        channel = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int size = (int) Math.min(channel.size(), Integer.MAX_VALUE);
+        // Заголовок читается до отображения: пустой сегмент переписывается на месте.
+        // Удалить файл с живым MappedByteBuffer нельзя в Windows, а отображение
+        // освобождается только сборщиком мусора
+        ByteBuffer magic = ByteBuffer.allocate(4);
+        if (size >= SEGMENT_HEADER + RECORD_HEADER) {
+            channel.read(magic, 0);
+        }
+        if (size < SEGMENT_HEADER + RECORD_HEADER || magic.getInt(0) == 0) {
+            // Сегмент создан, но заголовок не успел записаться
+            channel.truncate(0);
+            initSegment(number);
+            return;
+        }
+        if (magic.getInt(0) != SEGMENT_MAGIC) {
+            channel.close();
+            throw new IOException("Не сегмент журнала: " + last);
+        }
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        segmentNumber = number;
+
+        int pos = SEGMENT_HEADER;
+        while (pos + RECORD_HEADER <= size) {
+            int length = segment.getInt(pos);
+            if (length == END_OF_SEGMENT) {
+                closeSegment();
+                openSegment(number + 1);
+                return;
+            }
+            if (length <= 0 || pos + RECORD_HEADER + length > size || !checkRecord(segment, pos, length)) {
+                break;
+            }
+            recoveredRecords++;
+            pos += RECORD_HEADER + length;
+        }
+        // Хвост недописанной записи стираем, чтобы он не склеился с новыми
+        for (int i = pos; i < size; i++) {
+            if (segment.get(i) != 0) {
+                discardedBytes++;
+                segment.put(i, (byte) 0);
+            }
+        }
+        position = pos;
+        syncedPosition = pos;
+    }
+
+    private void openSegment(long number) throws IOException {
+        Path path = directory.resolve(String.format("%08d%s", number, SEGMENT_SUFFIX));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        initSegment(number);
+    }
+
+    /**
+     * Разметить пустой файл сегмента в channel и отобразить его в память
+     */
+    private void initSegment(long number) throws IOException {
+        if (preallocate) {
+            // Блоки файла выделяются сразу, а не на страничных промахах во время съёмки
+            ByteBuffer zeros = ByteBuffer.allocate(1 << 20);
+            for (long written = 0; written < segmentSize; ) {
+                zeros.clear().limit((int) Math.min(zeros.capacity(), segmentSize - written));
+                written += channel.write(zeros, written);
+            }
+        }
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.putInt(0, SEGMENT_MAGIC);
+        segment.putInt(4, SEGMENT_VERSION);
+        segment.putLong(8, number);
+        segment.putLong(16, nowMicros());
+        segmentNumber = number;
+        position = SEGMENT_HEADER;
+        syncedPosition = 0;
+    }
+
+    /**
+     * Начало сессии подключения
+     * @param description описание: транспорт, порт, протокол
+     */
+    public void beginSession(String description) throws IOException {
+        byte[] text = description.getBytes(StandardCharsets.UTF_8);
+        append(TYPE_SESSION, text, 0, text.length);
+    }
+
+    /**
+     * Байты, принятые от устройства
+     */
+    public void received(byte[] data, int offset, int length) throws IOException {
+        append(TYPE_RECEIVED, data, offset, length);
+    }
+
+    /**
+     * Байты, отправленные устройству
+     */
+    public void sent(byte[] data, int offset, int length) throws IOException {
+        append(TYPE_SENT, data, offset, length);
+    }
+
+    /**
+     * Служебная отметка (очистка буфера, отключение)
+     */
+    public void mark(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        append(TYPE_MARK, bytes, 0, bytes.length);
+    }
+
+    /**
+     * Дописать запись; данные длиннее сегмента разбиваются на несколько записей
+     */
+    public synchronized void append(byte type, byte[] data, int offset, int length) throws IOException {
+        if (segment == null) {
+            throw new IOException("Журнал закрыт");
+        }
+        if (length == 0) {
+            // Длина 0 означает конец журнала, пустые записи не храним
+            return;
+        }
+        int maxPayload = segmentSize - SEGMENT_HEADER - RECORD_HEADER;
+        do {
+            int chunk = Math.min(length, maxPayload);
+            if (position + RECORD_HEADER + chunk > segment.capacity()) {
+                nextSegment();
+            }
+            long time = nowMicros();
+            int pos = position;
+            segment.put(pos + 4, type);
+            segment.putLong(pos + 5, time);
+            segment.put(pos + RECORD_HEADER, data, offset, chunk);
+            segment.putInt(pos + 13, recordCrc(segment, pos, chunk));
+            // Длина последней: запись становится видимой только целиком
+            segment.putInt(pos, chunk);
+            position = pos + RECORD_HEADER + chunk;
+            offset += chunk;
+            length -= chunk;
+        } while (length > 0);
+
+        if (syncIntervalMs >= 0 && System.currentTimeMillis() - lastSync >= syncIntervalMs) {
+            sync();
+        }
+    }
+
+    private void nextSegment() throws IOException {
+        if (position + 4 <= segment.capacity()) {
+            segment.putInt(position, END_OF_SEGMENT);
+            position += 4;
+        }
+        sync();
+        closeSegment();
+        openSegment(segmentNumber + 1);
+    }
+
+    /**
+     * Сбросить записанное на диск
+     */
+    public synchronized void sync() {
+        if (segment != null && position > syncedPosition) {
+            segment.force(syncedPosition, position - syncedPosition);
+            syncedPosition = position;
+        }
+        lastSync = System.currentTimeMillis();
+    }
+
+    private void closeSegment() throws IOException {
+        segment = null;
+        channel.close();
+        channel = null;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (segment != null) {
+            sync();
+            closeSegment();
+        }
+    }
+
+    static int recordCrc(ByteBuffer buffer, int pos, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer view = buffer.duplicate();
+        view.limit(pos + 13).position(pos + 4);
+        crc.update(view);
+        view.limit(pos + RECORD_HEADER + length).position(pos + RECORD_HEADER);
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    static boolean checkRecord(ByteBuffer buffer, int pos, int length) {
+        return buffer.getInt(pos + 13) == recordCrc(buffer, pos, length);
+    }
+
+    static long nowMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000L + now.getNano() / 1000;
+    }
+
+    // Геттеры и сеттеры
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public synchronized long getSegmentNumber() {
+        return segmentNumber;
+    }
+
+    /**
+     * Записи, найденные в последнем сегменте при открытии
+     */
+    public long getRecoveredRecords() {
+        return recoveredRecords;
+    }
+
+    /**
+     * Байты недописанной записи, отброшенные при открытии
+     */
+    public long getDiscardedBytes() {
+        return discardedBytes;
+    }
+
+    /**
+     * @param syncIntervalMs как часто сбрасывать данные на диск при записи; -1 — только вручную
+     */
+    public void setSyncIntervalMs(long syncIntervalMs) {
+        this.syncIntervalMs = syncIntervalMs;
+    }
+
+    /**
+     * @param preallocate заполнять новый сегмент нулями при создании
+     */
+    public void setPreallocate(boolean preallocate) {
+        this.preallocate = preallocate;
+    }
+}
@@ -0,0 +1,172 @@
+package com.arduino.live;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayDeque;
+
+/**
+ * Подключённый WebSocket-клиент.
+ *
+ * У каждого клиента свой ограниченный буфер пакетов и свой поток записи,
+ * поэтому медленный клиент не задерживает ни съёмку, ни других клиентов:
+ * при переполнении буфера пакеты отбрасываются по {@link LiveStreamServer.OverflowPolicy}.
+ * Поток записи забирает всё накопленное разом и отправляет одним кадром,
+ * так что отставший клиент догоняет за счёт укрупнения кадров.
+ */
+class LiveClient {
+
+    private final Socket socket;
+    private final InputStream input;
+    private final OutputStream output;
+    private final int maxPendingBytes;
+    private final LiveStreamServer.OverflowPolicy policy;
+    private final ArrayDeque<byte[]> pending = new ArrayDeque<>();
+    private int pendingBytes;
+    private long droppedBatches;
+    private volatile long sentFrames;
+    private volatile boolean open = true;
+    private Thread writer;
+
+    LiveClient(Socket socket, InputStream input, int maxPendingBytes,
+               LiveStreamServer.OverflowPolicy policy) throws IOException {
+        this.socket = socket;
+        this.input = input;
+        this.output = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+        this.maxPendingBytes = maxPendingBytes;
+        this.policy = policy;
+    }
+
+    void start(String name) {
+        writer = new Thread(this::writeLoop, name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Поставить пакет в очередь клиента, никогда не блокируется
+     */
+    synchronized void offer(byte[] batch) {
+        if (!open) {
+            return;
+        }
+        if (pendingBytes + batch.length > maxPendingBytes) {
+            if (policy == LiveStreamServer.OverflowPolicy.DROP_NEWEST || batch.length > maxPendingBytes) {
+                droppedBatches++;
+                return;
+            }
+            while (!pending.isEmpty() && pendingBytes + batch.length > maxPendingBytes) {
+                pendingBytes -= pending.pollFirst().length;
+                droppedBatches++;
+            }
+        }
+        pending.addLast(batch);
+        pendingBytes += batch.length;
+        notifyAll();
+    }
+
+    /**
+     * Забрать всё накопленное одним массивом
+     */
+    private synchronized byte[] takeAll() throws InterruptedException {
+        while (open && pending.isEmpty()) {
+            wait();
+        }
+        if (!open) {
+            return null;
+        }
+        byte[] frame = new byte[pendingBytes];
+        int offset = 0;
+        for (byte[] batch : pending) {
+            System.arraycopy(batch, 0, frame, offset, batch.length);
+            offset += batch.length;
+        }
+        pending.clear();
+        pendingBytes = 0;
+        return frame;
+    }
+
+    private void writeLoop() {
+        try {
+            byte[] frame;
+            while ((frame = takeAll()) != null) {
+                synchronized (output) {
+                    WebSocketCodec.writeFrame(output, WebSocketCodec.OP_BINARY, frame, 0, frame.length);
+                    output.flush();
+                }
+                sentFrames++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // клиент отключился
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Обрабатывать кадры клиента (ping и закрытие) до отключения.
+     * Выполняется в потоке, принявшем соединение.
+     */
+    void readLoop() {
+        try {
+            while (open) {
+                WebSocketCodec.Frame frame = WebSocketCodec.readFrame(input);
+                if (frame.opcode == WebSocketCodec.OP_CLOSE) {
+                    synchronized (output) {
+                        WebSocketCodec.writeFrame(output, WebSocketCodec.OP_CLOSE, frame.payload, 0,
+                                Math.min(frame.payload.length, 2));
+                        output.flush();
+                    }
+                    break;
+                }
+                if (frame.opcode == WebSocketCodec.OP_PING) {
+                    synchronized (output) {
+                        WebSocketCodec.writeFrame(output, WebSocketCodec.OP_PONG, frame.payload, 0, frame.payload.length);
+                        output.flush();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // клиент отключился
+        } finally {
+            close();
+        }
+    }
+
+    void close() {
+        synchronized (this) {
+            if (!open) {
+                return;
+            }
+            open = false;
+            pending.clear();
+            pendingBytes = 0;
+            notifyAll();
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // уже закрыт
+        }
+    }
+
+    boolean isOpen() {
+        return open;
+    }
+
+    synchronized long getDroppedBatches() {
+        return droppedBatches;
+    }
+
+    long getSentFrames() {
+        return sentFrames;
+    }
+
+    String getRemoteAddress() {
+        return String.valueOf(socket.getRemoteSocketAddress());
+    }
+}
@@ -0,0 +1,501 @@
+package com.arduino.live;
+
+import com.arduino.scan.Scan;
+import com.arduino.scan.cloud.OctreeTiler;
+import com.arduino.scan.panorama.PanoramaWriter;
+import com.arduino.scan.panorama.RangePanorama;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Встроенный сервер живой трансляции скана.
+ *
+ * Отсчёты, поступающие от скетча, копятся в буфере и раз в тик упаковываются
+ * в один бинарный пакет, который раздаётся всем клиентам, подключённым
+ * по WebSocket на /stream. Пакет (little-endian, чтобы в браузере читать
+ * через Float32Array):
+ * <pre>
+ * uint8  тип (1 — отсчёты), 3 байта выравнивания
+ * uint32 номер пакета
+ * uint32 количество отсчётов N
+ * N x float32[6]: phi, theta, r, x, y, z
+ * </pre>
+ * Крупный тик делится на пакеты не более {@link #MAX_PACKET_SAMPLES} отсчётов,
+ * а один кадр WebSocket может содержать несколько пакетов подряд.
+ *
+ * Те же отсчёты копятся в панораме дальностей {@link RangePanorama};
+ * её слои отдаются как PNG по /panorama/depth.png, /panorama/preview.png
+ * и /panorama/confidence.png и перерисовываются только в изменённой части.
+ *
+ * JDK HttpServer не умеет отдавать сокет под WebSocket, поэтому HTTP
+ * разбирается здесь же в минимальном объёме (см. {@link WebSocketCodec}).
+ *
+ * Каждое подключение занимает поток из пула не больше
+ * {@link #setMaxConnections(int)}; сверх предела клиент сразу получает 503.
+ * Запрос должен прийти за {@link #setReadTimeoutMs(int)}, иначе соединение
+ * закрывается; у подписчиков /stream таймаут снимается — они молчат
+ * штатно, а отвалившийся клиент обнаруживает поток записи.
+ */
+public class LiveStreamServer {
+
+    public static final byte BATCH_SAMPLES = 1;
+    static final int BATCH_HEADER = 12;
+    static final int SAMPLE_FLOATS = 6;
+    static final int MAX_PACKET_SAMPLES = 2048;
+
+    private static final String TILES_PATH = "/tiles/";
+    /** Имена файлов OctreeTiler: только они отдаются по /tiles/ */
+    private static final Pattern TILE_NAME = Pattern.compile("r[0-7]*\\.tile|hierarchy\\.idx");
+    private static final String PANORAMA_PATH = "/panorama/";
+
+    /**
+     * Что делать, когда буфер клиента переполнен
+     */
+    public enum OverflowPolicy {
+        /** Выбросить самые старые пакеты — клиент видит свежие данные */
+        DROP_OLDEST,
+        /** Выбросить новый пакет — клиент видит непрерывный, но отстающий поток */
+        DROP_NEWEST
+    }
+
+    private final int port;
+    private int tickMs = 50;
+    private int clientBufferBytes = 1024 * 1024;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private Path tileDirectory;
+    private volatile RangePanorama panorama = RangePanorama.defaultPanorama();
+    private int panoramaScale = 8;
+    private int readTimeoutMs = 10_000;
+    private int maxConnections = 32;
+
+    private final List<LiveClient> clients = new CopyOnWriteArrayList<>();
+    private final Object batchLock = new Object();
+    private float[] batch = new float[SAMPLE_FLOATS * 256];
+    private int batchCount;
+    private int sequence;
+    private long publishedSamples;
+
+    private ServerSocket serverSocket;
+    private ExecutorService connectionPool;
+    private ScheduledExecutorService ticker;
+    private volatile boolean running;
+
+    /**
+     * Конструктор
+     * @param port TCP порт сервера
+     */
+    public LiveStreamServer(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Запустить сервер
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConnections, maxConnections,
+                60, TimeUnit.SECONDS, new SynchronousQueue<>(), daemonThreads("live-conn"));
+        pool.allowCoreThreadTimeOut(true);
+        connectionPool = pool;
+        ticker = Executors.newSingleThreadScheduledExecutor(daemonThreads("live-tick"));
+        running = true;
+        daemonThreads("live-accept").newThread(this::acceptLoop).start();
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        System.out.println("Трансляция запущена: http://localhost:" + getPort() + "/");
+    }
+
+    /**
+     * Остановить сервер и отключить всех клиентов
+     */
+    public void stop() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка при остановке трансляции: " + e.getMessage());
+        }
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        for (LiveClient client : clients) {
+            client.close();
+        }
+        clients.clear();
+        if (connectionPool != null) {
+            connectionPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Опубликовать отсчёт. Вызывается из потока съёмки и не блокируется
+     * на сети: отсчёт только дописывается в буфер текущего тика.
+     */
+    public void publish(double phi, double theta, double r) {
+        double t = Math.toRadians(theta);
+        double p = Math.toRadians(phi);
+        double sinT = Math.sin(t);
+        synchronized (batchLock) {
+            int base = batchCount * SAMPLE_FLOATS;
+            if (base + SAMPLE_FLOATS > batch.length) {
+                batch = Arrays.copyOf(batch, batch.length * 2);
+            }
+            batch[base] = (float) phi;
+            batch[base + 1] = (float) theta;
+            batch[base + 2] = (float) r;
+            batch[base + 3] = (float) (r * sinT * Math.cos(p));
+            batch[base + 4] = (float) (r * sinT * Math.sin(p));
+            batch[base + 5] = (float) (r * Math.cos(t));
+            batchCount++;
+        }
+        RangePanorama current = panorama;
+        if (current != null) {
+            current.add(phi, theta, r);
+        }
+    }
+
+    /**
+     * Опубликовать строки скетча "phi;theta;r" (может быть несколько строк)
+     * @return количество опубликованных отсчётов
+     */
+    public int publishLines(String data) {
+        int published = 0;
+        for (String line : data.split("\n")) {
+            double[] sample = Scan.parseLine(line);
+            if (sample != null) {
+                publish(sample[0], sample[1], sample[2]);
+                published++;
+            }
+        }
+        return published;
+    }
+
+    /**
+     * Упаковать накопленные за тик отсчёты и раздать клиентам
+     */
+    void tick() {
+        List<byte[]> packets = new ArrayList<>();
+        synchronized (batchLock) {
+            for (int from = 0; from < batchCount; from += MAX_PACKET_SAMPLES) {
+                int count = Math.min(MAX_PACKET_SAMPLES, batchCount - from);
+                ByteBuffer buffer = ByteBuffer.allocate(BATCH_HEADER + count * SAMPLE_FLOATS * 4)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                buffer.put(BATCH_SAMPLES).put((byte) 0).put((byte) 0).put((byte) 0);
+                buffer.putInt(sequence++);
+                buffer.putInt(count);
+                buffer.asFloatBuffer().put(batch, from * SAMPLE_FLOATS, count * SAMPLE_FLOATS);
+                packets.add(buffer.array());
+            }
+            publishedSamples += batchCount;
+            batchCount = 0;
+        }
+        for (LiveClient client : clients) {
+            if (!client.isOpen()) {
+                clients.remove(client);
+                continue;
+            }
+            for (byte[] packet : packets) {
+                client.offer(packet);
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                try {
+                    connectionPool.execute(() -> handle(socket));
+                } catch (RejectedExecutionException e) {
+                    reject(socket);
+                }
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Ошибка приёма подключения: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Ответить 503 подключению, которому не хватило потока в пуле.
+     * Ответ короткий и уходит в буфер сокета, так что поток приёма не ждёт клиента.
+     */
+    private void reject(Socket socket) {
+        try (Socket s = socket) {
+            WebSocketCodec.writeHttpResponse(s.getOutputStream(), 503, "Service Unavailable",
+                    "text/plain; charset=utf-8", "too many connections".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // клиент уже отключился
+        }
+        if (running) {
+            System.err.println("Трансляция: превышен предел подключений (" + maxConnections + "), отказ "
+                    + socket.getRemoteSocketAddress());
+        }
+    }
+
+    private void handle(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(readTimeoutMs);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            WebSocketCodec.Request request = WebSocketCodec.readRequest(in);
+
+            if (request.path.startsWith("/stream") && request.isWebSocketUpgrade()) {
+                WebSocketCodec.writeHandshake(out, request);
+                socket.setSoTimeout(0);
+                LiveClient client = new LiveClient(socket, in, clientBufferBytes, overflowPolicy);
+                clients.add(client);
+                client.start("live-writer " + client.getRemoteAddress());
+                client.readLoop();
+                clients.remove(client);
+                return;
+            }
+            if (request.path.equals("/status")) {
+                WebSocketCodec.writeHttpResponse(out, 200, "OK", "text/plain; charset=utf-8",
+                        status().getBytes(StandardCharsets.UTF_8));
+            } else if (request.path.startsWith(TILES_PATH) && tileDirectory != null) {
+                serveTile(out, request.path.substring(TILES_PATH.length()));
+            } else if (request.path.startsWith(PANORAMA_PATH) && panorama != null) {
+                servePanorama(out, request.path.substring(PANORAMA_PATH.length()));
+            } else if (request.path.equals("/")) {
+                WebSocketCodec.writeHttpResponse(out, 200, "OK", "text/html; charset=utf-8",
+                        INDEX_PAGE.getBytes(StandardCharsets.UTF_8));
+            } else {
+                WebSocketCodec.writeHttpResponse(out, 404, "Not Found", "text/plain; charset=utf-8",
+                        "not found".getBytes(StandardCharsets.UTF_8));
+            }
+            socket.close();
+        } catch (IOException e) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // уже закрыт
+            }
+        }
+    }
+
+    /**
+     * Отдать тайл или индекс тайлов {@link OctreeTiler}; зритель сам решает,
+     * какие узлы ему нужны
+     */
+    private void serveTile(OutputStream out, String name) throws IOException {
+        Path file = TILE_NAME.matcher(name).matches() ? tileDirectory.resolve(name) : null;
+        if (file == null || !Files.isRegularFile(file)) {
+            WebSocketCodec.writeHttpResponse(out, 404, "Not Found", "text/plain; charset=utf-8",
+                    "not found".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        WebSocketCodec.writeHttpResponse(out, 200, "OK", "application/octet-stream", Files.readAllBytes(file));
+    }
+
+    /**
+     * Отдать слой панорамы в PNG: depth, preview или confidence
+     * (параметры запроса вроде ?время от кэша браузера отбрасываются)
+     */
+    private void servePanorama(OutputStream out, String name) throws IOException {
+        int query = name.indexOf('?');
+        if (query >= 0) {
+            name = name.substring(0, query);
+        }
+        PanoramaWriter.Layer layer;
+        switch (name) {
+            case "depth.png":
+                layer = PanoramaWriter.Layer.DEPTH;
+                break;
+            case "preview.png":
+                layer = PanoramaWriter.Layer.PREVIEW;
+                break;
+            case "confidence.png":
+                layer = PanoramaWriter.Layer.CONFIDENCE;
+                break;
+            default:
+                WebSocketCodec.writeHttpResponse(out, 404, "Not Found", "text/plain; charset=utf-8",
+                        "not found".getBytes(StandardCharsets.UTF_8));
+                return;
+        }
+        // Глубина отдаётся в исходном разрешении — это данные, а не картинка
+        int scale = layer == PanoramaWriter.Layer.DEPTH ? 1 : panoramaScale;
+        WebSocketCodec.writeHttpResponse(out, 200, "OK", "image/png",
+                PanoramaWriter.encode(panorama, layer, PanoramaWriter.Format.PNG, scale));
+    }
+
+    /**
+     * Состояние сервера в текстовом виде
+     */
+    public String status() {
+        StringBuilder sb = new StringBuilder();
+        synchronized (batchLock) {
+            sb.append("samples: ").append(publishedSamples).append('\n');
+            sb.append("batches: ").append(sequence).append('\n');
+        }
+        sb.append("clients: ").append(clients.size()).append('\n');
+        RangePanorama current = panorama;
+        if (current != null) {
+            sb.append(current.summary()).append('\n');
+        }
+        for (LiveClient client : clients) {
+            sb.append("  ").append(client.getRemoteAddress())
+                    .append(" frames=").append(client.getSentFrames())
+                    .append(" dropped=").append(client.getDroppedBatches()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // Геттеры и сеттеры
+    public int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : port;
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    public int getTickMs() {
+        return tickMs;
+    }
+
+    /**
+     * @param tickMs период упаковки пакетов, мс (до start())
+     */
+    public void setTickMs(int tickMs) {
+        this.tickMs = tickMs;
+    }
+
+    public int getClientBufferBytes() {
+        return clientBufferBytes;
+    }
+
+    /**
+     * @param clientBufferBytes предел очереди одного клиента, байт
+     */
+    public void setClientBufferBytes(int clientBufferBytes) {
+        this.clientBufferBytes = clientBufferBytes;
+    }
+
+    public Path getTileDirectory() {
+        return tileDirectory;
+    }
+
+    /**
+     * @param tileDirectory каталог тайлов, раздаваемый по /tiles/; null — не раздавать
+     */
+    public void setTileDirectory(Path tileDirectory) {
+        this.tileDirectory = tileDirectory;
+    }
+
+    public RangePanorama getPanorama() {
+        return panorama;
+    }
+
+    /**
+     * @param panorama панорама, в которую копятся опубликованные отсчёты; null — не строить
+     */
+    public void setPanorama(RangePanorama panorama) {
+        this.panorama = panorama;
+    }
+
+    public int getPanoramaScale() {
+        return panoramaScale;
+    }
+
+    /**
+     * @param panoramaScale увеличение preview и confidence при отдаче по HTTP
+     */
+    public void setPanoramaScale(int panoramaScale) {
+        this.panoramaScale = panoramaScale;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public int getReadTimeoutMs() {
+        return readTimeoutMs;
+    }
+
+    /**
+     * @param readTimeoutMs сколько ждать HTTP-запрос клиента, мс; 0 — без ограничения
+     */
+    public void setReadTimeoutMs(int readTimeoutMs) {
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @param maxConnections предел одновременных подключений, включая подписчиков /stream (до start())
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    private static final String INDEX_PAGE = "<!DOCTYPE html>\n"
+            + "<html><head><meta charset=\"utf-8\"><title>SRST live</title></head><body>\n"
+            + "<h3>Трансляция скана</h3><pre id=\"s\">подключение...</pre>\n"
+            + "<img id=\"p\" alt=\"панорама\"> <img id=\"c\" alt=\"доверие\">\n"
+            + "<script>\n"
+            + "let total = 0, last = null;\n"
+            + "const ws = new WebSocket('ws://' + location.host + '/stream');\n"
+            + "ws.binaryType = 'arraybuffer';\n"
+            + "ws.onmessage = e => {\n"
+            + "  const v = new DataView(e.data);\n"
+            + "  for (let off = 0; off < e.data.byteLength;) {\n"
+            + "    const n = v.getUint32(off + 8, true);\n"
+            + "    const f = new Float32Array(e.data, off + 12, n * 6);\n"
+            + "    total += n; if (n) last = Array.from(f.slice((n - 1) * 6, n * 6));\n"
+            + "    off += 12 + n * 24;\n"
+            + "  }\n"
+            + "  document.getElementById('s').textContent = 'точек: ' + total\n"
+            + "    + '\\nпоследняя (phi, theta, r, x, y, z): ' + (last ? last.map(x => x.toFixed(1)).join(' ') : '-');\n"
+            + "};\n"
+            + "setInterval(() => { const t = Date.now();\n"
+            + "  document.getElementById('p').src = '/panorama/preview.png?' + t;\n"
+            + "  document.getElementById('c').src = '/panorama/confidence.png?' + t; }, 1000);\n"
+            + "ws.onclose = () => document.getElementById('s').textContent += '\\nсоединение закрыто';\n"
+            + "</script></body></html>\n";
+}
@@ -0,0 +1,217 @@
+package com.arduino.live;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Минимальная реализация HTTP-запроса и WebSocket (RFC 6455),
+ * достаточная для отдачи бинарных кадров браузеру.
+ */
+final class WebSocketCodec {
+
+    static final int OP_BINARY = 0x2;
+    static final int OP_CLOSE = 0x8;
+    static final int OP_PING = 0x9;
+    static final int OP_PONG = 0xA;
+
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int MAX_HEADER = 8192;
+    private static final int MAX_CLIENT_FRAME = 64 * 1024;
+
+    private WebSocketCodec() {
+    }
+
+    /**
+     * HTTP-запрос: строка запроса и заголовки (имена в нижнем регистре)
+     */
+    static final class Request {
+        final String method;
+        final String path;
+        final Map<String, String> headers;
+
+        Request(String method, String path, Map<String, String> headers) {
+            this.method = method;
+            this.path = path;
+            this.headers = headers;
+        }
+
+        boolean isWebSocketUpgrade() {
+            return "websocket".equalsIgnoreCase(headers.getOrDefault("upgrade", ""))
+                    && headers.containsKey("sec-websocket-key");
+        }
+    }
+
+    /**
+     * Прочитать заголовок HTTP-запроса
+     */
+    static Request readRequest(InputStream in) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        int last = 0;
+        while (last != 0x0D0A0D0A) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Соединение закрыто до конца заголовка");
+            }
+            header.write(b);
+            if (header.size() > MAX_HEADER) {
+                throw new IOException("Слишком длинный заголовок запроса");
+            }
+            last = (last << 8) | b;
+        }
+        String[] lines = header.toString(StandardCharsets.ISO_8859_1).split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length < 2) {
+            throw new IOException("Неверная строка запроса: " + lines[0]);
+        }
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                        lines[i].substring(colon + 1).trim());
+            }
+        }
+        return new Request(requestLine[0], requestLine[1], headers);
+    }
+
+    /**
+     * Ответить на запрос перехода на WebSocket
+     */
+    static void writeHandshake(OutputStream out, Request request) throws IOException {
+        String accept;
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            accept = Base64.getEncoder().encodeToString(
+                    sha1.digest((request.headers.get("sec-websocket-key") + GUID).getBytes(StandardCharsets.ISO_8859_1)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-1 недоступен", e);
+        }
+        String response = "HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n";
+        out.write(response.getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    /**
+     * Записать обычный HTTP-ответ и закрыть соединение
+     */
+    static void writeHttpResponse(OutputStream out, int status, String reason, String contentType, byte[] body)
+            throws IOException {
+        String head = "HTTP/1.1 " + status + " " + reason + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Connection: close\r\n\r\n";
+        out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        out.write(body);
+        out.flush();
+    }
+
+    /**
+     * Заголовок кадра сервера (без маски)
+     * @return длина заголовка в buffer
+     */
+    static int frameHeader(byte[] buffer, int opcode, long payloadLength) {
+        buffer[0] = (byte) (0x80 | opcode);
+        if (payloadLength < 126) {
+            buffer[1] = (byte) payloadLength;
+            return 2;
+        }
+        if (payloadLength <= 0xFFFF) {
+            buffer[1] = 126;
+            buffer[2] = (byte) (payloadLength >>> 8);
+            buffer[3] = (byte) payloadLength;
+            return 4;
+        }
+        buffer[1] = 127;
+        for (int i = 0; i < 8; i++) {
+            buffer[2 + i] = (byte) (payloadLength >>> (56 - 8 * i));
+        }
+        return 10;
+    }
+
+    static void writeFrame(OutputStream out, int opcode, byte[] payload, int offset, int length) throws IOException {
+        byte[] header = new byte[10];
+        int headerLength = frameHeader(header, opcode, length);
+        out.write(header, 0, headerLength);
+        out.write(payload, offset, length);
+    }
+
+    /**
+     * Кадр клиента: код операции и снятая маской полезная нагрузка
+     */
+    static final class Frame {
+        final int opcode;
+        final byte[] payload;
+
+        Frame(int opcode, byte[] payload) {
+            this.opcode = opcode;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Прочитать кадр клиента. Клиенты нам только отвечают на ping и закрывают
+     * соединение, поэтому большие кадры не поддерживаются.
+     */
+    static Frame readFrame(InputStream in) throws IOException {
+        int b0 = readByte(in);
+        int b1 = readByte(in);
+        long length = b1 & 0x7F;
+        if (length == 126) {
+            length = (readByte(in) << 8) | readByte(in);
+        } else if (length == 127) {
+            length = 0;
+            for (int i = 0; i < 8; i++) {
+                length = (length << 8) | readByte(in);
+            }
+        }
+        // Старший бит 64-битной длины даёт отрицательное число
+        if (length < 0 || length > MAX_CLIENT_FRAME) {
+            throw new IOException("Слишком большой кадр клиента: " + length);
+        }
+        byte[] mask = new byte[4];
+        boolean masked = (b1 & 0x80) != 0;
+        if (masked) {
+            readFully(in, mask);
+        }
+        byte[] payload = new byte[(int) length];
+        readFully(in, payload);
+        if (masked) {
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= mask[i & 3];
+            }
+        }
+        return new Frame(b0 & 0x0F, payload);
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+        int read = 0;
+        while (read < buffer.length) {
+            int n = in.read(buffer, read, buffer.length - read);
+            if (n == -1) {
+                throw new EOFException();
+            }
+            read += n;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.arduino.pipeline;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Выход стадии: кольца всех следующих за ней стадий.
+ *
+ * Событие заполняется прямо в слоте первого кольца; в остальные кольца
+ * оно копируется при публикации. У каждого кольца своя политика
+ * переполнения: в кольцо с {@link OverflowPolicy#DROP_NEWEST} событие не
+ * попадает, если там нет места, и поток стадии не ждёт медленного
+ * потребителя. Если места нет в первом кольце, событие пишется
+ * в запасной экземпляр, чтобы остальные кольца его всё равно получили.
+ *
+ * Каждый поток стадии пишет через свой экземпляр Output.
+ */
+public class Output<E> {
+
+    private final Stage<?, E> owner;
+    private final Stage<E, ?>[] targets;
+    private final BiConsumer<E, E> copier;
+    private final E spare;
+    private E current;
+    private long currentSequence;
+
+    Output(Stage<?, E> owner, Stage<E, ?>[] targets, E spare, BiConsumer<E, E> copier) {
+        this.owner = owner;
+        this.targets = targets;
+        this.spare = spare;
+        this.copier = copier;
+    }
+
+    /**
+     * Событие для заполнения; повторный вызов до publish() вернёт то же событие
+     */
+    public E claim() {
+        if (current == null) {
+            if (targets.length > 0) {
+                currentSequence = next(targets[0]);
+                current = currentSequence >= 0 ? targets[0].getInput().get(currentSequence) : spare;
+            } else {
+                currentSequence = -1;
+                current = spare;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Опубликовать событие, выданное claim()
+     */
+    public void publish() {
+        if (current == null) {
+            throw new IllegalStateException("publish() без claim()");
+        }
+        for (int i = 1; i < targets.length; i++) {
+            long sequence = next(targets[i]);
+            if (sequence >= 0) {
+                RingBuffer<E> ring = targets[i].getInput();
+                copier.accept(current, ring.get(sequence));
+                ring.publish(sequence);
+            }
+        }
+        if (currentSequence >= 0) {
+            targets[0].getInput().publish(currentSequence);
+        }
+        current = null;
+        owner.published.increment();
+    }
+
+    private long next(Stage<E, ?> target) {
+        RingBuffer<E> ring = target.getInput();
+        long sequence = ring.tryNext();
+        if (sequence >= 0) {
+            return sequence;
+        }
+        if (target.getOverflowPolicy() == OverflowPolicy.DROP_NEWEST) {
+            target.dropped.increment();
+            return -1;
+        }
+        long start = System.nanoTime();
+        sequence = ring.next();
+        owner.blockedNanos.add(System.nanoTime() - start);
+        return sequence;
+    }
+}
@@ -0,0 +1,11 @@
+package com.arduino.pipeline;
+
+/**
+ * Что делает производитель, когда кольцо следующей стадии заполнено
+ */
+public enum OverflowPolicy {
+    /** Ждать места: ничего не теряется, но медленная стадия тормозит предыдущие */
+    BLOCK,
+    /** Выбросить новое событие и учесть его: для консоли и трансляции, где важнее свежесть */
+    DROP_NEWEST
+}
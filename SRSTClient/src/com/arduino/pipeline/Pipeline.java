@@ -0,0 +1,167 @@
+package com.arduino.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Конвейер обработки: источник и стадии, связанные кольцами {@link RingBuffer}.
+ *
+ * Каждая стадия работает в своих потоках и общается с соседями только
+ * через кольца заранее созданных событий, поэтому короткие задержки
+ * писателя или консоли гасятся кольцом и не доходят до чтения из порта.
+ * Дальше всё решает политика стадии: при {@link OverflowPolicy#DROP_NEWEST}
+ * лишние события выбрасываются и учитываются, и чтение не ждёт никогда;
+ * при {@link OverflowPolicy#BLOCK} (по умолчанию) предыдущая стадия ждёт
+ * места, так что писатель, который отстаёт дольше, чем заполняется кольцо
+ * (медленный диск), в итоге тормозит и чтение. Ожидание видно в {@link #report()}.
+ * <pre>
+ * Pipeline pipeline = new Pipeline("scan");
+ * Stage&lt;Void, ByteChunk&gt; reader = pipeline.source("reader", source, ByteChunk::new, ByteChunk::copy);
+ * Stage&lt;ByteChunk, SampleEvent&gt; decoder = pipeline.stage("decoder", reader, handler, SampleEvent::new, SampleEvent::copy);
+ * pipeline.sink("csv", decoder, csv);
+ * pipeline.sink("console", decoder, console).setOverflowPolicy(OverflowPolicy.DROP_NEWEST);
+ * pipeline.start();
+ * </pre>
+ * Стадия может идти только после своей предыдущей, так что порядок
+ * объявления — это порядок остановки: {@link #close()} останавливает
+ * источники и по очереди дочитывает кольца остальных стадий.
+ */
+public class Pipeline implements AutoCloseable {
+
+    private final String name;
+    private final List<Stage<?, ?>> stages = new ArrayList<>();
+    private Supplier<WaitStrategy> defaultWaitStrategy = WaitStrategy::sleeping;
+    private boolean started;
+    private boolean closed;
+
+    public Pipeline(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Добавить источник
+     * @param factory создаёт события для кольца следующей стадии
+     * @param copier копирует событие, когда следующих стадий несколько
+     */
+    public <O> Stage<Void, O> source(String name, Source<O> source, Supplier<O> factory, BiConsumer<O, O> copier) {
+        return add(new Stage<>(this, name, null, source, null, factory, copier));
+    }
+
+    /**
+     * Добавить промежуточную стадию
+     */
+    public <I, O> Stage<I, O> stage(String name, Stage<?, I> upstream, StageHandler<I, O> handler,
+                                    Supplier<O> factory, BiConsumer<O, O> copier) {
+        Stage<I, O> stage = add(new Stage<>(this, name, upstream, null, handler, factory, copier));
+        upstream.addDownstream(stage);
+        return stage;
+    }
+
+    /**
+     * Добавить конечную стадию без выхода (писатель, трансляция)
+     */
+    public <I> Stage<I, Void> sink(String name, Stage<?, I> upstream, StageHandler<I, Void> handler) {
+        return stage(name, upstream, handler, null, null);
+    }
+
+    private synchronized <I, O> Stage<I, O> add(Stage<I, O> stage) {
+        if (started) {
+            throw new IllegalStateException("Конвейер " + name + " уже запущен");
+        }
+        for (Stage<?, ?> existing : stages) {
+            if (existing.getName().equals(stage.getName())) {
+                throw new IllegalArgumentException("Стадия " + stage.getName() + " уже есть");
+            }
+        }
+        stages.add(stage);
+        return stage;
+    }
+
+    /**
+     * Создать кольца и запустить потоки всех стадий
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        for (Stage<?, ?> stage : stages) {
+            stage.prepare(defaultWaitStrategy);
+        }
+        for (Stage<?, ?> stage : stages) {
+            stage.createWorkers();
+        }
+        started = true;
+        // Потребители раньше производителей: источник запускается последним
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            stages.get(i).launch();
+        }
+    }
+
+    /**
+     * Дождаться, пока все источники закончатся (например, подключение потеряно)
+     * @return true, если источники закончились за отведённое время
+     */
+    public boolean awaitSources(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (Stage<?, ?> stage : stages) {
+            if (stage.isSource() && !stage.awaitSource(Math.max(1, deadline - System.currentTimeMillis()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Остановить источники, дождаться, пока стадии дочитают свои кольца,
+     * и завершить обработчики. Ничто из уже прочитанного не теряется.
+     * Прерывание потока не обрывает остановку, флаг прерывания сохраняется
+     */
+    @Override
+    public synchronized void close() {
+        if (!started || closed) {
+            return;
+        }
+        closed = true;
+        for (Stage<?, ?> stage : stages) {
+            if (stage.isSource()) {
+                stage.stopSource();
+            } else {
+                stage.drain();
+            }
+        }
+    }
+
+    /**
+     * Счётчики всех стадий, по строке на стадию
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder("Конвейер ").append(name).append(':');
+        for (Stage<?, ?> stage : stages) {
+            report.append("\n  ").append(stage.summary());
+        }
+        return report.toString();
+    }
+
+    // Геттеры и сеттеры
+    public String getName() {
+        return name;
+    }
+
+    public List<Stage<?, ?>> getStages() {
+        return Collections.unmodifiableList(stages);
+    }
+
+    /**
+     * @param defaultWaitStrategy стратегия для стадий, где она не задана явно (новый экземпляр на стадию)
+     */
+    public void setDefaultWaitStrategy(Supplier<WaitStrategy> defaultWaitStrategy) {
+        this.defaultWaitStrategy = defaultWaitStrategy;
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+}
@@ -0,0 +1,234 @@
+package com.arduino.pipeline;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
+
+/**
+ * Кольцо заранее созданных событий между двумя стадиями конвейера.
+ *
+ * Производитель занимает номер слота, заполняет событие на месте и
+ * публикует номер; потребители читают события по возрастанию номеров
+ * и сдвигают свои {@link Sequence}. Слот снова выдаётся производителю,
+ * только когда его прошли все потребители (gating). Блокировок нет:
+ * один производитель просто сдвигает курсор, несколько — занимают номера
+ * через CAS и отмечают публикацию номером круга в массиве флагов.
+ *
+ * События не создаются в работе, поэтому поток отсчётов не нагружает сборщик мусора.
+ */
+public class RingBuffer<E> {
+
+    private final Object[] entries;
+    private final int mask;
+    private final int shift;
+    private final boolean multiProducer;
+    private final WaitStrategy waitStrategy;
+
+    /** Один производитель: последний опубликованный номер; несколько: последний занятый */
+    private final Sequence cursor = new Sequence(-1);
+    /** Несколько производителей: номер круга, опубликованный в слоте */
+    private final AtomicIntegerArray published;
+    private final Sequence gatingCache = new Sequence(-1);
+    private volatile Sequence[] gating = new Sequence[0];
+    private volatile boolean closed;
+
+    /** Один производитель: последний занятый номер (пишет только поток производителя) */
+    private long claimed = -1;
+
+    /**
+     * Конструктор
+     * @param capacity число слотов, округляется вверх до степени двойки
+     * @param factory создаёт события для всех слотов сразу
+     * @param multiProducer пишут ли в кольцо несколько потоков
+     */
+    public RingBuffer(int capacity, Supplier<E> factory, boolean multiProducer, WaitStrategy waitStrategy) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Недопустимый размер кольца: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.entries = new Object[size];
+        for (int i = 0; i < size; i++) {
+            entries[i] = factory.get();
+        }
+        this.mask = size - 1;
+        this.shift = Integer.numberOfTrailingZeros(size);
+        this.multiProducer = multiProducer;
+        this.waitStrategy = waitStrategy;
+        if (multiProducer) {
+            published = new AtomicIntegerArray(size);
+            for (int i = 0; i < size; i++) {
+                published.set(i, -1);
+            }
+        } else {
+            published = null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[(int) sequence & mask];
+    }
+
+    /**
+     * Добавить потребителя: его слоты не будут выданы производителю,
+     * пока он их не пройдёт
+     */
+    public synchronized void addGatingSequences(Sequence... sequences) {
+        long current = cursor.get();
+        for (Sequence sequence : sequences) {
+            sequence.set(current);
+        }
+        Sequence[] updated = Arrays.copyOf(gating, gating.length + sequences.length);
+        System.arraycopy(sequences, 0, updated, gating.length, sequences.length);
+        gating = updated;
+    }
+
+    /**
+     * Занять следующий слот, если он свободен
+     * @return номер слота или -1, если кольцо заполнено
+     */
+    public long tryNext() {
+        return multiProducer ? tryNextShared() : tryNextSingle();
+    }
+
+    /**
+     * Занять следующий слот, дожидаясь места
+     * @return номер слота или -1, если кольцо закрыто
+     */
+    public long next() {
+        long sequence;
+        int attempt = 0;
+        while ((sequence = tryNext()) < 0) {
+            if (closed) {
+                return -1;
+            }
+            waitStrategy.idle(attempt++);
+        }
+        return sequence;
+    }
+
+    private long tryNextSingle() {
+        long next = claimed + 1;
+        long wrapPoint = next - entries.length;
+        long cached = gatingCache.get();
+        if (wrapPoint > cached) {
+            long min = Sequence.minimum(gating, claimed);
+            gatingCache.set(min);
+            if (wrapPoint > min) {
+                return -1;
+            }
+        }
+        claimed = next;
+        return next;
+    }
+
+    private long tryNextShared() {
+        while (true) {
+            long current = cursor.get();
+            long next = current + 1;
+            long wrapPoint = next - entries.length;
+            long cached = gatingCache.get();
+            if (wrapPoint > cached || cached > current) {
+                long min = Sequence.minimum(gating, current);
+                gatingCache.set(min);
+                if (wrapPoint > min) {
+                    return -1;
+                }
+            } else if (cursor.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Опубликовать заполненный слот
+     */
+    public void publish(long sequence) {
+        if (multiProducer) {
+            published.lazySet((int) sequence & mask, (int) (sequence >>> shift));
+        } else {
+            cursor.set(sequence);
+        }
+        waitStrategy.signalAll();
+    }
+
+    /**
+     * Дождаться публикации слота
+     * @return наибольший номер, до которого все слоты опубликованы (не меньше sequence),
+     * или sequence - 1, если кольцо закрыто и больше данных не будет
+     */
+    public long waitFor(long sequence) {
+        int attempt = 0;
+        while (true) {
+            // closed читается до курсора: close() идёт после последней публикации,
+            // поэтому курсор, прочитанный после closed == true, уже окончательный
+            boolean wasClosed = closed;
+            long available = cursor.get();
+            if (available >= sequence) {
+                long highest = highestPublished(sequence, available);
+                if (highest >= sequence) {
+                    return highest;
+                }
+            }
+            if (wasClosed) {
+                // Номер занят, но так и не опубликован — дальше данных не будет
+                return sequence - 1;
+            }
+            waitStrategy.idle(attempt++);
+        }
+    }
+
+    private long highestPublished(long from, long available) {
+        if (!multiProducer) {
+            return available;
+        }
+        for (long sequence = from; sequence <= available; sequence++) {
+            if (published.get((int) sequence & mask) != (int) (sequence >>> shift)) {
+                return sequence - 1;
+            }
+        }
+        return available;
+    }
+
+    /**
+     * Сообщить производителям, что потребитель освободил слоты
+     */
+    public void signalConsumed() {
+        waitStrategy.signalAll();
+    }
+
+    /**
+     * Больше публикаций не будет: потребители дочитают кольцо и выйдут
+     */
+    public void close() {
+        closed = true;
+        waitStrategy.signalAll();
+    }
+
+    /**
+     * Занято слотов, которые ещё не прошли все потребители
+     */
+    public long backlog() {
+        long current = cursor.get();
+        return current - Sequence.minimum(gating, current);
+    }
+
+    public int getCapacity() {
+        return entries.length;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public boolean isMultiProducer() {
+        return multiProducer;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+}
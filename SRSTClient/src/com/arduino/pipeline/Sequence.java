@@ -0,0 +1,65 @@
+package com.arduino.pipeline;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Номер слота кольца: последний занятый производителем или последний
+ * обработанный потребителем.
+ *
+ * Значение окружено заполнителями, чтобы счётчики производителя и
+ * потребителей, которые пишут разные потоки, не попадали в одну линию кэша.
+ */
+public class Sequence {
+
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(Sequence.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private long p1, p2, p3, p4, p5, p6, p7;
+    private volatile long value;
+    @SuppressWarnings("unused")
+    private long p9, p10, p11, p12, p13, p14, p15;
+
+    public Sequence(long initial) {
+        VALUE.setRelease(this, initial);
+    }
+
+    public long get() {
+        return value;
+    }
+
+    /**
+     * Записать без полного барьера: читатели увидят значение вместе
+     * со всем, что поток записал до него
+     */
+    public void set(long value) {
+        VALUE.setRelease(this, value);
+    }
+
+    public boolean compareAndSet(long expected, long value) {
+        return VALUE.compareAndSet(this, expected, value);
+    }
+
+    /**
+     * Наименьшее значение из набора, но не больше min
+     */
+    static long minimum(Sequence[] sequences, long min) {
+        for (Sequence sequence : sequences) {
+            min = Math.min(min, sequence.get());
+        }
+        return min;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
@@ -0,0 +1,21 @@
+package com.arduino.pipeline;
+
+/**
+ * Источник событий для первой стадии конвейера, например чтение из подключения.
+ * Вызывается в цикле из одного потока.
+ */
+public interface Source<O> {
+
+    /**
+     * Прочитать, что есть, и опубликовать в output
+     * @return сколько событий опубликовано, 0 если данных пока нет,
+     * -1 если источник закончился (например, подключение потеряно)
+     */
+    int poll(Output<O> output) throws Exception;
+
+    /**
+     * Конвейер остановлен
+     */
+    default void close() throws Exception {
+    }
+}
@@ -0,0 +1,409 @@
+package com.arduino.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Стадия конвейера: кольцо на входе, обработчик и его потоки.
+ *
+ * Стадия с параллельностью 1 читает своё кольцо пачками и сохраняет
+ * порядок событий. При большей параллельности потоки разбирают слоты
+ * по одному через общий счётчик, и порядок на выходе не гарантирован;
+ * так стоит делать только для обработки без состояния (пересчёт
+ * координат, фильтры). Стадия-источник вместо кольца опрашивает {@link Source}.
+ *
+ * Создаётся через {@link Pipeline}; настройки задаются до {@link Pipeline#start()}.
+ */
+public class Stage<I, O> {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final Pipeline pipeline;
+    private final String name;
+    private final Source<O> source;
+    private final StageHandler<I, O> handler;
+    private final Supplier<O> factory;
+    private final BiConsumer<O, O> copier;
+    private final Stage<?, I> upstream;
+    private final List<Stage<O, ?>> downstream = new ArrayList<>();
+
+    private int capacity = DEFAULT_CAPACITY;
+    private int parallelism = 1;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private WaitStrategy waitStrategy;
+
+    private RingBuffer<I> input;
+    private Thread[] threads = new Thread[0];
+    private volatile boolean running;
+
+    final LongAdder processed = new LongAdder();
+    final LongAdder published = new LongAdder();
+    final LongAdder dropped = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder blockedNanos = new LongAdder();
+    private volatile long maxPollNanos;
+
+    Stage(Pipeline pipeline, String name, Stage<?, I> upstream, Source<O> source, StageHandler<I, O> handler,
+          Supplier<O> factory, BiConsumer<O, O> copier) {
+        this.pipeline = pipeline;
+        this.name = name;
+        this.upstream = upstream;
+        this.source = source;
+        this.handler = handler;
+        this.factory = factory;
+        this.copier = copier;
+    }
+
+    void addDownstream(Stage<O, ?> stage) {
+        if (factory == null) {
+            throw new IllegalArgumentException("У стадии " + name + " нет выхода");
+        }
+        downstream.add(stage);
+    }
+
+    public boolean isSource() {
+        return source != null;
+    }
+
+    /**
+     * Создать входное кольцо. Вызывается до запуска потоков всех стадий,
+     * чтобы выходы предыдущих стадий уже видели кольца следующих
+     */
+    void prepare(Supplier<WaitStrategy> defaultWaitStrategy) {
+        if (waitStrategy == null) {
+            waitStrategy = defaultWaitStrategy.get();
+        }
+        if (downstream.size() > 1 && copier == null) {
+            throw new IllegalStateException("Стадия " + name + " раздаёт события нескольким стадиям, нужна функция копирования");
+        }
+        if (!isSource()) {
+            input = new RingBuffer<>(capacity, upstream.factory, upstream.parallelism > 1, waitStrategy);
+        }
+    }
+
+    /**
+     * Зарегистрировать потребителей во входном кольце и создать потоки.
+     * Потоки всех стадий запускаются только после этого, иначе производитель
+     * мог бы обогнать ещё не учтённого потребителя
+     */
+    void createWorkers() {
+        String prefix = pipeline.getName() + "-" + name;
+        if (isSource()) {
+            threads = new Thread[]{new Thread(this::runSource, prefix)};
+        } else if (parallelism == 1) {
+            Sequence sequence = new Sequence(-1);
+            input.addGatingSequences(sequence);
+            threads = new Thread[]{new Thread(() -> runBatches(sequence), prefix)};
+        } else {
+            Sequence[] sequences = new Sequence[parallelism];
+            for (int i = 0; i < parallelism; i++) {
+                sequences[i] = new Sequence(-1);
+            }
+            input.addGatingSequences(sequences);
+            Sequence work = new Sequence(-1);
+            threads = new Thread[parallelism];
+            for (int i = 0; i < parallelism; i++) {
+                Sequence sequence = sequences[i];
+                threads[i] = new Thread(() -> runWorker(sequence, work), prefix + "-" + i);
+            }
+        }
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+        }
+    }
+
+    void launch() {
+        running = true;
+        for (Thread thread : threads) {
+            thread.start();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Output<O> newOutput() {
+        if (factory == null) {
+            return null;
+        }
+        Stage<O, ?>[] targets = (Stage<O, ?>[]) downstream.toArray(new Stage<?, ?>[0]);
+        return new Output<>(this, targets, factory.get(), copier);
+    }
+
+    private void runSource() {
+        Output<O> output = newOutput();
+        int attempt = 0;
+        try {
+            while (running) {
+                long start = System.nanoTime();
+                int events = source.poll(output);
+                long elapsed = System.nanoTime() - start;
+                if (elapsed > maxPollNanos) {
+                    maxPollNanos = elapsed;
+                }
+                if (events < 0) {
+                    break;
+                }
+                if (events == 0) {
+                    waitStrategy.idle(attempt++);
+                } else {
+                    attempt = 0;
+                }
+            }
+        } catch (Exception e) {
+            error(e);
+        }
+        running = false;
+    }
+
+    /**
+     * Один поток: события по порядку, onBatchEnd после каждой пачки
+     */
+    private void runBatches(Sequence sequence) {
+        Output<O> output = newOutput();
+        long next = sequence.get() + 1;
+        while (true) {
+            long available = input.waitFor(next);
+            if (available < next) {
+                break;
+            }
+            for (; next <= available; next++) {
+                handle(input.get(next), output);
+                // Слот освобождается сразу: медленный писатель не держит целую пачку
+                sequence.set(next);
+                input.signalConsumed();
+            }
+            batchEnd(output);
+        }
+    }
+
+    /**
+     * Несколько потоков: каждый занимает следующий номер через общий счётчик
+     */
+    private void runWorker(Sequence sequence, Sequence work) {
+        Output<O> output = newOutput();
+        boolean claimNext = true;
+        boolean pending = false;
+        long next = 0;
+        long available = -1;
+        while (true) {
+            if (claimNext) {
+                claimNext = false;
+                do {
+                    next = work.get() + 1;
+                    // Сначала сдвинуть свой номер, чтобы занятый слот не выдали производителю
+                    sequence.set(next - 1);
+                } while (!work.compareAndSet(next - 1, next));
+                input.signalConsumed();
+            }
+            if (available >= next) {
+                handle(input.get(next), output);
+                claimNext = true;
+                pending = true;
+            } else {
+                if (pending) {
+                    batchEnd(output);
+                    pending = false;
+                }
+                available = input.waitFor(next);
+                if (available < next) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private void handle(I event, Output<O> output) {
+        try {
+            handler.onEvent(event, output);
+        } catch (Exception e) {
+            error(e);
+        }
+        processed.increment();
+    }
+
+    private void batchEnd(Output<O> output) {
+        try {
+            handler.onBatchEnd(output);
+        } catch (Exception e) {
+            error(e);
+        }
+    }
+
+    private void error(Exception e) {
+        errors.increment();
+        if (errors.sum() == 1) {
+            System.err.println("Конвейер " + pipeline.getName() + ", стадия " + name + ": " + e);
+        }
+    }
+
+    /**
+     * Остановить источник и дождаться его потока
+     */
+    void stopSource() {
+        running = false;
+        join();
+        try {
+            source.close();
+        } catch (Exception e) {
+            error(e);
+        }
+    }
+
+    /**
+     * Закрыть входное кольцо, дождаться, пока потоки его дочитают, и завершить обработчик.
+     * Вызывается, когда предыдущая стадия уже остановлена
+     */
+    void drain() {
+        input.close();
+        join();
+        running = false;
+        try {
+            handler.onShutdown();
+        } catch (Exception e) {
+            error(e);
+        }
+    }
+
+    boolean awaitSource(long timeoutMs) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(timeoutMs);
+        }
+        return !running;
+    }
+
+    /**
+     * Дождаться потоков стадии. Прерывание не обрывает ожидание: иначе
+     * следующие стадии остались бы недочитанными; флаг прерывания восстанавливается в конце
+     */
+    private void join() {
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public String summary() {
+        StringBuilder text = new StringBuilder(String.format("%-10s", name));
+        if (isSource()) {
+            text.append(String.format(" источник: событий %d, самый долгий опрос %.2f мс",
+                    published.sum(), maxPollNanos / 1e6));
+        } else {
+            text.append(String.format(" потоков %d, обработано %d, в кольце %d/%d, выброшено на входе %d",
+                    parallelism, processed.sum(), input != null ? input.backlog() : 0, capacity, dropped.sum()));
+        }
+        if (factory != null) {
+            text.append(String.format(", ожидание места дальше %.1f мс", blockedNanos.sum() / 1e6));
+        }
+        if (errors.sum() > 0) {
+            text.append(", ошибок ").append(errors.sum());
+        }
+        return text.toString();
+    }
+
+    // Геттеры и сеттеры
+    public String getName() {
+        return name;
+    }
+
+    RingBuffer<I> getInput() {
+        return input;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @param capacity слотов во входном кольце (округляется вверх до степени двойки)
+     */
+    public Stage<I, O> setCapacity(int capacity) {
+        this.capacity = capacity;
+        return this;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism потоков стадии; больше 1 — только для обработчиков без состояния
+     */
+    public Stage<I, O> setParallelism(int parallelism) {
+        if (isSource() && parallelism != 1) {
+            throw new IllegalArgumentException("Источник читается одним потоком");
+        }
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * @param overflowPolicy что делать предыдущей стадии, когда входное кольцо заполнено
+     */
+    public Stage<I, O> setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * @param waitStrategy ожидание на входном кольце; у источника — пауза, когда данных нет
+     */
+    public Stage<I, O> setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        return this;
+    }
+
+    /**
+     * Событий прочитано из кольца (у источника — опубликовано)
+     */
+    public long getProcessed() {
+        return isSource() ? published.sum() : processed.sum();
+    }
+
+    public long getPublished() {
+        return published.sum();
+    }
+
+    /**
+     * Событий, не попавших во входное кольцо из-за {@link OverflowPolicy#DROP_NEWEST}
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * Сколько потоки стадии ждали места в кольцах следующих стадий
+     */
+    public long getBlockedNanos() {
+        return blockedNanos.sum();
+    }
+
+    /**
+     * Самый долгий вызов {@link Source#poll} (только у источника)
+     */
+    public long getMaxPollNanos() {
+        return maxPollNanos;
+    }
+}
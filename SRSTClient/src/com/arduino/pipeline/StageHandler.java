@@ -0,0 +1,32 @@
+package com.arduino.pipeline;
+
+/**
+ * Обработчик стадии конвейера.
+ *
+ * Событие на входе принадлежит кольцу: после возврата из onEvent слот
+ * может быть перезаписан, поэтому ссылки на него хранить нельзя. Результат
+ * пишется в событие, выданное {@link Output#claim()}, и публикуется
+ * {@link Output#publish()}; на одно входное событие можно опубликовать
+ * сколько угодно выходных, в том числе ни одного. У последних стадий
+ * (писатели, трансляция) выхода нет и output равен null.
+ *
+ * При параллельности больше 1 один обработчик вызывается из нескольких
+ * потоков сразу и должен быть потокобезопасным.
+ */
+@FunctionalInterface
+public interface StageHandler<I, O> {
+
+    void onEvent(I event, Output<O> output) throws Exception;
+
+    /**
+     * Пачка доступных событий закончилась: время сбросить буферы
+     */
+    default void onBatchEnd(Output<O> output) throws Exception {
+    }
+
+    /**
+     * Конвейер остановлен и кольцо стадии дочитано
+     */
+    default void onShutdown() throws Exception {
+    }
+}
@@ -0,0 +1,183 @@
+package com.arduino.pipeline;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Как ждать, пока в кольце появятся данные (потребитель) или место
+ * (производитель). Условие проверяет вызывающий; стратегия решает только,
+ * чем занять поток между проверками.
+ *
+ * Стратегия принадлежит одному кольцу: у блокирующей есть своё состояние.
+ */
+public interface WaitStrategy {
+
+    /**
+     * Подождать перед следующей проверкой
+     * @param attempt сколько проверок подряд уже не удались
+     */
+    void idle(int attempt);
+
+    /**
+     * Сообщить ждущим, что кольцо изменилось
+     */
+    default void signalAll() {
+    }
+
+    /**
+     * Крутиться на ядре: наименьшая задержка, но ядро занято целиком.
+     * Годится, только если ядер больше, чем потоков конвейера
+     */
+    static WaitStrategy busySpin() {
+        return new BusySpin();
+    }
+
+    /**
+     * Недолго крутиться, потом уступать ядро другим потокам
+     */
+    static WaitStrategy yielding() {
+        return new Yielding();
+    }
+
+    /**
+     * Крутиться, уступать, а потом засыпать на 100 мкс
+     */
+    static WaitStrategy sleeping() {
+        return new Sleeping(TimeUnit.MICROSECONDS.toNanos(100));
+    }
+
+    static WaitStrategy sleeping(long sleepNanos) {
+        return new Sleeping(sleepNanos);
+    }
+
+    /**
+     * Ждать на условии, пока другая сторона не разбудит: меньше всего
+     * нагружает процессор, но пробуждение дороже
+     */
+    static WaitStrategy blocking() {
+        return new Blocking();
+    }
+
+    /**
+     * Стратегия по имени: busy-spin, yielding, sleeping или blocking
+     */
+    static WaitStrategy named(String name) {
+        switch (name.trim().toLowerCase()) {
+            case "busy-spin":
+            case "busyspin":
+                return busySpin();
+            case "yielding":
+                return yielding();
+            case "sleeping":
+                return sleeping();
+            case "blocking":
+                return blocking();
+            default:
+                throw new IllegalArgumentException("Неизвестная стратегия ожидания: " + name);
+        }
+    }
+
+    class BusySpin implements WaitStrategy {
+        @Override
+        public void idle(int attempt) {
+            Thread.onSpinWait();
+        }
+
+        @Override
+        public String toString() {
+            return "busy-spin";
+        }
+    }
+
+    class Yielding implements WaitStrategy {
+        private static final int SPINS = 100;
+
+        @Override
+        public void idle(int attempt) {
+            if (attempt < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "yielding";
+        }
+    }
+
+    class Sleeping implements WaitStrategy {
+        private static final int SPINS = 100;
+        private static final int YIELDS = 100;
+        private final long sleepNanos;
+
+        Sleeping(long sleepNanos) {
+            this.sleepNanos = sleepNanos;
+        }
+
+        @Override
+        public void idle(int attempt) {
+            if (attempt < SPINS) {
+                Thread.onSpinWait();
+            } else if (attempt < SPINS + YIELDS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(sleepNanos);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "sleeping";
+        }
+    }
+
+    class Blocking implements WaitStrategy {
+        private static final int SPINS = 100;
+        /** Страховка от пропущенного сигнала между проверкой и ожиданием */
+        private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        @Override
+        public void idle(int attempt) {
+            if (attempt < SPINS) {
+                Thread.onSpinWait();
+                return;
+            }
+            lock.lock();
+            waiters.incrementAndGet();
+            try {
+                changed.awaitNanos(MAX_WAIT_NANOS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                waiters.decrementAndGet();
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void signalAll() {
+            // Без ждущих сигнал ничего не стоит: блокировка не берётся
+            if (waiters.get() > 0) {
+                lock.lock();
+                try {
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "blocking";
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.arduino.pipeline.stages;
+
+/**
+ * Порция байтов, прочитанная из подключения за один вызов
+ */
+public class ByteChunk {
+
+    public static final int CAPACITY = 4096;
+
+    private final byte[] data = new byte[CAPACITY];
+    private int length;
+    private long nanos;
+
+    /**
+     * Заполнить порцию
+     * @param nanos время чтения по System.nanoTime()
+     */
+    public void set(byte[] source, int offset, int length, long nanos) {
+        System.arraycopy(source, offset, data, 0, length);
+        this.length = length;
+        this.nanos = nanos;
+    }
+
+    public static void copy(ByteChunk from, ByteChunk to) {
+        to.set(from.data, 0, from.length, from.nanos);
+    }
+
+    // Геттеры
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+}
@@ -0,0 +1,50 @@
+package com.arduino.pipeline.stages;
+
+import com.arduino.pipeline.Output;
+import com.arduino.pipeline.StageHandler;
+import com.arduino.profiling.ConversionEvent;
+
+/**
+ * Пересчёт углов и дальности в декартовы координаты, как в {@link com.arduino.scan.Scan}.
+ * Общего состояния нет, стадию можно запускать в несколько потоков; каждая
+ * пачка потока записывается в JFR одним {@link ConversionEvent} с назначением "pipeline"
+ */
+public class CartesianConverter implements StageHandler<SampleEvent, SampleEvent> {
+
+    private final ThreadLocal<Batch> batches = ThreadLocal.withInitial(Batch::new);
+
+    @Override
+    public void onEvent(SampleEvent event, Output<SampleEvent> output) {
+        Batch batch = batches.get();
+        if (batch.event == null) {
+            batch.event = new ConversionEvent("pipeline");
+        }
+        batch.points++;
+        double t = Math.toRadians(event.getTheta());
+        double p = Math.toRadians(event.getPhi());
+        double r = event.getR();
+        double sinT = Math.sin(t);
+        SampleEvent converted = output.claim();
+        SampleEvent.copy(event, converted);
+        converted.setCartesian(r * sinT * Math.cos(p), r * sinT * Math.sin(p), r * Math.cos(t));
+        output.publish();
+    }
+
+    @Override
+    public void onBatchEnd(Output<SampleEvent> output) {
+        Batch batch = batches.get();
+        if (batch.event != null) {
+            batch.event.complete(batch.points);
+            batch.event = null;
+            batch.points = 0;
+        }
+    }
+
+    /**
+     * Открытая пачка потока
+     */
+    private static final class Batch {
+        ConversionEvent event;
+        long points;
+    }
+}
@@ -0,0 +1,62 @@
+package com.arduino.pipeline.stages;
+
+import com.arduino.connection.ArduinoConnection;
+import com.arduino.connection.protocol.BinarySampleDecoder;
+import com.arduino.pipeline.Output;
+import com.arduino.pipeline.Source;
+
+/**
+ * Чтение байтов из подключения. Поток источника ничего не разбирает и
+ * не пишет, а только перекладывает прочитанное в кольцо, поэтому входной
+ * буфер порта освобождается с той скоростью, с какой приходят данные.
+ */
+public class ConnectionSource implements Source<ByteChunk> {
+
+    private final ArduinoConnection connection;
+    private final byte[] buffer = new byte[ByteChunk.CAPACITY];
+    private boolean pendingTaken;
+    private long bytes;
+
+    public ConnectionSource(ArduinoConnection connection) {
+        this.connection = connection;
+    }
+
+    @Override
+    public int poll(Output<ByteChunk> output) {
+        int chunks = 0;
+        if (!pendingTaken) {
+            // Байты, пришедшие вместе с ответом на согласование двоичного протокола
+            pendingTaken = true;
+            BinarySampleDecoder decoder = connection.getBinaryDecoder();
+            byte[] pending = decoder != null ? decoder.takePendingInput() : null;
+            if (pending != null) {
+                for (int offset = 0; offset < pending.length; offset += ByteChunk.CAPACITY) {
+                    publish(output, pending, offset, Math.min(ByteChunk.CAPACITY, pending.length - offset));
+                    chunks++;
+                }
+            }
+        }
+        int n = connection.receiveData(buffer);
+        if (n < 0 || (n == 0 && !connection.isConnected())) {
+            return chunks > 0 ? chunks : -1;
+        }
+        if (n > 0) {
+            publish(output, buffer, 0, n);
+            chunks++;
+        }
+        return chunks;
+    }
+
+    private void publish(Output<ByteChunk> output, byte[] data, int offset, int length) {
+        output.claim().set(data, offset, length, System.nanoTime());
+        output.publish();
+        bytes += length;
+    }
+
+    /**
+     * Байт прочитано
+     */
+    public long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,38 @@
+package com.arduino.pipeline.stages;
+
+import com.arduino.pipeline.Output;
+import com.arduino.pipeline.StageHandler;
+import com.arduino.scan.ScanFiles;
+
+import java.io.PrintStream;
+
+/**
+ * Вывод отсчётов в консоль строками "phi;theta;r". Пачка печатается одним
+ * вызовом; консоль медленная, поэтому стадию стоит подключать
+ * с {@link com.arduino.pipeline.OverflowPolicy#DROP_NEWEST}
+ */
+public class ConsoleSink implements StageHandler<SampleEvent, Void> {
+
+    private final PrintStream out;
+    private final StringBuilder text = new StringBuilder();
+
+    public ConsoleSink(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void onEvent(SampleEvent event, Output<Void> output) {
+        text.append(ScanFiles.format(event.getPhi())).append(';')
+                .append(ScanFiles.format(event.getTheta())).append(';')
+                .append(ScanFiles.format(event.getR())).append(System.lineSeparator());
+    }
+
+    @Override
+    public void onBatchEnd(Output<Void> output) {
+        if (text.length() > 0) {
+            out.print(text);
+            out.flush();
+            text.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.arduino.pipeline.stages;
+
+import com.arduino.pipeline.Output;
+import com.arduino.pipeline.StageHandler;
+import com.arduino.scan.ScanFiles;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Запись отсчётов в CSV по мере поступления: в формате data.csv или,
+ * после {@link CartesianConverter}, как output.csv из ser.py.
+ * Буфер сбрасывается на диск после каждой пачки, а не после каждой строки
+ */
+public class CsvSink implements StageHandler<SampleEvent, Void> {
+
+    /**
+     * Состав колонок
+     */
+    public enum Layout {
+        /** phi; theta; r — как data.csv */
+        POLAR,
+        /** X,Y,Z,Radius,Phi,Theta — как output.csv */
+        CARTESIAN
+    }
+
+    private final Path path;
+    private final Layout layout;
+    private final Writer writer;
+    private final StringBuilder line = new StringBuilder(96);
+    private long count;
+
+    public CsvSink(Path path, Layout layout) throws IOException {
+        this.path = path;
+        this.layout = layout;
+        this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        writer.write(layout == Layout.POLAR ? "phi; theta; r\n" : "X,Y,Z,Radius,Phi,Theta\n");
+    }
+
+    @Override
+    public void onEvent(SampleEvent event, Output<Void> output) throws IOException {
+        line.setLength(0);
+        if (layout == Layout.POLAR) {
+            line.append(ScanFiles.format(event.getPhi())).append(';')
+                    .append(ScanFiles.format(event.getTheta())).append(';')
+                    .append(ScanFiles.format(event.getR())).append('\n');
+        } else {
+            ScanFiles.appendDecimal(line, event.getX()).append(',');
+            ScanFiles.appendDecimal(line, event.getY()).append(',');
+            ScanFiles.appendDecimal(line, event.getZ()).append(',');
+            ScanFiles.appendDecimal(line, event.getR()).append(',');
+            ScanFiles.appendDecimal(line, event.getPhi()).append(',');
+            ScanFiles.appendDecimal(line, event.getTheta()).append('\n');
+        }
+        writer.append(line);
+        count++;
+    }
+
+    @Override
+    public void onBatchEnd(Output<Void> output) throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void onShutdown() throws IOException {
+        writer.close();
+    }
+
+    // Геттеры
+    public Path getPath() {
+        return path;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
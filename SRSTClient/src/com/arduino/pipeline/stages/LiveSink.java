@@ -0,0 +1,22 @@
+package com.arduino.pipeline.stages;
+
+import com.arduino.live.LiveStreamServer;
+import com.arduino.pipeline.Output;
+import com.arduino.pipeline.StageHandler;
+
+/**
+ * Публикация отсчётов в живую трансляцию {@link LiveStreamServer}
+ */
+public class LiveSink implements StageHandler<SampleEvent, Void> {
+
+    private final LiveStreamServer live;
+
+    public LiveSink(LiveStreamServer live) {
+        this.live = live;
+    }
+
+    @Override
+    public void onEvent(SampleEvent event, Output<Void> output) {
+        live.publish(event.getPhi(), event.getTheta(), event.getR());
+    }
+}
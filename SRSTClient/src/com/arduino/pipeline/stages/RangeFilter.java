@@ -0,0 +1,64 @@
+package com.arduino.pipeline.stages;
+
+import com.arduino.pipeline.Output;
+import com.arduino.pipeline.StageHandler;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Пропускает дальше только отсчёты в заданных пределах дальности и углов,
+ * как фильтры задания съёмки. Состояния нет, кроме счётчика отброшенных
+ */
+public class RangeFilter implements StageHandler<SampleEvent, SampleEvent> {
+
+    private final double rMin;
+    private final double rMax;
+    private double phiMin = 0;
+    private double phiMax = 180;
+    private double thetaMin = 0;
+    private double thetaMax = 180;
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Конструктор
+     * @param rMin наименьшая дальность, см
+     * @param rMax наибольшая дальность, см
+     */
+    public RangeFilter(double rMin, double rMax) {
+        this.rMin = rMin;
+        this.rMax = rMax;
+    }
+
+    @Override
+    public void onEvent(SampleEvent event, Output<SampleEvent> output) {
+        double r = event.getR();
+        double phi = event.getPhi();
+        double theta = event.getTheta();
+        if (r >= rMin && r <= rMax && phi >= phiMin && phi <= phiMax && theta >= thetaMin && theta <= thetaMax) {
+            SampleEvent.copy(event, output.claim());
+            output.publish();
+        } else {
+            rejected.increment();
+        }
+    }
+
+    // Геттеры и сеттеры
+    public RangeFilter setPhiRange(double phiMin, double phiMax) {
+        this.phiMin = phiMin;
+        this.phiMax = phiMax;
+        return this;
+    }
+
+    public RangeFilter setThetaRange(double thetaMin, double thetaMax) {
+        this.thetaMin = thetaMin;
+        this.thetaMax = thetaMax;
+        return this;
+    }
+
+    /**
+     * Отсчётов, не прошедших фильтр
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
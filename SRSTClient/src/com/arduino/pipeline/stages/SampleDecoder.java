@@ -0,0 +1,108 @@
+package com.arduino.pipeline.stages;
+
+import com.arduino.connection.ArduinoConnection.WireProtocol;
+import com.arduino.connection.protocol.BinarySampleDecoder;
+import com.arduino.connection.protocol.SampleListener;
+import com.arduino.pipeline.Output;
+import com.arduino.pipeline.StageHandler;
+import com.arduino.profiling.FrameParseEvent;
+import com.arduino.scan.Scan;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Разбор порций байтов в отсчёты: строки "phi;theta;r" или кадры
+ * {@link BinarySampleDecoder}. Хранит недочитанную строку между порциями,
+ * поэтому работает только с параллельностью 1.
+ */
+public class SampleDecoder implements StageHandler<ByteChunk, SampleEvent>, SampleListener {
+
+    /** Строки скетча короче; длиннее — мусор после сбоя линии */
+    private static final int MAX_LINE = 64;
+
+    private final BinarySampleDecoder binary;
+    private final byte[] line = new byte[MAX_LINE];
+    private int lineLength;
+    private boolean lineOverflow;
+
+    private Output<SampleEvent> output;
+    private long nanos;
+    private long samples;
+    private long rejected;
+
+    /**
+     * Конструктор
+     * @param binary декодер двоичных кадров подключения или null для текстового протокола
+     */
+    public SampleDecoder(BinarySampleDecoder binary) {
+        this.binary = binary;
+    }
+
+    @Override
+    public void onEvent(ByteChunk chunk, Output<SampleEvent> output) {
+        this.output = output;
+        this.nanos = chunk.getNanos();
+        if (binary != null) {
+            binary.decode(chunk.getData(), 0, chunk.getLength(), this);
+            return;
+        }
+        FrameParseEvent event = new FrameParseEvent(WireProtocol.ASCII.name());
+        long samplesBefore = samples;
+        long rejectedBefore = rejected;
+        byte[] data = chunk.getData();
+        for (int i = 0; i < chunk.getLength(); i++) {
+            byte b = data[i];
+            if (b == '\n') {
+                endLine();
+            } else if (lineLength < MAX_LINE) {
+                line[lineLength++] = b;
+            } else {
+                lineOverflow = true;
+            }
+        }
+        event.complete(chunk.getLength(), samples - samplesBefore, rejected - rejectedBefore);
+    }
+
+    private void endLine() {
+        if (lineOverflow) {
+            rejected++;
+        } else if (lineLength > 0) {
+            double[] sample = Scan.parseLine(new String(line, 0, lineLength, StandardCharsets.ISO_8859_1));
+            if (sample != null) {
+                sample(sample[0], sample[1], sample[2]);
+            } else if (!isBlank()) {
+                rejected++;
+            }
+        }
+        lineLength = 0;
+        lineOverflow = false;
+    }
+
+    private boolean isBlank() {
+        for (int i = 0; i < lineLength; i++) {
+            if (line[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void sample(double phi, double theta, double r) {
+        output.claim().set(phi, theta, r, nanos);
+        output.publish();
+        samples++;
+    }
+
+    // Геттеры
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * Строк, не похожих на отсчёт, или испорченных кадров
+     */
+    public long getRejected() {
+        return binary != null ? binary.getCorruptFrames() : rejected;
+    }
+}
@@ -0,0 +1,79 @@
+package com.arduino.pipeline.stages;
+
+/**
+ * Отсчёт в кольце конвейера: углы сервоприводов, дальность и, после
+ * {@link CartesianConverter}, декартовы координаты
+ */
+public class SampleEvent {
+
+    private double phi;
+    private double theta;
+    private double r;
+    private double x = Double.NaN;
+    private double y = Double.NaN;
+    private double z = Double.NaN;
+    private long nanos;
+
+    /**
+     * Заполнить отсчёт; координаты сбрасываются до пересчёта
+     * @param nanos время чтения байтов отсчёта по System.nanoTime()
+     */
+    public void set(double phi, double theta, double r, long nanos) {
+        this.phi = phi;
+        this.theta = theta;
+        this.r = r;
+        this.x = Double.NaN;
+        this.y = Double.NaN;
+        this.z = Double.NaN;
+        this.nanos = nanos;
+    }
+
+    public void setCartesian(double x, double y, double z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    public boolean hasCartesian() {
+        return !Double.isNaN(x);
+    }
+
+    public static void copy(SampleEvent from, SampleEvent to) {
+        to.phi = from.phi;
+        to.theta = from.theta;
+        to.r = from.r;
+        to.x = from.x;
+        to.y = from.y;
+        to.z = from.z;
+        to.nanos = from.nanos;
+    }
+
+    // Геттеры
+    public double getPhi() {
+        return phi;
+    }
+
+    public double getTheta() {
+        return theta;
+    }
+
+    public double getR() {
+        return r;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+}
@@ -0,0 +1,140 @@
+package com.arduino.pipeline.stages;
+
+import com.arduino.connection.ArduinoConnection;
+import com.arduino.live.LiveStreamServer;
+import com.arduino.pipeline.OverflowPolicy;
+import com.arduino.pipeline.Pipeline;
+import com.arduino.pipeline.Stage;
+import com.arduino.pipeline.WaitStrategy;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Сборка конвейера съёмки:
+ * <pre>
+ * reader → decoder → [filter] ─┬→ csv              (data.csv, без потерь)
+ *                              ├→ converter ×N → points (output.csv, без потерь)
+ *                              ├→ console          (с потерями)
+ *                              └→ live             (с потерями)
+ * </pre>
+ * Стадии "без потерь" работают с политикой BLOCK: если диск не успевает
+ * дольше, чем заполняется кольцо, ждать начинает и reader — данные не
+ * теряются, но устройство читается медленнее. Стадии "с потерями" чтение
+ * не задерживают никогда.
+ *
+ * Подключение должно быть уже открыто: декодер выбирается по согласованному протоколу.
+ */
+public class ScannerPipeline {
+
+    /** Пауза источника, когда порт пуст: на 115200 бод это меньше одной строки */
+    private static final long READ_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+
+    private final ArduinoConnection connection;
+    private Path csvPath;
+    private Path pointsPath;
+    private PrintStream console;
+    private LiveStreamServer live;
+    private RangeFilter filter;
+    private int converterThreads = 1;
+    private int capacity = 4096;
+    private Supplier<WaitStrategy> waitStrategy = WaitStrategy::sleeping;
+
+    public ScannerPipeline(ArduinoConnection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Собрать конвейер; запускается он отдельно, {@link Pipeline#start()}
+     */
+    public Pipeline build() throws IOException {
+        Pipeline pipeline = new Pipeline("scan");
+        pipeline.setDefaultWaitStrategy(waitStrategy);
+        Stage<Void, ByteChunk> reader = pipeline.source("reader", new ConnectionSource(connection),
+                ByteChunk::new, ByteChunk::copy);
+        reader.setWaitStrategy(WaitStrategy.sleeping(READ_IDLE_NANOS));
+        Stage<ByteChunk, SampleEvent> decoder = pipeline.stage("decoder", reader,
+                new SampleDecoder(connection.getBinaryDecoder()), SampleEvent::new, SampleEvent::copy);
+        decoder.setCapacity(capacity / 4);
+        Stage<?, SampleEvent> samples = decoder;
+        if (filter != null) {
+            samples = pipeline.stage("filter", decoder, filter, SampleEvent::new, SampleEvent::copy)
+                    .setCapacity(capacity);
+        }
+        // Первым идёт писатель без потерь: событие пишется прямо в его кольцо, остальным — копии
+        if (csvPath != null) {
+            pipeline.sink("csv", samples, new CsvSink(csvPath, CsvSink.Layout.POLAR)).setCapacity(capacity);
+        }
+        if (pointsPath != null) {
+            Stage<SampleEvent, SampleEvent> converter = pipeline.stage("converter", samples, new CartesianConverter(),
+                    SampleEvent::new, SampleEvent::copy);
+            converter.setCapacity(capacity).setParallelism(converterThreads);
+            pipeline.sink("points", converter, new CsvSink(pointsPath, CsvSink.Layout.CARTESIAN)).setCapacity(capacity);
+        }
+        if (console != null) {
+            pipeline.sink("console", samples, new ConsoleSink(console))
+                    .setCapacity(capacity).setOverflowPolicy(OverflowPolicy.DROP_NEWEST);
+        }
+        if (live != null) {
+            pipeline.sink("live", samples, new LiveSink(live))
+                    .setCapacity(capacity).setOverflowPolicy(OverflowPolicy.DROP_NEWEST);
+        }
+        return pipeline;
+    }
+
+    // Геттеры и сеттеры
+    /**
+     * @param csvPath файл в формате data.csv
+     */
+    public ScannerPipeline setCsvPath(Path csvPath) {
+        this.csvPath = csvPath;
+        return this;
+    }
+
+    /**
+     * @param pointsPath файл декартовых координат в формате output.csv
+     */
+    public ScannerPipeline setPointsPath(Path pointsPath) {
+        this.pointsPath = pointsPath;
+        return this;
+    }
+
+    public ScannerPipeline setConsole(PrintStream console) {
+        this.console = console;
+        return this;
+    }
+
+    public ScannerPipeline setLive(LiveStreamServer live) {
+        this.live = live;
+        return this;
+    }
+
+    public ScannerPipeline setFilter(RangeFilter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    public ScannerPipeline setConverterThreads(int converterThreads) {
+        this.converterThreads = converterThreads;
+        return this;
+    }
+
+    /**
+     * @param capacity слотов в кольцах отсчётов
+     */
+    public ScannerPipeline setCapacity(int capacity) {
+        this.capacity = capacity;
+        return this;
+    }
+
+    /**
+     * @param waitStrategy стратегия ожидания колец (новый экземпляр на стадию)
+     */
+    public ScannerPipeline setWaitStrategy(Supplier<WaitStrategy> waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        return this;
+    }
+}
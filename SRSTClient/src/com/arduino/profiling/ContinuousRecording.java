@@ -0,0 +1,186 @@
+package com.arduino.profiling;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Непрерывная запись JFR на время долгой съёмки.
+ *
+ * Запись идёт кусками: каждые {@code chunk} начинается новая запись, а
+ * предыдущая останавливается и сохраняется в файл capture-ГГГГММДД-ЧЧММСС-мс.jfr.
+ * Новая запись стартует до остановки старой, так что между кусками нет
+ * пропусков. Хранятся последние {@code keep} файлов, более старые удаляются.
+ *
+ * Настройки по умолчанию — стандартный профиль JFR "default" (накладные
+ * расходы около 1%) плюс все события {@code srst.*} этого пакета.
+ * Файлы разбирает {@link RecordingAnalyzer}.
+ */
+public class ContinuousRecording implements AutoCloseable {
+
+    public static final Duration DEFAULT_CHUNK = Duration.ofMinutes(10);
+    public static final int DEFAULT_KEEP = 12;
+    public static final String DEFAULT_SETTINGS = "default";
+
+    private static final String PREFIX = "capture-";
+    private static final String SUFFIX = ".jfr";
+
+    private final Path directory;
+    private final Duration chunk;
+    private final int keep;
+    private final Configuration configuration;
+    private final ScheduledExecutorService rotator;
+    private Recording current;
+    private long chunks;
+
+    private ContinuousRecording(Path directory, Duration chunk, int keep, Configuration configuration) {
+        this.directory = directory;
+        this.chunk = chunk;
+        this.keep = Math.max(1, keep);
+        this.configuration = configuration;
+        this.rotator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jfr-rotation");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Начать запись с настройками по умолчанию
+     */
+    public static ContinuousRecording start(Path directory) throws IOException {
+        return start(directory, DEFAULT_CHUNK, DEFAULT_KEEP, DEFAULT_SETTINGS);
+    }
+
+    /**
+     * Начать запись
+     * @param directory каталог для файлов записи
+     * @param chunk длительность одного файла
+     * @param keep сколько последних файлов хранить
+     * @param settings профиль JFR: "default", "profile" или путь к файлу .jfc
+     */
+    public static ContinuousRecording start(Path directory, Duration chunk, int keep, String settings)
+            throws IOException {
+        Files.createDirectories(directory);
+        Configuration configuration;
+        try {
+            configuration = settings.endsWith(".jfc")
+                    ? Configuration.create(Path.of(settings))
+                    : Configuration.getConfiguration(settings);
+        } catch (ParseException e) {
+            throw new IOException("Не удалось разобрать настройки JFR " + settings + ": " + e.getMessage(), e);
+        }
+        ContinuousRecording recording = new ContinuousRecording(directory, chunk, keep, configuration);
+        recording.rotate();
+        long period = Math.max(1, chunk.toMillis());
+        recording.rotator.scheduleAtFixedRate(recording::rotateQuietly, period, period, TimeUnit.MILLISECONDS);
+        return recording;
+    }
+
+    /**
+     * Закончить текущий файл и начать следующий
+     */
+    public synchronized void rotate() throws IOException {
+        if (rotator.isShutdown()) {
+            return;
+        }
+        Recording next = newRecording();
+        next.start();
+        Recording previous = current;
+        current = next;
+        if (previous != null) {
+            previous.stop();
+            previous.close();
+        }
+        chunks++;
+        prune();
+    }
+
+    private void rotateQuietly() {
+        try {
+            rotate();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ошибка смены файла записи JFR: " + e.getMessage());
+        }
+    }
+
+    private Recording newRecording() throws IOException {
+        Recording recording = new Recording(configuration);
+        recording.setName("srst-capture-" + (chunks + 1));
+        recording.setToDisk(true);
+        // Запас на случай задержки смены файла; старше запись не нужна
+        recording.setMaxAge(chunk.multipliedBy(2));
+        recording.enable(ReadBatchEvent.class);
+        recording.enable(FrameParseEvent.class);
+        recording.enable(ConversionEvent.class);
+        recording.enable(FileWriteEvent.class);
+        recording.enable(ReconnectEvent.class);
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+        Path file = directory.resolve(PREFIX + stamp + SUFFIX);
+        for (int i = 1; Files.exists(file); i++) {
+            file = directory.resolve(PREFIX + stamp + "-" + i + SUFFIX);
+        }
+        recording.setDestination(file);
+        return recording;
+    }
+
+    /**
+     * Удалить старые файлы сверх {@code keep}; имена упорядочены по времени
+     */
+    private void prune() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> list = Files.list(directory)) {
+            list.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().forEach(files::add);
+        }
+        for (int i = 0; i < files.size() - keep; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    /**
+     * Остановить запись и сохранить последний файл
+     */
+    @Override
+    public synchronized void close() {
+        rotator.shutdownNow();
+        if (current != null) {
+            try {
+                current.stop();
+                prune();
+            } catch (IOException | IllegalStateException e) {
+                System.err.println("Ошибка сохранения записи JFR: " + e.getMessage());
+            }
+            current.close();
+            current = null;
+        }
+    }
+
+    // Геттеры
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Duration getChunk() {
+        return chunk;
+    }
+
+    public synchronized long getChunks() {
+        return chunks;
+    }
+}
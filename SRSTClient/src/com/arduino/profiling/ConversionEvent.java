@@ -0,0 +1,43 @@
+package com.arduino.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Перевод отсчётов из полярных координат в декартовы
+ */
+@Name(ConversionEvent.NAME)
+@Label("Перевод в декартовы координаты")
+@Category({"SRST", "Обработка"})
+@Description("Пакетный перевод (phi, theta, r) в (x, y, z)")
+@StackTrace(false)
+public class ConversionEvent extends Event {
+
+    public static final String NAME = "srst.Conversion";
+
+    @Label("Назначение")
+    private final String target;
+
+    @Label("Точек")
+    private long points;
+
+    /**
+     * @param target куда переводятся точки, например "vtk" или "cloud"
+     */
+    public ConversionEvent(String target) {
+        this.target = target;
+        begin();
+    }
+
+    public void complete(long points) {
+        end();
+        if (shouldCommit()) {
+            this.points = points;
+            commit();
+        }
+    }
+}
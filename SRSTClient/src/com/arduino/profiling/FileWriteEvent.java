@@ -0,0 +1,68 @@
+package com.arduino.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.nio.file.Path;
+
+/**
+ * Запись результата съёмки в файл
+ */
+@Name(FileWriteEvent.NAME)
+@Label("Запись файла")
+@Category({"SRST", "Запись"})
+@Description("Запись скана, облака или блока архива на диск")
+@StackTrace(false)
+public class FileWriteEvent extends Event {
+
+    public static final String NAME = "srst.FileWrite";
+
+    @Label("Формат")
+    private final String format;
+
+    @Label("Путь")
+    private String path;
+
+    @Label("Точек")
+    private long points;
+
+    @Label("Записано")
+    @DataAmount
+    private long bytes;
+
+    public FileWriteEvent(String format) {
+        this.format = format;
+        begin();
+    }
+
+    /**
+     * Завершить замер; размер берётся у готового файла, только если событие записывается
+     */
+    public void complete(Path path, long points) {
+        end();
+        if (shouldCommit()) {
+            this.path = path.toString();
+            this.points = points;
+            this.bytes = path.toFile().length();
+            commit();
+        }
+    }
+
+    /**
+     * Завершить замер записи известного размера (например, блока в конце файла)
+     */
+    public void complete(Path path, long points, long bytes) {
+        end();
+        if (shouldCommit()) {
+            this.path = path.toString();
+            this.points = points;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
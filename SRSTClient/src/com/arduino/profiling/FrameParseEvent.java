@@ -0,0 +1,52 @@
+package com.arduino.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Разбор порции принятых байтов в отсчёты (строки "phi;theta;r" или кадры COBS).
+ * Длительность включает передачу отсчётов получателю
+ */
+@Name(FrameParseEvent.NAME)
+@Label("Разбор отсчётов")
+@Category({"SRST", "Обработка"})
+@Description("Разбор принятых байтов в отсчёты")
+@StackTrace(false)
+public class FrameParseEvent extends Event {
+
+    public static final String NAME = "srst.FrameParse";
+
+    @Label("Протокол")
+    private final String protocol;
+
+    @Label("Байт")
+    @DataAmount
+    private long bytes;
+
+    @Label("Отсчётов")
+    private long samples;
+
+    @Label("Отброшено")
+    @Description("Испорченные кадры или строки, не похожие на отсчёт")
+    private long rejected;
+
+    public FrameParseEvent(String protocol) {
+        this.protocol = protocol;
+        begin();
+    }
+
+    public void complete(long bytes, long samples, long rejected) {
+        end();
+        if (bytes > 0 && shouldCommit()) {
+            this.bytes = bytes;
+            this.samples = samples;
+            this.rejected = rejected;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.arduino.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Порция байтов, прочитанная из подключения.
+ *
+ * Неблокирующее чтение без данных не записывается, иначе опрос пустого
+ * порта заполнил бы запись. Чтение с таймаутом записывается всегда:
+ * его длительность — это ожидание данных.
+ */
+@Name(ReadBatchEvent.NAME)
+@Label("Чтение из подключения")
+@Category({"SRST", "Подключение"})
+@Description("Порция байтов из последовательного порта, сокета или Bluetooth")
+@StackTrace(false)
+public class ReadBatchEvent extends Event {
+
+    public static final String NAME = "srst.ReadBatch";
+
+    @Label("Транспорт")
+    private final String transport;
+
+    @Label("Таймаут")
+    @Timespan(Timespan.MILLISECONDS)
+    private final long timeout;
+
+    @Label("Прочитано")
+    @DataAmount
+    private long bytes;
+
+    /**
+     * Начать замер
+     * @param transport тип подключения
+     * @param timeoutMs таймаут чтения, 0 — неблокирующее чтение
+     */
+    public ReadBatchEvent(String transport, long timeoutMs) {
+        this.transport = transport;
+        this.timeout = timeoutMs;
+        begin();
+    }
+
+    /**
+     * Завершить замер
+     * @param bytes прочитано байт (отрицательное — ошибка чтения)
+     */
+    public void complete(long bytes) {
+        end();
+        if ((bytes != 0 || timeout > 0) && shouldCommit()) {
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.arduino.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Повторное подключение после потери связи
+ */
+@Name(ReconnectEvent.NAME)
+@Label("Повторное подключение")
+@Category({"SRST", "Подключение"})
+@Description("Попытка восстановить потерянное подключение")
+public class ReconnectEvent extends Event {
+
+    public static final String NAME = "srst.Reconnect";
+
+    @Label("Транспорт")
+    private final String transport;
+
+    @Label("Успешно")
+    private boolean success;
+
+    public ReconnectEvent(String transport) {
+        this.transport = transport;
+        begin();
+    }
+
+    public void complete(boolean success) {
+        end();
+        if (shouldCommit()) {
+            this.success = success;
+            commit();
+        }
+    }
+}
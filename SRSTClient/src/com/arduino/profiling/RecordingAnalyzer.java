@@ -0,0 +1,183 @@
+package com.arduino.profiling;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Сводка задержек по стадиям съёмки из файлов JFR.
+ *
+ * Берутся только события {@code srst.*}; они группируются по стадии и ключу
+ * (транспорт, протокол, формат). Для каждой группы печатается число событий,
+ * доля времени записи, перцентили длительности и объём данных.
+ *
+ * Использование: RecordingAnalyzer &lt;файл.jfr|каталог&gt;...
+ */
+public class RecordingAnalyzer {
+
+    /**
+     * Накопленные длительности одной группы событий
+     */
+    private static class Stage {
+        private long[] nanos = new long[256];
+        private int count;
+        private long totalNanos;
+        private long bytes;
+        private long items;
+        private long rejected;
+        private long failures;
+
+        void add(long duration) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = duration;
+            totalNanos += duration;
+        }
+
+        /**
+         * Перцентиль длительности, мс
+         */
+        double percentile(double p) {
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.min(count - 1, Math.max(0, Math.ceil(p * count) - 1));
+            return sorted[index] / 1e6;
+        }
+    }
+
+    private final Map<String, Stage> stages = new TreeMap<>();
+    private Instant first;
+    private Instant last;
+    private long files;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Использование: RecordingAnalyzer <файл.jfr|каталог>...");
+            System.exit(2);
+        }
+        RecordingAnalyzer analyzer = new RecordingAnalyzer();
+        for (String arg : args) {
+            analyzer.add(Paths.get(arg));
+        }
+        System.out.print(analyzer.report());
+    }
+
+    /**
+     * Добавить файл записи или все файлы .jfr каталога
+     */
+    public void add(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            List<Path> recordings = new ArrayList<>();
+            try (Stream<Path> list = Files.list(path)) {
+                list.filter(p -> p.getFileName().toString().endsWith(".jfr")).sorted().forEach(recordings::add);
+            }
+            for (Path recording : recordings) {
+                add(recording);
+            }
+            return;
+        }
+        try (RecordingFile file = new RecordingFile(path)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                if (event.getEventType().getName().startsWith("srst.")) {
+                    add(event);
+                }
+            }
+        } catch (IOException e) {
+            // Файл текущего куска ещё не дописан — пропускаем его целиком
+            System.err.println("Пропущен файл " + path + ": " + e.getMessage());
+            return;
+        }
+        files++;
+    }
+
+    private void add(RecordedEvent event) {
+        String name = event.getEventType().getName();
+        String key;
+        switch (name) {
+            case ReadBatchEvent.NAME:
+                key = "чтение " + event.getString("transport")
+                        + (event.getLong("timeout") > 0 ? " (с таймаутом)" : "");
+                break;
+            case FrameParseEvent.NAME:
+                key = "разбор " + event.getString("protocol");
+                break;
+            case ConversionEvent.NAME:
+                key = "перевод " + event.getString("target");
+                break;
+            case FileWriteEvent.NAME:
+                key = "запись " + event.getString("format");
+                break;
+            case ReconnectEvent.NAME:
+                key = "переподключение " + event.getString("transport");
+                break;
+            default:
+                key = name;
+        }
+        Stage stage = stages.computeIfAbsent(key, k -> new Stage());
+        stage.add(event.getDuration().toNanos());
+        if (event.hasField("bytes")) {
+            stage.bytes += Math.max(0, event.getLong("bytes"));
+        }
+        if (event.hasField("samples")) {
+            stage.items += event.getLong("samples");
+        }
+        if (event.hasField("points")) {
+            stage.items += event.getLong("points");
+        }
+        if (event.hasField("rejected")) {
+            stage.rejected += event.getLong("rejected");
+        }
+        if (event.hasField("success") && !event.getBoolean("success")) {
+            stage.failures++;
+        }
+        if (first == null || event.getStartTime().isBefore(first)) {
+            first = event.getStartTime();
+        }
+        if (last == null || event.getEndTime().isAfter(last)) {
+            last = event.getEndTime();
+        }
+    }
+
+    /**
+     * Таблица по стадиям
+     */
+    public String report() {
+        StringBuilder out = new StringBuilder();
+        if (stages.isEmpty()) {
+            out.append("Событий srst.* не найдено (файлов: ").append(files).append(")\n");
+            return out.toString();
+        }
+        double span = Math.max(1e-9, (last.toEpochMilli() - first.toEpochMilli()) / 1000.0);
+        out.append(String.format("Файлов: %d, интервал %.1f с%n", files, span));
+        out.append(String.format("%-32s %8s %7s %8s %8s %8s %8s %10s %10s%n",
+                "стадия", "событий", "время%", "p50 мс", "p95 мс", "p99 мс", "макс мс", "байт", "отсчётов"));
+        for (Map.Entry<String, Stage> entry : stages.entrySet()) {
+            Stage stage = entry.getValue();
+            out.append(String.format("%-32s %8d %7.2f %8.3f %8.3f %8.3f %8.3f %10d %10d",
+                    entry.getKey(), stage.count, stage.totalNanos / 1e7 / span,
+                    stage.percentile(0.50), stage.percentile(0.95), stage.percentile(0.99), stage.percentile(1.0),
+                    stage.bytes, stage.items));
+            if (stage.rejected > 0) {
+                out.append("  отброшено ").append(stage.rejected);
+            }
+            if (stage.failures > 0) {
+                out.append("  неудачных ").append(stage.failures);
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+}
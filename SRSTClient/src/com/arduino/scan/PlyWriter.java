@@ -0,0 +1,153 @@
+package com.arduino.scan;
+
+import com.arduino.profiling.ConversionEvent;
+import com.arduino.profiling.FileWriteEvent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Запись облака точек в двоичный PLY (little endian) — его открывают
+ * CloudCompare, MeshLab и Open3D вместе с нормалями.
+ *
+ * Каждое свойство вершины — float, в порядке добавления: x, y, z, затем
+ * nx, ny, nz, если заданы нормали, затем скалярные поля (Radius, Phi,
+ * Theta, Curvature), как в {@link VtkWriter}.
+ */
+public class PlyWriter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String comment;
+    private final List<String> names = new ArrayList<>();
+    private final List<IntToDoubleFunction> values = new ArrayList<>();
+    private int count;
+
+    public PlyWriter(String comment) {
+        this.comment = comment;
+    }
+
+    /**
+     * Задать точки
+     * @param count количество точек (используются первые count элементов)
+     */
+    public PlyWriter setPoints(float[] x, float[] y, float[] z, int count) {
+        this.count = count;
+        names.add(0, "x");
+        values.add(0, i -> x[i]);
+        names.add(1, "y");
+        values.add(1, i -> y[i]);
+        names.add(2, "z");
+        values.add(2, i -> z[i]);
+        return this;
+    }
+
+    /**
+     * Задать точки скана (перевод в декартовы координаты)
+     */
+    public PlyWriter setPoints(Scan scan) {
+        ConversionEvent event = new ConversionEvent("ply");
+        int n = scan.size();
+        float[] px = new float[n];
+        float[] py = new float[n];
+        float[] pz = new float[n];
+        for (int i = 0; i < n; i++) {
+            px[i] = (float) scan.getX(i);
+            py[i] = (float) scan.getY(i);
+            pz[i] = (float) scan.getZ(i);
+        }
+        event.complete(n);
+        return setPoints(px, py, pz, n);
+    }
+
+    /**
+     * Задать нормали точек (свойства nx, ny, nz)
+     */
+    public PlyWriter setNormals(float[] nx, float[] ny, float[] nz) {
+        addProperty("nx", i -> nx[i]);
+        addProperty("ny", i -> ny[i]);
+        addProperty("nz", i -> nz[i]);
+        return this;
+    }
+
+    /**
+     * Добавить скалярное поле
+     */
+    public PlyWriter addScalars(String name, double[] values) {
+        return addProperty(name, i -> values[i]);
+    }
+
+    /**
+     * Добавить скалярное поле
+     */
+    public PlyWriter addScalars(String name, float[] values) {
+        return addProperty(name, i -> values[i]);
+    }
+
+    /**
+     * Добавить свойство вершины, значения берутся по номеру точки
+     */
+    public PlyWriter addProperty(String name, IntToDoubleFunction value) {
+        names.add(name);
+        values.add(value);
+        return this;
+    }
+
+    /**
+     * Задать число точек, если они заданы свойствами, а не {@link #setPoints}
+     */
+    public PlyWriter setCount(int count) {
+        this.count = count;
+        return this;
+    }
+
+    public void write(Path path) throws IOException {
+        FileWriteEvent event = new FileWriteEvent("ply");
+        StringBuilder header = new StringBuilder();
+        header.append("ply\n");
+        header.append("format binary_little_endian 1.0\n");
+        header.append("comment ").append(comment).append('\n');
+        header.append("element vertex ").append(count).append('\n');
+        for (String name : names) {
+            header.append("property float ").append(name).append('\n');
+        }
+        header.append("end_header\n");
+
+        int properties = values.size();
+        IntToDoubleFunction[] columns = values.toArray(new IntToDoubleFunction[0]);
+        int vertexBytes = properties * Float.BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, vertexBytes)).order(ByteOrder.LITTLE_ENDIAN);
+        long bytes;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(header.toString().getBytes(StandardCharsets.US_ASCII)));
+            for (int i = 0; i < count; i++) {
+                if (buffer.remaining() < vertexBytes) {
+                    drain(channel, buffer);
+                }
+                for (int p = 0; p < properties; p++) {
+                    buffer.putFloat((float) columns[p].applyAsDouble(i));
+                }
+            }
+            drain(channel, buffer);
+            bytes = channel.size();
+        }
+        event.complete(path, count, bytes);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,149 @@
+package com.arduino.scan;
+
+import java.util.Arrays;
+
+/**
+ * Скан комнаты: последовательность отсчётов (phi, theta, r) в том виде,
+ * в котором их присылает скетч. Хранится в примитивных массивах без
+ * объекта на каждую точку.
+ */
+public class Scan {
+
+    private double[] phi;
+    private double[] theta;
+    private double[] r;
+    private int size;
+
+    public Scan() {
+        this(1024);
+    }
+
+    /**
+     * Конструктор
+     * @param capacity начальная ёмкость
+     */
+    public Scan(int capacity) {
+        capacity = Math.max(capacity, 16);
+        this.phi = new double[capacity];
+        this.theta = new double[capacity];
+        this.r = new double[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Добавить отсчёт
+     * @param phi угол первого сервопривода, градусы
+     * @param theta угол второго сервопривода, градусы
+     * @param r дальность, см
+     */
+    public void add(double phi, double theta, double r) {
+        if (size == this.phi.length) {
+            int capacity = size * 2;
+            this.phi = Arrays.copyOf(this.phi, capacity);
+            this.theta = Arrays.copyOf(this.theta, capacity);
+            this.r = Arrays.copyOf(this.r, capacity);
+        }
+        this.phi[size] = phi;
+        this.theta[size] = theta;
+        this.r[size] = r;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double getPhi(int i) {
+        return phi[i];
+    }
+
+    public double getTheta(int i) {
+        return theta[i];
+    }
+
+    public double getR(int i) {
+        return r[i];
+    }
+
+    /**
+     * Декартова координата X (та же формула, что и в ser.py)
+     */
+    public double getX(int i) {
+        return r[i] * Math.sin(Math.toRadians(theta[i])) * Math.cos(Math.toRadians(phi[i]));
+    }
+
+    public double getY(int i) {
+        return r[i] * Math.sin(Math.toRadians(theta[i])) * Math.sin(Math.toRadians(phi[i]));
+    }
+
+    public double getZ(int i) {
+        return r[i] * Math.cos(Math.toRadians(theta[i]));
+    }
+
+    /**
+     * Внутренние массивы для быстрых проходов; валидны первые {@link #size()} элементов
+     */
+    public double[] phiArray() {
+        return phi;
+    }
+
+    public double[] thetaArray() {
+        return theta;
+    }
+
+    public double[] rArray() {
+        return r;
+    }
+
+    /**
+     * Разобрать строку формата скетча "phi;theta;r"
+     * @param line строка
+     * @return true если строка содержала отсчёт и он добавлен
+     */
+    public boolean addLine(String line) {
+        double[] sample = parseLine(line);
+        if (sample == null) {
+            return false;
+        }
+        add(sample[0], sample[1], sample[2]);
+        return true;
+    }
+
+    /**
+     * Разобрать строку "phi;theta;r" (допускается и разделитель ',').
+     * Строки с текстом, пустые и неполные пропускаются, как в ser.py.
+     * @param line строка
+     * @return массив {phi, theta, r} или null
+     */
+    public static double[] parseLine(String line) {
+        if (line == null) {
+            return null;
+        }
+        line = line.trim();
+        if (line.isEmpty()) {
+            return null;
+        }
+        for (int i = 0; i < line.length(); i++) {
+            if (Character.isLetter(line.charAt(i))) {
+                return null;
+            }
+        }
+        String[] parts = line.indexOf(';') >= 0 ? line.split(";") : line.split(",");
+        if (parts.length < 3) {
+            return null;
+        }
+        try {
+            return new double[]{
+                    Double.parseDouble(parts[0].trim()),
+                    Double.parseDouble(parts[1].trim()),
+                    Double.parseDouble(parts[2].trim())
+            };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
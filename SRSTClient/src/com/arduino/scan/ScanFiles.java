@@ -0,0 +1,237 @@
+package com.arduino.scan;
+
+import com.arduino.profiling.FileWriteEvent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Чтение и запись файлов скана: текстовый data.csv ("phi; theta; r")
+ * и компактный двоичный формат. Экспорт в декартовы координаты пишет
+ * те же output.xyz, output.csv и output.txt, что и ser.py.
+ *
+ * Двоичный формат: магическое число "SRSB", версия (int), количество
+ * отсчётов (int), затем тройки float (phi, theta, r) в big-endian.
+ */
+public final class ScanFiles {
+
+    public static final int BINARY_MAGIC = 0x53525342; // "SRSB"
+    public static final int BINARY_VERSION = 1;
+
+    private ScanFiles() {
+    }
+
+    /**
+     * Прочитать скан, формат определяется по содержимому файла
+     */
+    public static Scan read(Path path) throws IOException {
+        return isBinary(path) ? readBinary(path) : readCsv(path);
+    }
+
+    /**
+     * Разобрать скан из уже прочитанного содержимого файла
+     * @param name имя файла для сообщений об ошибках
+     */
+    public static Scan read(byte[] content, String name) throws IOException {
+        boolean binary = content.length >= 4 && ((content[0] & 0xFF) << 24 | (content[1] & 0xFF) << 16
+                | (content[2] & 0xFF) << 8 | (content[3] & 0xFF)) == BINARY_MAGIC;
+        InputStream in = new ByteArrayInputStream(content);
+        if (binary) {
+            return readBinary(new DataInputStream(in), name);
+        }
+        return readCsv(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Проверить, что файл в двоичном формате
+     */
+    public static boolean isBinary(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] head = in.readNBytes(4);
+            if (head.length < 4) {
+                return false;
+            }
+            int magic = ((head[0] & 0xFF) << 24) | ((head[1] & 0xFF) << 16)
+                    | ((head[2] & 0xFF) << 8) | (head[3] & 0xFF);
+            return magic == BINARY_MAGIC;
+        }
+    }
+
+    /**
+     * Прочитать data.csv; заголовок и строки с мусором пропускаются
+     */
+    public static Scan readCsv(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return readCsv(reader);
+        }
+    }
+
+    private static Scan readCsv(BufferedReader reader) throws IOException {
+        Scan scan = new Scan();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            scan.addLine(line);
+        }
+        return scan;
+    }
+
+    public static Scan readBinary(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            return readBinary(in, path.toString());
+        }
+    }
+
+    private static Scan readBinary(DataInputStream in, String name) throws IOException {
+        if (in.readInt() != BINARY_MAGIC) {
+            throw new IOException("Не двоичный файл скана: " + name);
+        }
+        int version = in.readInt();
+        if (version != BINARY_VERSION) {
+            throw new IOException("Неподдерживаемая версия файла скана: " + version);
+        }
+        int count = in.readInt();
+        Scan scan = new Scan(count);
+        for (int i = 0; i < count; i++) {
+            scan.add(in.readFloat(), in.readFloat(), in.readFloat());
+        }
+        return scan;
+    }
+
+    /**
+     * Записать скан в формате data.csv
+     */
+    public static void writeCsv(Scan scan, Path path) throws IOException {
+        FileWriteEvent event = new FileWriteEvent("csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("phi; theta; r\n");
+            for (int i = 0; i < scan.size(); i++) {
+                writer.write(format(scan.getPhi(i)) + ";" + format(scan.getTheta(i)) + ";" + format(scan.getR(i)) + "\n");
+            }
+        }
+        event.complete(path, scan.size());
+    }
+
+    public static void writeBinary(Scan scan, Path path) throws IOException {
+        FileWriteEvent event = new FileWriteEvent("bin");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(BINARY_MAGIC);
+            out.writeInt(BINARY_VERSION);
+            out.writeInt(scan.size());
+            for (int i = 0; i < scan.size(); i++) {
+                out.writeFloat((float) scan.getPhi(i));
+                out.writeFloat((float) scan.getTheta(i));
+                out.writeFloat((float) scan.getR(i));
+            }
+        }
+        event.complete(path, scan.size());
+    }
+
+    /**
+     * Записать точки в формате XYZ, как output.xyz из ser.py
+     */
+    public static void writeXyz(Scan scan, Path path) throws IOException {
+        FileWriteEvent event = new FileWriteEvent("xyz");
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+            writer.write(scan.size() + "\n");
+            writer.write("Converted from polar coordinates\n");
+            StringBuilder line = new StringBuilder(64);
+            for (int i = 0; i < scan.size(); i++) {
+                line.setLength(0);
+                line.append("C ");
+                appendDecimal(line, scan.getX(i)).append(' ');
+                appendDecimal(line, scan.getY(i)).append(' ');
+                appendDecimal(line, scan.getZ(i)).append(' ');
+                appendDecimal(line, scan.getR(i)).append('\n');
+                writer.append(line);
+            }
+        }
+        event.complete(path, scan.size());
+    }
+
+    /**
+     * Записать точки в декартовых координатах, как output.csv из ser.py
+     */
+    public static void writeCartesianCsv(Scan scan, Path path) throws IOException {
+        FileWriteEvent event = new FileWriteEvent("cartesian-csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+            writer.write("X,Y,Z,Radius,Phi,Theta\n");
+            StringBuilder line = new StringBuilder(96);
+            for (int i = 0; i < scan.size(); i++) {
+                line.setLength(0);
+                appendDecimal(line, scan.getX(i)).append(',');
+                appendDecimal(line, scan.getY(i)).append(',');
+                appendDecimal(line, scan.getZ(i)).append(',');
+                appendDecimal(line, scan.getR(i)).append(',');
+                appendDecimal(line, scan.getPhi(i)).append(',');
+                appendDecimal(line, scan.getTheta(i)).append('\n');
+                writer.append(line);
+            }
+        }
+        event.complete(path, scan.size());
+    }
+
+    /**
+     * Записать точки строками "x y z r", как output.txt из ser.py
+     */
+    public static void writeText(Scan scan, Path path) throws IOException {
+        FileWriteEvent event = new FileWriteEvent("txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+            StringBuilder line = new StringBuilder(64);
+            for (int i = 0; i < scan.size(); i++) {
+                line.setLength(0);
+                appendDecimal(line, scan.getX(i)).append(' ');
+                appendDecimal(line, scan.getY(i)).append(' ');
+                appendDecimal(line, scan.getZ(i)).append(' ');
+                appendDecimal(line, scan.getR(i)).append('\n');
+                writer.append(line);
+            }
+        }
+        event.complete(path, scan.size());
+    }
+
+    /**
+     * Дописать число с шестью знаками после точки — то же, что
+     * String.format(Locale.ROOT, "%.6f"), но без разбора шаблона на каждое
+     * число: на выгрузке миллионов точек форматирование было самым дорогим
+     */
+    public static StringBuilder appendDecimal(StringBuilder sb, double value) {
+        double scaled = Math.abs(value) * 1e6;
+        long units = Math.round(scaled);
+        // Большие, нечисловые и почти пограничные (…5 в седьмом знаке) значения
+        // отдаём String.format, чтобы округление совпадало до последней цифры
+        if (!(scaled < 9e15) || Math.abs(Math.abs(scaled - units) - 0.5) < 1e-3) {
+            return sb.append(String.format(Locale.ROOT, "%.6f", value));
+        }
+        if (Double.doubleToRawLongBits(value) < 0) {
+            sb.append('-');
+        }
+        sb.append(units / 1_000_000).append('.');
+        long fraction = units % 1_000_000;
+        for (long digit = 100_000; digit > fraction && digit > 1; digit /= 10) {
+            sb.append('0');
+        }
+        return sb.append(fraction);
+    }
+
+    /**
+     * Значение для data.csv: целые без дробной части, как их печатает скетч
+     */
+    public static String format(double value) {
+        if (value == Math.rint(value)) {
+            return String.valueOf((long) value);
+        }
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,188 @@
+package com.arduino.scan;
+
+import java.util.Arrays;
+
+/**
+ * Регулярная сетка (phi, theta), на которой сканирует скетч.
+ * В каждой ячейке копится число попаданий, сумма и сумма квадратов
+ * дальностей, так что несколько проходов усредняются, а разброс
+ * остаётся доступен.
+ */
+public class ScanGrid {
+
+    /** Шаг сервоприводов в скетче, градусы */
+    public static final double DEFAULT_STEP = 5.0;
+
+    private final double phiMin;
+    private final double thetaMin;
+    private final double step;
+    private final int phiCells;
+    private final int thetaCells;
+
+    private final int[] count;
+    private final double[] sum;
+    private final double[] sumSq;
+
+    /**
+     * Конструктор
+     * @param phiMin минимальный phi, градусы
+     * @param phiMax максимальный phi (включительно), градусы
+     * @param thetaMin минимальный theta, градусы
+     * @param thetaMax максимальный theta (включительно), градусы
+     * @param step шаг сетки, градусы
+     */
+    public ScanGrid(double phiMin, double phiMax, double thetaMin, double thetaMax, double step) {
+        if (step <= 0 || phiMax < phiMin || thetaMax < thetaMin) {
+            throw new IllegalArgumentException("Неверные параметры сетки");
+        }
+        this.phiMin = phiMin;
+        this.thetaMin = thetaMin;
+        this.step = step;
+        this.phiCells = (int) Math.round((phiMax - phiMin) / step) + 1;
+        this.thetaCells = (int) Math.round((thetaMax - thetaMin) / step) + 1;
+        int cells = phiCells * thetaCells;
+        this.count = new int[cells];
+        this.sum = new double[cells];
+        this.sumSq = new double[cells];
+    }
+
+    /**
+     * Сетка скетча: phi и theta от 0 до 180 с шагом 5 градусов
+     */
+    public static ScanGrid defaultGrid() {
+        return new ScanGrid(0, 180, 0, 180, DEFAULT_STEP);
+    }
+
+    /**
+     * Построить сетку по скану
+     */
+    public static ScanGrid fromScan(Scan scan, double step) {
+        ScanGrid grid = new ScanGrid(0, 180, 0, 180, step);
+        grid.addAll(scan);
+        return grid;
+    }
+
+    /**
+     * Пустая сетка той же геометрии
+     */
+    public ScanGrid emptyCopy() {
+        return new ScanGrid(phiMin, phiMin + (phiCells - 1) * step,
+                thetaMin, thetaMin + (thetaCells - 1) * step, step);
+    }
+
+    /**
+     * Индекс ячейки для углов
+     * @return индекс или -1 если углы вне сетки
+     */
+    public int cellIndex(double phi, double theta) {
+        int p = (int) Math.round((phi - phiMin) / step);
+        int t = (int) Math.round((theta - thetaMin) / step);
+        if (p < 0 || p >= phiCells || t < 0 || t >= thetaCells) {
+            return -1;
+        }
+        return p * thetaCells + t;
+    }
+
+    /**
+     * Добавить отсчёт
+     * @return true если отсчёт попал в сетку
+     */
+    public boolean add(double phi, double theta, double r) {
+        int cell = cellIndex(phi, theta);
+        if (cell < 0 || r < 0 || Double.isNaN(r)) {
+            return false;
+        }
+        count[cell]++;
+        sum[cell] += r;
+        sumSq[cell] += r * r;
+        return true;
+    }
+
+    public void addAll(Scan scan) {
+        double[] phi = scan.phiArray();
+        double[] theta = scan.thetaArray();
+        double[] r = scan.rArray();
+        for (int i = 0; i < scan.size(); i++) {
+            add(phi[i], theta[i], r[i]);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(count, 0);
+        Arrays.fill(sum, 0);
+        Arrays.fill(sumSq, 0);
+    }
+
+    /**
+     * Средние дальности по ячейкам, NaN для пустых ячеек
+     */
+    public float[] means() {
+        float[] means = new float[count.length];
+        for (int i = 0; i < means.length; i++) {
+            means[i] = count[i] > 0 ? (float) (sum[i] / count[i]) : Float.NaN;
+        }
+        return means;
+    }
+
+    public double mean(int cell) {
+        return count[cell] > 0 ? sum[cell] / count[cell] : Double.NaN;
+    }
+
+    /**
+     * Дисперсия дальности в ячейке, NaN если попаданий меньше двух
+     */
+    public double variance(int cell) {
+        int n = count[cell];
+        if (n < 2) {
+            return Double.NaN;
+        }
+        double m = sum[cell] / n;
+        return Math.max(0, sumSq[cell] / n - m * m);
+    }
+
+    public int count(int cell) {
+        return count[cell];
+    }
+
+    public int filledCells() {
+        int filled = 0;
+        for (int c : count) {
+            if (c > 0) {
+                filled++;
+            }
+        }
+        return filled;
+    }
+
+    public double cellPhi(int cell) {
+        return phiMin + (cell / thetaCells) * step;
+    }
+
+    public double cellTheta(int cell) {
+        return thetaMin + (cell % thetaCells) * step;
+    }
+
+    public int cellCount() {
+        return count.length;
+    }
+
+    public int getPhiCells() {
+        return phiCells;
+    }
+
+    public int getThetaCells() {
+        return thetaCells;
+    }
+
+    public double getPhiMin() {
+        return phiMin;
+    }
+
+    public double getThetaMin() {
+        return thetaMin;
+    }
+
+    public double getStep() {
+        return step;
+    }
+}
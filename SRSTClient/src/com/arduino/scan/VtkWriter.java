@@ -0,0 +1,133 @@
+package com.arduino.scan;
+
+import com.arduino.profiling.ConversionEvent;
+import com.arduino.profiling.FileWriteEvent;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Запись облака точек в ASCII VTK (POLYDATA), в том же виде, что и output.vtk
+ * из ser.py: точки, вершины и набор скалярных полей для раскраски в ParaView.
+ * Нормали, если заданы, пишутся полем NORMALS рядом со скалярами.
+ */
+public class VtkWriter {
+
+    private final String title;
+    private double[] x;
+    private double[] y;
+    private double[] z;
+    private int count;
+    private final Map<String, IntToDoubleFunction> scalars = new LinkedHashMap<>();
+    private String normalsName;
+    private float[] nx;
+    private float[] ny;
+    private float[] nz;
+
+    public VtkWriter(String title) {
+        this.title = title;
+    }
+
+    /**
+     * Задать точки
+     * @param count количество точек (используются первые count элементов)
+     */
+    public VtkWriter setPoints(double[] x, double[] y, double[] z, int count) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.count = count;
+        return this;
+    }
+
+    /**
+     * Задать точки скана (перевод в декартовы координаты)
+     */
+    public VtkWriter setPoints(Scan scan) {
+        ConversionEvent event = new ConversionEvent("vtk");
+        int n = scan.size();
+        double[] px = new double[n];
+        double[] py = new double[n];
+        double[] pz = new double[n];
+        for (int i = 0; i < n; i++) {
+            px[i] = scan.getX(i);
+            py[i] = scan.getY(i);
+            pz[i] = scan.getZ(i);
+        }
+        event.complete(n);
+        return setPoints(px, py, pz, n);
+    }
+
+    /**
+     * Добавить скалярное поле
+     */
+    public VtkWriter addScalars(String name, double[] values) {
+        scalars.put(name, i -> values[i]);
+        return this;
+    }
+
+    /**
+     * Добавить скалярное поле
+     */
+    public VtkWriter addScalars(String name, float[] values) {
+        scalars.put(name, i -> values[i]);
+        return this;
+    }
+
+    /**
+     * Задать нормали точек (поле NORMALS)
+     */
+    public VtkWriter setNormals(String name, float[] nx, float[] ny, float[] nz) {
+        this.normalsName = name;
+        this.nx = nx;
+        this.ny = ny;
+        this.nz = nz;
+        return this;
+    }
+
+    public void write(Path path) throws IOException {
+        FileWriteEvent event = new FileWriteEvent("vtk");
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+            writer.write("# vtk DataFile Version 3.0\n");
+            writer.write(title + "\n");
+            writer.write("ASCII\n");
+            writer.write("DATASET POLYDATA\n");
+            writer.write("POINTS " + count + " float\n");
+            for (int i = 0; i < count; i++) {
+                writer.write(format(x[i]) + " " + format(y[i]) + " " + format(z[i]) + "\n");
+            }
+            writer.write("VERTICES " + count + " " + (count * 2) + "\n");
+            for (int i = 0; i < count; i++) {
+                writer.write("1 " + i + "\n");
+            }
+            if (!scalars.isEmpty() || normalsName != null) {
+                writer.write("POINT_DATA " + count + "\n");
+                for (Map.Entry<String, IntToDoubleFunction> field : scalars.entrySet()) {
+                    writer.write("SCALARS " + field.getKey() + " float 1\n");
+                    writer.write("LOOKUP_TABLE default\n");
+                    IntToDoubleFunction values = field.getValue();
+                    for (int i = 0; i < count; i++) {
+                        writer.write(format(values.applyAsDouble(i)) + "\n");
+                    }
+                }
+                if (normalsName != null) {
+                    writer.write("NORMALS " + normalsName + " float\n");
+                    for (int i = 0; i < count; i++) {
+                        writer.write(format(nx[i]) + " " + format(ny[i]) + " " + format(nz[i]) + "\n");
+                    }
+                }
+            }
+        }
+        event.complete(path, count);
+    }
+
+    private static String format(double value) {
+        return ScanFiles.appendDecimal(new StringBuilder(16), value).toString();
+    }
+}
@@ -0,0 +1,155 @@
+package com.arduino.scan.archive;
+
+import com.arduino.scan.Scan;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Кодирование блока отсчётов в колоночном виде.
+ *
+ * Углы квантуются до 0.01 градуса, дальность до 1 мм. Каждая колонка
+ * хранится как разности соседних значений в zigzag varint, после чего
+ * весь блок сжимается Deflater. Соседние отсчёты скетча отличаются на
+ * один шаг сервопривода, поэтому колонки углов сжимаются почти в ноль.
+ */
+final class BlockCodec {
+
+    static final double ANGLE_SCALE = 100.0; // 0.01 градуса
+    static final double RANGE_SCALE = 10.0;  // 1 мм при дальности в см
+
+    private BlockCodec() {
+    }
+
+    /**
+     * Значение в том виде, в котором его вернёт распаковка
+     */
+    static double quantize(double value, double scale) {
+        return Math.round(value * scale) / scale;
+    }
+
+    /**
+     * Закодировать и сжать блок
+     * @return сжатые байты
+     */
+    static byte[] encode(double[] phi, double[] theta, double[] r, int from, int count, Deflater deflater) {
+        byte[] raw = new byte[10 + count * 3 * 10];
+        int pos = writeVarint(raw, 0, count);
+        pos = writeColumn(raw, pos, phi, from, count, ANGLE_SCALE);
+        pos = writeColumn(raw, pos, theta, from, count, ANGLE_SCALE);
+        pos = writeColumn(raw, pos, r, from, count, RANGE_SCALE);
+
+        deflater.reset();
+        deflater.setInput(raw, 0, pos);
+        deflater.finish();
+        byte[] out = new byte[pos + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            length += deflater.deflate(out, length, out.length - length);
+        }
+        return Arrays.copyOf(out, length);
+    }
+
+    /**
+     * Распаковать блок и добавить отсчёты в скан
+     * @param filter фильтр отсчётов или null
+     * @return количество добавленных отсчётов
+     */
+    static int decode(byte[] compressed, int compressedLength, Inflater inflater, Scan target, SampleFilter filter)
+            throws IOException {
+        byte[] raw = inflate(compressed, compressedLength, inflater);
+        int[] cursor = {0};
+        int count = (int) readVarint(raw, cursor);
+        double[] phi = readColumn(raw, cursor, count, ANGLE_SCALE);
+        double[] theta = readColumn(raw, cursor, count, ANGLE_SCALE);
+        double[] r = readColumn(raw, cursor, count, RANGE_SCALE);
+        int added = 0;
+        for (int i = 0; i < count; i++) {
+            if (filter == null || filter.accept(phi[i], theta[i], r[i])) {
+                target.add(phi[i], theta[i], r[i]);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    private static byte[] inflate(byte[] compressed, int length, Inflater inflater) throws IOException {
+        inflater.reset();
+        inflater.setInput(compressed, 0, length);
+        byte[] raw = new byte[Math.max(64, length * 4)];
+        int size = 0;
+        try {
+            while (!inflater.finished()) {
+                if (size == raw.length) {
+                    raw = Arrays.copyOf(raw, raw.length * 2);
+                }
+                int n = inflater.inflate(raw, size, raw.length - size);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Блок архива обрезан");
+                }
+                size += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Повреждённый блок архива: " + e.getMessage(), e);
+        }
+        return raw;
+    }
+
+    private static int writeColumn(byte[] out, int pos, double[] values, int from, int count, double scale) {
+        long previous = 0;
+        for (int i = from; i < from + count; i++) {
+            long q = Math.round(values[i] * scale);
+            long d = q - previous;
+            pos = writeVarint(out, pos, (d << 1) ^ (d >> 63));
+            previous = q;
+        }
+        return pos;
+    }
+
+    private static double[] readColumn(byte[] in, int[] cursor, int count, double scale) {
+        double[] values = new double[count];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long z = readVarint(in, cursor);
+            previous += (z >>> 1) ^ -(z & 1);
+            values[i] = previous / scale;
+        }
+        return values;
+    }
+
+    private static int writeVarint(byte[] out, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static long readVarint(byte[] in, int[] cursor) {
+        long value = 0;
+        int shift = 0;
+        int pos = cursor[0];
+        byte b;
+        do {
+            b = in[pos++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        cursor[0] = pos;
+        return value;
+    }
+
+    /**
+     * Фильтр отсчётов при распаковке
+     */
+    interface SampleFilter {
+        boolean accept(double phi, double theta, double r);
+    }
+}
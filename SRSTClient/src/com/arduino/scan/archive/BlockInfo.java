@@ -0,0 +1,191 @@
+package com.arduino.scan.archive;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Запись индекса архива: один сжатый блок одного скана.
+ * Содержит положение блока в файле данных и диапазоны значений внутри блока
+ * (углы, дальность и габариты в декартовых координатах),
+ * чтобы блоки вне запрошенной области можно было не распаковывать.
+ */
+public class BlockInfo {
+
+    private final long scanId;
+    private final String room;
+    private final long timestamp;
+    private final long offset;
+    private final int length;
+    private final int crc;
+    private final int sampleCount;
+    private final float phiMin;
+    private final float phiMax;
+    private final float thetaMin;
+    private final float thetaMax;
+    private final float rMin;
+    private final float rMax;
+    // Габариты блока: {minX, minY, minZ, maxX, maxY, maxZ}
+    private final float[] bounds;
+
+    BlockInfo(long scanId, String room, long timestamp, long offset, int length, int crc, int sampleCount,
+              float phiMin, float phiMax, float thetaMin, float thetaMax, float rMin, float rMax,
+              float[] bounds) {
+        this.scanId = scanId;
+        this.room = room;
+        this.timestamp = timestamp;
+        this.offset = offset;
+        this.length = length;
+        this.crc = crc;
+        this.sampleCount = sampleCount;
+        this.phiMin = phiMin;
+        this.phiMax = phiMax;
+        this.thetaMin = thetaMin;
+        this.thetaMax = thetaMax;
+        this.rMin = rMin;
+        this.rMax = rMax;
+        this.bounds = bounds;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeLong(scanId);
+        out.writeUTF(room);
+        out.writeLong(timestamp);
+        out.writeLong(offset);
+        out.writeInt(length);
+        out.writeInt(crc);
+        out.writeInt(sampleCount);
+        out.writeFloat(phiMin);
+        out.writeFloat(phiMax);
+        out.writeFloat(thetaMin);
+        out.writeFloat(thetaMax);
+        out.writeFloat(rMin);
+        out.writeFloat(rMax);
+        for (float bound : bounds) {
+            out.writeFloat(bound);
+        }
+    }
+
+    /**
+     * Прочитать запись индекса
+     */
+    static BlockInfo read(DataInput in) throws IOException {
+        long scanId = in.readLong();
+        String room = in.readUTF();
+        long timestamp = in.readLong();
+        long offset = in.readLong();
+        int length = in.readInt();
+        int crc = in.readInt();
+        int sampleCount = in.readInt();
+        float phiMin = in.readFloat();
+        float phiMax = in.readFloat();
+        float thetaMin = in.readFloat();
+        float thetaMax = in.readFloat();
+        float rMin = in.readFloat();
+        float rMax = in.readFloat();
+        float[] bounds = new float[6];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = in.readFloat();
+        }
+        return new BlockInfo(scanId, room, timestamp, offset, length, crc, sampleCount,
+                phiMin, phiMax, thetaMin, thetaMax, rMin, rMax, bounds);
+    }
+
+    /**
+     * Пересекается ли блок с окном углов
+     */
+    public boolean intersectsAngles(double phiFrom, double phiTo, double thetaFrom, double thetaTo) {
+        return phiMax >= phiFrom && phiMin <= phiTo && thetaMax >= thetaFrom && thetaMin <= thetaTo;
+    }
+
+    /**
+     * Пересекается ли блок с интервалом дальностей
+     */
+    public boolean intersectsRange(double rFrom, double rTo) {
+        return rMax >= rFrom && rMin <= rTo;
+    }
+
+    /**
+     * Пересекается ли блок с параллелепипедом
+     */
+    public boolean intersectsBox(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        return bounds[3] >= minX && bounds[0] <= maxX && bounds[4] >= minY && bounds[1] <= maxY
+                && bounds[5] >= minZ && bounds[2] <= maxZ;
+    }
+
+    /**
+     * Лежит ли блок целиком в окне углов — тогда отсчёты можно не проверять по одному
+     */
+    public boolean insideAngles(double phiFrom, double phiTo, double thetaFrom, double thetaTo) {
+        return phiMin >= phiFrom && phiMax <= phiTo && thetaMin >= thetaFrom && thetaMax <= thetaTo;
+    }
+
+    public boolean insideRange(double rFrom, double rTo) {
+        return rMin >= rFrom && rMax <= rTo;
+    }
+
+    public boolean insideBox(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        return bounds[0] >= minX && bounds[3] <= maxX && bounds[1] >= minY && bounds[4] <= maxY
+                && bounds[2] >= minZ && bounds[5] <= maxZ;
+    }
+
+    // Геттеры
+    public long getScanId() {
+        return scanId;
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getCrc() {
+        return crc;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public float getPhiMin() {
+        return phiMin;
+    }
+
+    public float getPhiMax() {
+        return phiMax;
+    }
+
+    public float getThetaMin() {
+        return thetaMin;
+    }
+
+    public float getThetaMax() {
+        return thetaMax;
+    }
+
+    public float getRMin() {
+        return rMin;
+    }
+
+    public float getRMax() {
+        return rMax;
+    }
+
+    /**
+     * @return копия габаритов {minX, minY, minZ, maxX, maxY, maxZ}
+     */
+    public float[] getBounds() {
+        return bounds.clone();
+    }
+}
@@ -0,0 +1,342 @@
+package com.arduino.scan.archive;
+
+import com.arduino.profiling.FileWriteEvent;
+import com.arduino.scan.Scan;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Архив сканов на диске.
+ *
+ * Каталог архива содержит два файла:
+ * <ul>
+ *     <li>scans.dat — сжатые колоночные блоки отсчётов (см. {@link BlockCodec}), только дозапись;</li>
+ *     <li>scans.idx — индекс блоков: скан, комната, время, положение блока, диапазоны углов
+ *     и дальностей и габариты в декартовых координатах.</li>
+ * </ul>
+ * Индекс целиком держится в памяти, поэтому поиск скана или области
+ * не трогает файл данных, а читаются и распаковываются только нужные блоки
+ * (см. {@link #query()}).
+ * Запись идёт потоково: скан дописывается блок за блоком по мере съёмки.
+ */
+public class ScanArchive implements Closeable {
+
+    public static final String DATA_FILE = "scans.dat";
+    public static final String INDEX_FILE = "scans.idx";
+
+    private static final int INDEX_MAGIC = 0x53525341; // "SRSA"
+    private static final int INDEX_VERSION = 1;
+    private static final int BLOCK_MAGIC = 0x53524B42; // "SRKB"
+    private static final int BLOCK_HEADER = 12;
+
+    private final Path directory;
+    private final FileChannel data;
+    private final DataOutputStream indexOut;
+    private final Map<Long, ScanInfo> scans = new LinkedHashMap<>();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private long nextScanId = 1;
+    private int blockSize = 256;
+
+    private ScanArchive(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        this.data = FileChannel.open(directory.resolve(DATA_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Path indexPath = directory.resolve(INDEX_FILE);
+        long validIndexLength = loadIndex(indexPath);
+        try (FileChannel index = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            index.truncate(validIndexLength);
+        }
+        this.indexOut = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(indexPath, StandardOpenOption.APPEND)));
+        if (validIndexLength == 0) {
+            indexOut.writeInt(INDEX_MAGIC);
+            indexOut.writeInt(INDEX_VERSION);
+            indexOut.flush();
+        }
+    }
+
+    /**
+     * Открыть (или создать) архив в каталоге
+     */
+    public static ScanArchive open(Path directory) throws IOException {
+        return new ScanArchive(directory);
+    }
+
+    /**
+     * Прочитать индекс. Записи, обрезанные при аварийном завершении или
+     * ссылающиеся за конец файла данных, отбрасываются.
+     * @return длина корректной части индекса
+     */
+    private long loadIndex(Path indexPath) throws IOException {
+        if (!Files.exists(indexPath) || Files.size(indexPath) == 0) {
+            return 0;
+        }
+        byte[] bytes = Files.readAllBytes(indexPath);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (bytes.length < 8 || in.readInt() != INDEX_MAGIC) {
+            throw new IOException("Не индекс архива сканов: " + indexPath);
+        }
+        int version = in.readInt();
+        if (version != INDEX_VERSION) {
+            throw new IOException("Неподдерживаемая версия индекса: " + version);
+        }
+        long valid = 8;
+        long dataSize = data.size();
+        while (in.available() > 0) {
+            try {
+                BlockInfo block = BlockInfo.read(in);
+                if (block.getOffset() + BLOCK_HEADER + block.getLength() > dataSize) {
+                    break;
+                }
+                register(block);
+                valid = bytes.length - in.available();
+            } catch (EOFException e) {
+                break;
+            }
+        }
+        return valid;
+    }
+
+    private void register(BlockInfo block) {
+        ScanInfo scan = scans.computeIfAbsent(block.getScanId(),
+                id -> new ScanInfo(id, block.getRoom(), block.getTimestamp()));
+        scan.addBlock(block);
+        nextScanId = Math.max(nextScanId, block.getScanId() + 1);
+    }
+
+    /**
+     * Начать потоковую запись нового скана
+     * @param room имя комнаты
+     * @param timestamp время съёмки, мс
+     */
+    public synchronized ScanArchiveWriter beginScan(String room, long timestamp) {
+        return new ScanArchiveWriter(this, nextScanId++, room, timestamp, blockSize);
+    }
+
+    /**
+     * Записать готовый скан целиком
+     * @return идентификатор скана
+     */
+    public long append(String room, long timestamp, Scan scan) throws IOException {
+        try (ScanArchiveWriter writer = beginScan(room, timestamp)) {
+            writer.addAll(scan);
+            return writer.getScanId();
+        }
+    }
+
+    /**
+     * Записать блок отсчётов на диск и в индекс
+     */
+    synchronized void writeBlock(long scanId, String room, long timestamp,
+                                 double[] phi, double[] theta, double[] r, int count) throws IOException {
+        if (count == 0) {
+            return;
+        }
+        FileWriteEvent event = new FileWriteEvent("archive");
+        byte[] compressed = BlockCodec.encode(phi, theta, r, 0, count, deflater);
+        CRC32 crc = new CRC32();
+        crc.update(compressed);
+
+        long offset = data.size();
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_HEADER + compressed.length);
+        buffer.putInt(BLOCK_MAGIC).putInt(compressed.length).putInt((int) crc.getValue()).put(compressed);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            data.write(buffer, offset + buffer.position());
+        }
+
+        // Диапазоны считаются по значениям после квантования — ровно тем, что вернёт распаковка
+        double angle = BlockCodec.ANGLE_SCALE;
+        double range = BlockCodec.RANGE_SCALE;
+        BlockInfo block = new BlockInfo(scanId, room, timestamp, offset, compressed.length, (int) crc.getValue(),
+                count, min(phi, count, angle), max(phi, count, angle), min(theta, count, angle),
+                max(theta, count, angle), min(r, count, range), max(r, count, range),
+                bounds(phi, theta, r, count));
+        block.write(indexOut);
+        indexOut.flush();
+        register(block);
+        event.complete(directory.resolve(DATA_FILE), count, BLOCK_HEADER + compressed.length);
+    }
+
+    /**
+     * Снимок всех сканов архива в порядке записи
+     */
+    public synchronized List<ScanInfo> listScans() {
+        return Collections.unmodifiableList(new ArrayList<>(scans.values()));
+    }
+
+    /**
+     * Найти сканы комнаты в интервале времени
+     * @param room комната или null для всех комнат
+     */
+    public synchronized List<ScanInfo> findScans(String room, long fromTimestamp, long toTimestamp) {
+        List<ScanInfo> result = new ArrayList<>();
+        for (ScanInfo scan : scans.values()) {
+            if ((room == null || room.equals(scan.getRoom()))
+                    && scan.getTimestamp() >= fromTimestamp && scan.getTimestamp() <= toTimestamp) {
+                result.add(scan);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    public synchronized ScanInfo getScan(long scanId) {
+        return scans.get(scanId);
+    }
+
+    /**
+     * Прочитать скан целиком
+     */
+    public Scan readScan(long scanId) throws IOException {
+        List<BlockInfo> blocks = blocksOf(scanId);
+        Scan scan = new Scan(blocks.size() * blockSize);
+        Inflater inflater = new Inflater();
+        try {
+            for (BlockInfo block : blocks) {
+                BlockCodec.decode(readBlock(block), block.getLength(), inflater, scan, null);
+            }
+        } finally {
+            inflater.end();
+        }
+        return scan;
+    }
+
+    /**
+     * Прочитать часть скана в окне углов. Распаковываются только блоки,
+     * диапазоны углов которых пересекаются с окном.
+     */
+    public Scan readRegion(long scanId, double phiFrom, double phiTo, double thetaFrom, double thetaTo)
+            throws IOException {
+        if (getScan(scanId) == null) {
+            throw new IllegalArgumentException("Скан не найден: " + scanId);
+        }
+        return query().scan(scanId).phi(phiFrom, phiTo).theta(thetaFrom, thetaTo).toScan();
+    }
+
+    /**
+     * Новый запрос по архиву: сканы, окно углов, интервал дальностей, габариты
+     */
+    public ScanQuery query() {
+        return new ScanQuery(this);
+    }
+
+    /**
+     * Прочитать сжатые байты блока с проверкой контрольной суммы
+     */
+    byte[] readBlock(BlockInfo block) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_HEADER + block.getLength());
+        long position = block.getOffset();
+        while (buffer.hasRemaining()) {
+            int n = data.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new EOFException("Блок архива обрезан: " + block.getOffset());
+            }
+        }
+        buffer.flip();
+        if (buffer.getInt() != BLOCK_MAGIC || buffer.getInt() != block.getLength()) {
+            throw new IOException("Неверный заголовок блока по смещению " + block.getOffset());
+        }
+        int crcValue = buffer.getInt();
+        byte[] compressed = new byte[block.getLength()];
+        buffer.get(compressed);
+        CRC32 crc = new CRC32();
+        crc.update(compressed);
+        if ((int) crc.getValue() != crcValue || crcValue != block.getCrc()) {
+            throw new IOException("Контрольная сумма блока не совпадает, смещение " + block.getOffset());
+        }
+        return compressed;
+    }
+
+    /**
+     * Снимок списка блоков скана (скан может дописываться параллельно)
+     */
+    synchronized List<BlockInfo> blocksOf(long scanId) {
+        ScanInfo info = scans.get(scanId);
+        if (info == null) {
+            throw new IllegalArgumentException("Скан не найден: " + scanId);
+        }
+        return new ArrayList<>(info.getBlocks());
+    }
+
+    /**
+     * Точные габариты отсчётов блока в декартовых координатах
+     */
+    private static float[] bounds(double[] phi, double[] theta, double[] r, int count) {
+        float[] bounds = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+                -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int i = 0; i < count; i++) {
+            double t = Math.toRadians(BlockCodec.quantize(theta[i], BlockCodec.ANGLE_SCALE));
+            double p = Math.toRadians(BlockCodec.quantize(phi[i], BlockCodec.ANGLE_SCALE));
+            double q = BlockCodec.quantize(r[i], BlockCodec.RANGE_SCALE);
+            double sinT = Math.sin(t);
+            double[] xyz = {q * sinT * Math.cos(p), q * sinT * Math.sin(p), q * Math.cos(t)};
+            for (int c = 0; c < 3; c++) {
+                bounds[c] = Math.min(bounds[c], Math.nextDown((float) xyz[c]));
+                bounds[c + 3] = Math.max(bounds[c + 3], Math.nextUp((float) xyz[c]));
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Минимум квантованных значений, округлённый во float вниз: проверка
+     * по индексу не должна отбросить блок из-за округления
+     */
+    private static float min(double[] values, int count, double scale) {
+        double m = Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            m = Math.min(m, values[i]);
+        }
+        return Math.nextDown((float) BlockCodec.quantize(m, scale));
+    }
+
+    private static float max(double[] values, int count, double scale) {
+        double m = -Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            m = Math.max(m, values[i]);
+        }
+        return Math.nextUp((float) BlockCodec.quantize(m, scale));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        indexOut.close();
+        data.close();
+        deflater.end();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @param blockSize количество отсчётов в блоке для новых сканов
+     */
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+}
@@ -0,0 +1,147 @@
+package com.arduino.scan.archive;
+
+import com.arduino.scan.Scan;
+import com.arduino.scan.ScanFiles;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Работа с архивом сканов из командной строки.
+ *
+ * <pre>
+ * ScanArchiveTool import &lt;архив&gt; &lt;комната&gt; data.csv...
+ * ScanArchiveTool list &lt;архив&gt; [комната]
+ * ScanArchiveTool export &lt;архив&gt; &lt;id&gt; out.csv [phiFrom phiTo thetaFrom thetaTo]
+ * ScanArchiveTool query &lt;архив&gt; out.csv [scan=id] [room=имя] [phi=от:до] [theta=от:до] [r=от:до]
+ *                 [box=minX,minY,minZ,maxX,maxY,maxZ]
+ * </pre>
+ */
+public class ScanArchiveTool {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            usage();
+            return;
+        }
+        try (ScanArchive archive = ScanArchive.open(Paths.get(args[1]))) {
+            switch (args[0]) {
+                case "import":
+                    for (int i = 3; i < args.length; i++) {
+                        Path file = Paths.get(args[i]);
+                        long id = importCsv(archive, args[2], file);
+                        System.out.println("✓ " + file + " -> скан #" + id);
+                    }
+                    break;
+                case "list":
+                    String room = args.length > 2 ? args[2] : null;
+                    for (ScanInfo scan : archive.findScans(room, Long.MIN_VALUE, Long.MAX_VALUE)) {
+                        System.out.println(scan);
+                    }
+                    break;
+                case "export":
+                    long id = Long.parseLong(args[2]);
+                    Scan scan = args.length > 7
+                            ? archive.readRegion(id, Double.parseDouble(args[4]), Double.parseDouble(args[5]),
+                            Double.parseDouble(args[6]), Double.parseDouble(args[7]))
+                            : archive.readScan(id);
+                    ScanFiles.writeCsv(scan, Paths.get(args[3]));
+                    System.out.println("✓ Экспортировано " + scan.size() + " точек в " + args[3]);
+                    break;
+                case "query":
+                    if (args.length < 3) {
+                        usage();
+                        break;
+                    }
+                    ScanQuery query = parseQuery(archive, args, 3);
+                    long start = System.nanoTime();
+                    Scan region = query.toScan();
+                    long elapsed = System.nanoTime() - start;
+                    ScanFiles.writeCsv(region, Paths.get(args[2]));
+                    System.out.println(query.summary());
+                    System.out.printf("✓ Выбрано %d точек за %.1f мс в %s%n", region.size(), elapsed / 1e6, args[2]);
+                    break;
+                default:
+                    usage();
+            }
+        }
+    }
+
+    /**
+     * Собрать запрос из аргументов вида ключ=значение
+     */
+    static ScanQuery parseQuery(ScanArchive archive, String[] args, int from) {
+        ScanQuery query = archive.query();
+        for (int i = from; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Ожидался ключ=значение: " + args[i]);
+            }
+            String key = args[i].substring(0, eq);
+            String value = args[i].substring(eq + 1);
+            switch (key) {
+                case "scan":
+                    query.scan(Long.parseLong(value));
+                    break;
+                case "room":
+                    query.room(value);
+                    break;
+                case "phi":
+                case "theta":
+                case "r": {
+                    String[] bounds = value.split(":");
+                    double low = Double.parseDouble(bounds[0]);
+                    double high = Double.parseDouble(bounds[1]);
+                    if (key.equals("phi")) {
+                        query.phi(low, high);
+                    } else if (key.equals("theta")) {
+                        query.theta(low, high);
+                    } else {
+                        query.range(low, high);
+                    }
+                    break;
+                }
+                case "box": {
+                    String[] b = value.split(",");
+                    if (b.length != 6) {
+                        throw new IllegalArgumentException("box: нужно 6 чисел");
+                    }
+                    query.box(Double.parseDouble(b[0]), Double.parseDouble(b[1]), Double.parseDouble(b[2]),
+                            Double.parseDouble(b[3]), Double.parseDouble(b[4]), Double.parseDouble(b[5]));
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Неизвестное условие запроса: " + key);
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Потоково перенести data.csv в архив; время съёмки берётся из времени изменения файла
+     */
+    public static long importCsv(ScanArchive archive, String room, Path file) throws IOException {
+        long timestamp = Files.getLastModifiedTime(file).toMillis();
+        try (ScanArchiveWriter writer = archive.beginScan(room, timestamp);
+             BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writer.addLine(line);
+            }
+            return writer.getScanId();
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Использование:");
+        System.out.println("  ScanArchiveTool import <архив> <комната> data.csv...");
+        System.out.println("  ScanArchiveTool list <архив> [комната]");
+        System.out.println("  ScanArchiveTool export <архив> <id> out.csv [phiFrom phiTo thetaFrom thetaTo]");
+        System.out.println("  ScanArchiveTool query <архив> out.csv [scan=id] [room=имя] [phi=от:до] [theta=от:до] [r=от:до]");
+        System.out.println("                  [box=minX,minY,minZ,maxX,maxY,maxZ]");
+    }
+}
@@ -0,0 +1,95 @@
+package com.arduino.scan.archive;
+
+import com.arduino.scan.Scan;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Потоковая запись одного скана в архив: отсчёты копятся в буфере
+ * и сбрасываются на диск сжатым блоком по мере заполнения.
+ *
+ * Новый проход сетки (phi вернулся назад) всегда начинает новый блок:
+ * иначе блок на стыке проходов охватывал бы все углы и читался бы
+ * при любом запросе по сектору.
+ */
+public class ScanArchiveWriter implements Closeable {
+
+    private final ScanArchive archive;
+    private final long scanId;
+    private final String room;
+    private final long timestamp;
+    private final double[] phi;
+    private final double[] theta;
+    private final double[] r;
+    private int count;
+    private boolean closed;
+
+    ScanArchiveWriter(ScanArchive archive, long scanId, String room, long timestamp, int blockSize) {
+        this.archive = archive;
+        this.scanId = scanId;
+        this.room = room;
+        this.timestamp = timestamp;
+        this.phi = new double[blockSize];
+        this.theta = new double[blockSize];
+        this.r = new double[blockSize];
+    }
+
+    /**
+     * Добавить отсчёт
+     */
+    public void add(double phi, double theta, double r) throws IOException {
+        if (closed) {
+            throw new IOException("Запись скана уже завершена");
+        }
+        if (count > 0 && phi < this.phi[count - 1]) {
+            flush();
+        }
+        this.phi[count] = phi;
+        this.theta[count] = theta;
+        this.r[count] = r;
+        count++;
+        if (count == this.phi.length) {
+            flush();
+        }
+    }
+
+    /**
+     * Добавить строку формата скетча "phi;theta;r"
+     * @return true если строка содержала отсчёт
+     */
+    public boolean addLine(String line) throws IOException {
+        double[] sample = Scan.parseLine(line);
+        if (sample == null) {
+            return false;
+        }
+        add(sample[0], sample[1], sample[2]);
+        return true;
+    }
+
+    public void addAll(Scan scan) throws IOException {
+        for (int i = 0; i < scan.size(); i++) {
+            add(scan.getPhi(i), scan.getTheta(i), scan.getR(i));
+        }
+    }
+
+    /**
+     * Записать накопленные отсчёты отдельным блоком
+     */
+    public void flush() throws IOException {
+        archive.writeBlock(scanId, room, timestamp, phi, theta, r, count);
+        count = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            flush();
+            closed = true;
+        }
+    }
+
+    public long getScanId() {
+        return scanId;
+    }
+}
@@ -0,0 +1,55 @@
+package com.arduino.scan.archive;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Описание скана в архиве: комната, время съёмки и список его блоков.
+ * Скан может дописываться, пока его читают, поэтому блоки отдаются снимком
+ */
+public class ScanInfo {
+
+    private final long scanId;
+    private final String room;
+    private final long timestamp;
+    private final List<BlockInfo> blocks = new ArrayList<>();
+    private int sampleCount;
+
+    ScanInfo(long scanId, String room, long timestamp) {
+        this.scanId = scanId;
+        this.room = room;
+        this.timestamp = timestamp;
+    }
+
+    synchronized void addBlock(BlockInfo block) {
+        blocks.add(block);
+        sampleCount += block.getSampleCount();
+    }
+
+    public long getScanId() {
+        return scanId;
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public synchronized int getSampleCount() {
+        return sampleCount;
+    }
+
+    public synchronized List<BlockInfo> getBlocks() {
+        return Collections.unmodifiableList(new ArrayList<>(blocks));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "#" + scanId + " " + room + " @" + timestamp + " (" + sampleCount + " точек, "
+                + blocks.size() + " блоков)";
+    }
+}
@@ -0,0 +1,345 @@
+package com.arduino.scan.archive;
+
+import com.arduino.scan.Scan;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.Inflater;
+
+/**
+ * Запрос области по архиву сканов.
+ *
+ * Условия — сканы (по id, комнате, времени), окно углов, интервал дальностей
+ * и параллелепипед в декартовых координатах — сначала проверяются по диапазонам
+ * блоков в индексе: блоки, которые не могут содержать подходящих отсчётов,
+ * не читаются вовсе, а блоки, целиком лежащие внутри условий, распаковываются
+ * без проверки каждого отсчёта.
+ *
+ * Результат ленивый: {@link #blocks()} и {@link #samples()} читают
+ * и распаковывают очередной блок только когда поток до него дошёл, так что
+ * findFirst или limit читают с диска лишь начало области. Поток можно
+ * сделать parallel(): чтение блоков потокобезопасно. Ошибки чтения в потоках
+ * приходят как {@link UncheckedIOException}. Поток держит распаковщики с нативной
+ * памятью zlib и освобождает их при закрытии, поэтому его стоит открывать
+ * в try-with-resources; {@link #toScan()} закрывает свой поток сам.
+ *
+ * <pre>
+ * Scan wall = archive.query().room("kitchen").phi(80, 100).range(0, 300).toScan();
+ * </pre>
+ */
+public class ScanQuery {
+
+    /**
+     * Подходящие отсчёты одного блока
+     */
+    public static class Block {
+        private final BlockInfo info;
+        private final Scan samples;
+
+        Block(BlockInfo info, Scan samples) {
+            this.info = info;
+            this.samples = samples;
+        }
+
+        public BlockInfo getInfo() {
+            return info;
+        }
+
+        public long getScanId() {
+            return info.getScanId();
+        }
+
+        /**
+         * Отсчёты блока, прошедшие условия запроса
+         */
+        public Scan getSamples() {
+            return samples;
+        }
+
+        Sample sample(int i) {
+            return new Sample(info.getScanId(), samples.getPhi(i), samples.getTheta(i), samples.getR(i));
+        }
+    }
+
+    /**
+     * Отсчёт с номером скана, из которого он взят
+     */
+    public static class Sample {
+        private final long scanId;
+        private final double phi;
+        private final double theta;
+        private final double r;
+
+        Sample(long scanId, double phi, double theta, double r) {
+            this.scanId = scanId;
+            this.phi = phi;
+            this.theta = theta;
+            this.r = r;
+        }
+
+        public long getScanId() {
+            return scanId;
+        }
+
+        public double getPhi() {
+            return phi;
+        }
+
+        public double getTheta() {
+            return theta;
+        }
+
+        public double getR() {
+            return r;
+        }
+
+        public double getX() {
+            return r * Math.sin(Math.toRadians(theta)) * Math.cos(Math.toRadians(phi));
+        }
+
+        public double getY() {
+            return r * Math.sin(Math.toRadians(theta)) * Math.sin(Math.toRadians(phi));
+        }
+
+        public double getZ() {
+            return r * Math.cos(Math.toRadians(theta));
+        }
+
+        @Override
+        public String toString() {
+            return "#" + scanId + " " + phi + ";" + theta + ";" + r;
+        }
+    }
+
+    private final ScanArchive archive;
+    private final Set<Long> scanIds = new LinkedHashSet<>();
+    private String room;
+    private long fromTimestamp = Long.MIN_VALUE;
+    private long toTimestamp = Long.MAX_VALUE;
+    private double phiFrom = Double.NEGATIVE_INFINITY;
+    private double phiTo = Double.POSITIVE_INFINITY;
+    private double thetaFrom = Double.NEGATIVE_INFINITY;
+    private double thetaTo = Double.POSITIVE_INFINITY;
+    private double rFrom = Double.NEGATIVE_INFINITY;
+    private double rTo = Double.POSITIVE_INFINITY;
+    private double[] box;
+
+    private long blocksTotal;
+    private long bytesTotal;
+    private long blocksPlanned;
+    private final AtomicLong blocksRead = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    ScanQuery(ScanArchive archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * Ограничить запрос сканом; можно вызвать несколько раз
+     */
+    public ScanQuery scan(long scanId) {
+        scanIds.add(scanId);
+        return this;
+    }
+
+    public ScanQuery room(String room) {
+        this.room = room;
+        return this;
+    }
+
+    /**
+     * Сканы, снятые в интервале времени (мс, включительно)
+     */
+    public ScanQuery time(long fromTimestamp, long toTimestamp) {
+        this.fromTimestamp = fromTimestamp;
+        this.toTimestamp = toTimestamp;
+        return this;
+    }
+
+    /**
+     * Окно по phi, градусы (включительно)
+     */
+    public ScanQuery phi(double from, double to) {
+        this.phiFrom = from;
+        this.phiTo = to;
+        return this;
+    }
+
+    public ScanQuery theta(double from, double to) {
+        this.thetaFrom = from;
+        this.thetaTo = to;
+        return this;
+    }
+
+    /**
+     * Интервал дальностей, см (включительно)
+     */
+    public ScanQuery range(double from, double to) {
+        this.rFrom = from;
+        this.rTo = to;
+        return this;
+    }
+
+    /**
+     * Параллелепипед в координатах сканера, см (включительно)
+     */
+    public ScanQuery box(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        this.box = new double[]{minX, minY, minZ, maxX, maxY, maxZ};
+        return this;
+    }
+
+    /**
+     * Блоки, которые придётся прочитать; решается только по индексу
+     */
+    public List<BlockInfo> plan() {
+        List<BlockInfo> planned = new ArrayList<>();
+        long total = 0;
+        long bytes = 0;
+        for (ScanInfo scan : archive.findScans(room, fromTimestamp, toTimestamp)) {
+            if (!scanIds.isEmpty() && !scanIds.contains(scan.getScanId())) {
+                continue;
+            }
+            for (BlockInfo block : archive.blocksOf(scan.getScanId())) {
+                total++;
+                bytes += block.getLength();
+                if (block.intersectsAngles(phiFrom, phiTo, thetaFrom, thetaTo)
+                        && block.intersectsRange(rFrom, rTo)
+                        && (box == null || block.intersectsBox(box[0], box[1], box[2], box[3], box[4], box[5]))) {
+                    planned.add(block);
+                }
+            }
+        }
+        blocksTotal = total;
+        bytesTotal = bytes;
+        blocksPlanned = planned.size();
+        return planned;
+    }
+
+    /**
+     * Ленивый поток блоков с подходящими отсчётами (блоки без них пропускаются)
+     */
+    public Stream<Block> blocks() {
+        blocksRead.set(0);
+        bytesRead.set(0);
+        // Создание Inflater дороже распаковки небольшого блока: потоки выполнения
+        // берут свободный из пула выполнения и возвращают; закрытие потока их освобождает
+        Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+        return plan().stream()
+                .map(info -> read(info, inflaters))
+                .filter(block -> !block.getSamples().isEmpty())
+                .onClose(() -> {
+                    Inflater inflater;
+                    while ((inflater = inflaters.poll()) != null) {
+                        inflater.end();
+                    }
+                });
+    }
+
+    /**
+     * Ленивый поток отдельных отсчётов
+     */
+    public Stream<Sample> samples() {
+        return blocks().flatMap(block -> IntStream.range(0, block.getSamples().size()).mapToObj(block::sample));
+    }
+
+    /**
+     * Собрать все подходящие отсчёты в один скан
+     */
+    public Scan toScan() throws IOException {
+        Scan scan = new Scan();
+        try (Stream<Block> blocks = blocks()) {
+            blocks.forEachOrdered(block -> {
+                Scan samples = block.getSamples();
+                for (int i = 0; i < samples.size(); i++) {
+                    scan.add(samples.getPhi(i), samples.getTheta(i), samples.getR(i));
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return scan;
+    }
+
+    private Block read(BlockInfo info, Queue<Inflater> inflaters) {
+        Scan samples = new Scan(info.getSampleCount());
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        try {
+            byte[] compressed = archive.readBlock(info);
+            blocksRead.incrementAndGet();
+            bytesRead.addAndGet(compressed.length);
+            BlockCodec.decode(compressed, info.getLength(), inflater, samples,
+                    inside(info) ? null : this::accept);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            inflaters.add(inflater);
+        }
+        return new Block(info, samples);
+    }
+
+    /**
+     * Блок целиком внутри условий — отсчёты можно не проверять
+     */
+    private boolean inside(BlockInfo block) {
+        return block.insideAngles(phiFrom, phiTo, thetaFrom, thetaTo)
+                && block.insideRange(rFrom, rTo)
+                && (box == null || block.insideBox(box[0], box[1], box[2], box[3], box[4], box[5]));
+    }
+
+    private boolean accept(double phi, double theta, double r) {
+        if (phi < phiFrom || phi > phiTo || theta < thetaFrom || theta > thetaTo || r < rFrom || r > rTo) {
+            return false;
+        }
+        if (box == null) {
+            return true;
+        }
+        double t = Math.toRadians(theta);
+        double p = Math.toRadians(phi);
+        double sinT = Math.sin(t);
+        double x = r * sinT * Math.cos(p);
+        double y = r * sinT * Math.sin(p);
+        double z = r * Math.cos(t);
+        return x >= box[0] && x <= box[3] && y >= box[1] && y <= box[4] && z >= box[2] && z <= box[5];
+    }
+
+    /**
+     * Сводка по последнему выполнению: сколько блоков и байт прочитано из возможных
+     */
+    public String summary() {
+        return String.format("блоков прочитано %d из %d (по индексу отобрано %d), сжатых байт %d из %d",
+                blocksRead.get(), blocksTotal, blocksPlanned, bytesRead.get(), bytesTotal);
+    }
+
+    // Геттеры
+    public long getBlocksTotal() {
+        return blocksTotal;
+    }
+
+    public long getBlocksPlanned() {
+        return blocksPlanned;
+    }
+
+    public long getBlocksRead() {
+        return blocksRead.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getBytesTotal() {
+        return bytesTotal;
+    }
+}
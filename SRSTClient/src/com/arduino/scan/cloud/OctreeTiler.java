@@ -0,0 +1,576 @@
+package com.arduino.scan.cloud;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Построение октодерева уровней детализации для большого облака.
+ *
+ * Облако раскладывается по ячейкам сетки 2^{@value #GRID_LEVEL} по каждой оси
+ * в порядке кривой Мортона (подсчёт и раскладка идут параллельно по частям
+ * облака), после чего точки любого узла дерева лежат подряд. Узел с числом
+ * точек не больше {@link #setLeafCapacity(int) ёмкости листа} становится
+ * листом и хранит все свои точки; ячейка самой мелкой сетки остаётся листом
+ * при любом числе точек. Лист не копируется в кучу: тайл и выборка для
+ * родителя читаются прямо из упорядоченного облака, тайл пишется частями.
+ * Внутренний узел хранит прореженную выборку
+ * точек потомков: не больше одной точки на ячейку сетки
+ * {@link #setSampleResolution(int)} по кубу узла. Узлы строятся снизу вверх
+ * задачами ForkJoin, каждый узел пишется в отдельный тайл сразу после
+ * построения, поэтому в памяти одновременно только выборки текущих узлов.
+ * Если исходное облако файловое, упорядоченная копия тоже пишется на диск.
+ *
+ * Тайл "&lt;имя&gt;.tile" (little-endian, для чтения через Float32Array):
+ * <pre>
+ * int     "SRTL", версия, количество точек N
+ * float32 minX, minY, minZ, длина ребра куба узла
+ * float32 x[N], y[N], z[N], r[N]
+ * </pre>
+ * Индекс hierarchy.idx: "SRTH", версия, куб корня, количество узлов, затем
+ * узлы в порядке уровней: длина имени, имя, маска потомков, точек в тайле,
+ * точек в поддереве.
+ */
+public class OctreeTiler {
+
+    public static final String INDEX_FILE = "hierarchy.idx";
+    public static final String TILE_SUFFIX = ".tile";
+
+    static final int TILE_MAGIC = 0x5352544C; // "SRTL"
+    static final int INDEX_MAGIC = 0x53525448; // "SRTH"
+    static final int VERSION = 1;
+    static final int TILE_HEADER = 28;
+
+    private static final int GRID_LEVEL = 6;
+    private static final int GRID_CELLS = 1 << (3 * GRID_LEVEL);
+    private static final int MIN_CHUNK = 1 << 16;
+    /** Точек в одной записи тайла */
+    private static final int WRITE_CHUNK = 1 << 14;
+    private static final PointCloud.Column[] TILE_COLUMNS = {
+            PointCloud.Column.X, PointCloud.Column.Y, PointCloud.Column.Z, PointCloud.Column.R};
+    private static final String SORT_DIRECTORY = ".sort";
+
+    private int leafCapacity = 20000;
+    private int tileCapacity = 20000;
+    private int sampleResolution = 64;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private float cubeX;
+    private float cubeY;
+    private float cubeZ;
+    private float cubeSize;
+    private long[] cellStart;
+    private PointCloud sorted;
+    private Path output;
+
+    /**
+     * Построить тайлы облака в каталоге
+     * @return узлы дерева в порядке уровней
+     */
+    public List<TileNode> build(PointCloud cloud, Path output) throws IOException {
+        Files.createDirectories(output);
+        deleteTiles(output);
+        this.output = output;
+        if (cloud.isEmpty()) {
+            throw new IllegalArgumentException("Пустое облако");
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        Path sortDirectory = cloud.getDirectory() != null ? output.resolve(SORT_DIRECTORY) : null;
+        try {
+            float[] bounds = parallelBounds(pool, cloud);
+            float extent = Math.max(bounds[3] - bounds[0], Math.max(bounds[4] - bounds[1], bounds[5] - bounds[2]));
+            cubeSize = extent * 1.0001f + 1e-3f;
+            cubeX = (bounds[0] + bounds[3]) / 2 - cubeSize / 2;
+            cubeY = (bounds[1] + bounds[4]) / 2 - cubeSize / 2;
+            cubeZ = (bounds[2] + bounds[5]) / 2 - cubeSize / 2;
+
+            sorted = sortDirectory != null ? PointCloud.create(sortDirectory, cloud.size()) : PointCloud.allocate(cloud.size());
+            sortByCell(pool, cloud);
+
+            NodeResult root = pool.invoke(new NodeTask("r", 0, 0, cubeX, cubeY, cubeZ, cubeSize));
+            List<TileNode> nodes = new ArrayList<>();
+            root.collect(nodes);
+            nodes.sort(Comparator.comparingInt((TileNode node) -> node.getName().length())
+                    .thenComparing(TileNode::getName));
+            writeIndex(nodes);
+            return nodes;
+        } catch (ExecutionException e) {
+            throw new IOException("Ошибка построения тайлов: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Построение тайлов прервано", e);
+        } catch (UncheckedIOException e) {
+            // Ошибка записи тайла внутри задачи ForkJoin
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+            sorted = null;
+            cellStart = null;
+            if (sortDirectory != null) {
+                deleteDirectory(sortDirectory);
+            }
+        }
+    }
+
+    /**
+     * Части облака для параллельных проходов
+     */
+    private int[] chunkBounds(int size) {
+        int chunks = (int) Math.max(1, Math.min(parallelism * 4L, (size + MIN_CHUNK - 1) / MIN_CHUNK));
+        int[] starts = new int[chunks + 1];
+        for (int c = 0; c <= chunks; c++) {
+            starts[c] = (int) ((long) size * c / chunks);
+        }
+        return starts;
+    }
+
+    private float[] parallelBounds(ForkJoinPool pool, PointCloud cloud) throws InterruptedException, ExecutionException {
+        int[] starts = chunkBounds(cloud.size());
+        List<Callable<float[]>> tasks = new ArrayList<>();
+        for (int c = 0; c + 1 < starts.length; c++) {
+            PointCloud slice = cloud.slice(starts[c], starts[c + 1]);
+            tasks.add(slice::bounds);
+        }
+        float[] bounds = null;
+        for (Future<float[]> future : pool.invokeAll(tasks)) {
+            float[] part = future.get();
+            if (bounds == null) {
+                bounds = part;
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                bounds[k] = Math.min(bounds[k], part[k]);
+                bounds[k + 3] = Math.max(bounds[k + 3], part[k + 3]);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Подсчёт точек по ячейкам и раскладка в порядке Мортона: у каждой части
+     * свои смещения, поэтому потоки пишут в непересекающиеся позиции
+     */
+    private void sortByCell(ForkJoinPool pool, PointCloud cloud) throws InterruptedException, ExecutionException {
+        int[] starts = chunkBounds(cloud.size());
+        int chunks = starts.length - 1;
+        List<Callable<int[]>> counting = new ArrayList<>();
+        for (int c = 0; c < chunks; c++) {
+            PointCloud slice = cloud.slice(starts[c], starts[c + 1]);
+            counting.add(() -> {
+                int[] counts = new int[GRID_CELLS];
+                FloatBuffer x = slice.column(PointCloud.Column.X);
+                FloatBuffer y = slice.column(PointCloud.Column.Y);
+                FloatBuffer z = slice.column(PointCloud.Column.Z);
+                for (int i = 0; i < slice.size(); i++) {
+                    counts[cell(x.get(i), y.get(i), z.get(i))]++;
+                }
+                return counts;
+            });
+        }
+        int[][] offsets = new int[chunks][];
+        List<Future<int[]>> counted = pool.invokeAll(counting);
+        for (int c = 0; c < chunks; c++) {
+            offsets[c] = counted.get(c).get();
+        }
+
+        // Начало каждой ячейки и смещение каждой части внутри ячейки
+        cellStart = new long[GRID_CELLS + 1];
+        long position = 0;
+        for (int cell = 0; cell < GRID_CELLS; cell++) {
+            cellStart[cell] = position;
+            for (int c = 0; c < chunks; c++) {
+                int count = offsets[c][cell];
+                offsets[c][cell] = (int) position;
+                position += count;
+            }
+        }
+        cellStart[GRID_CELLS] = position;
+
+        sorted.setSize(cloud.size());
+        List<Callable<Void>> scatter = new ArrayList<>();
+        for (int c = 0; c < chunks; c++) {
+            PointCloud slice = cloud.slice(starts[c], starts[c + 1]);
+            int[] next = offsets[c];
+            scatter.add(() -> {
+                FloatBuffer[] source = new FloatBuffer[PointCloud.Column.values().length];
+                FloatBuffer[] target = new FloatBuffer[source.length];
+                for (PointCloud.Column column : PointCloud.Column.values()) {
+                    source[column.ordinal()] = slice.column(column);
+                    target[column.ordinal()] = sorted.writableColumn(column);
+                }
+                for (int i = 0; i < slice.size(); i++) {
+                    int to = next[cell(source[0].get(i), source[1].get(i), source[2].get(i))]++;
+                    for (int k = 0; k < source.length; k++) {
+                        target[k].put(to, source[k].get(i));
+                    }
+                }
+                return null;
+            });
+        }
+        for (Future<Void> future : pool.invokeAll(scatter)) {
+            future.get();
+        }
+    }
+
+    /**
+     * Номер ячейки сетки в порядке Мортона: на каждом уровне биты X, Y, Z
+     */
+    private int cell(float x, float y, float z) {
+        int n = 1 << GRID_LEVEL;
+        int ix = Math.min(n - 1, Math.max(0, (int) ((x - cubeX) / cubeSize * n)));
+        int iy = Math.min(n - 1, Math.max(0, (int) ((y - cubeY) / cubeSize * n)));
+        int iz = Math.min(n - 1, Math.max(0, (int) ((z - cubeZ) / cubeSize * n)));
+        int code = 0;
+        for (int bit = GRID_LEVEL - 1; bit >= 0; bit--) {
+            code = (code << 3) | (((ix >> bit) & 1) << 2) | (((iy >> bit) & 1) << 1) | ((iz >> bit) & 1);
+        }
+        return code;
+    }
+
+    /**
+     * Результат построения узла: его описание, выборка для родителя и потомки
+     */
+    private static class NodeResult {
+        final TileNode node;
+        final float[][] sample;
+        final List<NodeResult> children;
+
+        NodeResult(TileNode node, float[][] sample, List<NodeResult> children) {
+            this.node = node;
+            this.sample = sample;
+            this.children = children;
+        }
+
+        void collect(List<TileNode> nodes) {
+            nodes.add(node);
+            for (NodeResult child : children) {
+                child.collect(nodes);
+            }
+        }
+    }
+
+    private class NodeTask extends RecursiveTask<NodeResult> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final int depth;
+        private final int prefix;
+        private final float minX;
+        private final float minY;
+        private final float minZ;
+        private final float size;
+
+        NodeTask(String name, int depth, int prefix, float minX, float minY, float minZ, float size) {
+            this.name = name;
+            this.depth = depth;
+            this.prefix = prefix;
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            this.size = size;
+        }
+
+        @Override
+        protected NodeResult compute() {
+            int shift = 3 * (GRID_LEVEL - depth);
+            int first = (int) cellStart[prefix << shift];
+            int last = (int) cellStart[(prefix + 1) << shift];
+            int count = last - first;
+
+            if (count <= leafCapacity || depth == GRID_LEVEL) {
+                FloatBuffer[] points = columns(sorted.slice(first, last));
+                writeTile(points, count);
+                TileNode node = new TileNode(name, minX, minY, minZ, size, 0, count, count);
+                return new NodeResult(node, subsample(points, count), new ArrayList<>());
+            }
+
+            List<NodeTask> tasks = new ArrayList<>();
+            int mask = 0;
+            float half = size / 2;
+            for (int k = 0; k < 8; k++) {
+                int childPrefix = (prefix << 3) | k;
+                int childShift = shift - 3;
+                if (cellStart[(childPrefix + 1) << childShift] == cellStart[childPrefix << childShift]) {
+                    continue;
+                }
+                mask |= 1 << k;
+                tasks.add(new NodeTask(name + k, depth + 1, childPrefix,
+                        minX + ((k >> 2) & 1) * half, minY + ((k >> 1) & 1) * half, minZ + (k & 1) * half, half));
+            }
+            invokeAll(tasks);
+
+            List<NodeResult> children = new ArrayList<>();
+            int total = 0;
+            for (NodeTask task : tasks) {
+                NodeResult child = task.join();
+                children.add(child);
+                total += child.sample[0].length;
+            }
+            float[][] merged = new float[4][total];
+            int offset = 0;
+            for (NodeResult child : children) {
+                int n = child.sample[0].length;
+                for (int k = 0; k < 4; k++) {
+                    System.arraycopy(child.sample[k], 0, merged[k], offset, n);
+                }
+                offset += n;
+            }
+            float[][] sample = subsample(wrap(merged), total);
+            writeTile(wrap(sample), sample[0].length);
+            // Выборки потомков больше не нужны, в дереве остаются только описания
+            List<NodeResult> described = new ArrayList<>();
+            for (NodeResult child : children) {
+                described.add(new NodeResult(child.node, null, child.children));
+            }
+            TileNode node = new TileNode(name, minX, minY, minZ, size, mask, sample[0].length, count);
+            return new NodeResult(node, sample, described);
+        }
+
+        private FloatBuffer[] columns(PointCloud slice) {
+            FloatBuffer[] points = new FloatBuffer[TILE_COLUMNS.length];
+            for (int k = 0; k < points.length; k++) {
+                points[k] = slice.column(TILE_COLUMNS[k]);
+            }
+            return points;
+        }
+
+        private FloatBuffer[] wrap(float[][] points) {
+            FloatBuffer[] buffers = new FloatBuffer[points.length];
+            for (int k = 0; k < points.length; k++) {
+                buffers[k] = FloatBuffer.wrap(points[k]);
+            }
+            return buffers;
+        }
+
+        /**
+         * Не больше одной точки на ячейку сетки узла и не больше ёмкости тайла
+         */
+        private float[][] subsample(FloatBuffer[] points, int count) {
+            int n = sampleResolution;
+            BitSet taken = new BitSet(n * n * n);
+            // Больше одной точки на ячейку не берётся
+            int[] kept = new int[Math.min(count, n * n * n)];
+            int keptCount = 0;
+            for (int i = 0; i < count; i++) {
+                int ix = Math.min(n - 1, Math.max(0, (int) ((points[0].get(i) - minX) / size * n)));
+                int iy = Math.min(n - 1, Math.max(0, (int) ((points[1].get(i) - minY) / size * n)));
+                int iz = Math.min(n - 1, Math.max(0, (int) ((points[2].get(i) - minZ) / size * n)));
+                int cell = (ix * n + iy) * n + iz;
+                if (!taken.get(cell)) {
+                    taken.set(cell);
+                    kept[keptCount++] = i;
+                }
+            }
+            double stride = Math.max(1.0, (double) keptCount / tileCapacity);
+            int resultCount = (int) (keptCount / stride);
+            float[][] result = new float[4][resultCount];
+            for (int j = 0; j < resultCount; j++) {
+                int i = kept[(int) (j * stride)];
+                for (int k = 0; k < 4; k++) {
+                    result[k][j] = points[k].get(i);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Записать тайл; колонки переносятся в файл частями по {@value #WRITE_CHUNK} точек
+         */
+        private void writeTile(FloatBuffer[] points, int count) {
+            ByteBuffer header = ByteBuffer.allocate(TILE_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(TILE_MAGIC).putInt(VERSION).putInt(count);
+            header.putFloat(minX).putFloat(minY).putFloat(minZ).putFloat(size);
+            header.flip();
+            ByteBuffer chunk = ByteBuffer.allocate(Math.min(count, WRITE_CHUNK) * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            try (FileChannel channel = FileChannel.open(output.resolve(name + TILE_SUFFIX),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                write(channel, header);
+                for (int k = 0; k < 4; k++) {
+                    FloatBuffer column = points[k].duplicate();
+                    for (int from = 0; from < count; from += WRITE_CHUNK) {
+                        int n = Math.min(WRITE_CHUNK, count - from);
+                        column.limit(from + n).position(from);
+                        chunk.clear();
+                        chunk.asFloatBuffer().put(column);
+                        chunk.limit(n * Float.BYTES);
+                        write(channel, chunk);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void writeIndex(List<TileNode> nodes) throws IOException {
+        int length = 28;
+        for (TileNode node : nodes) {
+            length += 1 + node.getName().length() + 1 + 4 + 8;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(INDEX_MAGIC).putInt(VERSION);
+        buffer.putFloat(cubeX).putFloat(cubeY).putFloat(cubeZ).putFloat(cubeSize);
+        buffer.putInt(nodes.size());
+        for (TileNode node : nodes) {
+            buffer.put((byte) node.getName().length());
+            buffer.put(node.getName().getBytes(StandardCharsets.US_ASCII));
+            buffer.put((byte) node.getChildMask());
+            buffer.putInt(node.getTilePoints());
+            buffer.putLong(node.getSubtreePoints());
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(output.resolve(INDEX_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            write(channel, buffer);
+        }
+    }
+
+    /**
+     * Прочитать индекс тайлов
+     * @return узлы в порядке уровней
+     */
+    public static List<TileNode> readIndex(Path directory) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(directory.resolve(INDEX_FILE))).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt() != INDEX_MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Не индекс тайлов: " + directory);
+        }
+        buffer.position(buffer.position() + 16);
+        int count = buffer.getInt();
+        List<TileNode> nodes = new ArrayList<>(count);
+        // Куб узла восстанавливается по кубу родителя и номеру октанта
+        Map<String, TileNode> byName = new HashMap<>();
+        ByteBuffer root = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        root.position(8);
+        float x = root.getFloat();
+        float y = root.getFloat();
+        float z = root.getFloat();
+        float size = root.getFloat();
+        for (int i = 0; i < count; i++) {
+            byte[] nameBytes = new byte[buffer.get()];
+            buffer.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.US_ASCII);
+            int mask = buffer.get() & 0xFF;
+            int tilePoints = buffer.getInt();
+            long subtreePoints = buffer.getLong();
+            TileNode parent = name.length() > 1 ? byName.get(name.substring(0, name.length() - 1)) : null;
+            TileNode node;
+            if (parent == null) {
+                node = new TileNode(name, x, y, z, size, mask, tilePoints, subtreePoints);
+            } else {
+                int k = name.charAt(name.length() - 1) - '0';
+                float half = parent.getSize() / 2;
+                node = new TileNode(name, parent.getMinX() + ((k >> 2) & 1) * half,
+                        parent.getMinY() + ((k >> 1) & 1) * half, parent.getMinZ() + (k & 1) * half,
+                        half, mask, tilePoints, subtreePoints);
+            }
+            byName.put(name, node);
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
+    /**
+     * Прочитать тайл в облако (колонки phi и theta не заполняются)
+     */
+    public static PointCloud readTile(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt() != TILE_MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Не тайл: " + file);
+        }
+        int count = buffer.getInt();
+        FloatBuffer floats = buffer.position(TILE_HEADER).slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        PointCloud cloud = PointCloud.allocate(count);
+        for (int i = 0; i < count; i++) {
+            cloud.add(floats.get(i), floats.get(count + i), floats.get(2 * count + i), floats.get(3 * count + i), 0, 0);
+        }
+        return cloud;
+    }
+
+    private static void deleteTiles(Path directory) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + TILE_SUFFIX)) {
+            for (Path path : stream) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static void deleteDirectory(Path directory) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                Files.delete(path);
+            }
+            Files.delete(directory);
+        } catch (IOException e) {
+            System.err.println("Не удалось удалить временный каталог " + directory + ": " + e.getMessage());
+        }
+    }
+
+    // Геттеры и сеттеры
+    public int getLeafCapacity() {
+        return leafCapacity;
+    }
+
+    /**
+     * @param leafCapacity узел с таким числом точек или меньше не делится
+     */
+    public void setLeafCapacity(int leafCapacity) {
+        this.leafCapacity = leafCapacity;
+    }
+
+    public int getTileCapacity() {
+        return tileCapacity;
+    }
+
+    /**
+     * @param tileCapacity наибольшее число точек в тайле внутреннего узла
+     */
+    public void setTileCapacity(int tileCapacity) {
+        this.tileCapacity = tileCapacity;
+    }
+
+    public int getSampleResolution() {
+        return sampleResolution;
+    }
+
+    /**
+     * @param sampleResolution ячеек по оси куба узла при прореживании
+     */
+    public void setSampleResolution(int sampleResolution) {
+        this.sampleResolution = sampleResolution;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+}
@@ -0,0 +1,395 @@
+package com.arduino.scan.cloud;
+
+import com.arduino.profiling.ConversionEvent;
+import com.arduino.scan.Scan;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Облако точек вне кучи JVM.
+ *
+ * Каждая колонка (x, y, z, r, phi, theta) — отдельный буфер float32:
+ * либо прямая память ({@link ByteBuffer#allocateDirect}), либо файл,
+ * отображённый в память. В куче остаются только заголовки буферов,
+ * поэтому облако в десятки миллионов точек не нагружает сборщик мусора
+ * и не упирается в -Xmx. Файловое облако — каталог с файлами колонок
+ * x.f32 ... theta.f32 (little-endian) и заголовком cloud.hdr.
+ *
+ * {@link #slice(int, int)} возвращает вид на диапазон точек без копирования.
+ */
+public class PointCloud implements Closeable {
+
+    /**
+     * Колонки облака
+     */
+    public enum Column {
+        X, Y, Z, R, PHI, THETA;
+
+        String fileName() {
+            return name().toLowerCase(Locale.ROOT) + ".f32";
+        }
+    }
+
+    public static final String HEADER_FILE = "cloud.hdr";
+
+    private static final int HEADER_MAGIC = 0x53525043; // "SRPC"
+    private static final int HEADER_VERSION = 1;
+    private static final int COLUMNS = Column.values().length;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE / Float.BYTES;
+
+    private final Path directory;
+    private final boolean view;
+    private final FloatBuffer[] columns = new FloatBuffer[COLUMNS];
+    private int capacity;
+    private int size;
+
+    private PointCloud(Path directory, boolean view) {
+        this.directory = directory;
+        this.view = view;
+    }
+
+    /**
+     * Облако в прямой памяти
+     * @param capacity начальная ёмкость, точек
+     */
+    public static PointCloud allocate(int capacity) {
+        PointCloud cloud = new PointCloud(null, false);
+        cloud.resize(Math.max(capacity, 1024));
+        return cloud;
+    }
+
+    /**
+     * Создать облако в файлах каталога (существующее облако перезаписывается)
+     */
+    public static PointCloud create(Path directory, int capacity) throws IOException {
+        Files.createDirectories(directory);
+        PointCloud cloud = new PointCloud(directory, false);
+        for (Column column : Column.values()) {
+            Files.deleteIfExists(directory.resolve(column.fileName()));
+        }
+        cloud.map(Math.max(capacity, 1024));
+        cloud.writeHeader();
+        return cloud;
+    }
+
+    /**
+     * Открыть облако, ранее созданное в каталоге
+     */
+    public static PointCloud open(Path directory) throws IOException {
+        int count;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(directory.resolve(HEADER_FILE)))) {
+            if (in.readInt() != HEADER_MAGIC) {
+                throw new IOException("Не облако точек: " + directory);
+            }
+            int version = in.readInt();
+            if (version != HEADER_VERSION) {
+                throw new IOException("Неподдерживаемая версия облака: " + version);
+            }
+            count = in.readInt();
+        }
+        PointCloud cloud = new PointCloud(directory, false);
+        long fileSize = Files.size(directory.resolve(Column.X.fileName()));
+        cloud.map((int) Math.max(count, fileSize / Float.BYTES));
+        cloud.size = count;
+        return cloud;
+    }
+
+    /**
+     * Добавить отсчёт скетча; декартовы координаты считаются как в ser.py
+     */
+    public void add(double phi, double theta, double r) {
+        double t = Math.toRadians(theta);
+        double p = Math.toRadians(phi);
+        double sinTheta = Math.sin(t);
+        add(r * sinTheta * Math.cos(p), r * sinTheta * Math.sin(p), r * Math.cos(t), r, phi, theta);
+    }
+
+    /**
+     * Добавить точку со всеми колонками
+     */
+    public void add(double x, double y, double z, double r, double phi, double theta) {
+        if (size == capacity) {
+            ensureCapacity(size + 1);
+        }
+        int i = size++;
+        columns[0].put(i, (float) x);
+        columns[1].put(i, (float) y);
+        columns[2].put(i, (float) z);
+        columns[3].put(i, (float) r);
+        columns[4].put(i, (float) phi);
+        columns[5].put(i, (float) theta);
+    }
+
+    /**
+     * Добавить скан, сдвинув его на положение сканера в общей системе координат
+     */
+    public void addAll(Scan scan, double dx, double dy, double dz) {
+        ConversionEvent event = new ConversionEvent("cloud");
+        ensureCapacity(size + scan.size());
+        for (int i = 0; i < scan.size(); i++) {
+            add(scan.getX(i) + dx, scan.getY(i) + dy, scan.getZ(i) + dz,
+                    scan.getR(i), scan.getPhi(i), scan.getTheta(i));
+        }
+        event.complete(scan.size());
+    }
+
+    /**
+     * Скопировать точки другого облака (например, среза)
+     */
+    public void addAll(PointCloud other) {
+        ensureCapacity(size + other.size);
+        for (int c = 0; c < COLUMNS; c++) {
+            FloatBuffer target = columns[c].duplicate();
+            target.position(size);
+            FloatBuffer source = other.columns[c].duplicate();
+            source.limit(other.size).position(0);
+            target.put(source);
+        }
+        size += other.size;
+    }
+
+    /**
+     * Скопировать в target точки, прошедшие фильтр
+     * @return target
+     */
+    public PointCloud filter(PointFilter filter, PointCloud target) {
+        for (int i = 0; i < size; i++) {
+            if (filter.accept(this, i)) {
+                target.add(getX(i), getY(i), getZ(i), getR(i), getPhi(i), getTheta(i));
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Вид на точки [from, to) без копирования; только для чтения
+     */
+    public PointCloud slice(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Срез " + from + ".." + to + " при размере " + size);
+        }
+        PointCloud slice = new PointCloud(directory, true);
+        for (int c = 0; c < COLUMNS; c++) {
+            slice.columns[c] = columns[c].slice(from, to - from).asReadOnlyBuffer();
+        }
+        slice.capacity = to - from;
+        slice.size = to - from;
+        return slice;
+    }
+
+    /**
+     * Габариты облака
+     * @return {minX, minY, minZ, maxX, maxY, maxZ} или null для пустого облака
+     */
+    public float[] bounds() {
+        if (size == 0) {
+            return null;
+        }
+        float[] bounds = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+                -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int c = 0; c < 3; c++) {
+            FloatBuffer column = columns[c];
+            float min = bounds[c];
+            float max = bounds[c + 3];
+            for (int i = 0; i < size; i++) {
+                float v = column.get(i);
+                if (v < min) {
+                    min = v;
+                }
+                if (v > max) {
+                    max = v;
+                }
+            }
+            bounds[c] = min;
+            bounds[c + 3] = max;
+        }
+        return bounds;
+    }
+
+    public void ensureCapacity(int required) {
+        if (view) {
+            throw new UnsupportedOperationException("Срез облака только для чтения");
+        }
+        if (required <= capacity) {
+            return;
+        }
+        if (required > MAX_CAPACITY) {
+            throw new IllegalStateException("Превышена ёмкость колонки: " + required);
+        }
+        int newCapacity = (int) Math.min(MAX_CAPACITY, Math.max(required, capacity * 2L));
+        if (directory == null) {
+            resize(newCapacity);
+        } else {
+            try {
+                map(newCapacity);
+            } catch (IOException e) {
+                throw new IllegalStateException("Не удалось расширить файлы облака: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Задать количество точек без записи значений, чтобы затем заполнить колонки
+     * по индексам (например, из нескольких потоков)
+     */
+    void setSize(int newSize) {
+        ensureCapacity(newSize);
+        size = newSize;
+    }
+
+    /**
+     * Колонка для записи по индексам; у каждого потока должна быть своя копия
+     */
+    FloatBuffer writableColumn(Column column) {
+        if (view) {
+            throw new UnsupportedOperationException("Срез облака только для чтения");
+        }
+        return columns[column.ordinal()].duplicate();
+    }
+
+    private void resize(int newCapacity) {
+        for (int c = 0; c < COLUMNS; c++) {
+            FloatBuffer grown = ByteBuffer.allocateDirect(newCapacity * Float.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            if (columns[c] != null) {
+                FloatBuffer old = columns[c].duplicate();
+                old.limit(size).position(0);
+                grown.put(old);
+                grown.clear();
+            }
+            columns[c] = grown;
+        }
+        capacity = newCapacity;
+    }
+
+    /**
+     * Отобразить файлы колонок; файлы растягиваются до новой ёмкости
+     */
+    private void map(int newCapacity) throws IOException {
+        for (Column column : Column.values()) {
+            try (FileChannel channel = FileChannel.open(directory.resolve(column.fileName()),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        (long) newCapacity * Float.BYTES);
+                columns[column.ordinal()] = buffer.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            }
+        }
+        capacity = newCapacity;
+    }
+
+    private void writeHeader() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(directory.resolve(HEADER_FILE)))) {
+            out.writeInt(HEADER_MAGIC);
+            out.writeInt(HEADER_VERSION);
+            out.writeInt(size);
+        }
+    }
+
+    /**
+     * Сохранить количество точек в заголовке файлового облака
+     */
+    public void flush() throws IOException {
+        if (directory != null && !view) {
+            writeHeader();
+        }
+    }
+
+    /**
+     * Закрыть файловое облако, сохранив заголовок. Файлы колонок не обрезаются:
+     * срезы облака могут ещё ссылаться на отображение. Прямая память
+     * освобождается сборщиком мусора вместе с облаком
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * Колонка для быстрых проходов: вид только для чтения на первые {@link #size()} значений
+     */
+    public FloatBuffer column(Column column) {
+        FloatBuffer buffer = columns[column.ordinal()].duplicate();
+        buffer.limit(size).position(0);
+        return buffer.slice().asReadOnlyBuffer();
+    }
+
+    public float get(Column column, int i) {
+        checkIndex(i);
+        return columns[column.ordinal()].get(i);
+    }
+
+    public float getX(int i) {
+        return get(Column.X, i);
+    }
+
+    public float getY(int i) {
+        return get(Column.Y, i);
+    }
+
+    public float getZ(int i) {
+        return get(Column.Z, i);
+    }
+
+    public float getR(int i) {
+        return get(Column.R, i);
+    }
+
+    public float getPhi(int i) {
+        return get(Column.PHI, i);
+    }
+
+    public float getTheta(int i) {
+        return get(Column.THETA, i);
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Точка " + i + " при размере " + size);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Сбросить облако, не освобождая память
+     */
+    public void clear() {
+        if (view) {
+            throw new UnsupportedOperationException("Срез облака только для чтения");
+        }
+        size = 0;
+    }
+
+    /**
+     * @return каталог файлового облака или null для облака в прямой памяти
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public boolean isView() {
+        return view;
+    }
+}
@@ -0,0 +1,197 @@
+package com.arduino.scan.cloud;
+
+import com.arduino.scan.PlyWriter;
+import com.arduino.scan.Scan;
+import com.arduino.scan.ScanFiles;
+import com.arduino.scan.normals.PointNormals;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Потоковый перенос файлов сканов в {@link PointCloud} и выгрузка облака.
+ *
+ * В отличие от {@link ScanFiles}, отсчёты не собираются в промежуточный
+ * {@link Scan} в куче, а сразу пишутся в колонки облака, поэтому объём
+ * ограничен только памятью вне кучи или диском.
+ */
+public final class PointCloudFiles {
+
+    private PointCloudFiles() {
+    }
+
+    /**
+     * Дописать в облако скан из data.csv или двоичного файла
+     * @param dx смещение сканера по X в общей системе координат, см
+     * @return количество добавленных точек
+     */
+    public static int load(Path path, PointCloud target, double dx, double dy, double dz) throws IOException {
+        int before = target.size();
+        if (ScanFiles.isBinary(path)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+                in.readInt();
+                int version = in.readInt();
+                if (version != ScanFiles.BINARY_VERSION) {
+                    throw new IOException("Неподдерживаемая версия файла скана: " + version);
+                }
+                int count = in.readInt();
+                target.ensureCapacity(target.size() + count);
+                for (int i = 0; i < count; i++) {
+                    add(target, in.readFloat(), in.readFloat(), in.readFloat(), dx, dy, dz);
+                }
+            }
+        } else {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    double[] sample = Scan.parseLine(line);
+                    if (sample != null) {
+                        add(target, sample[0], sample[1], sample[2], dx, dy, dz);
+                    }
+                }
+            }
+        }
+        return target.size() - before;
+    }
+
+    private static void add(PointCloud target, double phi, double theta, double r, double dx, double dy, double dz) {
+        double t = Math.toRadians(theta);
+        double p = Math.toRadians(phi);
+        double sinTheta = Math.sin(t);
+        target.add(r * sinTheta * Math.cos(p) + dx, r * sinTheta * Math.sin(p) + dy, r * Math.cos(t) + dz,
+                r, phi, theta);
+    }
+
+    /**
+     * Записать облако в двоичном формате {@link ScanFiles} (phi, theta, r).
+     * Смещения сканеров при этом теряются
+     */
+    public static void writeBinary(PointCloud cloud, Path path) throws IOException {
+        FloatBuffer phi = cloud.column(PointCloud.Column.PHI);
+        FloatBuffer theta = cloud.column(PointCloud.Column.THETA);
+        FloatBuffer r = cloud.column(PointCloud.Column.R);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(ScanFiles.BINARY_MAGIC);
+            out.writeInt(ScanFiles.BINARY_VERSION);
+            out.writeInt(cloud.size());
+            for (int i = 0; i < cloud.size(); i++) {
+                out.writeFloat(phi.get(i));
+                out.writeFloat(theta.get(i));
+                out.writeFloat(r.get(i));
+            }
+        }
+    }
+
+    /**
+     * Записать декартовы координаты и дальность: "x; y; z; r"
+     */
+    public static void writeXyz(PointCloud cloud, Path path) throws IOException {
+        FloatBuffer x = cloud.column(PointCloud.Column.X);
+        FloatBuffer y = cloud.column(PointCloud.Column.Y);
+        FloatBuffer z = cloud.column(PointCloud.Column.Z);
+        FloatBuffer r = cloud.column(PointCloud.Column.R);
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("x; y; z; r\n");
+            for (int i = 0; i < cloud.size(); i++) {
+                writer.write(x.get(i) + ";" + y.get(i) + ";" + z.get(i) + ";" + r.get(i) + "\n");
+            }
+        }
+    }
+
+    /**
+     * Записать облако в ASCII VTK в том же виде, что {@link com.arduino.scan.VtkWriter},
+     * с полем Radius; точки читаются прямо из колонок
+     */
+    public static void writeVtk(PointCloud cloud, Path path, String title) throws IOException {
+        writeVtk(cloud, path, title, null);
+    }
+
+    /**
+     * Записать облако в ASCII VTK с полем Radius и, если заданы, нормалями
+     * (NORMALS Normals) и кривизной (SCALARS Curvature)
+     */
+    public static void writeVtk(PointCloud cloud, Path path, String title, PointNormals normals) throws IOException {
+        FloatBuffer x = cloud.column(PointCloud.Column.X);
+        FloatBuffer y = cloud.column(PointCloud.Column.Y);
+        FloatBuffer z = cloud.column(PointCloud.Column.Z);
+        FloatBuffer r = cloud.column(PointCloud.Column.R);
+        int count = cloud.size();
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+            writer.write("# vtk DataFile Version 3.0\n");
+            writer.write(title + "\n");
+            writer.write("ASCII\n");
+            writer.write("DATASET POLYDATA\n");
+            writer.write("POINTS " + count + " float\n");
+            for (int i = 0; i < count; i++) {
+                writer.write(format(x.get(i)) + " " + format(y.get(i)) + " " + format(z.get(i)) + "\n");
+            }
+            writer.write("VERTICES " + count + " " + (count * 2L) + "\n");
+            for (int i = 0; i < count; i++) {
+                writer.write("1 " + i + "\n");
+            }
+            writer.write("POINT_DATA " + count + "\n");
+            writer.write("SCALARS Radius float 1\n");
+            writer.write("LOOKUP_TABLE default\n");
+            for (int i = 0; i < count; i++) {
+                writer.write(format(r.get(i)) + "\n");
+            }
+            if (normals != null) {
+                float[] curvature = normals.getCurvature();
+                writer.write("SCALARS Curvature float 1\n");
+                writer.write("LOOKUP_TABLE default\n");
+                for (int i = 0; i < count; i++) {
+                    writer.write(format(curvature[i]) + "\n");
+                }
+                float[] nx = normals.getNx();
+                float[] ny = normals.getNy();
+                float[] nz = normals.getNz();
+                writer.write("NORMALS Normals float\n");
+                for (int i = 0; i < count; i++) {
+                    writer.write(format(nx[i]) + " " + format(ny[i]) + " " + format(nz[i]) + "\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * Записать облако в двоичный PLY: x, y, z, нормали (если заданы), Radius,
+     * Phi, Theta и кривизна; точки читаются прямо из колонок
+     */
+    public static void writePly(PointCloud cloud, Path path, PointNormals normals) throws IOException {
+        FloatBuffer x = cloud.column(PointCloud.Column.X);
+        FloatBuffer y = cloud.column(PointCloud.Column.Y);
+        FloatBuffer z = cloud.column(PointCloud.Column.Z);
+        FloatBuffer r = cloud.column(PointCloud.Column.R);
+        FloatBuffer phi = cloud.column(PointCloud.Column.PHI);
+        FloatBuffer theta = cloud.column(PointCloud.Column.THETA);
+        PlyWriter writer = new PlyWriter("SRST point cloud")
+                .setCount(cloud.size())
+                .addProperty("x", x::get)
+                .addProperty("y", y::get)
+                .addProperty("z", z::get);
+        if (normals != null) {
+            writer.setNormals(normals.getNx(), normals.getNy(), normals.getNz());
+        }
+        writer.addProperty("Radius", r::get)
+                .addProperty("Phi", phi::get)
+                .addProperty("Theta", theta::get);
+        if (normals != null) {
+            writer.addScalars("Curvature", normals.getCurvature());
+        }
+        writer.write(path);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+}
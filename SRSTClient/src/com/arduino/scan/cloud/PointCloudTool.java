@@ -0,0 +1,210 @@
+package com.arduino.scan.cloud;
+
+import com.arduino.scan.normals.NormalEstimator;
+import com.arduino.scan.normals.PointNormals;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Работа с облаком точек вне кучи из командной строки.
+ *
+ * <pre>
+ * PointCloudTool build &lt;облако&gt; data.csv[@dx,dy,dz]...
+ * PointCloudTool info &lt;облако&gt;
+ * PointCloudTool export &lt;облако&gt; out.vtk|out.ply|out.csv|out.bin [rMin rMax]
+ * PointCloudTool normals &lt;облако&gt; out.vtk|out.ply [k] [потоков]
+ * PointCloudTool tiles &lt;облако&gt; &lt;каталог тайлов&gt; [потоков]
+ * PointCloudTool bench &lt;точек&gt; [облако]
+ * </pre>
+ * Облако в прямой памяти ограничено -XX:MaxDirectMemorySize (по умолчанию
+ * равен -Xmx); файловое облако ограничено только диском.
+ */
+public class PointCloudTool {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            usage();
+            return;
+        }
+        switch (args[0]) {
+            case "build":
+                try (PointCloud cloud = PointCloud.create(Paths.get(args[1]), 1 << 20)) {
+                    for (int i = 2; i < args.length; i++) {
+                        String[] spec = args[i].split("@", 2);
+                        double[] offset = {0, 0, 0};
+                        if (spec.length > 1) {
+                            String[] parts = spec[1].split(",");
+                            for (int k = 0; k < 3 && k < parts.length; k++) {
+                                offset[k] = Double.parseDouble(parts[k]);
+                            }
+                        }
+                        int added = PointCloudFiles.load(Paths.get(spec[0]), cloud, offset[0], offset[1], offset[2]);
+                        System.out.println("✓ " + spec[0] + ": " + added + " точек");
+                    }
+                    System.out.println("Всего точек: " + cloud.size());
+                }
+                break;
+            case "info":
+                try (PointCloud cloud = PointCloud.open(Paths.get(args[1]))) {
+                    info(cloud);
+                }
+                break;
+            case "export":
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                try (PointCloud cloud = PointCloud.open(Paths.get(args[1]))) {
+                    PointCloud result = cloud;
+                    if (args.length > 4) {
+                        float rMin = Float.parseFloat(args[3]);
+                        float rMax = Float.parseFloat(args[4]);
+                        result = cloud.filter((c, i) -> c.getR(i) >= rMin && c.getR(i) <= rMax,
+                                PointCloud.allocate(1 << 16));
+                    }
+                    export(result, Paths.get(args[2]), null);
+                    System.out.println("✓ Экспортировано " + result.size() + " точек в " + args[2]);
+                }
+                break;
+            case "normals":
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                try (PointCloud cloud = PointCloud.open(Paths.get(args[1]))) {
+                    NormalEstimator estimator = new NormalEstimator();
+                    if (args.length > 3) {
+                        estimator.setK(Integer.parseInt(args[3]));
+                    }
+                    if (args.length > 4) {
+                        estimator.setParallelism(Integer.parseInt(args[4]));
+                    }
+                    PointNormals normals = estimator.estimate(cloud);
+                    System.out.println("✓ " + normals.summary() + ", потоков: " + estimator.getParallelism());
+                    export(cloud, Paths.get(args[2]), normals);
+                    System.out.println("✓ Экспортировано " + cloud.size() + " точек в " + args[2]);
+                }
+                break;
+            case "tiles":
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                try (PointCloud cloud = PointCloud.open(Paths.get(args[1]))) {
+                    tiles(cloud, Paths.get(args[2]), args.length > 3 ? Integer.parseInt(args[3]) : 0);
+                }
+                break;
+            case "bench":
+                bench(Integer.parseInt(args[1]), args.length > 2 ? Paths.get(args[2]) : null);
+                break;
+            default:
+                usage();
+        }
+    }
+
+    /**
+     * Записать облако в формате по расширению файла
+     * @param normals нормали для VTK и PLY или null
+     */
+    static void export(PointCloud cloud, Path path, PointNormals normals) throws IOException {
+        String name = path.getFileName().toString().toLowerCase();
+        if (name.endsWith(".vtk")) {
+            PointCloudFiles.writeVtk(cloud, path, "Polar to Cartesian Conversion", normals);
+        } else if (name.endsWith(".ply")) {
+            PointCloudFiles.writePly(cloud, path, normals);
+        } else if (name.endsWith(".bin")) {
+            PointCloudFiles.writeBinary(cloud, path);
+        } else {
+            PointCloudFiles.writeXyz(cloud, path);
+        }
+    }
+
+    private static void info(PointCloud cloud) {
+        System.out.println("Точек: " + cloud.size());
+        float[] bounds = cloud.bounds();
+        if (bounds != null) {
+            System.out.printf("X: %.1f .. %.1f  Y: %.1f .. %.1f  Z: %.1f .. %.1f%n",
+                    bounds[0], bounds[3], bounds[1], bounds[4], bounds[2], bounds[5]);
+        }
+    }
+
+    private static void tiles(PointCloud cloud, Path output, int threads) throws IOException {
+        OctreeTiler tiler = new OctreeTiler();
+        if (threads > 0) {
+            tiler.setParallelism(threads);
+        }
+        long start = System.nanoTime();
+        List<TileNode> nodes = tiler.build(cloud, output);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int leaves = 0;
+        int depth = 0;
+        long tilePoints = 0;
+        for (TileNode node : nodes) {
+            leaves += node.isLeaf() ? 1 : 0;
+            depth = Math.max(depth, node.getLevel());
+            tilePoints += node.getTilePoints();
+        }
+        System.out.printf("✓ %d точек -> %d тайлов (%d листьев, %d уровней, %d точек в тайлах) за %.2f с, потоков: %d%n",
+                cloud.size(), nodes.size(), leaves, depth + 1, tilePoints, seconds, tiler.getParallelism());
+    }
+
+    /**
+     * Заполнить облако синтетическими проходами сетки и пройти по нему фильтром,
+     * наблюдая за кучей и сборками мусора
+     */
+    private static void bench(int points, Path directory) throws IOException {
+        long start = System.nanoTime();
+        try (PointCloud cloud = directory != null ? PointCloud.create(directory, points) : PointCloud.allocate(points)) {
+            int phi = 0;
+            int theta = 0;
+            for (int i = 0; i < points; i++) {
+                cloud.add(phi, theta, 150 + (i % 97));
+                theta += 5;
+                if (theta > 180) {
+                    theta = 0;
+                    phi = phi >= 180 ? 0 : phi + 5;
+                }
+            }
+            double fill = (System.nanoTime() - start) / 1e9;
+
+            long filterStart = System.nanoTime();
+            int[] near = new int[1];
+            for (int from = 0; from < cloud.size(); from += 1 << 20) {
+                PointCloud slice = cloud.slice(from, Math.min(cloud.size(), from + (1 << 20)));
+                for (int i = 0; i < slice.size(); i++) {
+                    if (slice.getR(i) < 200) {
+                        near[0]++;
+                    }
+                }
+            }
+            double filter = (System.nanoTime() - filterStart) / 1e9;
+
+            Runtime runtime = Runtime.getRuntime();
+            long gcCount = 0;
+            long gcTime = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gcCount += Math.max(0, gc.getCollectionCount());
+                gcTime += Math.max(0, gc.getCollectionTime());
+            }
+            System.out.printf("Точек: %d (%s), заполнение %.2f с, проход по срезам %.2f с, r < 200: %d%n",
+                    cloud.size(), directory != null ? "файлы" : "прямая память", fill, filter, near[0]);
+            System.out.printf("Куча: занято %d МБ из %d МБ, сборок мусора: %d (%d мс)%n",
+                    (runtime.totalMemory() - runtime.freeMemory()) >> 20, runtime.maxMemory() >> 20, gcCount, gcTime);
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Использование:");
+        System.out.println("  PointCloudTool build <облако> data.csv[@dx,dy,dz]...");
+        System.out.println("  PointCloudTool info <облако>");
+        System.out.println("  PointCloudTool export <облако> out.vtk|out.ply|out.csv|out.bin [rMin rMax]");
+        System.out.println("  PointCloudTool normals <облако> out.vtk|out.ply [k] [потоков]");
+        System.out.println("  PointCloudTool tiles <облако> <каталог тайлов> [потоков]");
+        System.out.println("  PointCloudTool bench <точек> [облако]");
+    }
+}
@@ -0,0 +1,14 @@
+package com.arduino.scan.cloud;
+
+/**
+ * Условие отбора точек облака
+ */
+public interface PointFilter {
+
+    /**
+     * @param cloud облако
+     * @param index номер точки
+     * @return true если точку нужно оставить
+     */
+    boolean accept(PointCloud cloud, int index);
+}
@@ -0,0 +1,98 @@
+package com.arduino.scan.cloud;
+
+/**
+ * Узел октодерева тайлов {@link OctreeTiler}.
+ *
+ * Имя узла — путь от корня: "r", затем номер октанта на каждом уровне
+ * ("r0", "r05", ...). Октант k: бит 2 — X, бит 1 — Y, бит 0 — Z.
+ */
+public class TileNode {
+
+    private final String name;
+    private final float minX;
+    private final float minY;
+    private final float minZ;
+    private final float size;
+    private final int childMask;
+    private final int tilePoints;
+    private final long subtreePoints;
+
+    TileNode(String name, float minX, float minY, float minZ, float size,
+             int childMask, int tilePoints, long subtreePoints) {
+        this.name = name;
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.size = size;
+        this.childMask = childMask;
+        this.tilePoints = tilePoints;
+        this.subtreePoints = subtreePoints;
+    }
+
+    public boolean isLeaf() {
+        return childMask == 0;
+    }
+
+    public boolean hasChild(int octant) {
+        return (childMask & (1 << octant)) != 0;
+    }
+
+    /**
+     * Уровень детализации: 0 — корень
+     */
+    public int getLevel() {
+        return name.length() - 1;
+    }
+
+    public String getFileName() {
+        return name + OctreeTiler.TILE_SUFFIX;
+    }
+
+    // Геттеры
+    public String getName() {
+        return name;
+    }
+
+    public float getMinX() {
+        return minX;
+    }
+
+    public float getMinY() {
+        return minY;
+    }
+
+    public float getMinZ() {
+        return minZ;
+    }
+
+    /**
+     * Длина ребра куба узла, см
+     */
+    public float getSize() {
+        return size;
+    }
+
+    public int getChildMask() {
+        return childMask;
+    }
+
+    /**
+     * Точек в тайле узла
+     */
+    public int getTilePoints() {
+        return tilePoints;
+    }
+
+    /**
+     * Точек исходного облака в кубе узла
+     */
+    public long getSubtreePoints() {
+        return subtreePoints;
+    }
+
+    @Override
+    public String toString() {
+        return name + " уровень " + getLevel() + ", в тайле " + tilePoints + ", всего " + subtreePoints
+                + (isLeaf() ? ", лист" : "");
+    }
+}
@@ -0,0 +1,184 @@
+package com.arduino.scan.compare;
+
+import com.arduino.scan.ScanGrid;
+import com.arduino.scan.VtkWriter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Результат сравнения двух сканов: разница дальностей по ячейкам сетки
+ * и сводная статистика.
+ */
+public class ComparisonResult {
+
+    /** Состояние ячейки в поле Status */
+    public static final int UNCHANGED = 0;
+    public static final int CHANGED = 1;
+    public static final int ONLY_BEFORE = 2;
+    public static final int ONLY_AFTER = 3;
+
+    private final ScanGrid grid;
+    private final float[] before;
+    private final float[] after;
+    private final float[] delta;
+    private final int phiShift;
+    private final double threshold;
+
+    private int compared;
+    private int changed;
+    private int onlyBefore;
+    private int onlyAfter;
+    private double meanAbs;
+    private double rms;
+    private double maxAbs;
+
+    ComparisonResult(ScanGrid grid, float[] before, float[] after, float[] delta, int phiShift, double threshold) {
+        this.grid = grid;
+        this.before = before;
+        this.after = after;
+        this.delta = delta;
+        this.phiShift = phiShift;
+        this.threshold = threshold;
+        summarize();
+    }
+
+    private void summarize() {
+        double sumAbs = 0;
+        double sumSq = 0;
+        for (int i = 0; i < delta.length; i++) {
+            float d = delta[i];
+            if (Float.isNaN(d)) {
+                if (!Float.isNaN(before[i])) {
+                    onlyBefore++;
+                } else if (!Float.isNaN(after[i])) {
+                    onlyAfter++;
+                }
+                continue;
+            }
+            float abs = Math.abs(d);
+            compared++;
+            sumAbs += abs;
+            sumSq += (double) d * d;
+            if (abs > maxAbs) {
+                maxAbs = abs;
+            }
+            if (abs > threshold) {
+                changed++;
+            }
+        }
+        meanAbs = compared > 0 ? sumAbs / compared : 0;
+        rms = compared > 0 ? Math.sqrt(sumSq / compared) : 0;
+    }
+
+    /**
+     * Состояние ячейки: UNCHANGED, CHANGED, ONLY_BEFORE, ONLY_AFTER или -1 если пуста в обоих сканах
+     */
+    public int status(int cell) {
+        float d = delta[cell];
+        if (!Float.isNaN(d)) {
+            return Math.abs(d) > threshold ? CHANGED : UNCHANGED;
+        }
+        if (!Float.isNaN(before[cell])) {
+            return ONLY_BEFORE;
+        }
+        if (!Float.isNaN(after[cell])) {
+            return ONLY_AFTER;
+        }
+        return -1;
+    }
+
+    /**
+     * Записать разницу в VTK: точка на каждую непустую ячейку,
+     * поля Delta (см), AbsDelta и Status для раскраски
+     */
+    public void writeVtk(Path path) throws IOException {
+        int n = compared + onlyBefore + onlyAfter;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] z = new double[n];
+        double[] d = new double[n];
+        double[] abs = new double[n];
+        double[] status = new double[n];
+        int k = 0;
+        for (int cell = 0; cell < delta.length; cell++) {
+            int s = status(cell);
+            if (s < 0) {
+                continue;
+            }
+            double r = Float.isNaN(after[cell]) ? before[cell] : after[cell];
+            double phi = Math.toRadians(grid.cellPhi(cell));
+            double theta = Math.toRadians(grid.cellTheta(cell));
+            x[k] = r * Math.sin(theta) * Math.cos(phi);
+            y[k] = r * Math.sin(theta) * Math.sin(phi);
+            z[k] = r * Math.cos(theta);
+            d[k] = Float.isNaN(delta[cell]) ? 0 : delta[cell];
+            abs[k] = Math.abs(d[k]);
+            status[k] = s;
+            k++;
+        }
+        new VtkWriter("Scan change detection")
+                .setPoints(x, y, z, n)
+                .addScalars("Delta", d)
+                .addScalars("AbsDelta", abs)
+                .addScalars("Status", status)
+                .write(path);
+    }
+
+    /**
+     * Краткая сводка для вывода в консоль
+     */
+    public String summary() {
+        return String.format(Locale.ROOT,
+                "Сравнено ячеек: %d%n" +
+                        "Изменилось (> %.1f см): %d (%.1f%%)%n" +
+                        "Только в первом скане: %d%n" +
+                        "Только во втором скане: %d%n" +
+                        "Средняя |разница|: %.2f см, RMS: %.2f см, максимум: %.2f см%n" +
+                        "Сдвиг по phi: %d ячеек (%.1f градусов)",
+                compared, threshold, changed, compared > 0 ? 100.0 * changed / compared : 0,
+                onlyBefore, onlyAfter, meanAbs, rms, maxAbs, phiShift, phiShift * grid.getStep());
+    }
+
+    // Геттеры
+    public float[] getDelta() {
+        return delta;
+    }
+
+    public ScanGrid getGrid() {
+        return grid;
+    }
+
+    public int getPhiShift() {
+        return phiShift;
+    }
+
+    public int getComparedCells() {
+        return compared;
+    }
+
+    public int getChangedCells() {
+        return changed;
+    }
+
+    public int getOnlyBeforeCells() {
+        return onlyBefore;
+    }
+
+    public int getOnlyAfterCells() {
+        return onlyAfter;
+    }
+
+    public double getMeanAbsDelta() {
+        return meanAbs;
+    }
+
+    public double getRmsDelta() {
+        return rms;
+    }
+
+    public double getMaxAbsDelta() {
+        return maxAbs;
+    }
+}
@@ -0,0 +1,143 @@
+package com.arduino.scan.compare;
+
+import com.arduino.scan.Scan;
+import com.arduino.scan.ScanGrid;
+
+import java.util.Arrays;
+
+/**
+ * Сравнение двух сканов одной комнаты по общей сетке (phi, theta).
+ *
+ * Оба скана сводятся к средним дальностям по ячейкам, после чего разница
+ * считается одним проходом по массивам float. Если сканер между съёмками
+ * повернули вокруг вертикальной оси, включается поиск сдвига по phi
+ * (регистрация на сетке): перебираются сдвиги в пределах maxPhiShiftCells
+ * и выбирается тот, при котором средняя абсолютная разница минимальна.
+ */
+public class ScanComparator {
+
+    private double changeThreshold = 10.0; // см
+    private int maxPhiShiftCells = 0;
+    private double minOverlap = 0.5;
+    private double step = ScanGrid.DEFAULT_STEP;
+
+    /**
+     * Сравнить два скана
+     * @param before ранний скан
+     * @param after поздний скан
+     */
+    public ComparisonResult compare(Scan before, Scan after) {
+        return compare(ScanGrid.fromScan(before, step), ScanGrid.fromScan(after, step));
+    }
+
+    /**
+     * Сравнить две сетки одинаковой геометрии
+     */
+    public ComparisonResult compare(ScanGrid before, ScanGrid after) {
+        if (before.getPhiCells() != after.getPhiCells() || before.getThetaCells() != after.getThetaCells()) {
+            throw new IllegalArgumentException("Сетки сканов не совпадают");
+        }
+        float[] a = before.means();
+        float[] b = after.means();
+        int shift = maxPhiShiftCells > 0 ? findPhiShift(a, b, before.getPhiCells(), before.getThetaCells()) : 0;
+        if (shift != 0) {
+            b = shiftPhi(b, before.getPhiCells(), before.getThetaCells(), shift);
+        }
+
+        int n = a.length;
+        float[] delta = new float[n];
+        for (int i = 0; i < n; i++) {
+            delta[i] = b[i] - a[i];
+        }
+        return new ComparisonResult(before, a, b, delta, shift, changeThreshold);
+    }
+
+    /**
+     * Подобрать сдвиг по phi (в ячейках), при котором сканы совпадают лучше всего
+     */
+    int findPhiShift(float[] a, float[] b, int phiCells, int thetaCells) {
+        int bestShift = 0;
+        double bestError = Double.MAX_VALUE;
+        int filled = 0;
+        for (float v : a) {
+            if (!Float.isNaN(v)) {
+                filled++;
+            }
+        }
+        for (int s = -maxPhiShiftCells; s <= maxPhiShiftCells; s++) {
+            double error = 0;
+            int overlap = 0;
+            for (int p = Math.max(0, -s); p < Math.min(phiCells, phiCells - s); p++) {
+                int rowA = p * thetaCells;
+                int rowB = (p + s) * thetaCells;
+                for (int t = 0; t < thetaCells; t++) {
+                    float d = b[rowB + t] - a[rowA + t];
+                    if (!Float.isNaN(d)) {
+                        error += Math.abs(d);
+                        overlap++;
+                    }
+                }
+            }
+            if (overlap == 0 || overlap < filled * minOverlap) {
+                continue;
+            }
+            error /= overlap;
+            if (error < bestError || (error == bestError && Math.abs(s) < Math.abs(bestShift))) {
+                bestError = error;
+                bestShift = s;
+            }
+        }
+        return bestShift;
+    }
+
+    private static float[] shiftPhi(float[] b, int phiCells, int thetaCells, int shift) {
+        float[] shifted = new float[b.length];
+        Arrays.fill(shifted, Float.NaN);
+        for (int p = 0; p < phiCells; p++) {
+            int source = p + shift;
+            if (source >= 0 && source < phiCells) {
+                System.arraycopy(b, source * thetaCells, shifted, p * thetaCells, thetaCells);
+            }
+        }
+        return shifted;
+    }
+
+    // Геттеры и сеттеры
+    public double getChangeThreshold() {
+        return changeThreshold;
+    }
+
+    /**
+     * @param changeThreshold порог изменения дальности, см
+     */
+    public void setChangeThreshold(double changeThreshold) {
+        this.changeThreshold = changeThreshold;
+    }
+
+    public int getMaxPhiShiftCells() {
+        return maxPhiShiftCells;
+    }
+
+    /**
+     * @param maxPhiShiftCells максимальный сдвиг по phi при регистрации, 0 — без регистрации
+     */
+    public void setMaxPhiShiftCells(int maxPhiShiftCells) {
+        this.maxPhiShiftCells = maxPhiShiftCells;
+    }
+
+    public double getMinOverlap() {
+        return minOverlap;
+    }
+
+    public void setMinOverlap(double minOverlap) {
+        this.minOverlap = minOverlap;
+    }
+
+    public double getStep() {
+        return step;
+    }
+
+    public void setStep(double step) {
+        this.step = step;
+    }
+}
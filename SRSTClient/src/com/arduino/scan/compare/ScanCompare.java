@@ -0,0 +1,42 @@
+package com.arduino.scan.compare;
+
+import com.arduino.scan.Scan;
+import com.arduino.scan.ScanFiles;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Режим сравнения двух сканов одной комнаты.
+ *
+ * Использование: ScanCompare before.csv after.csv [diff.vtk] [порог_см] [макс_сдвиг_phi]
+ * Файлы сканов могут быть как data.csv, так и в двоичном формате.
+ */
+public class ScanCompare {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Использование: ScanCompare before.csv after.csv [diff.vtk] [порог_см] [макс_сдвиг_phi]");
+            System.exit(2);
+        }
+        Path output = Paths.get(args.length > 2 ? args[2] : "diff.vtk");
+
+        ScanComparator comparator = new ScanComparator();
+        if (args.length > 3) {
+            comparator.setChangeThreshold(Double.parseDouble(args[3]));
+        }
+        if (args.length > 4) {
+            comparator.setMaxPhiShiftCells(Integer.parseInt(args[4]));
+        }
+
+        Scan before = ScanFiles.read(Paths.get(args[0]));
+        Scan after = ScanFiles.read(Paths.get(args[1]));
+        System.out.println("Первый скан: " + before.size() + " точек, второй: " + after.size() + " точек");
+
+        ComparisonResult result = comparator.compare(before, after);
+        System.out.println(result.summary());
+        result.writeVtk(output);
+        System.out.println("✓ Создан файл: " + output);
+    }
+}
@@ -0,0 +1,173 @@
+package com.arduino.scan.normals;
+
+/**
+ * Поиск k ближайших точек по равномерной сетке в пространстве.
+ *
+ * Точки сканов лежат на стенах и предметах, а не заполняют объём, поэтому
+ * размер ячейки подбирается по площади поверхности габаритного
+ * параллелепипеда: на стене в ячейку попадает порядка k/4 точек. Поиск
+ * обходит слои ячеек вокруг точки, пока k-й сосед не окажется ближе
+ * непросмотренных слоёв.
+ */
+class KnnIndex {
+
+    private static final long MAX_CELLS = 1 << 22;
+    private static final int MAX_RING = 16;
+
+    private final float[] x;
+    private final float[] y;
+    private final float[] z;
+    private final float minX;
+    private final float minY;
+    private final float minZ;
+    private final float cellSize;
+    private final int cellsX;
+    private final int cellsY;
+    private final int cellsZ;
+    private final int[] cellStart;
+    private final int[] order;
+
+    KnnIndex(float[] x, float[] y, float[] z, int count, int k) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        float[] bounds = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+                -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int i = 0; i < count; i++) {
+            bounds[0] = Math.min(bounds[0], x[i]);
+            bounds[1] = Math.min(bounds[1], y[i]);
+            bounds[2] = Math.min(bounds[2], z[i]);
+            bounds[3] = Math.max(bounds[3], x[i]);
+            bounds[4] = Math.max(bounds[4], y[i]);
+            bounds[5] = Math.max(bounds[5], z[i]);
+        }
+        if (count == 0) {
+            bounds = new float[6];
+        }
+        double ex = bounds[3] - bounds[0];
+        double ey = bounds[4] - bounds[1];
+        double ez = bounds[5] - bounds[2];
+        double area = 2 * (ex * ey + ey * ez + ez * ex);
+        double size = area > 0
+                ? Math.sqrt(area / Math.max(1, count) * Math.max(1, k) / 4.0)
+                : Math.max(1e-3, Math.max(ex, Math.max(ey, ez)) / Math.max(1, count) * k);
+        while ((long) (ex / size + 1) * (long) (ey / size + 1) * (long) (ez / size + 1) > MAX_CELLS) {
+            size *= 1.25;
+        }
+        this.minX = bounds[0];
+        this.minY = bounds[1];
+        this.minZ = bounds[2];
+        this.cellSize = (float) size;
+        this.cellsX = (int) (ex / size) + 1;
+        this.cellsY = (int) (ey / size) + 1;
+        this.cellsZ = (int) (ez / size) + 1;
+
+        // Подсчёт точек по ячейкам и раскладка индексов по порядку ячеек
+        int cells = cellsX * cellsY * cellsZ;
+        cellStart = new int[cells + 1];
+        int[] cellOf = new int[count];
+        for (int i = 0; i < count; i++) {
+            cellOf[i] = cell(cx(x[i]), cy(y[i]), cz(z[i]));
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] fill = new int[cells];
+        order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[cellStart[cellOf[i]] + fill[cellOf[i]]++] = i;
+        }
+    }
+
+    private int cx(float v) {
+        return Math.min(cellsX - 1, (int) ((v - minX) / cellSize));
+    }
+
+    private int cy(float v) {
+        return Math.min(cellsY - 1, (int) ((v - minY) / cellSize));
+    }
+
+    private int cz(float v) {
+        return Math.min(cellsZ - 1, (int) ((v - minZ) / cellSize));
+    }
+
+    private int cell(int ix, int iy, int iz) {
+        return (ix * cellsY + iy) * cellsZ + iz;
+    }
+
+    /**
+     * k ближайших к точке i (включая её саму)
+     * @param result индексы соседей, не короче k
+     * @param distances квадраты расстояний, не короче k
+     * @return сколько соседей найдено
+     */
+    int query(int i, int k, int[] result, float[] distances) {
+        float px = x[i];
+        float py = y[i];
+        float pz = z[i];
+        int ix = cx(px);
+        int iy = cy(py);
+        int iz = cz(pz);
+        int found = 0;
+        int worst = 0;
+        int maxRing = Math.min(MAX_RING, Math.max(cellsX, Math.max(cellsY, cellsZ)));
+        for (int ring = 0; ring <= maxRing; ring++) {
+            for (int dx = -ring; dx <= ring; dx++) {
+                int gx = ix + dx;
+                if (gx < 0 || gx >= cellsX) {
+                    continue;
+                }
+                for (int dy = -ring; dy <= ring; dy++) {
+                    int gy = iy + dy;
+                    if (gy < 0 || gy >= cellsY) {
+                        continue;
+                    }
+                    boolean innerXY = Math.abs(dx) < ring && Math.abs(dy) < ring;
+                    for (int dz = -ring; dz <= ring; dz++) {
+                        // Только оболочка куба: внутренние ячейки уже просмотрены
+                        if (innerXY && Math.abs(dz) < ring) {
+                            dz = ring - 1;
+                            continue;
+                        }
+                        int gz = iz + dz;
+                        if (gz < 0 || gz >= cellsZ) {
+                            continue;
+                        }
+                        int c = cell(gx, gy, gz);
+                        for (int s = cellStart[c]; s < cellStart[c + 1]; s++) {
+                            int j = order[s];
+                            float ddx = x[j] - px;
+                            float ddy = y[j] - py;
+                            float ddz = z[j] - pz;
+                            float d = ddx * ddx + ddy * ddy + ddz * ddz;
+                            if (found < k) {
+                                result[found] = j;
+                                distances[found] = d;
+                                if (d > distances[worst]) {
+                                    worst = found;
+                                }
+                                found++;
+                            } else if (d < distances[worst]) {
+                                result[worst] = j;
+                                distances[worst] = d;
+                                worst = 0;
+                                for (int w = 1; w < k; w++) {
+                                    if (distances[w] > distances[worst]) {
+                                        worst = w;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            // Всё, что дальше просмотренного куба, не ближе ring ячеек
+            float reach = ring * cellSize;
+            if (found >= k && distances[worst] <= reach * reach) {
+                break;
+            }
+        }
+        return found;
+    }
+}
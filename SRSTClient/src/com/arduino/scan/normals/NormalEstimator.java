@@ -0,0 +1,524 @@
+package com.arduino.scan.normals;
+
+import com.arduino.scan.Scan;
+import com.arduino.scan.ScanGrid;
+import com.arduino.scan.cloud.PointCloud;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Оценка нормалей и кривизны по соседям точек (метод главных компонент).
+ *
+ * Нормаль — собственный вектор ковариации соседей с наименьшим собственным
+ * значением. У скана соседи берутся по сетке (phi, theta): отсчёты ячеек
+ * в окне ±gridRadius вокруг ячейки точки, кроме тех, чья дальность
+ * отличается больше чем на maxJump·r — это уже другой предмет на фоне.
+ * Если таких соседей меньше {@link #MIN_NEIGHBOURS} или углы скана не
+ * ложатся на сетку, берутся k ближайших точек в пространстве. У сводного
+ * облака из нескольких сканов сетки нет, там всегда k ближайших.
+ *
+ * Нормали разворачиваются к сканеру: у скана — к началу координат, у облака —
+ * против направления луча (phi, theta) своей точки, так что смещение
+ * сканера при сведении облака не мешает.
+ *
+ * Точки делятся на части, каждая часть пишет только свои индексы
+ * выходных массивов. Вызов из задачи ForkJoin выполняет части в том же
+ * пуле (так работает {@code BatchProcessor}), иначе создаётся свой пул
+ * на parallelism потоков.
+ */
+public class NormalEstimator {
+
+    public static final int DEFAULT_K = 12;
+    public static final int DEFAULT_GRID_RADIUS = 1;
+    public static final double DEFAULT_MAX_JUMP = 0.1;
+
+    /** Наименьшее число точек (с самой точкой) для оценки плоскости */
+    public static final int MIN_NEIGHBOURS = 5;
+
+    private static final int MIN_CHUNK = 1 << 12;
+    private static final double EPSILON = 1e-12;
+    /** Квадрат векторного произведения строк, ниже которого соседи считаются прямой */
+    private static final double DEGENERATE = 1e-8;
+
+    private int k = DEFAULT_K;
+    private int gridRadius = DEFAULT_GRID_RADIUS;
+    private double maxJump = DEFAULT_MAX_JUMP;
+    private double step = ScanGrid.DEFAULT_STEP;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Точки в примитивных массивах и, для облака, направления лучей
+     */
+    private static class Points {
+        final int count;
+        final float[] x;
+        final float[] y;
+        final float[] z;
+        float[] rayX;
+        float[] rayY;
+        float[] rayZ;
+
+        Points(int count) {
+            this.count = count;
+            this.x = new float[count];
+            this.y = new float[count];
+            this.z = new float[count];
+        }
+    }
+
+    /**
+     * Соседи по сетке скана: номера отсчётов, разложенные по ячейкам
+     */
+    private static class GridCells {
+        int phiCells;
+        int thetaCells;
+        int[] cellOf;
+        int[] cellStart;
+        int[] order;
+        float[] r;
+    }
+
+    /**
+     * Нормали скана: соседи по сетке, при нехватке — k ближайших
+     */
+    public PointNormals estimate(Scan scan) {
+        long start = System.nanoTime();
+        int n = scan.size();
+        Points points = new Points(n);
+        for (int i = 0; i < n; i++) {
+            points.x[i] = (float) scan.getX(i);
+            points.y[i] = (float) scan.getY(i);
+            points.z[i] = (float) scan.getZ(i);
+        }
+        GridCells grid = gridCells(scan);
+        if (grid == null) {
+            System.err.println("Углы скана не ложатся на сетку с шагом " + step + ", нормали по k ближайшим");
+        }
+        return run(points, grid, start);
+    }
+
+    /**
+     * Нормали сводного облака по k ближайшим
+     */
+    public PointNormals estimate(PointCloud cloud) {
+        long start = System.nanoTime();
+        int n = cloud.size();
+        Points points = new Points(n);
+        points.rayX = new float[n];
+        points.rayY = new float[n];
+        points.rayZ = new float[n];
+        for (int i = 0; i < n; i++) {
+            points.x[i] = cloud.getX(i);
+            points.y[i] = cloud.getY(i);
+            points.z[i] = cloud.getZ(i);
+            double phi = Math.toRadians(cloud.getPhi(i));
+            double theta = Math.toRadians(cloud.getTheta(i));
+            points.rayX[i] = (float) (Math.sin(theta) * Math.cos(phi));
+            points.rayY[i] = (float) (Math.sin(theta) * Math.sin(phi));
+            points.rayZ[i] = (float) Math.cos(theta);
+        }
+        return run(points, null, start);
+    }
+
+    private PointNormals run(Points points, GridCells grid, long start) {
+        PointNormals normals = new PointNormals(points.count);
+        // Индекс k ближайших нужен облаку всегда, скану — только если сетка не помогла
+        KnnIndex knn = grid == null ? new KnnIndex(points.x, points.y, points.z, points.count, k) : null;
+
+        int[] starts = chunkBounds(points.count);
+        List<RecursiveTask<long[]>> tasks = new ArrayList<>();
+        for (int c = 0; c + 1 < starts.length; c++) {
+            int from = starts[c];
+            int to = starts[c + 1];
+            tasks.add(new RecursiveTask<long[]>() {
+                @Override
+                protected long[] compute() {
+                    return estimateRange(points, grid, knn, normals, from, to);
+                }
+            });
+        }
+        invokeAll(tasks);
+
+        // Точки, где сетка не дала соседей, — вторым проходом по k ближайшим
+        long gridPoints = 0;
+        long knnPoints = 0;
+        for (RecursiveTask<long[]> task : tasks) {
+            long[] counts = task.join();
+            gridPoints += counts[0];
+            knnPoints += counts[1];
+        }
+        if (grid != null && gridPoints < points.count) {
+            KnnIndex index = new KnnIndex(points.x, points.y, points.z, points.count, k);
+            List<RecursiveTask<long[]>> fallback = new ArrayList<>();
+            for (int c = 0; c + 1 < starts.length; c++) {
+                int from = starts[c];
+                int to = starts[c + 1];
+                fallback.add(new RecursiveTask<long[]>() {
+                    @Override
+                    protected long[] compute() {
+                        return fallbackRange(points, index, normals, from, to);
+                    }
+                });
+            }
+            invokeAll(fallback);
+            for (RecursiveTask<long[]> task : fallback) {
+                knnPoints += task.join()[1];
+            }
+        }
+        normals.setStatistics(gridPoints, knnPoints, System.nanoTime() - start);
+        return normals;
+    }
+
+    /**
+     * Выполнить части в текущем пуле ForkJoin или в своём
+     */
+    private void invokeAll(List<? extends ForkJoinTask<?>> tasks) {
+        if (ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(tasks);
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    ForkJoinTask.invokeAll(tasks);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Части точек для параллельного прохода
+     */
+    private int[] chunkBounds(int size) {
+        int chunks = (int) Math.max(1, Math.min(parallelism * 4L, (size + MIN_CHUNK - 1) / MIN_CHUNK));
+        int[] starts = new int[chunks + 1];
+        for (int c = 0; c <= chunks; c++) {
+            starts[c] = (int) ((long) size * c / chunks);
+        }
+        return starts;
+    }
+
+    /**
+     * Разложить отсчёты скана по ячейкам сетки
+     * @return ячейки или null, если углы не ложатся на сетку
+     */
+    private GridCells gridCells(Scan scan) {
+        int n = scan.size();
+        if (n == 0) {
+            return null;
+        }
+        double phiMin = Double.MAX_VALUE;
+        double phiMax = -Double.MAX_VALUE;
+        double thetaMin = Double.MAX_VALUE;
+        double thetaMax = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            phiMin = Math.min(phiMin, scan.getPhi(i));
+            phiMax = Math.max(phiMax, scan.getPhi(i));
+            thetaMin = Math.min(thetaMin, scan.getTheta(i));
+            thetaMax = Math.max(thetaMax, scan.getTheta(i));
+        }
+        GridCells grid = new GridCells();
+        grid.phiCells = (int) Math.round((phiMax - phiMin) / step) + 1;
+        grid.thetaCells = (int) Math.round((thetaMax - thetaMin) / step) + 1;
+        long cells = (long) grid.phiCells * grid.thetaCells;
+        if (cells > Integer.MAX_VALUE - 1) {
+            return null;
+        }
+        grid.cellOf = new int[n];
+        grid.cellStart = new int[(int) cells + 1];
+        grid.r = new float[n];
+        for (int i = 0; i < n; i++) {
+            double p = (scan.getPhi(i) - phiMin) / step;
+            double t = (scan.getTheta(i) - thetaMin) / step;
+            long pi = Math.round(p);
+            long ti = Math.round(t);
+            if (Math.abs(p - pi) > 0.05 || Math.abs(t - ti) > 0.05) {
+                return null;
+            }
+            grid.cellOf[i] = (int) (pi * grid.thetaCells + ti);
+            grid.cellStart[grid.cellOf[i] + 1]++;
+            grid.r[i] = (float) scan.getR(i);
+        }
+        for (int c = 0; c < cells; c++) {
+            grid.cellStart[c + 1] += grid.cellStart[c];
+        }
+        int[] fill = new int[(int) cells];
+        grid.order = new int[n];
+        for (int i = 0; i < n; i++) {
+            int cell = grid.cellOf[i];
+            grid.order[grid.cellStart[cell] + fill[cell]++] = i;
+        }
+        return grid;
+    }
+
+    /**
+     * Нормали точек [from, to)
+     * @return {по сетке, по k ближайшим}
+     */
+    private long[] estimateRange(Points points, GridCells grid, KnnIndex knn, PointNormals normals,
+                                 int from, int to) {
+        int window = (2 * gridRadius + 1) * (2 * gridRadius + 1);
+        int[] neighbours = new int[Math.max(k, 16 * window)];
+        float[] distances = new float[k];
+        double[] result = new double[4];
+        long[] counts = new long[2];
+        for (int i = from; i < to; i++) {
+            if (grid != null) {
+                int found = gridNeighbours(grid, i, neighbours);
+                if (found >= MIN_NEIGHBOURS && fit(points, neighbours, found, i, result)) {
+                    normals.set(i, result[0], result[1], result[2], result[3]);
+                    counts[0]++;
+                } else {
+                    normals.clear(i);
+                }
+                continue;
+            }
+            int found = knn.query(i, k, neighbours, distances);
+            if (found >= Math.min(MIN_NEIGHBOURS, k) && fit(points, neighbours, found, i, result)) {
+                normals.set(i, result[0], result[1], result[2], result[3]);
+                counts[1]++;
+            } else {
+                normals.clear(i);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Второй проход: точки без нормали по сетке
+     */
+    private long[] fallbackRange(Points points, KnnIndex knn, PointNormals normals, int from, int to) {
+        int[] neighbours = new int[k];
+        float[] distances = new float[k];
+        double[] result = new double[4];
+        long[] counts = new long[2];
+        for (int i = from; i < to; i++) {
+            if (normals.isDefined(i)) {
+                continue;
+            }
+            int found = knn.query(i, k, neighbours, distances);
+            if (found >= Math.min(MIN_NEIGHBOURS, k) && fit(points, neighbours, found, i, result)) {
+                normals.set(i, result[0], result[1], result[2], result[3]);
+                counts[1]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Соседи отсчёта i по окну сетки без скачков дальности
+     * @return число соседей в буфере (буфер растёт при многих проходах)
+     */
+    private int gridNeighbours(GridCells grid, int i, int[] buffer) {
+        int cell = grid.cellOf[i];
+        int p = cell / grid.thetaCells;
+        int t = cell % grid.thetaCells;
+        float r = grid.r[i];
+        float jump = (float) (maxJump * r);
+        int found = 0;
+        for (int dp = -gridRadius; dp <= gridRadius; dp++) {
+            int pp = p + dp;
+            if (pp < 0 || pp >= grid.phiCells) {
+                continue;
+            }
+            for (int dt = -gridRadius; dt <= gridRadius; dt++) {
+                int tt = t + dt;
+                if (tt < 0 || tt >= grid.thetaCells) {
+                    continue;
+                }
+                int c = pp * grid.thetaCells + tt;
+                for (int s = grid.cellStart[c]; s < grid.cellStart[c + 1] && found < buffer.length; s++) {
+                    int j = grid.order[s];
+                    if (Math.abs(grid.r[j] - r) <= jump) {
+                        buffer[found++] = j;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Плоскость по соседям
+     * @param result nx, ny, nz, кривизна
+     * @return false, если соседи вырождены (совпадают или лежат на прямой)
+     */
+    private static boolean fit(Points points, int[] neighbours, int count, int i, double[] result) {
+        double cx = 0;
+        double cy = 0;
+        double cz = 0;
+        for (int s = 0; s < count; s++) {
+            int j = neighbours[s];
+            cx += points.x[j];
+            cy += points.y[j];
+            cz += points.z[j];
+        }
+        cx /= count;
+        cy /= count;
+        cz /= count;
+        double xx = 0;
+        double xy = 0;
+        double xz = 0;
+        double yy = 0;
+        double yz = 0;
+        double zz = 0;
+        for (int s = 0; s < count; s++) {
+            int j = neighbours[s];
+            double dx = points.x[j] - cx;
+            double dy = points.y[j] - cy;
+            double dz = points.z[j] - cz;
+            xx += dx * dx;
+            xy += dx * dy;
+            xz += dx * dz;
+            yy += dy * dy;
+            yz += dy * dz;
+            zz += dz * dz;
+        }
+        double trace = xx + yy + zz;
+        if (trace < EPSILON) {
+            return false;
+        }
+        // Масштаб к единичному следу: собственные значения не зависят от единиц
+        xx /= trace;
+        xy /= trace;
+        xz /= trace;
+        yy /= trace;
+        yz /= trace;
+        zz /= trace;
+
+        double smallest = smallestEigenvalue(xx, xy, xz, yy, yz, zz);
+        // Собственный вектор — наибольшее векторное произведение строк (A - λI)
+        double ax = xx - smallest;
+        double by = yy - smallest;
+        double cz2 = zz - smallest;
+        double[] best = new double[3];
+        double bestLength = pickLarger(best, 0,
+                xy * yz - xz * by, xz * xy - ax * yz, ax * by - xy * xy);
+        bestLength = pickLarger(best, bestLength,
+                xy * cz2 - xz * yz, xz * xz - ax * cz2, ax * yz - xy * xz);
+        bestLength = pickLarger(best, bestLength,
+                by * cz2 - yz * yz, yz * xz - xy * cz2, xy * yz - by * xz);
+        if (bestLength < DEGENERATE) {
+            // Все три строки параллельны: соседи на прямой
+            return false;
+        }
+        double length = Math.sqrt(bestLength);
+        double nx = best[0] / length;
+        double ny = best[1] / length;
+        double nz = best[2] / length;
+
+        // К сканеру: против луча, по которому точка измерена
+        double rayX = points.rayX != null ? points.rayX[i] : points.x[i];
+        double rayY = points.rayY != null ? points.rayY[i] : points.y[i];
+        double rayZ = points.rayZ != null ? points.rayZ[i] : points.z[i];
+        if (nx * rayX + ny * rayY + nz * rayZ > 0) {
+            nx = -nx;
+            ny = -ny;
+            nz = -nz;
+        }
+        result[0] = nx;
+        result[1] = ny;
+        result[2] = nz;
+        // След равен единице, значит кривизна — само наименьшее значение
+        result[3] = Math.max(0, smallest);
+        return true;
+    }
+
+    private static double pickLarger(double[] best, double bestLength, double x, double y, double z) {
+        double length = x * x + y * y + z * z;
+        if (length > bestLength) {
+            best[0] = x;
+            best[1] = y;
+            best[2] = z;
+            return length;
+        }
+        return bestLength;
+    }
+
+    /**
+     * Наименьшее собственное значение симметричной матрицы 3×3
+     * (тригонометрическое решение характеристического уравнения)
+     */
+    static double smallestEigenvalue(double a00, double a01, double a02, double a11, double a12, double a22) {
+        double offDiagonal = a01 * a01 + a02 * a02 + a12 * a12;
+        if (offDiagonal == 0) {
+            return Math.min(a00, Math.min(a11, a22));
+        }
+        double q = (a00 + a11 + a22) / 3;
+        double b00 = a00 - q;
+        double b11 = a11 - q;
+        double b22 = a22 - q;
+        double p = Math.sqrt((b00 * b00 + b11 * b11 + b22 * b22 + 2 * offDiagonal) / 6);
+        if (p < EPSILON) {
+            return q;
+        }
+        double det = b00 * (b11 * b22 - a12 * a12)
+                - a01 * (a01 * b22 - a12 * a02)
+                + a02 * (a01 * a12 - b11 * a02);
+        double half = det / (2 * p * p * p);
+        double angle = half <= -1 ? Math.PI / 3 : half >= 1 ? 0 : Math.acos(half) / 3;
+        return q + 2 * p * Math.cos(angle + 2 * Math.PI / 3);
+    }
+
+    // Геттеры и сеттеры
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * @param k соседей при поиске ближайших в пространстве
+     */
+    public void setK(int k) {
+        this.k = Math.max(3, k);
+    }
+
+    public int getGridRadius() {
+        return gridRadius;
+    }
+
+    /**
+     * @param gridRadius полуширина окна соседей по сетке, ячеек (1 — окно 3×3)
+     */
+    public void setGridRadius(int gridRadius) {
+        this.gridRadius = Math.max(1, gridRadius);
+    }
+
+    public double getMaxJump() {
+        return maxJump;
+    }
+
+    /**
+     * @param maxJump наибольшая относительная разница дальностей соседей по сетке
+     */
+    public void setMaxJump(double maxJump) {
+        this.maxJump = maxJump;
+    }
+
+    public double getStep() {
+        return step;
+    }
+
+    /**
+     * @param step шаг сетки сканирования, градусы
+     */
+    public void setStep(double step) {
+        this.step = step;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+}
@@ -0,0 +1,105 @@
+package com.arduino.scan.normals;
+
+/**
+ * Нормали и кривизна точек в примитивных массивах, индекс — номер точки
+ * в скане или облаке.
+ *
+ * Нормаль единичная и смотрит в сторону сканера. Кривизна — λ0 / (λ0 + λ1 + λ2)
+ * по собственным значениям ковариации соседей: 0 — плоскость, 1/3 — соседи
+ * без выраженной поверхности. Если соседей не хватило, нормаль (0, 0, 0),
+ * а кривизна −1; в таком виде массивы и уходят в VTK и PLY.
+ */
+public class PointNormals {
+
+    private final float[] nx;
+    private final float[] ny;
+    private final float[] nz;
+    private final float[] curvature;
+    private final int count;
+    private long gridPoints;
+    private long knnPoints;
+    private long nanos;
+
+    PointNormals(int count) {
+        this.count = count;
+        this.nx = new float[count];
+        this.ny = new float[count];
+        this.nz = new float[count];
+        this.curvature = new float[count];
+    }
+
+    void set(int i, double x, double y, double z, double curvature) {
+        nx[i] = (float) x;
+        ny[i] = (float) y;
+        nz[i] = (float) z;
+        this.curvature[i] = (float) curvature;
+    }
+
+    void clear(int i) {
+        nx[i] = 0;
+        ny[i] = 0;
+        nz[i] = 0;
+        curvature[i] = -1;
+    }
+
+    void setStatistics(long gridPoints, long knnPoints, long nanos) {
+        this.gridPoints = gridPoints;
+        this.knnPoints = knnPoints;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Нормаль точки определена
+     */
+    public boolean isDefined(int i) {
+        return curvature[i] >= 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long definedCount() {
+        return gridPoints + knnPoints;
+    }
+
+    /**
+     * Сводка: сколько нормалей найдено и каким способом
+     */
+    public String summary() {
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            if (curvature[i] >= 0) {
+                sum += curvature[i];
+            }
+        }
+        long defined = definedCount();
+        return String.format("нормалей %d из %d (по сетке %d, по kNN %d), средняя кривизна %.4f, %.1f мс",
+                defined, count, gridPoints, knnPoints, defined > 0 ? sum / defined : 0.0, nanos / 1e6);
+    }
+
+    // Геттеры
+    public float[] getNx() {
+        return nx;
+    }
+
+    public float[] getNy() {
+        return ny;
+    }
+
+    public float[] getNz() {
+        return nz;
+    }
+
+    public float[] getCurvature() {
+        return curvature;
+    }
+
+    public long getGridPoints() {
+        return gridPoints;
+    }
+
+    public long getKnnPoints() {
+        return knnPoints;
+    }
+}
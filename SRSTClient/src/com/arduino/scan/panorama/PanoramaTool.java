@@ -0,0 +1,55 @@
+package com.arduino.scan.panorama;
+
+import com.arduino.scan.Scan;
+import com.arduino.scan.ScanFiles;
+import com.arduino.scan.ScanGrid;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Построение панорамы дальностей по скану.
+ *
+ * Использование: PanoramaTool scan.csv [префикс] [шаг] [макс_дыра] [масштаб]
+ * Пишет &lt;префикс&gt;-depth.pgm (16 бит, 0.1 см), &lt;префикс&gt;-preview.png
+ * и &lt;префикс&gt;-confidence.png. Скан может быть как data.csv, так и в двоичном формате.
+ */
+public class PanoramaTool {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Использование: PanoramaTool scan.csv [префикс] [шаг] [макс_дыра] [масштаб]");
+            System.exit(2);
+        }
+        String prefix = args.length > 1 ? args[1] : "panorama";
+        double step = args.length > 2 ? Double.parseDouble(args[2]) : ScanGrid.DEFAULT_STEP;
+        int maxGap = args.length > 3 ? Integer.parseInt(args[3]) : RangePanorama.DEFAULT_MAX_GAP;
+        int scale = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+
+        Scan scan = ScanFiles.read(Paths.get(args[0]));
+        System.out.println("Скан: " + scan.size() + " точек");
+
+        long start = System.nanoTime();
+        RangePanorama panorama = new RangePanorama(0, 180, 0, 180, step);
+        panorama.setMaxGap(maxGap);
+        panorama.addAll(scan);
+        long added = System.nanoTime();
+        float[] depth = new float[panorama.pixelCount()];
+        panorama.render(depth, null);
+        long rendered = System.nanoTime();
+        System.out.println(panorama.summary());
+        System.out.printf("Накопление %.1f мс, рендер %.1f мс%n",
+                (added - start) / 1e6, (rendered - added) / 1e6);
+
+        write(panorama, PanoramaWriter.Layer.DEPTH, Paths.get(prefix + "-depth.pgm"), 1);
+        write(panorama, PanoramaWriter.Layer.PREVIEW, Paths.get(prefix + "-preview.png"), scale);
+        write(panorama, PanoramaWriter.Layer.CONFIDENCE, Paths.get(prefix + "-confidence.png"), scale);
+    }
+
+    private static void write(RangePanorama panorama, PanoramaWriter.Layer layer, Path path, int scale)
+            throws IOException {
+        PanoramaWriter.write(panorama, layer, path, scale);
+        System.out.println("✓ Создан файл: " + path);
+    }
+}
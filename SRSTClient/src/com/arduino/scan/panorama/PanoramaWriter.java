@@ -0,0 +1,204 @@
+package com.arduino.scan.panorama;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Запись панорамы в серые изображения PGM (P5) и PNG.
+ *
+ * Оба формата кодируются здесь же прямо из растров панорамы, без AWT.
+ * Слои:
+ * <ul>
+ *   <li>{@link Layer#DEPTH} — 16 бит, дальность в единицах 0.1 см (как в двоичном
+ *       протоколе скетча); 0 — дыра</li>
+ *   <li>{@link Layer#PREVIEW} — 8 бит для просмотра: ближнее светлее, дыры чёрные</li>
+ *   <li>{@link Layer#CONFIDENCE} — 8 бит, доверие 0..1 в 0..255</li>
+ * </ul>
+ */
+public class PanoramaWriter {
+
+    /**
+     * Слой панорамы
+     */
+    public enum Layer {
+        DEPTH, PREVIEW, CONFIDENCE
+    }
+
+    /**
+     * Формат файла
+     */
+    public enum Format {
+        PGM, PNG;
+
+        /**
+         * Формат по расширению файла (.png, иначе PGM)
+         */
+        public static Format of(Path path) {
+            return path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".png") ? PNG : PGM;
+        }
+    }
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private PanoramaWriter() {
+    }
+
+    /**
+     * Записать слой панорамы, формат по расширению
+     * @param scale во сколько раз увеличить изображение (каждый пиксель — квадрат scale×scale)
+     */
+    public static void write(RangePanorama panorama, Layer layer, Path path, int scale) throws IOException {
+        Files.write(path, encode(panorama, layer, Format.of(path), scale));
+    }
+
+    /**
+     * Закодировать слой панорамы в файл изображения в памяти
+     */
+    public static byte[] encode(RangePanorama panorama, Layer layer, Format format, int scale) {
+        float[] depth = new float[panorama.pixelCount()];
+        float[] confidence = new float[panorama.pixelCount()];
+        panorama.render(depth, confidence);
+        int bytesPerPixel = layer == Layer.DEPTH ? 2 : 1;
+        byte[] samples = samples(layer, depth, confidence);
+        scale = Math.max(1, scale);
+        int width = panorama.getWidth();
+        int height = panorama.getHeight();
+        if (scale > 1) {
+            samples = upscale(samples, width, height, bytesPerPixel, scale);
+            width *= scale;
+            height *= scale;
+        }
+        return format == Format.PNG
+                ? png(width, height, bytesPerPixel * 8, samples)
+                : pgm(width, height, bytesPerPixel == 2 ? 65535 : 255, samples);
+    }
+
+    /**
+     * Значения пикселей слоя; 16-битные — старшим байтом вперёд, как требуют и PGM, и PNG
+     */
+    static byte[] samples(Layer layer, float[] depth, float[] confidence) {
+        int pixels = depth.length;
+        switch (layer) {
+            case DEPTH: {
+                byte[] out = new byte[pixels * 2];
+                for (int i = 0; i < pixels; i++) {
+                    float r = depth[i];
+                    int v = Float.isNaN(r) ? 0 : Math.min(65535, Math.max(1, Math.round(r * 10)));
+                    out[2 * i] = (byte) (v >>> 8);
+                    out[2 * i + 1] = (byte) v;
+                }
+                return out;
+            }
+            case PREVIEW: {
+                float min = Float.MAX_VALUE;
+                float max = -Float.MAX_VALUE;
+                for (float r : depth) {
+                    if (!Float.isNaN(r)) {
+                        min = Math.min(min, r);
+                        max = Math.max(max, r);
+                    }
+                }
+                float range = max > min ? max - min : 1;
+                byte[] out = new byte[pixels];
+                for (int i = 0; i < pixels; i++) {
+                    float r = depth[i];
+                    // 255 — ближнее, 32 — дальнее; 0 оставлен для дыр
+                    out[i] = Float.isNaN(r) ? 0 : (byte) (255 - Math.round((r - min) / range * 223));
+                }
+                return out;
+            }
+            default: {
+                byte[] out = new byte[pixels];
+                for (int i = 0; i < pixels; i++) {
+                    out[i] = (byte) Math.round(Math.min(1, Math.max(0, confidence[i])) * 255);
+                }
+                return out;
+            }
+        }
+    }
+
+    private static byte[] upscale(byte[] samples, int width, int height, int bytesPerPixel, int scale) {
+        int rowBytes = width * bytesPerPixel * scale;
+        byte[] out = new byte[rowBytes * height * scale];
+        for (int y = 0; y < height; y++) {
+            int row = y * scale * rowBytes;
+            for (int x = 0; x < width; x++) {
+                int from = (y * width + x) * bytesPerPixel;
+                for (int s = 0; s < scale; s++) {
+                    System.arraycopy(samples, from, out, row + (x * scale + s) * bytesPerPixel, bytesPerPixel);
+                }
+            }
+            for (int s = 1; s < scale; s++) {
+                System.arraycopy(out, row, out, row + s * rowBytes, rowBytes);
+            }
+        }
+        return out;
+    }
+
+    static byte[] pgm(int width, int height, int maxValue, byte[] samples) {
+        byte[] header = String.format(Locale.ROOT, "P5\n%d %d\n%d\n", width, height, maxValue)
+                .getBytes(StandardCharsets.US_ASCII);
+        byte[] out = new byte[header.length + samples.length];
+        System.arraycopy(header, 0, out, 0, header.length);
+        System.arraycopy(samples, 0, out, header.length, samples.length);
+        return out;
+    }
+
+    /**
+     * Серый PNG без фильтров строк: IHDR, один IDAT, IEND
+     */
+    static byte[] png(int width, int height, int bitDepth, byte[] samples) {
+        try {
+            int rowBytes = width * bitDepth / 8;
+            ByteArrayOutputStream raw = new ByteArrayOutputStream(samples.length / 2 + 64);
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (DeflaterOutputStream zip = new DeflaterOutputStream(raw, deflater, 64 * 1024)) {
+                for (int y = 0; y < height; y++) {
+                    zip.write(0);
+                    zip.write(samples, y * rowBytes, rowBytes);
+                }
+            } finally {
+                deflater.end();
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(raw.size() + 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(PNG_SIGNATURE);
+            ByteArrayOutputStream ihdr = new ByteArrayOutputStream(13);
+            DataOutputStream header = new DataOutputStream(ihdr);
+            header.writeInt(width);
+            header.writeInt(height);
+            header.writeByte(bitDepth);
+            header.writeByte(0);  // оттенки серого
+            header.writeByte(0);  // deflate
+            header.writeByte(0);  // стандартные фильтры
+            header.writeByte(0);  // без чересстрочности
+            chunk(out, "IHDR", ihdr.toByteArray());
+            chunk(out, "IDAT", raw.toByteArray());
+            chunk(out, "IEND", new byte[0]);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // Запись в память не бросает IOException
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void chunk(DataOutputStream out, String type, byte[] data) throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data);
+        out.writeInt(data.length);
+        out.write(name);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+}
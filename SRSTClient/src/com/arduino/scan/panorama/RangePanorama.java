@@ -0,0 +1,411 @@
+package com.arduino.scan.panorama;
+
+import com.arduino.scan.Scan;
+import com.arduino.scan.ScanGrid;
+
+import java.util.Arrays;
+
+/**
+ * Равнопромежуточная (equirectangular) панорама дальностей.
+ *
+ * Скан изначально лежит на сетке (phi, theta), поэтому панорама — просто
+ * растр: столбец — phi, строка — theta (строка 0 — theta = thetaMin, то есть
+ * "верх" при z = r·cos(theta)). В каждом пикселе копятся число попаданий,
+ * сумма и сумма квадратов дальностей, как в {@link ScanGrid}; все буферы —
+ * примитивные массивы длины width·height.
+ *
+ * Пиксели без отсчётов (скетч пропустил dist[0] == -1, потерянные кадры)
+ * заполняются интерполяцией по строке и столбцу между ближайшими измеренными
+ * соседями не дальше {@link #getMaxGap()} пикселей. Экстраполяции нет:
+ * пиксель заполняется, только если измеренные соседи есть с обеих сторон
+ * хотя бы по одной оси.
+ *
+ * Отсчёты можно добавлять по одному из потока съёмки, а рендер пересчитывает
+ * только прямоугольник, затронутый с прошлого рендера.
+ */
+public class RangePanorama {
+
+    /** Разброс дальности, который считается нормальным для датчика, см */
+    public static final double DEFAULT_NOISE = 1.0;
+    public static final int DEFAULT_MAX_GAP = 2;
+
+    private final double phiMin;
+    private final double thetaMin;
+    private final double step;
+    private final int width;
+    private final int height;
+    private final boolean wrapPhi;
+
+    private final int[] count;
+    private final double[] sum;
+    private final double[] sumSq;
+
+    // Результат рендера; обновляется только в грязном прямоугольнике
+    private final float[] depth;
+    private final float[] confidence;
+    private final float[] measured;
+
+    private int maxGap = DEFAULT_MAX_GAP;
+    private double noise = DEFAULT_NOISE;
+
+    private int dirtyMinX;
+    private int dirtyMaxX;
+    private int dirtyMinY;
+    private int dirtyMaxY;
+
+    private long samples;
+    private int measuredPixels;
+    private int filledPixels;
+
+    /**
+     * Конструктор
+     * @param phiMin минимальный phi (первый столбец), градусы
+     * @param phiMax максимальный phi (включительно), градусы
+     * @param thetaMin минимальный theta (первая строка), градусы
+     * @param thetaMax максимальный theta (включительно), градусы
+     * @param step угловой размер пикселя, градусы
+     */
+    public RangePanorama(double phiMin, double phiMax, double thetaMin, double thetaMax, double step) {
+        if (step <= 0 || phiMax < phiMin || thetaMax < thetaMin) {
+            throw new IllegalArgumentException("Неверные параметры панорамы");
+        }
+        this.phiMin = phiMin;
+        this.thetaMin = thetaMin;
+        this.step = step;
+        this.width = (int) Math.round((phiMax - phiMin) / step) + 1;
+        this.height = (int) Math.round((thetaMax - thetaMin) / step) + 1;
+        // Полный оборот по phi: соседи первого столбца — в последнем
+        this.wrapPhi = width * step >= 360.0;
+        int pixels = width * height;
+        this.count = new int[pixels];
+        this.sum = new double[pixels];
+        this.sumSq = new double[pixels];
+        this.depth = new float[pixels];
+        this.confidence = new float[pixels];
+        this.measured = new float[pixels];
+        Arrays.fill(depth, Float.NaN);
+        Arrays.fill(measured, Float.NaN);
+        markClean();
+    }
+
+    /**
+     * Панорама на сетке скетча: phi и theta от 0 до 180, пиксель на шаг сервопривода
+     */
+    public static RangePanorama defaultPanorama() {
+        return new RangePanorama(0, 180, 0, 180, ScanGrid.DEFAULT_STEP);
+    }
+
+    /**
+     * Построить панораму по скану
+     */
+    public static RangePanorama fromScan(Scan scan, double step) {
+        RangePanorama panorama = new RangePanorama(0, 180, 0, 180, step);
+        panorama.addAll(scan);
+        return panorama;
+    }
+
+    /**
+     * Индекс пикселя для углов
+     * @return индекс или -1 если углы вне панорамы
+     */
+    public int pixelIndex(double phi, double theta) {
+        int x = (int) Math.round((phi - phiMin) / step);
+        int y = (int) Math.round((theta - thetaMin) / step);
+        if (wrapPhi) {
+            x = Math.floorMod(x, width);
+        }
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return -1;
+        }
+        return y * width + x;
+    }
+
+    /**
+     * Добавить отсчёт
+     * @return true если отсчёт попал в панораму
+     */
+    public synchronized boolean add(double phi, double theta, double r) {
+        return accumulate(phi, theta, r);
+    }
+
+    /**
+     * Добавить скан целиком (проход по внутренним массивам скана под одной блокировкой)
+     */
+    public synchronized void addAll(Scan scan) {
+        double[] phi = scan.phiArray();
+        double[] theta = scan.thetaArray();
+        double[] r = scan.rArray();
+        for (int i = 0; i < scan.size(); i++) {
+            accumulate(phi[i], theta[i], r[i]);
+        }
+    }
+
+    private boolean accumulate(double phi, double theta, double r) {
+        int pixel = pixelIndex(phi, theta);
+        if (pixel < 0 || r < 0 || Double.isNaN(r)) {
+            return false;
+        }
+        count[pixel]++;
+        sum[pixel] += r;
+        sumSq[pixel] += r * r;
+        samples++;
+        markDirty(pixel % width, pixel / width);
+        return true;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(count, 0);
+        Arrays.fill(sum, 0);
+        Arrays.fill(sumSq, 0);
+        samples = 0;
+        markDirty(0, 0);
+        markDirty(width - 1, height - 1);
+    }
+
+    private void markDirty(int x, int y) {
+        if (x < dirtyMinX) {
+            dirtyMinX = x;
+        }
+        if (x > dirtyMaxX) {
+            dirtyMaxX = x;
+        }
+        if (y < dirtyMinY) {
+            dirtyMinY = y;
+        }
+        if (y > dirtyMaxY) {
+            dirtyMaxY = y;
+        }
+    }
+
+    private void markClean() {
+        dirtyMinX = Integer.MAX_VALUE;
+        dirtyMinY = Integer.MAX_VALUE;
+        dirtyMaxX = -1;
+        dirtyMaxY = -1;
+    }
+
+    /**
+     * Отрисовать панораму и скопировать результат в буферы вызывающего
+     * (каждый длины {@link #pixelCount()}, любой может быть null).
+     * Пересчитывается только то, что изменилось с прошлого рендера.
+     * @param depthOut дальность, см; NaN — дыра, которую не удалось заполнить
+     * @param confidenceOut доверие 0..1; 0 — заполненный интерполяцией пиксель или дыра
+     */
+    public synchronized void render(float[] depthOut, float[] confidenceOut) {
+        update();
+        if (depthOut != null) {
+            System.arraycopy(depth, 0, depthOut, 0, depth.length);
+        }
+        if (confidenceOut != null) {
+            System.arraycopy(confidence, 0, confidenceOut, 0, confidence.length);
+        }
+    }
+
+    private void update() {
+        if (dirtyMaxX < 0) {
+            return;
+        }
+        // Измеренные значения меняются только в самом грязном прямоугольнике
+        for (int y = dirtyMinY; y <= dirtyMaxY; y++) {
+            for (int x = dirtyMinX; x <= dirtyMaxX; x++) {
+                int i = y * width + x;
+                int n = count[i];
+                if (n == 0) {
+                    measured[i] = Float.NaN;
+                    confidence[i] = 0;
+                    continue;
+                }
+                double mean = sum[i] / n;
+                double spread = n > 1 ? Math.sqrt(Math.max(0, sumSq[i] / n - mean * mean)) : 0;
+                measured[i] = (float) mean;
+                // Чем больше попаданий и меньше разброс, тем выше доверие
+                confidence[i] = (float) ((double) n / (n + 1) * noise / (noise + spread));
+            }
+        }
+        // А заполнение дыр зависит от соседей в пределах maxGap
+        int minX = dirtyMinX - maxGap;
+        int maxX = dirtyMaxX + maxGap;
+        if (!wrapPhi || maxX - minX + 1 >= width) {
+            minX = Math.max(0, minX);
+            maxX = Math.min(width - 1, maxX);
+        }
+        int minY = Math.max(0, dirtyMinY - maxGap);
+        int maxY = Math.min(height - 1, dirtyMaxY + maxGap);
+        for (int y = minY; y <= maxY; y++) {
+            for (int xx = minX; xx <= maxX; xx++) {
+                int x = Math.floorMod(xx, width);
+                int i = y * width + x;
+                depth[i] = Float.isNaN(measured[i]) ? fill(x, y) : measured[i];
+            }
+        }
+        markClean();
+        recount();
+    }
+
+    /**
+     * Интерполяция по строке и по столбцу между ближайшими измеренными
+     * соседями; две оценки смешиваются с весом, обратным длине пролёта
+     */
+    private float fill(int x, int y) {
+        double estimate = 0;
+        double weight = 0;
+
+        int left = 0;
+        float leftValue = Float.NaN;
+        for (int d = 1; d <= maxGap; d++) {
+            int nx = x - d;
+            if (wrapPhi) {
+                nx = Math.floorMod(nx, width);
+            } else if (nx < 0) {
+                break;
+            }
+            float v = measured[y * width + nx];
+            if (!Float.isNaN(v)) {
+                left = d;
+                leftValue = v;
+                break;
+            }
+        }
+        if (left > 0) {
+            for (int d = 1; d <= maxGap; d++) {
+                int nx = x + d;
+                if (wrapPhi) {
+                    nx = Math.floorMod(nx, width);
+                } else if (nx >= width) {
+                    break;
+                }
+                float v = measured[y * width + nx];
+                if (!Float.isNaN(v)) {
+                    double span = left + d;
+                    estimate += (leftValue * d + v * left) / span / span;
+                    weight += 1 / span;
+                    break;
+                }
+            }
+        }
+
+        int up = 0;
+        float upValue = Float.NaN;
+        for (int d = 1; d <= maxGap && y - d >= 0; d++) {
+            float v = measured[(y - d) * width + x];
+            if (!Float.isNaN(v)) {
+                up = d;
+                upValue = v;
+                break;
+            }
+        }
+        if (up > 0) {
+            for (int d = 1; d <= maxGap && y + d < height; d++) {
+                float v = measured[(y + d) * width + x];
+                if (!Float.isNaN(v)) {
+                    double span = up + d;
+                    estimate += (upValue * d + v * up) / span / span;
+                    weight += 1 / span;
+                    break;
+                }
+            }
+        }
+        return weight > 0 ? (float) (estimate / weight) : Float.NaN;
+    }
+
+    private void recount() {
+        int measuredCount = 0;
+        int filledCount = 0;
+        for (int i = 0; i < depth.length; i++) {
+            if (!Float.isNaN(measured[i])) {
+                measuredCount++;
+            } else if (!Float.isNaN(depth[i])) {
+                filledCount++;
+            }
+        }
+        measuredPixels = measuredCount;
+        filledPixels = filledCount;
+    }
+
+    public double pixelPhi(int x) {
+        return phiMin + x * step;
+    }
+
+    public double pixelTheta(int y) {
+        return thetaMin + y * step;
+    }
+
+    public int pixelCount() {
+        return width * height;
+    }
+
+    public synchronized int count(int pixel) {
+        return count[pixel];
+    }
+
+    /**
+     * Краткая сводка последнего рендера
+     */
+    public synchronized String summary() {
+        update();
+        int holes = pixelCount() - measuredPixels - filledPixels;
+        return String.format("Панорама %dx%d (шаг %.2f°): отсчётов %d, измерено %d, заполнено %d, дыр %d",
+                width, height, step, samples, measuredPixels, filledPixels, holes);
+    }
+
+    // Геттеры и сеттеры
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public double getStep() {
+        return step;
+    }
+
+    public double getPhiMin() {
+        return phiMin;
+    }
+
+    public double getThetaMin() {
+        return thetaMin;
+    }
+
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    public synchronized int getMeasuredPixels() {
+        update();
+        return measuredPixels;
+    }
+
+    public synchronized int getFilledPixels() {
+        update();
+        return filledPixels;
+    }
+
+    public int getMaxGap() {
+        return maxGap;
+    }
+
+    /**
+     * @param maxGap насколько далеко (в пикселях) искать измеренного соседа при заполнении; 0 — не заполнять
+     */
+    public synchronized void setMaxGap(int maxGap) {
+        this.maxGap = Math.max(0, maxGap);
+        markDirty(0, 0);
+        markDirty(width - 1, height - 1);
+    }
+
+    public double getNoise() {
+        return noise;
+    }
+
+    /**
+     * @param noise разброс дальности, при котором доверие падает вдвое, см
+     */
+    public synchronized void setNoise(double noise) {
+        this.noise = noise;
+        markDirty(0, 0);
+        markDirty(width - 1, height - 1);
+    }
+}
@@ -0,0 +1,114 @@
+package com.arduino.scan.planning;
+
+import com.arduino.scan.ScanGrid;
+import com.arduino.scan.planning.CoverageReport.Reason;
+
+/**
+ * Поиск дыр и сомнительных мест в сетке скана.
+ *
+ * Ячейка попадает в досъёмку, если в ней нет отсчётов (дыра), если
+ * стандартная ошибка среднего sqrt(D / n) больше maxStandardError (шумное
+ * место — повторные измерения её уменьшают) или если единственное значение
+ * отличается больше чем на maxJump·r от всех соседей по сетке (выброс;
+ * край предмета так не выглядит — по одну сторону края соседи совпадают).
+ * Ячейки, которые уже перемерялись maxAttempts раз, в досъёмку не
+ * попадают: так дальние углы за пределом дальности датчика не съедают
+ * время бесконечно.
+ */
+public class CoverageAnalyzer {
+
+    public static final double DEFAULT_MAX_STANDARD_ERROR = 1.0;
+    public static final double DEFAULT_MAX_JUMP = 0.15;
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    private double maxStandardError = DEFAULT_MAX_STANDARD_ERROR;
+    private double maxJump = DEFAULT_MAX_JUMP;
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    /**
+     * Разобрать покрытие сетки
+     * @param attempts сколько раз ячейка уже перемерялась, или null
+     */
+    public CoverageReport analyse(ScanGrid grid, int[] attempts) {
+        CoverageReport report = new CoverageReport(grid);
+        for (int cell = 0; cell < grid.cellCount(); cell++) {
+            Reason reason = reason(grid, cell);
+            if (reason != null) {
+                report.mark(cell, reason, attempts == null || attempts[cell] < maxAttempts);
+            }
+        }
+        return report;
+    }
+
+    private Reason reason(ScanGrid grid, int cell) {
+        int n = grid.count(cell);
+        if (n == 0) {
+            return Reason.HOLE;
+        }
+        if (n > 1) {
+            return Math.sqrt(grid.variance(cell) / n) > maxStandardError ? Reason.NOISY : null;
+        }
+        return isOutlier(grid, cell) ? Reason.OUTLIER : null;
+    }
+
+    /**
+     * Ни один измеренный сосед (окно 3×3) не близок по дальности
+     */
+    private boolean isOutlier(ScanGrid grid, int cell) {
+        int thetaCells = grid.getThetaCells();
+        int p = cell / thetaCells;
+        int t = cell % thetaCells;
+        double r = grid.mean(cell);
+        int measured = 0;
+        for (int dp = -1; dp <= 1; dp++) {
+            for (int dt = -1; dt <= 1; dt++) {
+                int pp = p + dp;
+                int tt = t + dt;
+                if ((dp == 0 && dt == 0) || pp < 0 || pp >= grid.getPhiCells() || tt < 0 || tt >= thetaCells) {
+                    continue;
+                }
+                int neighbour = pp * thetaCells + tt;
+                if (grid.count(neighbour) == 0) {
+                    continue;
+                }
+                measured++;
+                if (Math.abs(grid.mean(neighbour) - r) <= maxJump * r) {
+                    return false;
+                }
+            }
+        }
+        // Судить можно, только если соседей хотя бы двое
+        return measured >= 2;
+    }
+
+    // Геттеры и сеттеры
+    public double getMaxStandardError() {
+        return maxStandardError;
+    }
+
+    /**
+     * @param maxStandardError допустимая стандартная ошибка средней дальности, см
+     */
+    public void setMaxStandardError(double maxStandardError) {
+        this.maxStandardError = maxStandardError;
+    }
+
+    public double getMaxJump() {
+        return maxJump;
+    }
+
+    /**
+     * @param maxJump относительная разница с соседями, после которой значение — выброс
+     */
+    public void setMaxJump(double maxJump) {
+        this.maxJump = maxJump;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+}
@@ -0,0 +1,105 @@
+package com.arduino.scan.planning;
+
+import com.arduino.scan.ScanGrid;
+
+/**
+ * Итог разбора покрытия: причина досъёмки для каждой ячейки сетки.
+ */
+public class CoverageReport {
+
+    /**
+     * Почему ячейку стоит измерить заново
+     */
+    public enum Reason {
+        /** нет ни одного отсчёта */
+        HOLE,
+        /** разброс среднего больше допустимого */
+        NOISY,
+        /** одиночное значение, не похожее ни на одного соседа */
+        OUTLIER
+    }
+
+    private final ScanGrid grid;
+    private final Reason[] reasons;
+    private final boolean[] needed;
+    private final int[] counts = new int[Reason.values().length];
+    private int neededCells;
+    private int givenUp;
+
+    CoverageReport(ScanGrid grid) {
+        this.grid = grid;
+        this.reasons = new Reason[grid.cellCount()];
+        this.needed = new boolean[grid.cellCount()];
+    }
+
+    /**
+     * Отметить ячейку
+     * @param retry false — попытки исчерпаны, ячейка в план не попадёт
+     */
+    void mark(int cell, Reason reason, boolean retry) {
+        reasons[cell] = reason;
+        counts[reason.ordinal()]++;
+        if (retry) {
+            needed[cell] = true;
+            neededCells++;
+        } else {
+            givenUp++;
+        }
+    }
+
+    /**
+     * Причина досъёмки ячейки или null, если ячейка измерена хорошо
+     */
+    public Reason reason(int cell) {
+        return reasons[cell];
+    }
+
+    public int count(Reason reason) {
+        return counts[reason.ordinal()];
+    }
+
+    /**
+     * Доля ячеек сетки, где есть хоть один отсчёт
+     */
+    public double coverage() {
+        return 1.0 - (double) counts[Reason.HOLE.ordinal()] / reasons.length;
+    }
+
+    /**
+     * Доля ячеек без замечаний
+     */
+    public double quality() {
+        int flagged = 0;
+        for (int c : counts) {
+            flagged += c;
+        }
+        return 1.0 - (double) flagged / reasons.length;
+    }
+
+    public String summary() {
+        return String.format("покрытие %.1f%%, без замечаний %.1f%%: дыр %d, шумных %d, выбросов %d;"
+                        + " к досъёмке %d, попытки исчерпаны %d",
+                coverage() * 100, quality() * 100, count(Reason.HOLE), count(Reason.NOISY), count(Reason.OUTLIER),
+                neededCells, givenUp);
+    }
+
+    // Геттеры
+    public ScanGrid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Ячейки, которые стоит измерить заново (индексы как в {@link ScanGrid})
+     */
+    public boolean[] getNeeded() {
+        return needed;
+    }
+
+    public int getNeededCells() {
+        return neededCells;
+    }
+
+    public int getGivenUp() {
+        return givenUp;
+    }
+}
@@ -0,0 +1,243 @@
+package com.arduino.scan.planning;
+
+import com.arduino.connection.ArduinoConnection;
+import com.arduino.connection.protocol.CommandMultiplexer;
+import com.arduino.scan.Scan;
+import com.arduino.scan.ScanGrid;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Досъёмка дыр и сомнительных мест скана на устройстве.
+ *
+ * Вместо ещё одного полного обхода сетки: разобрать покрытие
+ * ({@link CoverageAnalyzer}), составить план ({@link SweepPlanner}),
+ * остановить непрерывный обход ("AUTO 0") и выполнить обходы "SWEEP"
+ * через {@link CommandMultiplexer}. Отсчёты обходов добавляются в ту же
+ * сетку, и раунд повторяется, пока есть что досъёмать или не исчерпано
+ * maxRounds. Ячейка, перемеренная maxAttempts раз, больше в план не берётся.
+ *
+ * <pre>
+ * RescanSession session = new RescanSession(connection, grid);
+ * session.setScan(scan);          // сырые отсчёты досъёмки, если нужны
+ * session.run();
+ * System.out.println(session.summary());
+ * </pre>
+ */
+public class RescanSession {
+
+    public static final int DEFAULT_MAX_ROUNDS = 3;
+
+    /** Запас таймаута обхода относительно оценки плана */
+    private static final int TIMEOUT_FACTOR = 4;
+    private static final int TIMEOUT_MARGIN_MS = 5000;
+
+    private final ArduinoConnection connection;
+    private final ScanGrid grid;
+    private final int[] attempts;
+    private CoverageAnalyzer analyzer = new CoverageAnalyzer();
+    private SweepPlanner planner = new SweepPlanner();
+    private int maxRounds = DEFAULT_MAX_ROUNDS;
+    private boolean resumeAuto = true;
+    private Scan scan;
+
+    private CoverageReport before;
+    private CoverageReport after;
+    private int rounds;
+    private int sweeps;
+    private long positions;
+    private long estimatedMillis;
+    private long samples;
+    private long elapsedNanos;
+
+    /**
+     * Конструктор
+     * @param grid сетка уже снятого скана; досъёмка добавляется в неё
+     */
+    public RescanSession(ArduinoConnection connection, ScanGrid grid) {
+        this.connection = connection;
+        this.grid = grid;
+        this.attempts = new int[grid.cellCount()];
+    }
+
+    /**
+     * Выполнить раунды досъёмки
+     * @return разбор покрытия после досъёмки
+     */
+    public CoverageReport run() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        CommandMultiplexer mux = new CommandMultiplexer(connection, this::sample);
+        mux.start();
+        try {
+            await(mux.auto(false), mux.getTimeoutMs());
+            double[] position = position(await(mux.status(), mux.getTimeoutMs()));
+
+            before = analyzer.analyse(grid, attempts);
+            CoverageReport report = before;
+            while (rounds < maxRounds && report.getNeededCells() > 0) {
+                SweepPlan plan = planner.plan(report, position[0], position[1]);
+                rounds++;
+                System.out.println("Раунд " + rounds + ": " + plan.summary());
+                for (Sweep sweep : plan.getSweeps()) {
+                    long budget = planner.sweepMillis(sweep, position[0], position[1]);
+                    int timeout = (int) Math.min(Integer.MAX_VALUE, budget * TIMEOUT_FACTOR + TIMEOUT_MARGIN_MS);
+                    await(mux.sweep(sweep.getPhiFrom(), sweep.getPhiTo(), sweep.getThetaFrom(), sweep.getThetaTo(),
+                            sweep.getStep(), timeout), timeout);
+                    markAttempts(report, sweep);
+                    sweeps++;
+                    positions += sweep.positions();
+                    position[0] = sweep.getPhiTo();
+                    position[1] = sweep.endTheta();
+                }
+                estimatedMillis += plan.getEstimatedMillis();
+                report = analyzer.analyse(grid, attempts);
+            }
+            after = report;
+            if (resumeAuto) {
+                await(mux.auto(true), mux.getTimeoutMs());
+            }
+            return after;
+        } finally {
+            mux.close();
+            elapsedNanos = System.nanoTime() - start;
+        }
+    }
+
+    private synchronized void sample(double phi, double theta, double r) {
+        samples++;
+        grid.add(phi, theta, r);
+        if (scan != null) {
+            scan.add(phi, theta, r);
+        }
+    }
+
+    /**
+     * Перемеренные ячейки плана: отметить попытку
+     */
+    private void markAttempts(CoverageReport report, Sweep sweep) {
+        boolean[] needed = report.getNeeded();
+        for (int phi = sweep.getPhiFrom(); phi <= sweep.getPhiTo(); phi += sweep.getStep()) {
+            for (int theta = sweep.getThetaFrom(); theta <= sweep.getThetaTo(); theta += sweep.getStep()) {
+                int cell = grid.cellIndex(phi, theta);
+                if (cell >= 0 && needed[cell]) {
+                    attempts[cell]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Положение сервоприводов из ответа STATUS "phi=.. theta=.."
+     */
+    private static double[] position(String status) {
+        double[] position = {0, 0};
+        for (String field : status.split("\\s+")) {
+            try {
+                if (field.startsWith("phi=")) {
+                    position[0] = Double.parseDouble(field.substring(4));
+                } else if (field.startsWith("theta=")) {
+                    position[1] = Double.parseDouble(field.substring(6));
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("Неверное поле STATUS: " + field);
+            }
+        }
+        return position;
+    }
+
+    private static String await(CompletableFuture<String> reply, int timeoutMs)
+            throws IOException, InterruptedException {
+        try {
+            // Таймаут уже стоит на самой команде; здесь — страховка от зависшего потока чтения
+            return reply.get(timeoutMs + 1000L, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Команда не выполнена: " + cause, cause);
+        } catch (TimeoutException e) {
+            throw new IOException("Нет ответа устройства за " + timeoutMs + " мс", e);
+        }
+    }
+
+    /**
+     * Итог досъёмки одной строкой
+     */
+    public String summary() {
+        long full = planner.fullSweepMillis(grid);
+        return String.format("раундов %d, обходов %d, позиций %d (полный обход — %d), отсчётов %d;"
+                        + " время сервоприводов около %.1f с (%.1f%% полного обхода), заняло %.1f с%n"
+                        + "  до:    %s%n  после: %s",
+                rounds, sweeps, positions, grid.cellCount(), samples, estimatedMillis / 1000.0,
+                full > 0 ? estimatedMillis * 100.0 / full : 0, elapsedNanos / 1e9,
+                before != null ? before.summary() : "-", after != null ? after.summary() : "-");
+    }
+
+    // Геттеры и сеттеры
+    public CoverageAnalyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    public void setAnalyzer(CoverageAnalyzer analyzer) {
+        this.analyzer = analyzer;
+    }
+
+    public SweepPlanner getPlanner() {
+        return planner;
+    }
+
+    public void setPlanner(SweepPlanner planner) {
+        this.planner = planner;
+    }
+
+    public int getMaxRounds() {
+        return maxRounds;
+    }
+
+    public void setMaxRounds(int maxRounds) {
+        this.maxRounds = Math.max(1, maxRounds);
+    }
+
+    /**
+     * @param resumeAuto вернуть непрерывный обход после досъёмки
+     */
+    public void setResumeAuto(boolean resumeAuto) {
+        this.resumeAuto = resumeAuto;
+    }
+
+    /**
+     * @param scan скан, в который дописываются отсчёты досъёмки, или null
+     */
+    public void setScan(Scan scan) {
+        this.scan = scan;
+    }
+
+    public CoverageReport getBefore() {
+        return before;
+    }
+
+    public CoverageReport getAfter() {
+        return after;
+    }
+
+    public int getRounds() {
+        return rounds;
+    }
+
+    public int getSweeps() {
+        return sweeps;
+    }
+
+    public long getPositions() {
+        return positions;
+    }
+
+    public long getEstimatedMillis() {
+        return estimatedMillis;
+    }
+}
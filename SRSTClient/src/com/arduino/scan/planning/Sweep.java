@@ -0,0 +1,89 @@
+package com.arduino.scan.planning;
+
+/**
+ * Прицельный обход прямоугольника сетки командой
+ * "SWEEP phi0 phi1 theta0 theta1 шаг": phi идёт по строкам от phi0 к phi1,
+ * theta в строке — змейкой, начиная с theta0.
+ */
+public class Sweep {
+
+    private final int phiFrom;
+    private final int phiTo;
+    private final int thetaFrom;
+    private final int thetaTo;
+    private final int step;
+    private final int targetCells;
+
+    /**
+     * Конструктор
+     * @param targetCells сколько ячеек из досъёмки покрывает обход
+     */
+    public Sweep(int phiFrom, int phiTo, int thetaFrom, int thetaTo, int step, int targetCells) {
+        this.phiFrom = phiFrom;
+        this.phiTo = phiTo;
+        this.thetaFrom = thetaFrom;
+        this.thetaTo = thetaTo;
+        this.step = step;
+        this.targetCells = targetCells;
+    }
+
+    public int rows() {
+        return (phiTo - phiFrom) / step + 1;
+    }
+
+    public int columns() {
+        return (thetaTo - thetaFrom) / step + 1;
+    }
+
+    /**
+     * Позиций сервоприводов за обход
+     */
+    public int positions() {
+        return rows() * columns();
+    }
+
+    /**
+     * theta, на котором обход заканчивается
+     */
+    public int endTheta() {
+        return rows() % 2 == 1 ? thetaTo : thetaFrom;
+    }
+
+    /**
+     * Текст команды для скетча
+     */
+    public String command() {
+        return "SWEEP " + phiFrom + " " + phiTo + " " + thetaFrom + " " + thetaTo + " " + step;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("phi %d..%d, theta %d..%d: %d позиций, %d к досъёмке",
+                phiFrom, phiTo, thetaFrom, thetaTo, positions(), targetCells);
+    }
+
+    // Геттеры
+    public int getPhiFrom() {
+        return phiFrom;
+    }
+
+    public int getPhiTo() {
+        return phiTo;
+    }
+
+    public int getThetaFrom() {
+        return thetaFrom;
+    }
+
+    public int getThetaTo() {
+        return thetaTo;
+    }
+
+    public int getStep() {
+        return step;
+    }
+
+    public int getTargetCells() {
+        return targetCells;
+    }
+}
@@ -0,0 +1,68 @@
+package com.arduino.scan.planning;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Набор обходов в порядке выполнения и оценка времени сервоприводов.
+ */
+public class SweepPlan {
+
+    private final List<Sweep> sweeps;
+    private final int neededCells;
+    private final long estimatedMillis;
+    private final long fullSweepMillis;
+
+    SweepPlan(List<Sweep> sweeps, int neededCells, long estimatedMillis, long fullSweepMillis) {
+        this.sweeps = Collections.unmodifiableList(sweeps);
+        this.neededCells = neededCells;
+        this.estimatedMillis = estimatedMillis;
+        this.fullSweepMillis = fullSweepMillis;
+    }
+
+    public boolean isEmpty() {
+        return sweeps.isEmpty();
+    }
+
+    /**
+     * Позиций сервоприводов во всех обходах
+     */
+    public int positions() {
+        int positions = 0;
+        for (Sweep sweep : sweeps) {
+            positions += sweep.positions();
+        }
+        return positions;
+    }
+
+    /**
+     * Время плана относительно полного обхода сетки
+     */
+    public double fraction() {
+        return fullSweepMillis > 0 ? (double) estimatedMillis / fullSweepMillis : 0;
+    }
+
+    public String summary() {
+        return String.format("обходов %d, ячеек к досъёмке %d, позиций %d, около %.1f с"
+                        + " (%.1f%% от полного обхода за %.1f с)",
+                sweeps.size(), neededCells, positions(), estimatedMillis / 1000.0, fraction() * 100,
+                fullSweepMillis / 1000.0);
+    }
+
+    // Геттеры
+    public List<Sweep> getSweeps() {
+        return sweeps;
+    }
+
+    public int getNeededCells() {
+        return neededCells;
+    }
+
+    public long getEstimatedMillis() {
+        return estimatedMillis;
+    }
+
+    public long getFullSweepMillis() {
+        return fullSweepMillis;
+    }
+}
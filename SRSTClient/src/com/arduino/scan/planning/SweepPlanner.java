@@ -0,0 +1,300 @@
+package com.arduino.scan.planning;
+
+import com.arduino.scan.ScanGrid;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Выбор прицельных обходов, которые покрывают все ячейки досъёмки.
+ *
+ * Каждый обход стоит setupMs (команда, поворот к началу и пауза 300 мс
+ * в скетче) плюс positionMs на позицию. Лишняя позиция дешевле нового
+ * обхода, поэтому близкие дыры выгодно брать одним прямоугольником, а
+ * далёкие — разными. Минимум ищется динамическим программированием по
+ * гильотинным разрезам: прямоугольник ужимается до рамки нужных ячеек,
+ * затем сравнивается обход целиком со всеми разрезами на два по phi и по
+ * theta. Для сетки скетча 37×37 это доли секунды; более мелкая сетка
+ * сначала огрубляется блоками до {@link #MAX_AXIS} ячеек по стороне.
+ *
+ * Обходы затем упорядочиваются жадно — следующим идёт тот, к началу
+ * которого ближе всего повернуть сервоприводы.
+ */
+public class SweepPlanner {
+
+    public static final int DEFAULT_DWELL_MS = 50;
+    /** Ожидание эха HC-SR04 на позицию, мс */
+    public static final int DEFAULT_MEASURE_MS = 15;
+    public static final int DEFAULT_SETUP_MS = 320;
+    /** Скорость SG90 под нагрузкой, градусов в секунду */
+    public static final double DEFAULT_DEGREES_PER_SECOND = 400;
+
+    static final int MAX_AXIS = 40;
+
+    private int dwellMs = DEFAULT_DWELL_MS;
+    private int measureMs = DEFAULT_MEASURE_MS;
+    private int setupMs = DEFAULT_SETUP_MS;
+    private double degreesPerSecond = DEFAULT_DEGREES_PER_SECOND;
+
+    private int phiCells;
+    private int thetaCells;
+    private int block;
+    private int[] prefix;
+    private float[] cost;
+    private int[] choice;
+
+    /**
+     * План досъёмки по разбору покрытия
+     * @param startPhi текущее положение сервопривода phi, градусы
+     * @param startTheta текущее положение сервопривода theta, градусы
+     */
+    public SweepPlan plan(CoverageReport report, double startPhi, double startTheta) {
+        ScanGrid grid = report.getGrid();
+        List<int[]> boxes = new ArrayList<>();
+        if (report.getNeededCells() > 0) {
+            boxes = cover(report.getNeeded(), grid.getPhiCells(), grid.getThetaCells());
+        }
+
+        int step = (int) Math.round(grid.getStep());
+        List<Sweep> sweeps = new ArrayList<>();
+        for (int[] box : boxes) {
+            int targets = 0;
+            for (int p = box[0]; p <= box[1]; p++) {
+                for (int t = box[2]; t <= box[3]; t++) {
+                    if (report.getNeeded()[p * grid.getThetaCells() + t]) {
+                        targets++;
+                    }
+                }
+            }
+            sweeps.add(new Sweep(
+                    (int) Math.round(grid.cellPhi(box[0] * grid.getThetaCells())),
+                    (int) Math.round(grid.cellPhi(box[1] * grid.getThetaCells())),
+                    (int) Math.round(grid.cellTheta(box[2])),
+                    (int) Math.round(grid.cellTheta(box[3])),
+                    step, targets));
+        }
+
+        // Жадный порядок: ближайшее начало обхода от текущего положения
+        List<Sweep> ordered = new ArrayList<>();
+        double phi = startPhi;
+        double theta = startTheta;
+        long millis = 0;
+        while (!sweeps.isEmpty()) {
+            Sweep next = null;
+            double nearest = Double.MAX_VALUE;
+            for (Sweep sweep : sweeps) {
+                double travel = travelMillis(phi, theta, sweep.getPhiFrom(), sweep.getThetaFrom());
+                if (travel < nearest) {
+                    nearest = travel;
+                    next = sweep;
+                }
+            }
+            sweeps.remove(next);
+            ordered.add(next);
+            millis += sweepMillis(next, phi, theta);
+            phi = next.getPhiTo();
+            theta = next.endTheta();
+        }
+        return new SweepPlan(ordered, report.getNeededCells(), millis, fullSweepMillis(grid));
+    }
+
+    /**
+     * Время обхода с поворотом к его началу из (fromPhi, fromTheta)
+     */
+    public long sweepMillis(Sweep sweep, double fromPhi, double fromTheta) {
+        return Math.round(travelMillis(fromPhi, fromTheta, sweep.getPhiFrom(), sweep.getThetaFrom()))
+                + setupMs + (long) sweep.positions() * positionMs();
+    }
+
+    /**
+     * Время полного обхода сетки скетчем по той же модели
+     */
+    public long fullSweepMillis(ScanGrid grid) {
+        return (long) grid.cellCount() * positionMs();
+    }
+
+    /**
+     * Время поворота сервоприводов (оба поворачиваются одновременно)
+     */
+    public double travelMillis(double fromPhi, double fromTheta, double toPhi, double toTheta) {
+        return Math.max(Math.abs(toPhi - fromPhi), Math.abs(toTheta - fromTheta)) / degreesPerSecond * 1000;
+    }
+
+    private int positionMs() {
+        return dwellMs + measureMs;
+    }
+
+    /**
+     * Прямоугольники ячеек {p0, p1, t0, t1}, покрывающие все нужные ячейки
+     */
+    List<int[]> cover(boolean[] needed, int gridPhiCells, int gridThetaCells) {
+        block = (Math.max(gridPhiCells, gridThetaCells) + MAX_AXIS - 1) / MAX_AXIS;
+        phiCells = (gridPhiCells + block - 1) / block;
+        thetaCells = (gridThetaCells + block - 1) / block;
+        prefix = new int[(phiCells + 1) * (thetaCells + 1)];
+        for (int p = 0; p < gridPhiCells; p++) {
+            for (int t = 0; t < gridThetaCells; t++) {
+                if (needed[p * gridThetaCells + t]) {
+                    int index = (p / block + 1) * (thetaCells + 1) + t / block + 1;
+                    // Блок считается один раз, сколько бы нужных ячеек в нём ни было
+                    prefix[index] = 1;
+                }
+            }
+        }
+        for (int p = 1; p <= phiCells; p++) {
+            for (int t = 1; t <= thetaCells; t++) {
+                int index = p * (thetaCells + 1) + t;
+                prefix[index] += prefix[index - 1] + prefix[index - thetaCells - 1]
+                        - prefix[index - thetaCells - 2];
+            }
+        }
+        int size = phiCells * phiCells * thetaCells * thetaCells;
+        cost = new float[size];
+        choice = new int[size];
+
+        List<int[]> boxes = new ArrayList<>();
+        int[] whole = trim(0, phiCells - 1, 0, thetaCells - 1);
+        if (whole != null) {
+            solve(whole[0], whole[1], whole[2], whole[3]);
+            collect(whole, boxes);
+        }
+        // Блоки обратно в ячейки сетки
+        for (int[] box : boxes) {
+            box[0] = box[0] * block;
+            box[1] = Math.min(gridPhiCells - 1, box[1] * block + block - 1);
+            box[2] = box[2] * block;
+            box[3] = Math.min(gridThetaCells - 1, box[3] * block + block - 1);
+        }
+        cost = null;
+        choice = null;
+        prefix = null;
+        return boxes;
+    }
+
+    private int count(int p0, int p1, int t0, int t1) {
+        int w = thetaCells + 1;
+        return prefix[(p1 + 1) * w + t1 + 1] - prefix[p0 * w + t1 + 1]
+                - prefix[(p1 + 1) * w + t0] + prefix[p0 * w + t0];
+    }
+
+    /**
+     * Ужать прямоугольник до рамки нужных ячеек
+     * @return {p0, p1, t0, t1} или null, если нужных ячеек нет
+     */
+    private int[] trim(int p0, int p1, int t0, int t1) {
+        if (count(p0, p1, t0, t1) == 0) {
+            return null;
+        }
+        while (count(p0, p0, t0, t1) == 0) {
+            p0++;
+        }
+        while (count(p1, p1, t0, t1) == 0) {
+            p1--;
+        }
+        while (count(p0, p1, t0, t0) == 0) {
+            t0++;
+        }
+        while (count(p0, p1, t1, t1) == 0) {
+            t1--;
+        }
+        return new int[] {p0, p1, t0, t1};
+    }
+
+    private int key(int p0, int p1, int t0, int t1) {
+        return ((p0 * phiCells + p1) * thetaCells + t0) * thetaCells + t1;
+    }
+
+    /**
+     * Наименьшая стоимость покрытия ужатого прямоугольника, мс
+     */
+    private float solve(int p0, int p1, int t0, int t1) {
+        int key = key(p0, p1, t0, t1);
+        if (choice[key] != 0) {
+            return cost[key];
+        }
+        int positions = (p1 - p0 + 1) * (t1 - t0 + 1);
+        float best = setupMs + (float) positions * block * block * positionMs();
+        int bestChoice = 1;
+        // Прямоугольник, целиком из нужных ячеек, выгоднее не резать
+        if (count(p0, p1, t0, t1) < positions) {
+            for (int cut = p0; cut < p1; cut++) {
+                float split = part(p0, cut, t0, t1) + part(cut + 1, p1, t0, t1);
+                if (split < best) {
+                    best = split;
+                    bestChoice = 2 + (cut - p0);
+                }
+            }
+            for (int cut = t0; cut < t1; cut++) {
+                float split = part(p0, p1, t0, cut) + part(p0, p1, cut + 1, t1);
+                if (split < best) {
+                    best = split;
+                    bestChoice = -2 - (cut - t0);
+                }
+            }
+        }
+        cost[key] = best;
+        choice[key] = bestChoice;
+        return best;
+    }
+
+    private float part(int p0, int p1, int t0, int t1) {
+        int[] box = trim(p0, p1, t0, t1);
+        return box == null ? 0 : solve(box[0], box[1], box[2], box[3]);
+    }
+
+    private void collect(int[] box, List<int[]> boxes) {
+        int c = choice[key(box[0], box[1], box[2], box[3])];
+        if (c == 1) {
+            boxes.add(box);
+            return;
+        }
+        int[][] halves = c > 1
+                ? new int[][] {{box[0], box[0] + c - 2, box[2], box[3]}, {box[0] + c - 1, box[1], box[2], box[3]}}
+                : new int[][] {{box[0], box[1], box[2], box[2] - c - 2}, {box[0], box[1], box[2] - c - 1, box[3]}};
+        for (int[] half : halves) {
+            int[] trimmed = trim(half[0], half[1], half[2], half[3]);
+            if (trimmed != null) {
+                collect(trimmed, boxes);
+            }
+        }
+    }
+
+    // Геттеры и сеттеры
+    public int getDwellMs() {
+        return dwellMs;
+    }
+
+    /**
+     * @param dwellMs пауза скетча на позицию (команда DWELL), мс
+     */
+    public void setDwellMs(int dwellMs) {
+        this.dwellMs = dwellMs;
+    }
+
+    public int getMeasureMs() {
+        return measureMs;
+    }
+
+    public void setMeasureMs(int measureMs) {
+        this.measureMs = measureMs;
+    }
+
+    public int getSetupMs() {
+        return setupMs;
+    }
+
+    /**
+     * @param setupMs накладные расходы на один обход, мс
+     */
+    public void setSetupMs(int setupMs) {
+        this.setupMs = setupMs;
+    }
+
+    public double getDegreesPerSecond() {
+        return degreesPerSecond;
+    }
+
+    public void setDegreesPerSecond(double degreesPerSecond) {
+        this.degreesPerSecond = degreesPerSecond;
+    }
+}
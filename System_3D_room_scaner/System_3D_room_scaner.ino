@@ -1,6 +1,7 @@
 
 #include <Servo.h>
 #include <HCSR04.h>
+#include <EEPROM.h>
 
 Servo ser1;
 Servo ser2;
@@ -12,29 +13,282 @@ byte triggerPin = 12;
 byte echoCount = 2;
 byte* echoPins = new byte[echoCount]{ 12, 13 };
 
+// Двоичный протокол: клиент присылает "PROTO BIN", отсчёт уходит кадром
+// seq, phi, theta, r (uint16 LE, 0.1 см), crc8 в COBS с завершающим 0x00
+bool binaryMode = false;
+byte seq = 0;
+String command = "";
+// Строка длиннее буфера команды: отбрасывается целиком с ответом "ERR too long"
+const unsigned int MAX_COMMAND = 32;
+bool commandOverflow = false;
+
+// Команды с номером: "#id PING|IDENT|STATUS|MOVE phi theta|DWELL мс|AUTO 0|1|
+// SWEEP phi0 phi1 theta0 theta1 шаг", ответ "#id OK ..." или "#id ERR ...";
+// в двоичном режиме ответ обрамлён 0x00
+int dwellMs = 50;
+// AUTO 0 останавливает непрерывный обход: остаются только команды и SWEEP
+bool autoSweep = true;
+
+// Номер сканера для IDENT: создаётся при первом запуске и хранится в EEPROM,
+// чтобы клиент узнавал сканер на любом порту
+const int FIRMWARE = 1;
+const byte ID_MAGIC = 0x5A;
+unsigned long scannerId;
+
+void loadScannerId() {
+  if (EEPROM.read(0) == ID_MAGIC) {
+    EEPROM.get(1, scannerId);
+    return;
+  }
+  randomSeed(analogRead(A0) ^ micros());
+  scannerId = ((unsigned long) random(0x10000) << 16) | random(0x10000);
+  EEPROM.put(1, scannerId);
+  EEPROM.write(0, ID_MAGIC);
+}
+
 void setup() {
   ser1.attach(5);
   ser2.attach(6);
   HCSR04.begin(triggerPin, echoPins, echoCount);
+  loadScannerId();
   Serial.begin(115200);
 }
 
+byte crc8(const byte* data, byte length) {
+  byte crc = 0;
+  for (byte i = 0; i < length; i++) {
+    crc ^= data[i];
+    for (byte bit = 0; bit < 8; bit++) {
+      crc = (crc & 0x80) ? (crc << 1) ^ 0x07 : crc << 1;
+    }
+  }
+  return crc;
+}
+
+void sendFrame(int phi, int theta, double r) {
+  unsigned int range = (unsigned int) constrain(r * 10, 0, 65535);
+  byte payload[6] = { seq++, (byte) phi, (byte) theta, (byte) range, (byte) (range >> 8), 0 };
+  payload[5] = crc8(payload, 5);
+
+  byte frame[8];
+  byte codeIndex = 0;
+  byte write = 1;
+  byte code = 1;
+  for (byte i = 0; i < 6; i++) {
+    if (payload[i] == 0) {
+      frame[codeIndex] = code;
+      codeIndex = write++;
+      code = 1;
+    } else {
+      frame[write++] = payload[i];
+      code++;
+    }
+  }
+  frame[codeIndex] = code;
+  Serial.write(frame, write);
+  Serial.write((byte) 0);
+}
+
+// Измерить и отправить отсчёт; false, если эхо не получено
+bool measureAndSend(int phi, int theta) {
+  double* dist = HCSR04.measureDistanceCm();
+  if (dist[0] == -1) {
+    return false;
+  }
+  dist[0] = round(dist[0]);
+  if (binaryMode) {
+    sendFrame(phi, theta, dist[0]);
+  } else {
+    Serial.print(phi);
+    Serial.print(";");
+    Serial.print(theta);
+    Serial.print(";");
+    Serial.println(dist[0]);
+  }
+  return true;
+}
+
+// Прицельный обход прямоугольника: phi по строкам, theta змейкой.
+// Команды на время обхода не читаются (ждут в буфере порта)
+int sweep(int phi0, int phi1, int theta0, int theta1, int step) {
+  int sent = 0;
+  int columns = (theta1 - theta0) / step;
+  ser1.write(phi0);
+  ser2.write(theta0);
+  delay(300);
+  for (int row = 0; phi0 + row * step <= phi1; row++) {
+    pos = phi0 + row * step;
+    ser1.write(pos);
+    for (int i = 0; i <= columns; i++) {
+      pos2 = theta0 + (row % 2 == 0 ? i : columns - i) * step;
+      ser2.write(pos2);
+      delay(dwellMs);
+      if (measureAndSend(pos, pos2)) {
+        sent++;
+      }
+    }
+  }
+  return sent;
+}
+
+void beginReply(const String& id) {
+  if (binaryMode) {
+    Serial.write((byte) 0);
+  }
+  Serial.print(id);
+  Serial.print(' ');
+}
+
+void endReply() {
+  Serial.print('\n');
+  if (binaryMode) {
+    Serial.write((byte) 0);
+  }
+}
+
+void reply(const String& id, const char* text) {
+  beginReply(id);
+  Serial.print(text);
+  endReply();
+}
+
+void handleTagged(const String& line) {
+  int space = line.indexOf(' ');
+  if (space < 2) {
+    return;
+  }
+  String id = line.substring(0, space);
+  String body = line.substring(space + 1);
+  body.trim();
+  if (body == "PING") {
+    reply(id, "OK PONG");
+  } else if (body == "IDENT") {
+    beginReply(id);
+    Serial.print("OK SRST id=");
+    Serial.print(scannerId, HEX);
+    Serial.print(" fw=");
+    Serial.print(FIRMWARE);
+    endReply();
+  } else if (body == "STATUS") {
+    beginReply(id);
+    Serial.print("OK phi=");
+    Serial.print(pos);
+    Serial.print(" theta=");
+    Serial.print(pos2);
+    Serial.print(binaryMode ? " proto=BIN" : " proto=ASCII");
+    Serial.print(" dwell=");
+    Serial.print(dwellMs);
+    Serial.print(" auto=");
+    Serial.print(autoSweep ? 1 : 0);
+    endReply();
+  } else if (body.startsWith("MOVE ")) {
+    int split = body.indexOf(' ', 5);
+    if (split < 0) {
+      reply(id, "ERR syntax");
+      return;
+    }
+    int phi = body.substring(5, split).toInt();
+    int theta = body.substring(split + 1).toInt();
+    if (phi < 0 || phi > 180 || theta < 0 || theta > 180) {
+      reply(id, "ERR range");
+      return;
+    }
+    // Обход продолжится с новой точки: циклы loop() идут по тем же pos и pos2
+    pos = phi;
+    pos2 = theta;
+    ser1.write(pos);
+    ser2.write(pos2);
+    // Ответ уходит, когда сервоприводы уже повернулись
+    delay(300);
+    reply(id, "OK");
+  } else if (body.startsWith("DWELL ")) {
+    int ms = body.substring(6).toInt();
+    if (ms < 0 || ms > 5000) {
+      reply(id, "ERR range");
+      return;
+    }
+    dwellMs = ms;
+    reply(id, "OK");
+  } else if (body == "AUTO 0" || body == "AUTO 1") {
+    autoSweep = body == "AUTO 1";
+    reply(id, "OK");
+  } else if (body.startsWith("SWEEP ")) {
+    int phi0, phi1, theta0, theta1, step;
+    if (sscanf(body.c_str() + 6, "%d %d %d %d %d", &phi0, &phi1, &theta0, &theta1, &step) != 5) {
+      reply(id, "ERR syntax");
+      return;
+    }
+    if (phi0 < 0 || phi1 > 180 || theta0 < 0 || theta1 > 180 || phi0 > phi1 || theta0 > theta1
+        || step < 1 || step > 90) {
+      reply(id, "ERR range");
+      return;
+    }
+    // Как после MOVE, обход продолжится с того места, где закончился SWEEP
+    int sent = sweep(phi0, phi1, theta0, theta1, step);
+    beginReply(id);
+    Serial.print("OK ");
+    Serial.print(sent);
+    endReply();
+  } else {
+    reply(id, "ERR unknown");
+  }
+}
+
+// Начало длинной строки ещё в буфере, так что номер команды известен
+void rejectLongCommand() {
+  int space = command.indexOf(' ');
+  if (command.startsWith("#") && space >= 2) {
+    reply(command.substring(0, space), "ERR too long");
+    return;
+  }
+  if (binaryMode) {
+    Serial.write((byte) 0);
+  }
+  Serial.print("ERR too long");
+  endReply();
+}
+
+void readCommands() {
+  while (Serial.available() > 0) {
+    char c = Serial.read();
+    if (c == '\n') {
+      command.trim();
+      if (commandOverflow) {
+        rejectLongCommand();
+        commandOverflow = false;
+      } else if (command.startsWith("#")) {
+        handleTagged(command);
+      } else if (command == "PROTO BIN") {
+        Serial.println("OK BIN");
+        binaryMode = true;
+      } else if (command == "PROTO ASCII") {
+        binaryMode = false;
+        Serial.println("OK ASCII");
+      }
+      command = "";
+    } else if (command.length() < MAX_COMMAND) {
+      command += c;
+    } else {
+      commandOverflow = true;
+    }
+  }
+}
+
 void loop() {
+  if (!autoSweep) {
+    readCommands();
+    return;
+  }
   for (pos = 0; pos <= 180; pos += 5) {
   ser1.write(pos);
     for (pos2 = 0; pos2 <= 180; pos2 += 5) {
       ser2.write(pos2);
-      double* dist = HCSR04.measureDistanceCm();
-      if dist[0] != -1 
-      {
-        dist[0] = round(dist[0]);
-        Serial.print(pos);
-        Serial.print(";");
-        Serial.print(pos2);
-        Serial.print(";");
-        Serial.println(dist[0]);
-      }  
-      delay(50);
+      readCommands();
+      if (!autoSweep) {
+        return;
+      }
+      measureAndSend(pos, pos2);
+      delay(dwellMs);
    }
   }
 }